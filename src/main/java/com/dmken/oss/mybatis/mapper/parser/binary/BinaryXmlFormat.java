@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.binary;
+
+/**
+ * Constants of the binary XML format that is written by the
+ * {@link BinaryXmlWriter} and read by the {@link BinaryXmlReader}.
+ *
+ * <p>
+ * A binary XML document has the following layout:
+ * </p>
+ *
+ * <pre>
+ * document := MAGIC FORMAT_VERSION flags version encoding doctype record* END_DOCUMENT
+ * record   := START_TAG tag | SELF_CLOSING_TAG tag | VALUE string | END_TAG
+ * tag      := ref varint(parameterCount) (ref ref)* [varint(line + 1) varint(column + 1)]
+ * ref      := varint(0) string | varint(index + 1)
+ * string   := varint(length) utf8
+ * version, encoding, doctype := varint(0) | varint(length + 1) utf8
+ * </pre>
+ *
+ * <p>
+ * All integers are unsigned LEB128 varints. Names, parameter keys and parameter
+ * values are written through a string table (<code>ref</code>): The first
+ * occurrence of a string is written literally and assigned the next index, all
+ * following occurrences are written as index. The table is built up while
+ * writing/reading, so the format can be streamed in both directions. The
+ * source position (<code>line</code> and <code>column</code>) of tags is only
+ * present if {@link #FLAG_POSITIONS} is set. Both are offset by one, so the
+ * position <code>-1</code> of tags without a known position is written as
+ * <code>0</code>.
+ * </p>
+ *
+ */
+final class BinaryXmlFormat {
+    /**
+     * The magic number every binary XML document starts with
+     * (<code>MMPB</code>).
+     *
+     */
+    static final byte[] MAGIC = { 'M', 'M', 'P', 'B' };
+    /**
+     * The version of the format. Has to be incremented whenever the format
+     * changes.
+     *
+     */
+    static final int FORMAT_VERSION = 2;
+
+    /**
+     * Flag indicating that the document contains source positions.
+     *
+     */
+    static final int FLAG_POSITIONS = 0x01;
+
+    static final int END_DOCUMENT = 0x00;
+    static final int START_TAG = 0x01;
+    static final int SELF_CLOSING_TAG = 0x02;
+    static final int VALUE = 0x03;
+    static final int END_TAG = 0x04;
+
+    /**
+     * Constructor of BinaryXmlFormat.
+     *
+     */
+    private BinaryXmlFormat() {
+        // Nothing to do.
+    }
+}
@@ -0,0 +1,511 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.binary;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dmken.oss.mybatis.mapper.parser.binary.exception.BinaryFormatException;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.SelfClosingXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.SimpleXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlVersion;
+
+import lombok.Getter;
+
+/**
+ * Reads XML documents in the binary XML format (see {@link BinaryXmlFormat})
+ * from an {@link InputStream input stream}.
+ *
+ * <p>
+ * The reader is a streaming pull reader: The header is read on construction,
+ * every call of {@link #next()} reads the next record and makes its data
+ * available through the getters. Only a small, fixed-size buffer and the string
+ * table are held in memory. {@link #readDocument()} is a shortcut for reading
+ * the complete document tree.
+ * </p>
+ *
+ * <p>
+ * Lengths and counts read from the document are validated against the size of
+ * the document (if it is known), so a corrupt document is reported as a
+ * {@link BinaryFormatException} instead of failing with a runtime exception or
+ * exhausting the memory.
+ * </p>
+ *
+ */
+public class BinaryXmlReader implements Closeable {
+    /**
+     * The size of the input buffer.
+     *
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * The stream to read from.
+     *
+     */
+    private final InputStream in;
+    /**
+     * The input buffer.
+     *
+     */
+    private final byte[] buffer = new byte[BinaryXmlReader.BUFFER_SIZE];
+    /**
+     * The string table containing every string that was read already.
+     *
+     */
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * The position of the next byte in the {@link #buffer}.
+     *
+     */
+    private int position;
+    /**
+     * The number of bytes in the {@link #buffer}.
+     *
+     */
+    private int limit;
+    /**
+     * The size of the document in bytes or {@link Long#MAX_VALUE} if it is
+     * not known.
+     *
+     */
+    private final long size;
+    /**
+     * The number of bytes read from the {@link #in stream} so far.
+     *
+     */
+    private long streamPosition;
+
+    /**
+     * Whether the document contains source positions.
+     *
+     */
+    private final boolean positions;
+    /**
+     * The XML version of the document.
+     *
+     */
+    @Getter
+    private final XmlVersion version;
+    /**
+     * The encoding of the document.
+     *
+     */
+    @Getter
+    private final Charset encoding;
+    /**
+     * The document type of the document.
+     *
+     */
+    @Getter
+    private final String doctype;
+
+    /**
+     * The type of the current record.
+     *
+     */
+    @Getter
+    private Event event;
+    /**
+     * The name of the current tag. Only available for {@link Event#START_TAG}
+     * and {@link Event#SELF_CLOSING_TAG}.
+     *
+     */
+    @Getter
+    private String name;
+    /**
+     * The parameters of the current tag. Only available for
+     * {@link Event#START_TAG} and {@link Event#SELF_CLOSING_TAG}.
+     *
+     */
+    @Getter
+    private Map<String, String> parameters;
+    /**
+     * The source line of the current tag or <code>-1</code> if the document
+     * does not contain positions. Only available for {@link Event#START_TAG}
+     * and {@link Event#SELF_CLOSING_TAG}.
+     *
+     */
+    @Getter
+    private int line = -1;
+    /**
+     * The source column of the current tag or <code>-1</code> if the document
+     * does not contain positions. Only available for {@link Event#START_TAG}
+     * and {@link Event#SELF_CLOSING_TAG}.
+     *
+     */
+    @Getter
+    private int column = -1;
+    /**
+     * The data of the current value. Only available for {@link Event#VALUE}.
+     *
+     */
+    @Getter
+    private String data;
+
+    /**
+     * The number of currently open tags.
+     *
+     */
+    private int depth;
+    /**
+     * Reads the next byte for {@link VarIntUtil#decode(VarIntUtil.ByteSource)
+     * decoding varints}.
+     *
+     */
+    private final VarIntUtil.ByteSource byteSource = this::readByte;
+
+    /**
+     * Constructor of BinaryXmlReader. Reads the header of the document.
+     *
+     * @param in
+     *            The stream to read from.
+     * @throws IOException
+     *             If any I/O error occurs or the header is invalid.
+     */
+    public BinaryXmlReader(final InputStream in) throws IOException {
+        this(in, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor of BinaryXmlReader. Reads the header of the document.
+     *
+     * @param in
+     *            The stream to read from.
+     * @param size
+     *            The number of bytes that are available in the stream (i.e.
+     *            the size of the document). Lengths and counts that exceed
+     *            it are rejected.
+     * @throws IOException
+     *             If any I/O error occurs or the header is invalid.
+     */
+    public BinaryXmlReader(final InputStream in, final long size) throws IOException {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must not be negative");
+        }
+
+        this.in = in;
+        this.size = size;
+
+        for (final byte magic : BinaryXmlFormat.MAGIC) {
+            if (this.readByte() != magic) {
+                throw new BinaryFormatException("Not a binary XML document!");
+            }
+        }
+        final int formatVersion = this.readVarInt();
+        if (formatVersion != BinaryXmlFormat.FORMAT_VERSION) {
+            throw new BinaryFormatException("Unsupported format version " + formatVersion + "!");
+        }
+        this.positions = (this.readVarInt() & BinaryXmlFormat.FLAG_POSITIONS) != 0;
+
+        final String versionString = this.readNullableString();
+        final String encodingString = this.readNullableString();
+        this.doctype = this.readNullableString();
+
+        if (versionString == null) {
+            this.version = null;
+        } else {
+            this.version = XmlVersion.findByVersion(versionString);
+            if (this.version == null) {
+                throw new BinaryFormatException("Unsupported version " + versionString + "!");
+            }
+        }
+        try {
+            this.encoding = encodingString == null ? null : Charset.forName(encodingString);
+        } catch (final IllegalCharsetNameException | UnsupportedCharsetException cause) {
+            throw new BinaryFormatException("Unsupported encoding " + encodingString + "!", cause);
+        }
+    }
+
+    /**
+     * Reads the complete remaining document. Must be called before the first
+     * call of {@link #next()}.
+     *
+     * @return The read {@link XmlDocument XML document}.
+     * @throws IOException
+     *             If any I/O error occurs or the document is invalid.
+     */
+    public XmlDocument readDocument() throws IOException {
+        if (this.event != null) {
+            throw new IllegalStateException("Reading already started!");
+        }
+
+        // The names, parameters and children of the currently open tags. The
+        // tags are created when they are closed.
+        final Deque<String> names = new ArrayDeque<>();
+        final Deque<Map<String, String>> parameters = new ArrayDeque<>();
+        final Deque<List<AbstractXmlValue>> children = new ArrayDeque<>();
+        XmlTag rootTag = null;
+        while (this.next() != Event.END_DOCUMENT) {
+            switch (this.event) {
+                case START_TAG:
+                    if (names.isEmpty() && rootTag != null) {
+                        throw new BinaryFormatException("Multiple root tags!");
+                    }
+                    names.push(this.name);
+                    parameters.push(this.parameters);
+                    children.push(new ArrayList<>());
+                    break;
+                case SELF_CLOSING_TAG:
+                    children.peek().add(new SelfClosingXmlTag(this.name, this.parameters));
+                    break;
+                case VALUE:
+                    children.peek().add(new SimpleXmlValue(this.data));
+                    break;
+                case END_TAG:
+                    final XmlTag tag = new XmlTag(names.pop(), parameters.pop(), children.pop());
+                    if (names.isEmpty()) {
+                        rootTag = tag;
+                    } else {
+                        children.peek().add(tag);
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected event " + this.event + "!");
+            }
+        }
+        if (rootTag == null) {
+            throw new BinaryFormatException("Missing root tag!");
+        }
+        return new XmlDocument(this.version, this.encoding, this.doctype, rootTag);
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return The type of the record (see {@link #getEvent()}).
+     * @throws IOException
+     *             If any I/O error occurs or the record is invalid.
+     */
+    public Event next() throws IOException {
+        if (this.event == Event.END_DOCUMENT) {
+            throw new IllegalStateException("End of document already reached!");
+        }
+
+        this.name = null;
+        this.parameters = null;
+        this.data = null;
+        this.line = -1;
+        this.column = -1;
+
+        final int type = this.readByte();
+        switch (type) {
+            case BinaryXmlFormat.START_TAG:
+                this.readTag();
+                this.depth++;
+                this.event = Event.START_TAG;
+                break;
+            case BinaryXmlFormat.SELF_CLOSING_TAG:
+                if (this.depth == 0) {
+                    throw new BinaryFormatException("Self-closing tag outside of a tag!");
+                }
+                this.readTag();
+                this.event = Event.SELF_CLOSING_TAG;
+                break;
+            case BinaryXmlFormat.VALUE:
+                if (this.depth == 0) {
+                    throw new BinaryFormatException("Value outside of a tag!");
+                }
+                this.data = this.readString();
+                this.event = Event.VALUE;
+                break;
+            case BinaryXmlFormat.END_TAG:
+                if (this.depth == 0) {
+                    throw new BinaryFormatException("Unexpected end of tag!");
+                }
+                this.depth--;
+                this.event = Event.END_TAG;
+                break;
+            case BinaryXmlFormat.END_DOCUMENT:
+                if (this.depth != 0) {
+                    throw new BinaryFormatException("Unexpected end of document!");
+                }
+                this.event = Event.END_DOCUMENT;
+                break;
+            default:
+                throw new BinaryFormatException("Unknown record type " + type + "!");
+        }
+        return this.event;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+    private void readTag() throws IOException {
+        this.name = this.readReference();
+        final int parameterCount = this.readVarInt();
+        // Every parameter occupies at least two bytes (the references).
+        if (parameterCount < 0 || parameterCount > this.remaining() / 2) {
+            throw new BinaryFormatException("Invalid parameter count " + parameterCount + "!");
+        }
+        if (parameterCount == 0) {
+            this.parameters = new LinkedHashMap<>();
+        } else {
+            this.parameters = new LinkedHashMap<>(parameterCount * 4 / 3 + 1);
+            for (int i = 0; i < parameterCount; i++) {
+                this.parameters.put(this.readReference(), this.readReference());
+            }
+        }
+        if (this.positions) {
+            this.line = this.readVarInt() - 1;
+            this.column = this.readVarInt() - 1;
+        }
+    }
+
+    private String readReference() throws IOException {
+        final int index = this.readVarInt();
+        if (index == 0) {
+            final String str = this.readString();
+            this.strings.add(str);
+            return str;
+        }
+        if (index < 0 || index > this.strings.size()) {
+            throw new BinaryFormatException("Unknown string reference " + index + "!");
+        }
+        return this.strings.get(index - 1);
+    }
+
+    private String readNullableString() throws IOException {
+        final int length = this.readVarInt();
+        return length == 0 ? null : this.readString(length - 1);
+    }
+
+    private String readString() throws IOException {
+        return this.readString(this.readVarInt());
+    }
+
+    private String readString(final int length) throws IOException {
+        if (length < 0 || length > this.remaining()) {
+            throw new BinaryFormatException("Invalid string length " + length + "!");
+        }
+        if (length <= this.limit - this.position) {
+            final String str = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+            this.position += length;
+            return str;
+        }
+        if (length <= this.buffer.length) {
+            this.fill(length);
+            return this.readString(length);
+        }
+
+        // If the size of the document is not known, the array only grows
+        // with the bytes that are actually read.
+        byte[] bytes = new byte[Math.min(length, 16 * BinaryXmlReader.BUFFER_SIZE)];
+        final int buffered = this.limit - this.position;
+        System.arraycopy(this.buffer, this.position, bytes, 0, buffered);
+        this.position = this.limit;
+        int read = buffered;
+        while (read < length) {
+            if (read == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * bytes.length));
+            }
+            final int count = this.in.read(bytes, read, bytes.length - read);
+            if (count < 0) {
+                throw new EOFException("Unexpected end of stream!");
+            }
+            read += count;
+            this.streamPosition += count;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int readVarInt() throws IOException {
+        return VarIntUtil.decode(this.byteSource);
+    }
+
+    private int readByte() throws IOException {
+        if (this.position == this.limit) {
+            this.fill(1);
+        }
+        return this.buffer[this.position++] & 0xFF;
+    }
+
+    /**
+     * Ensures that at least the given number of bytes are available in the
+     * {@link #buffer}.
+     *
+     * @param required
+     *            The number of required bytes. Must not be greater than the
+     *            size of the buffer.
+     * @throws IOException
+     *             If any I/O error occurs or the stream ends early.
+     */
+    private void fill(final int required) throws IOException {
+        final int remaining = this.limit - this.position;
+        System.arraycopy(this.buffer, this.position, this.buffer, 0, remaining);
+        this.position = 0;
+        this.limit = remaining;
+        while (this.limit < required) {
+            final int count = this.in.read(this.buffer, this.limit, this.buffer.length - this.limit);
+            if (count < 0) {
+                throw new EOFException("Unexpected end of stream!");
+            }
+            this.limit += count;
+            this.streamPosition += count;
+        }
+    }
+
+    /**
+     * Computes the number of bytes of the document that were not read yet.
+     *
+     * @return The number of remaining bytes.
+     */
+    private long remaining() {
+        return this.size - this.streamPosition + this.limit - this.position;
+    }
+
+    /**
+     * The type of a record of a binary XML document.
+     *
+     */
+    @SuppressWarnings("javadoc")
+    public static enum Event {
+        START_TAG,
+        SELF_CLOSING_TAG,
+        VALUE,
+        END_TAG,
+        END_DOCUMENT;
+    }
+}
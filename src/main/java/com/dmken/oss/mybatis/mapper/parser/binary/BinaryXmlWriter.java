@@ -0,0 +1,414 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.binary;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.SimpleXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlVersion;
+
+/**
+ * Writes XML documents in the binary XML format (see {@link BinaryXmlFormat})
+ * to an {@link OutputStream output stream}.
+ *
+ * <p>
+ * The writer is streaming: Every call writes the respective record into a
+ * small, fixed-size buffer that is flushed to the output stream as soon as it
+ * is full. Thus, a document can be written without holding it in memory
+ * completely (e.g. while it is being produced), while
+ * {@link #write(XmlDocument)} is a shortcut for writing a complete document
+ * tree.
+ * </p>
+ *
+ */
+public class BinaryXmlWriter implements Closeable, Flushable {
+    /**
+     * The size of the output buffer.
+     *
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * The stream to write to.
+     *
+     */
+    private final OutputStream out;
+    /**
+     * Whether source positions are written if they are known.
+     *
+     */
+    private final boolean positions;
+    /**
+     * Whether the current document contains source positions.
+     *
+     */
+    private boolean documentPositions;
+    /**
+     * The string table mapping every string that was written already to its
+     * index.
+     *
+     */
+    private final Map<String, Integer> strings = new HashMap<>();
+    /**
+     * The output buffer.
+     *
+     */
+    private final byte[] buffer = new byte[BinaryXmlWriter.BUFFER_SIZE];
+
+    /**
+     * The number of bytes in the {@link #buffer}.
+     *
+     */
+    private int count;
+    /**
+     * The number of currently open tags or <code>-1</code> if the document was
+     * not started yet.
+     *
+     */
+    private int depth = -1;
+
+    /**
+     * Constructor of BinaryXmlWriter.
+     *
+     * <p>
+     * Equivalent to <code>new BinaryXmlWriter(out, false)</code>.
+     * </p>
+     *
+     * @param out
+     *            The stream to write to.
+     */
+    public BinaryXmlWriter(final OutputStream out) {
+        this(out, false);
+    }
+
+    /**
+     * Constructor of BinaryXmlWriter.
+     *
+     * @param out
+     *            The stream to write to.
+     * @param positions
+     *            Whether to write the source positions of the tags. Documents
+     *            written using {@link #write(XmlDocument)} never contain
+     *            positions, as the tree does not know them.
+     */
+    public BinaryXmlWriter(final OutputStream out, final boolean positions) {
+        this.out = out;
+        this.positions = positions;
+    }
+
+    /**
+     * Writes the complete given document and flushes the writer.
+     *
+     * <p>
+     * The tree does not record source positions, so the document is written
+     * without positions, even if the writer writes positions otherwise.
+     * </p>
+     *
+     * @param document
+     *            The document to write.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    public void write(final XmlDocument document) throws IOException {
+        this.startDocument(document.getVersion(), document.getEncoding(), document.getDoctype(), false);
+        this.writeValue(document.getRootTag());
+        this.endDocument();
+        this.flush();
+    }
+
+    /**
+     * Starts the document by writing the header.
+     *
+     * @param version
+     *            The XML version. May be <code>null</code>.
+     * @param encoding
+     *            The encoding. May be <code>null</code>.
+     * @param doctype
+     *            The document type. May be <code>null</code>.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    public void startDocument(final XmlVersion version, final Charset encoding, final String doctype) throws IOException {
+        this.startDocument(version, encoding, doctype, this.positions);
+    }
+
+    private void startDocument(final XmlVersion version, final Charset encoding, final String doctype,
+            final boolean positions) throws IOException {
+        if (this.depth != -1) {
+            throw new IllegalStateException("Document already started!");
+        }
+        this.depth = 0;
+        this.documentPositions = positions;
+
+        this.writeBytes(BinaryXmlFormat.MAGIC, 0, BinaryXmlFormat.MAGIC.length);
+        this.writeVarInt(BinaryXmlFormat.FORMAT_VERSION);
+        this.writeVarInt(positions ? BinaryXmlFormat.FLAG_POSITIONS : 0);
+        this.writeNullableString(version == null ? null : version.getVersion());
+        this.writeNullableString(encoding == null ? null : encoding.name());
+        this.writeNullableString(doctype);
+    }
+
+    /**
+     * Starts a new tag that is closed by {@link #endTag()}.
+     *
+     * @param name
+     *            The name of the tag.
+     * @param parameters
+     *            The parameters of the tag.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    public void startTag(final String name, final Map<String, String> parameters) throws IOException {
+        this.startTag(name, parameters, -1, -1);
+    }
+
+    /**
+     * Starts a new tag that is closed by {@link #endTag()}.
+     *
+     * @param name
+     *            The name of the tag.
+     * @param parameters
+     *            The parameters of the tag.
+     * @param line
+     *            The source line of the tag or <code>-1</code> if it is not
+     *            known. Ignored if the writer does not write positions.
+     * @param column
+     *            The source column of the tag or <code>-1</code> if it is not
+     *            known. Ignored if the writer does not write positions.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    public void startTag(final String name, final Map<String, String> parameters, final int line, final int column)
+            throws IOException {
+        this.writeTag(BinaryXmlFormat.START_TAG, name, parameters, line, column);
+        this.depth++;
+    }
+
+    /**
+     * Writes a self-closing tag.
+     *
+     * @param name
+     *            The name of the tag.
+     * @param parameters
+     *            The parameters of the tag.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    public void selfClosingTag(final String name, final Map<String, String> parameters) throws IOException {
+        this.selfClosingTag(name, parameters, -1, -1);
+    }
+
+    /**
+     * Writes a self-closing tag.
+     *
+     * @param name
+     *            The name of the tag.
+     * @param parameters
+     *            The parameters of the tag.
+     * @param line
+     *            The source line of the tag or <code>-1</code> if it is not
+     *            known. Ignored if the writer does not write positions.
+     * @param column
+     *            The source column of the tag or <code>-1</code> if it is not
+     *            known. Ignored if the writer does not write positions.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    public void selfClosingTag(final String name, final Map<String, String> parameters, final int line, final int column)
+            throws IOException {
+        if (this.depth < 1) {
+            throw new IllegalStateException("Self-closing tags are only allowed inside of a tag!");
+        }
+        this.writeTag(BinaryXmlFormat.SELF_CLOSING_TAG, name, parameters, line, column);
+    }
+
+    /**
+     * Writes a simple value.
+     *
+     * @param data
+     *            The data of the value.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    public void value(final String data) throws IOException {
+        if (this.depth < 1) {
+            throw new IllegalStateException("Values are only allowed inside of a tag!");
+        }
+        this.writeByte(BinaryXmlFormat.VALUE);
+        this.writeString(data);
+    }
+
+    /**
+     * Ends the last started tag.
+     *
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    public void endTag() throws IOException {
+        if (this.depth < 1) {
+            throw new IllegalStateException("No open tag!");
+        }
+        this.writeByte(BinaryXmlFormat.END_TAG);
+        this.depth--;
+    }
+
+    /**
+     * Ends the document.
+     *
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    public void endDocument() throws IOException {
+        if (this.depth != 0) {
+            throw new IllegalStateException("Document not started or tags still open!");
+        }
+        this.writeByte(BinaryXmlFormat.END_DOCUMENT);
+        this.depth = -1;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.io.Flushable#flush()
+     */
+    @Override
+    public void flush() throws IOException {
+        this.flushBuffer();
+        this.out.flush();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        this.flushBuffer();
+        this.out.close();
+    }
+
+    private void writeValue(final AbstractXmlValue value) throws IOException {
+        if (value instanceof SimpleXmlValue) {
+            this.value(((SimpleXmlValue) value).getData());
+        } else if (value instanceof XmlTag) {
+            final XmlTag tag = (XmlTag) value;
+            this.startTag(tag.getName(), tag.getParameters());
+            for (final AbstractXmlValue child : tag.getChildren()) {
+                this.writeValue(child);
+            }
+            this.endTag();
+        } else {
+            final AbstractXmlTag tag = (AbstractXmlTag) value;
+            this.selfClosingTag(tag.getName(), tag.getParameters());
+        }
+    }
+
+    private void writeTag(final int type, final String name, final Map<String, String> parameters, final int line,
+            final int column) throws IOException {
+        if (this.depth < 0) {
+            throw new IllegalStateException("Document not started!");
+        }
+        this.writeByte(type);
+        this.writeReference(name);
+        this.writeVarInt(parameters.size());
+        for (final Map.Entry<String, String> parameter : parameters.entrySet()) {
+            this.writeReference(parameter.getKey());
+            this.writeReference(parameter.getValue());
+        }
+        if (this.documentPositions) {
+            this.writeVarInt(line + 1);
+            this.writeVarInt(column + 1);
+        }
+    }
+
+    private void writeReference(final String str) throws IOException {
+        final Integer index = this.strings.get(str);
+        if (index == null) {
+            this.strings.put(str, this.strings.size());
+            this.writeVarInt(0);
+            this.writeString(str);
+        } else {
+            this.writeVarInt(index + 1);
+        }
+    }
+
+    private void writeNullableString(final String str) throws IOException {
+        if (str == null) {
+            this.writeVarInt(0);
+        } else {
+            final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            this.writeVarInt(bytes.length + 1);
+            this.writeBytes(bytes, 0, bytes.length);
+        }
+    }
+
+    private void writeString(final String str) throws IOException {
+        final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        this.writeVarInt(bytes.length);
+        this.writeBytes(bytes, 0, bytes.length);
+    }
+
+    private void writeVarInt(final int value) throws IOException {
+        if (this.count + VarIntUtil.MAX_LENGTH > this.buffer.length) {
+            this.flushBuffer();
+        }
+        this.count = VarIntUtil.encode(value, this.buffer, this.count);
+    }
+
+    private void writeByte(final int value) throws IOException {
+        if (this.count == this.buffer.length) {
+            this.flushBuffer();
+        }
+        this.buffer[this.count++] = (byte) value;
+    }
+
+    private void writeBytes(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (length > this.buffer.length - this.count) {
+            this.flushBuffer();
+            if (length > this.buffer.length) {
+                this.out.write(bytes, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, this.buffer, this.count, length);
+        this.count += length;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (this.count > 0) {
+            this.out.write(this.buffer, 0, this.count);
+            this.count = 0;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.binary;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.dmken.oss.mybatis.mapper.parser.binary.exception.BinaryFormatException;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Utility class for reading and writing integers as unsigned LEB128 varints
+ * (seven bits per byte, least significant group first, the high bit marks
+ * that another byte follows) as used by the binary formats.
+ *
+ */
+@UtilityClass
+public class VarIntUtil {
+    /**
+     * The maximum number of bytes of a varint.
+     *
+     */
+    public static final int MAX_LENGTH = 5;
+
+    /**
+     * Encodes the given integer into the given buffer.
+     *
+     * @param value
+     *            The integer. Negative integers take {@link #MAX_LENGTH} bytes.
+     * @param buffer
+     *            The buffer. Must have room for {@link #MAX_LENGTH} bytes.
+     * @param offset
+     *            The index to write the first byte to.
+     * @return The index after the last written byte.
+     */
+    public int encode(final int value, final byte[] buffer, final int offset) {
+        int index = offset;
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            buffer[index++] = (byte) (remaining & 0x7F | 0x80);
+            remaining >>>= 7;
+        }
+        buffer[index++] = (byte) remaining;
+        return index;
+    }
+
+    /**
+     * Writes the given integer to the given output.
+     *
+     * @param out
+     *            The output.
+     * @param value
+     *            The integer.
+     * @throws IOException
+     *             If the output fails.
+     */
+    public void write(final DataOutput out, final int value) throws IOException {
+        final byte[] buffer = new byte[VarIntUtil.MAX_LENGTH];
+        out.write(buffer, 0, VarIntUtil.encode(value, buffer, 0));
+    }
+
+    /**
+     * Decodes an integer from the given source of bytes.
+     *
+     * @param in
+     *            The source of bytes.
+     * @return The integer. Might be negative if it was written as a negative
+     *         integer (or the data is corrupt), so the callers have to
+     *         validate it.
+     * @throws IOException
+     *             If the source fails or the varint is longer than
+     *             {@link #MAX_LENGTH} bytes.
+     */
+    public int decode(final ByteSource in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 7 * VarIntUtil.MAX_LENGTH; shift += 7) {
+            final int b = in.read();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new BinaryFormatException("Malformed varint!");
+    }
+
+    /**
+     * Reads an integer from the given input.
+     *
+     * @param in
+     *            The input.
+     * @return The integer (see {@link #decode(ByteSource)}).
+     * @throws IOException
+     *             If the input fails or the varint is malformed.
+     */
+    public int read(final DataInput in) throws IOException {
+        return VarIntUtil.decode(in::readUnsignedByte);
+    }
+
+    /**
+     * A source of bytes to {@link VarIntUtil#decode(ByteSource) decode}
+     * varints from.
+     *
+     */
+    @FunctionalInterface
+    public interface ByteSource {
+        /**
+         * Reads the next byte.
+         *
+         * @return The byte as an unsigned value (<code>0</code> to
+         *         <code>255</code>).
+         * @throws IOException
+         *             If the source fails or has no more bytes.
+         */
+        int read() throws IOException;
+    }
+}
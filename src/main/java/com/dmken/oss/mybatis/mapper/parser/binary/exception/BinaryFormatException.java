@@ -0,0 +1,35 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.binary.exception;
+
+import java.io.IOException;
+
+@SuppressWarnings("javadoc")
+public class BinaryFormatException extends IOException {
+    private static final long serialVersionUID = -3187236044573925147L;
+
+    public BinaryFormatException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+
+    public BinaryFormatException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.cache;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link InputStream input stream} reading the remaining bytes of a
+ * {@link ByteBuffer byte buffer} (e.g. a memory-mapped file) without copying
+ * them into an intermediate array.
+ *
+ */
+class ByteBufferInputStream extends InputStream {
+    /**
+     * The buffer to read from.
+     *
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Constructor of ByteBufferInputStream.
+     *
+     * @param buffer
+     *            The buffer to read from. The position of the buffer is
+     *            advanced while reading.
+     */
+    ByteBufferInputStream(final ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.io.InputStream#read()
+     */
+    @Override
+    public int read() {
+        if (!this.buffer.hasRemaining()) {
+            return -1;
+        }
+        return this.buffer.get() & 0xFF;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (!this.buffer.hasRemaining()) {
+            return -1;
+        }
+        final int count = Math.min(length, this.buffer.remaining());
+        this.buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.io.InputStream#available()
+     */
+    @Override
+    public int available() {
+        return this.buffer.remaining();
+    }
+}
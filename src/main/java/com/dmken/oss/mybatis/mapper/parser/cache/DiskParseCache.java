@@ -0,0 +1,384 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.dmken.oss.mybatis.mapper.parser.binary.BinaryXmlReader;
+import com.dmken.oss.mybatis.mapper.parser.binary.BinaryXmlWriter;
+import com.dmken.oss.mybatis.mapper.parser.jfr.JfrEvents;
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.parser.exception.ParserException;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.util.HashUtil;
+import com.dmken.oss.mybatis.mapper.parser.util.VersionUtil;
+
+import lombok.Data;
+
+/**
+ * A persistent cache of parsed {@link XmlDocument XML documents} that lives in
+ * a directory on the disk.
+ *
+ * <p>
+ * Every entry is keyed by a hash of the raw bytes of the source file, so a file
+ * that did not change between two runs is loaded from the cache without
+ * invoking the {@link XmlScanner scanner} and the {@link XmlParser parser}.
+ * The documents are stored in the {@link BinaryXmlWriter binary XML format}.
+ * Both the source files and the cache entries are read through memory-mapped
+ * files. Every entry records the {@link VersionUtil#getBuildVersion() build
+ * version} of the parser and the format version that was used to write it,
+ * entries written by any other build are ignored and replaced.
+ * </p>
+ *
+ * <p>
+ * As every version of an edited file gets its own entry, the total size of the
+ * entries is capped: Once it exceeds the maximum size, the least recently used
+ * entries (according to their modification time, which is refreshed by hits
+ * at most once per {@link #TOUCH_INTERVAL_MILLIS touch interval}) are deleted.
+ * Entries of previous versions of a file and of previous builds are thus
+ * deleted eventually.
+ * </p>
+ *
+ * <p>
+ * The cache is an optimization only: If an entry cannot be read or written, the
+ * file is parsed as usual.
+ * </p>
+ *
+ */
+public class DiskParseCache {
+    /**
+     * The magic number every cache entry starts with (<code>MMPC</code>).
+     *
+     */
+    private static final int MAGIC = 0x4D4D5043;
+    /**
+     * The version of the format of the cache entries. Has to be incremented
+     * whenever the format changes.
+     *
+     * <p>
+     * Changes of the scanner or the parser that alter the parse results do not
+     * require an increment: The entries are also keyed by the
+     * {@link VersionUtil#getBuildVersion() build version}, which includes the
+     * timestamp of the build. Hence any rebuild of the parser invalidates all
+     * entries, even if the (snapshot) version stays the same.
+     * </p>
+     *
+     */
+    private static final int FORMAT_VERSION = 3;
+    /**
+     * The file suffix of cache entries.
+     *
+     */
+    private static final String ENTRY_SUFFIX = ".mpc";
+    /**
+     * The default maximum total size of the entries (64 MiB).
+     *
+     */
+    private static final long DEFAULT_MAXIMUM_SIZE = 64L * 1024 * 1024;
+    /**
+     * The minimum time between two refreshes of the modification time of an
+     * entry by hits (one hour). Keeps hits from writing to the disk while
+     * still tracking the recently used entries.
+     *
+     */
+    private static final long TOUCH_INTERVAL_MILLIS = 60L * 60 * 1000;
+
+    /**
+     * The directory containing the cache entries.
+     *
+     */
+    private final Path directory;
+    /**
+     * The build version of the parser the entries are valid for.
+     *
+     */
+    private final String parserVersion;
+    /**
+     * The maximum total size of the entries in bytes.
+     *
+     */
+    private final long maximumSize;
+    /**
+     * The (estimated) total size of the entries in bytes. Other processes
+     * sharing the directory are only accounted for when {@link #prune()
+     * pruning}.
+     *
+     */
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * Constructor of DiskParseCache.
+     *
+     * <p>
+     * The entries are limited to a total size of 64 MiB.
+     * </p>
+     *
+     * @param directory
+     *            The directory to store the cache entries in. Is created if it
+     *            does not exist.
+     * @throws IOException
+     *             If the directory cannot be created.
+     */
+    public DiskParseCache(final Path directory) throws IOException {
+        this(directory, DiskParseCache.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Constructor of DiskParseCache.
+     *
+     * @param directory
+     *            The directory to store the cache entries in. Is created if it
+     *            does not exist.
+     * @param maximumSize
+     *            The maximum total size of the entries in bytes. The least
+     *            recently used entries are deleted once it is exceeded.
+     * @throws IOException
+     *             If the directory cannot be created or listed.
+     */
+    public DiskParseCache(final Path directory, final long maximumSize) throws IOException {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("maximumSize must not be negative");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.parserVersion = VersionUtil.getBuildVersion();
+        this.maximumSize = maximumSize;
+        this.prune();
+    }
+
+    /**
+     * Parses the given file or loads it from the cache if it was parsed
+     * before.
+     *
+     * @param file
+     *            The file to parse.
+     * @return The parsed {@link XmlDocument XML document}.
+     * @throws IOException
+     *             If the file cannot be read.
+     * @throws ScannerException
+     *             If the file has to be parsed and any scanner error occurs.
+     * @throws ParserException
+     *             If the file has to be parsed and any parser error occurs.
+     */
+    public XmlDocument parse(final Path file) throws IOException, ScannerException, ParserException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final long length = content.remaining();
+            final long hash = HashUtil.hash(content);
+
+            final Path entry = this.directory.resolve(HashUtil.toHexString(hash) + DiskParseCache.ENTRY_SUFFIX);
+            final XmlDocument cached = this.load(entry, length, hash);
+            if (cached != null) {
+                return cached;
+            }
+
+            final XmlDocument document = XmlParser.parse(new ByteBufferInputStream(content), JfrEvents.listener(file));
+            this.store(entry, length, hash, document);
+            return document;
+        }
+    }
+
+    /**
+     * Loads the given cache entry.
+     *
+     * @param entry
+     *            The path of the cache entry.
+     * @param length
+     *            The length of the source file.
+     * @param hash
+     *            The hash of the source file.
+     * @return The cached {@link XmlDocument XML document} or <code>null</code>
+     *         if the entry does not exist or is not valid.
+     */
+    private XmlDocument load(final Path entry, final long length, final long hash) {
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            final ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != DiskParseCache.MAGIC || in.getInt() != DiskParseCache.FORMAT_VERSION
+                    || !this.parserVersion.equals(this.readString(in)) || in.getLong() != length || in.getLong() != hash) {
+                return null;
+            }
+            final XmlDocument document = new BinaryXmlReader(new ByteBufferInputStream(in), in.remaining()).readDocument();
+            this.touch(entry);
+            return document;
+        } catch (final IOException | RuntimeException cause) {
+            // Broken or truncated entry. It is replaced after parsing. The
+            // cache must never fail the parse, so runtime exceptions caused by
+            // corrupt data are treated the same way.
+            return null;
+        }
+    }
+
+    /**
+     * Stores the given document in the given cache entry. The entry is written
+     * to a temporary file first that is then moved atomically, so concurrent
+     * readers never see partially written entries.
+     *
+     * @param entry
+     *            The path of the cache entry.
+     * @param length
+     *            The length of the source file.
+     * @param hash
+     *            The hash of the source file.
+     * @param document
+     *            The document to store.
+     */
+    private void store(final Path entry, final long length, final long hash, final XmlDocument document) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(this.directory, entry.getFileName().toString(), ".tmp");
+            try (OutputStream fileOut = Files.newOutputStream(temp);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+                out.writeInt(DiskParseCache.MAGIC);
+                out.writeInt(DiskParseCache.FORMAT_VERSION);
+                this.writeString(out, this.parserVersion);
+                out.writeLong(length);
+                out.writeLong(hash);
+                new BinaryXmlWriter(out).write(document);
+            }
+            final long replaced = Files.isRegularFile(entry) ? Files.size(entry) : 0;
+            final long written = Files.size(temp);
+            Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            temp = null;
+            if (this.size.addAndGet(written - replaced) > this.maximumSize) {
+                this.prune();
+            }
+        } catch (final IOException cause) {
+            // The cache is an optimization only, so failing to write an entry
+            // is not an error.
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (final IOException cause) {
+                    // Nothing to do.
+                }
+            }
+        }
+    }
+
+    /**
+     * Refreshes the modification time of the given entry after a hit unless
+     * it was refreshed within the {@link #TOUCH_INTERVAL_MILLIS touch
+     * interval}.
+     *
+     * @param entry
+     *            The path of the cache entry.
+     */
+    private void touch(final Path entry) {
+        try {
+            final long now = System.currentTimeMillis();
+            if (now - Files.getLastModifiedTime(entry).toMillis() > DiskParseCache.TOUCH_INTERVAL_MILLIS) {
+                Files.setLastModifiedTime(entry, FileTime.fromMillis(now));
+            }
+        } catch (final IOException cause) {
+            // The entry is only deleted earlier.
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the total size of the
+     * entries does not exceed the {@link #maximumSize maximum size} anymore.
+     * Also recalculates the {@link #size total size}, so entries written or
+     * deleted by other processes are accounted for.
+     *
+     */
+    private synchronized void prune() {
+        final List<StoredEntry> entries = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(this.directory, "*" + DiskParseCache.ENTRY_SUFFIX)) {
+            for (final Path path : paths) {
+                final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                entries.add(new StoredEntry(path, attributes.lastModifiedTime().toMillis(), attributes.size()));
+                total += attributes.size();
+            }
+        } catch (final IOException cause) {
+            // Try again when the next entry is stored.
+            return;
+        }
+
+        entries.sort(Comparator.comparingLong(StoredEntry::getLastModified));
+        for (int i = 0; i < entries.size() && total > this.maximumSize; i++) {
+            try {
+                Files.deleteIfExists(entries.get(i).getPath());
+                total -= entries.get(i).getSize();
+            } catch (final IOException cause) {
+                // Still in use (e.g. mapped by a concurrent reader on
+                // Windows), deleted by a later prune.
+            }
+        }
+        this.size.set(total);
+    }
+
+    private void writeString(final DataOutputStream out, final String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(final ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A cache entry found when {@link DiskParseCache#prune() pruning}.
+     *
+     */
+    @Data
+    private static final class StoredEntry {
+        private final Path path;
+        private final long lastModified;
+        private final long size;
+    }
+}
@@ -0,0 +1,531 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.dmken.oss.mybatis.mapper.parser.jfr.JfrEvents;
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.parser.exception.ParserException;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.util.HashUtil;
+import com.dmken.oss.mybatis.mapper.parser.util.MemoryUtil;
+
+import lombok.Data;
+
+/**
+ * A bounded in-memory cache of parsed {@link XmlDocument XML documents}.
+ *
+ * <p>
+ * Files are keyed by their path, modification time and size, raw content is
+ * keyed by a hash of the bytes. Only the most recent version of a file is
+ * cached: Once a file is parsed again because it changed, the document of the
+ * previous version is removed. The cache is bounded by the
+ * {@link MemoryUtil#estimateRetainedSize(XmlDocument) estimated number of
+ * bytes} retained by the cached documents rather than by the number of entries
+ * and evicts the least recently used entries first. Documents that are larger
+ * than the complete size limit are not cached at all.
+ * </p>
+ *
+ * <p>
+ * The cache is split into segments that are locked independently, the size
+ * limit is shared by all segments (so any document within the size limit can
+ * be cached, no matter how the other documents are distributed). Once the
+ * size limit is exceeded, the least recently used entry among the eldest
+ * entries of all segments is evicted until the cache is within the size limit
+ * again. Every key is loaded at most once at a time: Concurrent lookups of a
+ * key that is currently loaded wait for the load to complete instead of
+ * parsing the same document again. Failed loads are not cached.
+ * </p>
+ *
+ */
+public class ParseCache {
+    /**
+     * The default number of segments.
+     *
+     */
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 4;
+
+    /**
+     * The segments of the cache. The length is a power of two.
+     *
+     */
+    private final Segment[] segments;
+    /**
+     * The maximum estimated number of bytes retained by all segments.
+     *
+     */
+    private final long maximumWeight;
+    /**
+     * The estimated number of bytes retained by all segments.
+     *
+     */
+    private final AtomicLong weight = new AtomicLong();
+    /**
+     * The clock providing the {@link Entry#lastAccess access times} of the
+     * entries.
+     *
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Constructor of ParseCache.
+     *
+     * @param maximumRetainedBytes
+     *            The maximum estimated number of bytes retained by the cached
+     *            documents.
+     */
+    public ParseCache(final long maximumRetainedBytes) {
+        this(maximumRetainedBytes, ParseCache.DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Constructor of ParseCache.
+     *
+     * @param maximumRetainedBytes
+     *            The maximum estimated number of bytes retained by the cached
+     *            documents.
+     * @param concurrencyLevel
+     *            The expected number of threads accessing the cache
+     *            concurrently. Used to determine the number of segments.
+     */
+    public ParseCache(final long maximumRetainedBytes, final int concurrencyLevel) {
+        if (maximumRetainedBytes < 0) {
+            throw new IllegalArgumentException("maximumRetainedBytes must not be negative");
+        }
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("concurrencyLevel must be positive");
+        }
+
+        int segmentCount = 1;
+        while (segmentCount < concurrencyLevel) {
+            segmentCount <<= 1;
+        }
+        this.maximumWeight = maximumRetainedBytes;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            this.segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Parses the given file or returns the cached document if the file was
+     * parsed before and did not change since then (according to its
+     * modification time and size). If the file changed, the document of the
+     * previous version is removed from the cache.
+     *
+     * @param file
+     *            The file to parse.
+     * @return The parsed {@link XmlDocument XML document}.
+     * @throws IOException
+     *             If the file cannot be read or the thread is interrupted
+     *             while waiting for a concurrent load of the same file.
+     * @throws ScannerException
+     *             If any scanner error occurs.
+     * @throws ParserException
+     *             If any parser error occurs.
+     */
+    public XmlDocument parse(final Path file) throws IOException, ScannerException, ParserException {
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        final FileKey key = new FileKey(file.toAbsolutePath().normalize(), attributes.lastModifiedTime().toMillis(),
+                attributes.size());
+        final Segment segment = this.segmentFor(key);
+        synchronized (segment) {
+            final FileKey previous = segment.files.put(key.path, key);
+            if (previous != null && !previous.equals(key)) {
+                this.remove(segment, previous);
+            }
+        }
+        return this.get(key, () -> {
+            try (InputStream in = Files.newInputStream(file)) {
+                return XmlParser.parse(in, JfrEvents.listener(file));
+            }
+        });
+    }
+
+    /**
+     * Parses the given content or returns the cached document if the same
+     * content was parsed before.
+     *
+     * @param content
+     *            The content to parse.
+     * @return The parsed {@link XmlDocument XML document}.
+     * @throws IOException
+     *             If the thread is interrupted while waiting for a concurrent
+     *             load of the same content.
+     * @throws ScannerException
+     *             If any scanner error occurs.
+     * @throws ParserException
+     *             If any parser error occurs.
+     */
+    public XmlDocument parse(final byte[] content) throws IOException, ScannerException, ParserException {
+        final ContentKey key = new ContentKey(HashUtil.hash(content, 0, content.length), content.length);
+        return this.get(key, () -> XmlParser.parse(XmlScanner.scan(new ByteArrayInputStream(content))));
+    }
+
+    /**
+     * Removes all entries from the cache. Loads that are currently in progress
+     * are completed, but their results are not cached.
+     *
+     */
+    public void invalidateAll() {
+        for (final Segment segment : this.segments) {
+            synchronized (segment) {
+                segment.entries.clear();
+                segment.files.clear();
+                this.weight.addAndGet(-segment.weight);
+                segment.weight = 0;
+            }
+        }
+    }
+
+    /**
+     * Creates a snapshot of the statistics of this cache.
+     *
+     * @return The statistics.
+     */
+    public ParseCacheStatistics getStatistics() {
+        long entryCount = 0;
+        long retainedBytes = 0;
+        for (final Segment segment : this.segments) {
+            synchronized (segment) {
+                entryCount += segment.entries.size();
+                retainedBytes += segment.weight;
+            }
+        }
+        return new ParseCacheStatistics(this.hitCount.sum(), this.missCount.sum(), this.loadFailureCount.sum(),
+                this.evictionCount.sum(), entryCount, retainedBytes);
+    }
+
+    /**
+     * Returns the document cached for the given key or loads it using the
+     * given loader.
+     *
+     * @param key
+     *            The key.
+     * @param loader
+     *            The loader that is invoked if the key is not cached.
+     * @return The cached or loaded document.
+     * @throws IOException
+     *             If the loader throws an {@link IOException}.
+     * @throws ScannerException
+     *             If the loader throws a {@link ScannerException}.
+     * @throws ParserException
+     *             If the loader throws a {@link ParserException}.
+     */
+    XmlDocument get(final Object key, final Loader loader) throws IOException, ScannerException, ParserException {
+        final Segment segment = this.segmentFor(key);
+
+        final Entry existing;
+        final Entry entry;
+        synchronized (segment) {
+            existing = segment.entries.get(key);
+            if (existing == null) {
+                entry = new Entry();
+                entry.lastAccess = this.clock.incrementAndGet();
+                segment.entries.put(key, entry);
+            } else {
+                existing.lastAccess = this.clock.incrementAndGet();
+                entry = null;
+            }
+        }
+        if (existing != null) {
+            this.hitCount.increment();
+            return this.await(existing);
+        }
+        this.missCount.increment();
+
+        final XmlDocument document;
+        try {
+            document = loader.load();
+        } catch (final Throwable cause) {
+            synchronized (segment) {
+                if (segment.entries.remove(key, entry)) {
+                    segment.forget(key);
+                }
+            }
+            this.loadFailureCount.increment();
+            entry.future.completeExceptionally(cause);
+            throw cause;
+        }
+
+        final long weight = MemoryUtil.estimateRetainedSize(document);
+        synchronized (segment) {
+            if (segment.entries.get(key) == entry) {
+                if (weight > this.maximumWeight) {
+                    // Would evict everything else and then itself.
+                    segment.entries.remove(key);
+                    segment.forget(key);
+                    this.evictionCount.increment();
+                } else {
+                    entry.weight = weight;
+                    segment.weight += weight;
+                    this.weight.addAndGet(weight);
+                }
+            }
+        }
+        this.evict(entry);
+        entry.future.complete(document);
+        return document;
+    }
+
+    /**
+     * Removes the entry of the given key from the given segment. Must be
+     * called while holding the lock of the segment.
+     *
+     * @param segment
+     *            The segment.
+     * @param key
+     *            The key.
+     */
+    private void remove(final Segment segment, final Object key) {
+        final Entry entry = segment.entries.remove(key);
+        if (entry != null) {
+            segment.weight -= entry.weight;
+            this.weight.addAndGet(-entry.weight);
+        }
+    }
+
+    /**
+     * Evicts the least recently used, completely loaded entries while the
+     * cache exceeds its size limit. The segments are locked one at a time, so
+     * the order is only approximate under concurrent access.
+     *
+     * @param loaded
+     *            The entry that was just loaded. Is not evicted, as it fits
+     *            into the size limit on its own.
+     */
+    private void evict(final Entry loaded) {
+        while (this.weight.get() > this.maximumWeight) {
+            Segment oldest = null;
+            long oldestAccess = Long.MAX_VALUE;
+            for (final Segment segment : this.segments) {
+                synchronized (segment) {
+                    final Map.Entry<Object, Entry> eldest = segment.eldest(loaded);
+                    if (eldest != null && eldest.getValue().lastAccess < oldestAccess) {
+                        oldest = segment;
+                        oldestAccess = eldest.getValue().lastAccess;
+                    }
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            synchronized (oldest) {
+                // The eldest entry might have been accessed or removed since.
+                final Map.Entry<Object, Entry> eldest = oldest.eldest(loaded);
+                if (eldest != null && eldest.getValue().lastAccess == oldestAccess) {
+                    oldest.entries.remove(eldest.getKey());
+                    oldest.forget(eldest.getKey());
+                    oldest.weight -= eldest.getValue().weight;
+                    this.weight.addAndGet(-eldest.getValue().weight);
+                    this.evictionCount.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the given entry to be loaded.
+     *
+     * @param entry
+     *            The entry.
+     * @return The loaded document.
+     * @throws IOException
+     *             If the load failed with an {@link IOException} or the thread
+     *             was interrupted.
+     * @throws ScannerException
+     *             If the load failed with a {@link ScannerException}.
+     * @throws ParserException
+     *             If the load failed with a {@link ParserException}.
+     */
+    private XmlDocument await(final Entry entry) throws IOException, ScannerException, ParserException {
+        if (entry.future.isDone() && !entry.future.isCompletedExceptionally()) {
+            return entry.future.getNow(null);
+        }
+        try {
+            return entry.future.get();
+        } catch (final InterruptedException cause) {
+            Thread.currentThread().interrupt();
+            final InterruptedIOException exception = new InterruptedIOException("Interrupted while waiting for the document!");
+            exception.initCause(cause);
+            throw exception;
+        } catch (final ExecutionException exception) {
+            final Throwable cause = exception.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof ScannerException) {
+                throw (ScannerException) cause;
+            } else if (cause instanceof ParserException) {
+                throw (ParserException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private Segment segmentFor(final Object key) {
+        // All versions of a file share a segment, so the previous version can
+        // be removed while holding a single lock.
+        final int hash = key instanceof FileKey ? ((FileKey) key).path.hashCode() : key.hashCode();
+        return this.segments[(hash ^ hash >>> 16) & this.segments.length - 1];
+    }
+
+    /**
+     * Loads a document.
+     *
+     */
+    @FunctionalInterface
+    interface Loader {
+        /**
+         * Loads the document.
+         *
+         * @return The loaded document.
+         * @throws IOException
+         *             If any I/O error occurs.
+         * @throws ScannerException
+         *             If any scanner error occurs.
+         * @throws ParserException
+         *             If any parser error occurs.
+         */
+        XmlDocument load() throws IOException, ScannerException, ParserException;
+    }
+
+    /**
+     * A segment of the cache. All fields are guarded by the segment itself.
+     *
+     */
+    private static final class Segment {
+        /**
+         * The entries in access order (least recently used first).
+         *
+         */
+        private final Map<Object, Entry> entries = new LinkedHashMap<>(16, 0.75F, true);
+        /**
+         * The keys of the most recent versions of the files in this segment by
+         * their path.
+         *
+         */
+        private final Map<Path, FileKey> files = new HashMap<>();
+        /**
+         * The estimated number of bytes retained by this segment.
+         *
+         */
+        private long weight;
+
+        /**
+         * Finds the least recently used, completely loaded entry.
+         *
+         * @param excluded
+         *            An entry to skip.
+         * @return The eldest entry or <code>null</code> if there is none.
+         */
+        private Map.Entry<Object, Entry> eldest(final Entry excluded) {
+            for (final Map.Entry<Object, Entry> entry : this.entries.entrySet()) {
+                // Entries that are still loading do not retain anything yet.
+                if (entry.getValue().weight > 0 && entry.getValue() != excluded) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Forgets the given key if it is the most recent version of a file
+         * after its entry was removed.
+         *
+         * @param key
+         *            The key of the removed entry.
+         */
+        private void forget(final Object key) {
+            if (key instanceof FileKey) {
+                this.files.remove(((FileKey) key).path, key);
+            }
+        }
+    }
+
+    /**
+     * An entry of the cache.
+     *
+     */
+    private static final class Entry {
+        /**
+         * The future that is completed once the document is loaded.
+         *
+         */
+        private final CompletableFuture<XmlDocument> future = new CompletableFuture<>();
+        /**
+         * The estimated number of bytes retained by the document or
+         * <code>0</code> if the document is not loaded yet.
+         *
+         */
+        private long weight;
+        /**
+         * The time of the last access according to the clock of the cache.
+         * Guarded by the segment containing the entry.
+         *
+         */
+        private long lastAccess;
+    }
+
+    /**
+     * The key of a file.
+     *
+     */
+    @Data
+    private static final class FileKey {
+        private final Path path;
+        private final long lastModified;
+        private final long size;
+    }
+
+    /**
+     * The key of raw content.
+     *
+     */
+    @Data
+    private static final class ContentKey {
+        private final long hash;
+        private final int length;
+    }
+}
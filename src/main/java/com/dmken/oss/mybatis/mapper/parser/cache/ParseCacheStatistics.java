@@ -0,0 +1,71 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.cache;
+
+import lombok.Data;
+
+/**
+ * A snapshot of the statistics of a {@link ParseCache}.
+ *
+ */
+@Data
+public class ParseCacheStatistics {
+    /**
+     * The number of lookups that were answered by the cache (including lookups
+     * that waited for a concurrent load of the same key).
+     *
+     */
+    private final long hitCount;
+    /**
+     * The number of lookups that had to load (i.e. parse) the document.
+     *
+     */
+    private final long missCount;
+    /**
+     * The number of loads that failed.
+     *
+     */
+    private final long loadFailureCount;
+    /**
+     * The number of entries that were evicted to stay within the size limit.
+     *
+     */
+    private final long evictionCount;
+    /**
+     * The number of entries currently in the cache.
+     *
+     */
+    private final long entryCount;
+    /**
+     * The estimated number of bytes currently retained by the cache.
+     *
+     */
+    private final long retainedBytes;
+
+    /**
+     * Calculates the ratio of lookups that were answered by the cache.
+     *
+     * @return The hit rate between <code>0</code> and <code>1</code>.
+     */
+    public double getHitRate() {
+        final long requestCount = this.hitCount + this.missCount;
+        return requestCount == 0 ? 1.0 : (double) this.hitCount / requestCount;
+    }
+}
@@ -0,0 +1,367 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.diff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.SimpleXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+
+/**
+ * Computes the structural differences between two XML trees as a list of
+ * {@link XmlEdit edits}.
+ *
+ * <p>
+ * Subtrees with equal {@link AbstractXmlValue#getSubtreeHash() subtree
+ * hashes} are considered identical and are skipped without descending into
+ * them, so the cost of a diff depends on the size of the changes rather than
+ * on the size of the trees. The children of tags that exist in both trees are
+ * aligned by stripping the common prefix and suffix and computing the longest
+ * common subsequence of the remaining children's hashes. Children that could
+ * not be aligned are paired up if they are tags with the same name and
+ * <code>id</code> parameter (or both simple values) and are compared
+ * recursively, all other children are reported as inserted or deleted.
+ * </p>
+ *
+ * <p>
+ * As the subtree hashes are 64 bit hashes, a collision (and thus a missed
+ * change) is theoretically possible, but practically negligible.
+ * </p>
+ *
+ */
+public final class XmlDiff {
+    /**
+     * The name of the parameter identifying a tag.
+     *
+     */
+    private static final String ID_PARAMETER = "id";
+    /**
+     * The maximum number of cells of the longest common subsequence table.
+     * If the unaligned children exceed this limit, they are only paired up by
+     * name and ID.
+     *
+     */
+    private static final long MAX_LCS_CELLS = 1L << 22;
+
+    /**
+     * The edits computed so far.
+     *
+     */
+    private final List<XmlEdit> edits = new ArrayList<>();
+
+    /**
+     * Constructor of XmlDiff.
+     *
+     */
+    private XmlDiff() {
+        // Nothing to do.
+    }
+
+    /**
+     * Computes the edits transforming the root tag of the old document into
+     * the root tag of the new document. The XML declarations of the documents
+     * (version, encoding and document type) are not compared.
+     *
+     * @param oldDocument
+     *            The old document.
+     * @param newDocument
+     *            The new document.
+     * @return The edits in document order.
+     */
+    public static List<XmlEdit> diff(final XmlDocument oldDocument, final XmlDocument newDocument) {
+        return XmlDiff.diff(oldDocument.getRootTag(), newDocument.getRootTag());
+    }
+
+    /**
+     * Computes the edits transforming the old value into the new value.
+     *
+     * @param oldValue
+     *            The old value. May be <code>null</code>.
+     * @param newValue
+     *            The new value. May be <code>null</code>.
+     * @return The edits in document order.
+     */
+    public static List<XmlEdit> diff(final AbstractXmlValue oldValue, final AbstractXmlValue newValue) {
+        if (oldValue == null && newValue == null) {
+            return Collections.emptyList();
+        }
+        if (oldValue == null) {
+            return Collections.singletonList(new XmlEdit(XmlEdit.Type.INSERT, XmlDiff.rootPath(newValue), null, newValue));
+        }
+        if (newValue == null) {
+            return Collections.singletonList(new XmlEdit(XmlEdit.Type.DELETE, XmlDiff.rootPath(oldValue), oldValue, null));
+        }
+
+        final XmlDiff diff = new XmlDiff();
+        diff.diffValue(oldValue, newValue, XmlDiff.rootPath(oldValue), XmlDiff.rootPath(newValue));
+        return diff.edits;
+    }
+
+    /**
+     * Compares the given values that are at the same position of both trees.
+     *
+     * @param oldValue
+     *            The old value.
+     * @param newValue
+     *            The new value.
+     * @param oldPath
+     *            The path of the old value.
+     * @param newPath
+     *            The path of the new value.
+     */
+    private void diffValue(final AbstractXmlValue oldValue, final AbstractXmlValue newValue, final String oldPath,
+            final String newPath) {
+        if (oldValue.getSubtreeHash() == newValue.getSubtreeHash() && oldValue.getClass() == newValue.getClass()) {
+            return;
+        }
+        if (!(oldValue instanceof XmlTag) || !(newValue instanceof XmlTag)
+                || !((XmlTag) oldValue).getName().equals(((XmlTag) newValue).getName())) {
+            this.edits.add(new XmlEdit(XmlEdit.Type.UPDATE, oldPath, oldValue, newValue));
+            return;
+        }
+
+        final XmlTag oldTag = (XmlTag) oldValue;
+        final XmlTag newTag = (XmlTag) newValue;
+        if (!oldTag.getParameters().equals(newTag.getParameters())) {
+            this.edits.add(new XmlEdit(XmlEdit.Type.UPDATE, oldPath, oldTag, newTag));
+        }
+        this.diffChildren(oldTag.getChildren(), newTag.getChildren(), oldPath, newPath);
+    }
+
+    /**
+     * Aligns and compares the given children.
+     *
+     * @param oldChildren
+     *            The old children.
+     * @param newChildren
+     *            The new children.
+     * @param oldPath
+     *            The path of the old parent.
+     * @param newPath
+     *            The path of the new parent.
+     */
+    private void diffChildren(final List<AbstractXmlValue> oldChildren, final List<AbstractXmlValue> newChildren,
+            final String oldPath, final String newPath) {
+        final long[] oldHashes = XmlDiff.hashes(oldChildren);
+        final long[] newHashes = XmlDiff.hashes(newChildren);
+        final String[] oldSteps = XmlDiff.steps(oldChildren);
+        final String[] newSteps = XmlDiff.steps(newChildren);
+
+        int start = 0;
+        while (start < oldHashes.length && start < newHashes.length && XmlDiff.identical(oldChildren.get(start), newChildren.get(start))) {
+            start++;
+        }
+        int oldEnd = oldHashes.length;
+        int newEnd = newHashes.length;
+        while (oldEnd > start && newEnd > start
+                && XmlDiff.identical(oldChildren.get(oldEnd - 1), newChildren.get(newEnd - 1))) {
+            oldEnd--;
+            newEnd--;
+        }
+
+        final Gap gap = new Gap(oldChildren, newChildren, oldPath, newPath, oldSteps, newSteps);
+        int oldIndex = start;
+        int newIndex = start;
+        if ((long) (oldEnd - start) * (newEnd - start) <= XmlDiff.MAX_LCS_CELLS) {
+            final int[][] lcs = XmlDiff.lcs(oldHashes, start, oldEnd, newHashes, start, newEnd);
+            int i = start;
+            int j = start;
+            while (i < oldEnd && j < newEnd) {
+                if (oldHashes[i] == newHashes[j] && XmlDiff.identical(oldChildren.get(i), newChildren.get(j))) {
+                    this.diffGap(gap, oldIndex, i, newIndex, j);
+                    oldIndex = ++i;
+                    newIndex = ++j;
+                } else if (lcs[i - start + 1][j - start] >= lcs[i - start][j - start + 1]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+        }
+        this.diffGap(gap, oldIndex, oldEnd, newIndex, newEnd);
+    }
+
+    /**
+     * Compares the children between two aligned positions by pairing up
+     * children with the same name and ID.
+     *
+     * @param gap
+     *            The children and paths.
+     * @param oldFrom
+     *            The first old child of the gap (inclusive).
+     * @param oldTo
+     *            The last old child of the gap (exclusive).
+     * @param newFrom
+     *            The first new child of the gap (inclusive).
+     * @param newTo
+     *            The last new child of the gap (exclusive).
+     */
+    private void diffGap(final Gap gap, final int oldFrom, final int oldTo, final int newFrom, final int newTo) {
+        int j = newFrom;
+        for (int i = oldFrom; i < oldTo; i++) {
+            final AbstractXmlValue oldChild = gap.oldChildren.get(i);
+            int match = j;
+            while (match < newTo && !XmlDiff.matches(oldChild, gap.newChildren.get(match))) {
+                match++;
+            }
+            if (match == newTo) {
+                this.edits.add(new XmlEdit(XmlEdit.Type.DELETE, gap.oldPath(i), oldChild, null));
+                continue;
+            }
+            for (; j < match; j++) {
+                this.edits.add(new XmlEdit(XmlEdit.Type.INSERT, gap.newPath(j), null, gap.newChildren.get(j)));
+            }
+            this.diffValue(oldChild, gap.newChildren.get(match), gap.oldPath(i), gap.newPath(match));
+            j = match + 1;
+        }
+        for (; j < newTo; j++) {
+            this.edits.add(new XmlEdit(XmlEdit.Type.INSERT, gap.newPath(j), null, gap.newChildren.get(j)));
+        }
+    }
+
+    /**
+     * Computes the suffix table of the longest common subsequence of the
+     * given ranges: <code>table[i][j]</code> is the length of the longest
+     * common subsequence of <code>a[aFrom + i..aTo)</code> and
+     * <code>b[bFrom + j..bTo)</code>.
+     *
+     * @param a
+     *            The first hashes.
+     * @param aFrom
+     *            The start of the first range (inclusive).
+     * @param aTo
+     *            The end of the first range (exclusive).
+     * @param b
+     *            The second hashes.
+     * @param bFrom
+     *            The start of the second range (inclusive).
+     * @param bTo
+     *            The end of the second range (exclusive).
+     * @return The table.
+     */
+    private static int[][] lcs(final long[] a, final int aFrom, final int aTo, final long[] b, final int bFrom, final int bTo) {
+        final int[][] table = new int[aTo - aFrom + 1][bTo - bFrom + 1];
+        for (int i = aTo - aFrom - 1; i >= 0; i--) {
+            for (int j = bTo - bFrom - 1; j >= 0; j--) {
+                if (a[aFrom + i] == b[bFrom + j]) {
+                    table[i][j] = table[i + 1][j + 1] + 1;
+                } else {
+                    table[i][j] = Math.max(table[i + 1][j], table[i][j + 1]);
+                }
+            }
+        }
+        return table;
+    }
+
+    private static boolean identical(final AbstractXmlValue a, final AbstractXmlValue b) {
+        return a.getSubtreeHash() == b.getSubtreeHash() && a.getClass() == b.getClass();
+    }
+
+    /**
+     * Checks whether the given children represent the same node (that might
+     * have changed), i.e. whether they are both simple values or tags with
+     * the same name and ID.
+     *
+     * @param a
+     *            The first child.
+     * @param b
+     *            The second child.
+     * @return Whether the children can be compared.
+     */
+    private static boolean matches(final AbstractXmlValue a, final AbstractXmlValue b) {
+        if (a instanceof SimpleXmlValue || b instanceof SimpleXmlValue) {
+            return a instanceof SimpleXmlValue && b instanceof SimpleXmlValue;
+        }
+        final AbstractXmlTag tagA = (AbstractXmlTag) a;
+        final AbstractXmlTag tagB = (AbstractXmlTag) b;
+        return tagA.getName().equals(tagB.getName()) && Objects.equals(tagA.getParameters().get(XmlDiff.ID_PARAMETER),
+                tagB.getParameters().get(XmlDiff.ID_PARAMETER));
+    }
+
+    private static long[] hashes(final List<AbstractXmlValue> children) {
+        final long[] hashes = new long[children.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = children.get(i).getSubtreeHash();
+        }
+        return hashes;
+    }
+
+    /**
+     * Computes the XPath location steps of the given children (e.g.
+     * <code>select[2]</code> or <code>text()[1]</code>).
+     *
+     * @param children
+     *            The children.
+     * @return The location steps.
+     */
+    private static String[] steps(final List<AbstractXmlValue> children) {
+        final String[] steps = new String[children.size()];
+        final Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < steps.length; i++) {
+            final AbstractXmlValue child = children.get(i);
+            final String name = child instanceof AbstractXmlTag ? ((AbstractXmlTag) child).getName() : "text()";
+            steps[i] = name + '[' + counts.merge(name, 1, Integer::sum) + ']';
+        }
+        return steps;
+    }
+
+    private static String rootPath(final AbstractXmlValue value) {
+        return '/' + (value instanceof AbstractXmlTag ? ((AbstractXmlTag) value).getName() : "text()");
+    }
+
+    /**
+     * The children of a pair of tags that are compared.
+     *
+     */
+    private static final class Gap {
+        private final List<AbstractXmlValue> oldChildren;
+        private final List<AbstractXmlValue> newChildren;
+        private final String oldParentPath;
+        private final String newParentPath;
+        private final String[] oldSteps;
+        private final String[] newSteps;
+
+        private Gap(final List<AbstractXmlValue> oldChildren, final List<AbstractXmlValue> newChildren,
+                final String oldParentPath, final String newParentPath, final String[] oldSteps, final String[] newSteps) {
+            this.oldChildren = oldChildren;
+            this.newChildren = newChildren;
+            this.oldParentPath = oldParentPath;
+            this.newParentPath = newParentPath;
+            this.oldSteps = oldSteps;
+            this.newSteps = newSteps;
+        }
+
+        private String oldPath(final int index) {
+            return this.oldParentPath + '/' + this.oldSteps[index];
+        }
+
+        private String newPath(final int index) {
+            return this.newParentPath + '/' + this.newSteps[index];
+        }
+    }
+}
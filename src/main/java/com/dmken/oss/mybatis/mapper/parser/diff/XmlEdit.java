@@ -0,0 +1,91 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.diff;
+
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+
+import lombok.Data;
+
+/**
+ * Represents a single edit computed by {@link XmlDiff}.
+ *
+ */
+@Data
+public class XmlEdit {
+    /**
+     * The type of the edit.
+     *
+     */
+    private final Type type;
+    /**
+     * The location of the edited value as an XPath expression with positional
+     * predicates (e.g. <code>/mapper/select[2]/text()[1]</code>). For
+     * {@link Type#INSERT insertions}, this is the location in the new tree,
+     * otherwise the location in the old tree.
+     *
+     */
+    private final String path;
+    /**
+     * The old value. <code>null</code> for {@link Type#INSERT insertions}.
+     *
+     */
+    private final AbstractXmlValue oldValue;
+    /**
+     * The new value. <code>null</code> for {@link Type#DELETE deletions}.
+     *
+     */
+    private final AbstractXmlValue newValue;
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return this.type.name().toLowerCase() + " " + this.path;
+    }
+
+    /**
+     * The type of an edit.
+     *
+     */
+    public static enum Type {
+        /**
+         * The {@link XmlEdit#newValue new value} was inserted.
+         *
+         */
+        INSERT,
+        /**
+         * The {@link XmlEdit#oldValue old value} was deleted.
+         *
+         */
+        DELETE,
+        /**
+         * The {@link XmlEdit#oldValue old value} was replaced by the
+         * {@link XmlEdit#newValue new value}. For tags that exist in both
+         * trees, this means that the parameters changed; changes of the
+         * children are reported as separate edits.
+         *
+         */
+        UPDATE;
+    }
+}
@@ -0,0 +1,73 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.jfr;
+
+import java.nio.file.Path;
+
+import com.dmken.oss.mybatis.mapper.parser.metrics.ParseListener;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Utility class for recording scans and parses of mapper files as Java Flight
+ * Recorder events ({@link MapperScanEvent}, {@link MapperParseEvent} and
+ * {@link MapperParseErrorEvent}).
+ *
+ * <p>
+ * The events are enabled and thresholded through the usual recording
+ * settings using their names, e.g.
+ * <code>com.dmken.oss.mybatis.MapperParse#threshold=5 ms</code>. On Java
+ * runtimes without the <code>jdk.jfr</code> API (older Java 8 updates), the
+ * {@link ParseListener#NOOP no-op listener} is used and the event classes are
+ * never loaded.
+ * </p>
+ *
+ */
+@UtilityClass
+public class JfrEvents {
+    /**
+     * Whether the flight recorder API is available.
+     *
+     */
+    private final boolean AVAILABLE = JfrEvents.isAvailable();
+
+    /**
+     * Creates a listener that records the scan and the parse of the given
+     * file. Returns the {@link ParseListener#NOOP no-op listener} unless a
+     * recording is running that enables the events, so the scanner and the
+     * parser do not collect statistics nobody records.
+     *
+     * @param file
+     *            The file.
+     * @return The listener.
+     */
+    public ParseListener listener(final Path file) {
+        return JfrEvents.AVAILABLE && JfrParseListener.isRecording() ? new JfrParseListener(file.toString()) : ParseListener.NOOP;
+    }
+
+    private boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, JfrEvents.class.getClassLoader());
+            return true;
+        } catch (final ClassNotFoundException | LinkageError cause) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.jfr;
+
+import com.dmken.oss.mybatis.mapper.parser.metrics.ParseListener;
+import com.dmken.oss.mybatis.mapper.parser.metrics.ParseStatistics;
+import com.dmken.oss.mybatis.mapper.parser.metrics.ScanStatistics;
+import com.dmken.oss.mybatis.mapper.parser.parser.exception.ParserException;
+import com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * A {@link ParseListener} that emits flight recorder events for the scan and
+ * the parse of a single file. Must only be created through
+ * {@link JfrEvents#listener(java.nio.file.Path)} which checks whether the
+ * flight recorder API is available.
+ *
+ */
+final class JfrParseListener implements ParseListener {
+    /**
+     * The path of the file.
+     *
+     */
+    private final String path;
+
+    /**
+     * The event of the running scan, if any.
+     *
+     */
+    private MapperScanEvent scanEvent;
+    /**
+     * The event of the running parse, if any.
+     *
+     */
+    private MapperParseEvent parseEvent;
+    /**
+     * The error event of the current phase. Begun together with the event of
+     * the phase and only committed if the phase fails.
+     *
+     */
+    private MapperParseErrorEvent errorEvent;
+    /**
+     * The error of the current phase, if any.
+     *
+     */
+    private Exception failure;
+    /**
+     * The size of the file as determined by the scan.
+     *
+     */
+    private long size;
+    /**
+     * The number of tokens as determined by the scan.
+     *
+     */
+    private long tokenCount;
+
+    /**
+     * Constructor of JfrParseListener.
+     *
+     * @param path
+     *            The path of the file.
+     */
+    JfrParseListener(final String path) {
+        this.path = path;
+    }
+
+    /**
+     * Checks whether the flight recorder is running and any of the events is
+     * enabled.
+     *
+     * @return Whether the events of a scan or a parse would be recorded.
+     */
+    static boolean isRecording() {
+        return FlightRecorder.isInitialized() && (new MapperScanEvent().isEnabled() || new MapperParseEvent().isEnabled()
+                || new MapperParseErrorEvent().isEnabled());
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see com.dmken.oss.mybatis.mapper.parser.metrics.ParseListener#scanStarted()
+     */
+    @Override
+    public void scanStarted() {
+        this.scanEvent = new MapperScanEvent();
+        this.errorEvent = new MapperParseErrorEvent();
+        this.scanEvent.begin();
+        this.errorEvent.begin();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see com.dmken.oss.mybatis.mapper.parser.metrics.ParseListener#scanFailed(com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException)
+     */
+    @Override
+    public void scanFailed(final ScannerException cause) {
+        this.failure = cause;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see com.dmken.oss.mybatis.mapper.parser.metrics.ParseListener#scanFinished(com.dmken.oss.mybatis.mapper.parser.metrics.ScanStatistics)
+     */
+    @Override
+    public void scanFinished(final ScanStatistics statistics) {
+        this.size = statistics.getBytesRead() < 0 ? statistics.getCharsDecoded() : statistics.getBytesRead();
+        this.tokenCount = statistics.getTokenCount();
+        this.commitError("scan");
+        if (statistics.isSuccessful() && this.scanEvent.shouldCommit()) {
+            this.scanEvent.path = this.path;
+            this.scanEvent.size = this.size;
+            this.scanEvent.tokenCount = this.tokenCount;
+            this.scanEvent.commit();
+        }
+        this.scanEvent = null;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see com.dmken.oss.mybatis.mapper.parser.metrics.ParseListener#parseStarted()
+     */
+    @Override
+    public void parseStarted() {
+        this.parseEvent = new MapperParseEvent();
+        this.errorEvent = new MapperParseErrorEvent();
+        this.parseEvent.begin();
+        this.errorEvent.begin();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see com.dmken.oss.mybatis.mapper.parser.metrics.ParseListener#parseFailed(com.dmken.oss.mybatis.mapper.parser.parser.exception.ParserException)
+     */
+    @Override
+    public void parseFailed(final ParserException cause) {
+        this.failure = cause;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see com.dmken.oss.mybatis.mapper.parser.metrics.ParseListener#parseFinished(com.dmken.oss.mybatis.mapper.parser.metrics.ParseStatistics)
+     */
+    @Override
+    public void parseFinished(final ParseStatistics statistics) {
+        this.commitError("parse");
+        if (statistics.isSuccessful() && this.parseEvent.shouldCommit()) {
+            this.parseEvent.path = this.path;
+            this.parseEvent.size = this.size;
+            this.parseEvent.tokenCount = this.tokenCount;
+            this.parseEvent.tagCount = statistics.getTagCount();
+            this.parseEvent.commit();
+        }
+        this.parseEvent = null;
+    }
+
+    /**
+     * Commits the error event of the current phase if the phase failed.
+     *
+     * @param phase
+     *            The name of the phase.
+     */
+    private void commitError(final String phase) {
+        final MapperParseErrorEvent event = this.errorEvent;
+        final Exception cause = this.failure;
+        this.errorEvent = null;
+        this.failure = null;
+        if (cause != null && event.shouldCommit()) {
+            event.path = this.path;
+            event.size = this.size;
+            event.tokenCount = this.tokenCount;
+            event.phase = phase;
+            event.message = cause.getMessage();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The flight recorder event of a mapper file that failed to scan or parse.
+ * The duration covers the failed phase.
+ *
+ */
+@Name(MapperParseErrorEvent.NAME)
+@Label("Mapper Parse Error")
+@Category({ "MyBatis", "Mapper Parser" })
+@Description("A mapper file that could not be scanned or parsed")
+@StackTrace(false)
+public final class MapperParseErrorEvent extends jdk.jfr.Event {
+    /**
+     * The name of the event to use in recording settings.
+     *
+     */
+    public static final String NAME = "com.dmken.oss.mybatis.MapperParseError";
+
+    /**
+     * The path of the file.
+     *
+     */
+    @Label("Path")
+    String path;
+    /**
+     * The size of the file read so far.
+     *
+     */
+    @Label("Size")
+    @DataAmount
+    long size;
+    /**
+     * The number of tokens produced (when scanning) or available (when
+     * parsing).
+     *
+     */
+    @Label("Token Count")
+    long tokenCount;
+    /**
+     * The failed phase, either <code>scan</code> or <code>parse</code>.
+     *
+     */
+    @Label("Phase")
+    String phase;
+    /**
+     * The error message.
+     *
+     */
+    @Label("Message")
+    String message;
+}
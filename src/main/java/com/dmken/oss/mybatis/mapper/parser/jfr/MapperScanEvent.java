@@ -0,0 +1,67 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The flight recorder event of scanning a mapper file. Recorded if the scan
+ * takes at least 20 milliseconds unless configured otherwise.
+ *
+ */
+@Name(MapperScanEvent.NAME)
+@Label("Mapper Scan")
+@Category({ "MyBatis", "Mapper Parser" })
+@Description("Scanning of a mapper file into tokens")
+@Threshold("20 ms")
+@StackTrace(false)
+public final class MapperScanEvent extends jdk.jfr.Event {
+    /**
+     * The name of the event to use in recording settings.
+     *
+     */
+    public static final String NAME = "com.dmken.oss.mybatis.MapperScan";
+
+    /**
+     * The path of the file.
+     *
+     */
+    @Label("Path")
+    String path;
+    /**
+     * The size of the file.
+     *
+     */
+    @Label("Size")
+    @DataAmount
+    long size;
+    /**
+     * The number of produced tokens.
+     *
+     */
+    @Label("Token Count")
+    long tokenCount;
+}
@@ -0,0 +1,134 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.loader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of byte arrays the mappers are read into, so loading many mappers
+ * does not allocate a new array for every mapper.
+ *
+ */
+final class BufferPool {
+    /**
+     * The initial size of the buffers.
+     *
+     */
+    private static final int INITIAL_SIZE = 64 * 1024;
+    /**
+     * The maximum size of the buffers to keep. Larger buffers (grown for an
+     * exceptionally large mapper) are left to the garbage collector, so a
+     * single large mapper does not pin its buffer for the lifetime of the
+     * pool.
+     *
+     */
+    private static final int MAX_POOLED_SIZE = 1024 * 1024;
+
+    /**
+     * The maximum number of buffers to keep.
+     *
+     */
+    private final int maxBuffers;
+    /**
+     * The available buffers.
+     *
+     */
+    private final ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+    /**
+     * The number of available {@link #buffers} (as the size of the queue is
+     * not a constant-time operation).
+     *
+     */
+    private final AtomicInteger bufferCount = new AtomicInteger();
+
+    /**
+     * Constructor of BufferPool.
+     *
+     * @param maxBuffers
+     *            The maximum number of buffers to keep (usually the number of
+     *            threads using the pool).
+     */
+    BufferPool(final int maxBuffers) {
+        this.maxBuffers = maxBuffers;
+    }
+
+    /**
+     * Reads the given input stream completely into a buffer of the pool. The
+     * buffer has to be {@link #release(byte[]) released} afterwards.
+     *
+     * @param in
+     *            The input stream. Is not closed.
+     * @param sizeHint
+     *            The expected number of bytes or <code>-1</code> if it is not
+     *            known.
+     * @param length
+     *            The array to store the number of read bytes at index
+     *            <code>0</code>.
+     * @return The buffer containing the bytes.
+     * @throws IOException
+     *             If the input stream cannot be read.
+     */
+    byte[] read(final InputStream in, final long sizeHint, final int[] length) throws IOException {
+        byte[] buffer = this.buffers.poll();
+        if (buffer == null) {
+            buffer = new byte[BufferPool.INITIAL_SIZE];
+        } else {
+            this.bufferCount.decrementAndGet();
+        }
+        if (sizeHint >= buffer.length && sizeHint < Integer.MAX_VALUE) {
+            // One more byte, so the end of the stream is detected without
+            // growing the buffer.
+            buffer = new byte[(int) sizeHint + 1];
+        }
+
+        int count = 0;
+        int read;
+        while ((read = in.read(buffer, count, buffer.length - count)) >= 0) {
+            count += read;
+            if (count == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        length[0] = count;
+        return buffer;
+    }
+
+    /**
+     * Returns the given buffer to the pool. Buffers larger than
+     * {@link #MAX_POOLED_SIZE} are dropped.
+     *
+     * @param buffer
+     *            The buffer.
+     */
+    void release(final byte[] buffer) {
+        if (buffer.length > BufferPool.MAX_POOLED_SIZE) {
+            return;
+        }
+        if (this.bufferCount.incrementAndGet() <= this.maxBuffers) {
+            this.buffers.offer(buffer);
+        } else {
+            this.bufferCount.decrementAndGet();
+        }
+    }
+}
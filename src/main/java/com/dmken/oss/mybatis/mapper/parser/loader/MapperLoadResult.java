@@ -0,0 +1,46 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.loader;
+
+import java.util.Map;
+
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+
+import lombok.Data;
+
+/**
+ * The result of {@link MapperLoader loading} the mappers of a class path.
+ *
+ */
+@Data
+public class MapperLoadResult {
+    /**
+     * The documents of all mappers that were parsed successfully by their
+     * resource path (e.g. <code>com/example/UserMapper.xml</code>).
+     *
+     */
+    private final Map<String, XmlDocument> documents;
+    /**
+     * The mappers that could not be read or parsed by their resource path,
+     * mapped to the error.
+     *
+     */
+    private final Map<String, Exception> failures;
+}
@@ -0,0 +1,334 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.loader;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.parser.exception.ParserException;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+
+/**
+ * Discovers the mappers of a class path (directories and JAR files) and
+ * parses them in parallel.
+ *
+ * <p>
+ * All roots are enumerated first: Directories are walked and the entries of
+ * archives are listed through a {@link ZipFile}, which reads the central
+ * directory only. Afterwards, every mapper is read into a pooled buffer and
+ * parsed as a separate task on the executor, so the mappers of a single
+ * archive are parsed in parallel, too. Like class loading, the first root
+ * containing a resource path wins; the same path in later roots is ignored.
+ * </p>
+ *
+ */
+public final class MapperLoader {
+    /**
+     * The default filter matching the resource paths of mappers (like the
+     * glob <code>**&#47;*Mapper.xml</code>, but including the root
+     * directory).
+     *
+     */
+    private static final Predicate<String> DEFAULT_FILTER = path -> path.endsWith("Mapper.xml");
+
+    /**
+     * The filter selecting the mappers by their resource path.
+     *
+     */
+    private final Predicate<String> filter;
+    /**
+     * The executor to read and parse the mappers on.
+     *
+     */
+    private final Executor executor;
+    /**
+     * The buffers the mappers are read into.
+     *
+     */
+    private final BufferPool buffers;
+
+    /**
+     * Constructor of MapperLoader.
+     *
+     * <p>
+     * Loads all resources ending with <code>Mapper.xml</code>.
+     * </p>
+     *
+     * @param executor
+     *            The executor to read and parse the mappers on.
+     */
+    public MapperLoader(final Executor executor) {
+        this(MapperLoader.DEFAULT_FILTER, executor);
+    }
+
+    /**
+     * Constructor of MapperLoader.
+     *
+     * @param filter
+     *            The filter selecting the mappers by their resource path
+     *            (separated by <code>/</code>, e.g.
+     *            <code>com/example/UserMapper.xml</code>).
+     * @param executor
+     *            The executor to read and parse the mappers on.
+     */
+    public MapperLoader(final Predicate<String> filter, final Executor executor) {
+        this.filter = filter;
+        this.executor = executor;
+        this.buffers = new BufferPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Loads the mappers of the class path of the JVM (the system property
+     * <code>java.class.path</code>).
+     *
+     * @return The result.
+     * @throws IOException
+     *             If any root cannot be enumerated.
+     * @see #load(List)
+     */
+    public MapperLoadResult loadClassPath() throws IOException {
+        return this.load(Stream.of(System.getProperty("java.class.path", "").split(File.pathSeparator))
+                .filter(root -> !root.isEmpty())
+                .map(Paths::get)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Loads the mappers of the given roots.
+     *
+     * @param roots
+     *            The roots (directories or JAR files) in the order of the
+     *            class path. Roots that do not exist and files that are not
+     *            ZIP archives (like the JVM, which ignores such class path
+     *            entries) are ignored.
+     * @return The result. Mappers that cannot be read or parsed are reported
+     *         as failures.
+     * @throws IOException
+     *             If any root cannot be enumerated (e.g. a corrupt archive).
+     */
+    public MapperLoadResult load(final List<Path> roots) throws IOException {
+        final Map<String, Resource> resources = new LinkedHashMap<>();
+        final List<ZipFile> archives = new ArrayList<>();
+        try {
+            for (final Path root : roots) {
+                if (Files.isDirectory(root)) {
+                    this.collectDirectory(root, resources);
+                } else if (Files.isRegularFile(root) && MapperLoader.isArchive(root)) {
+                    final ZipFile archive = new ZipFile(root.toFile());
+                    archives.add(archive);
+                    this.collectArchive(archive, resources);
+                }
+            }
+
+            final Map<String, CompletableFuture<XmlDocument>> futures = new LinkedHashMap<>();
+            for (final Map.Entry<String, Resource> entry : resources.entrySet()) {
+                final Resource resource = entry.getValue();
+                futures.put(entry.getKey(), CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return this.parse(resource);
+                    } catch (final IOException | ScannerException | ParserException cause) {
+                        throw new CompletionException(cause);
+                    }
+                }, this.executor));
+            }
+
+            final Map<String, XmlDocument> documents = new LinkedHashMap<>();
+            final Map<String, Exception> failures = new LinkedHashMap<>();
+            for (final Map.Entry<String, CompletableFuture<XmlDocument>> entry : futures.entrySet()) {
+                try {
+                    documents.put(entry.getKey(), entry.getValue().join());
+                } catch (final CompletionException cause) {
+                    if (cause.getCause() instanceof Exception) {
+                        failures.put(entry.getKey(), (Exception) cause.getCause());
+                    } else {
+                        throw cause;
+                    }
+                }
+            }
+            return new MapperLoadResult(documents, failures);
+        } finally {
+            for (final ZipFile archive : archives) {
+                archive.close();
+            }
+        }
+    }
+
+    /**
+     * Checks whether the given file is a ZIP archive (i.e. starts with the
+     * signature of a local file header or, for an empty archive, of the end of
+     * the central directory).
+     *
+     * @param file
+     *            The file.
+     * @return Whether the file is a ZIP archive.
+     * @throws IOException
+     *             If the file cannot be read.
+     */
+    private static boolean isArchive(final Path file) throws IOException {
+        final byte[] signature = new byte[4];
+        try (InputStream in = Files.newInputStream(file)) {
+            int count = 0;
+            int read;
+            while (count < signature.length && (read = in.read(signature, count, signature.length - count)) >= 0) {
+                count += read;
+            }
+            if (count < signature.length || signature[0] != 'P' || signature[1] != 'K') {
+                return false;
+            }
+        }
+        return signature[2] == 3 && signature[3] == 4 || signature[2] == 5 && signature[3] == 6;
+    }
+
+    /**
+     * Collects the mappers of the given directory.
+     *
+     * @param root
+     *            The directory.
+     * @param resources
+     *            The map to add the mappers to by their resource path unless
+     *            the path is contained already.
+     * @throws IOException
+     *             If the directory cannot be walked.
+     */
+    private void collectDirectory(final Path root, final Map<String, Resource> resources) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(Files::isRegularFile).forEach(file -> {
+                final String path = root.relativize(file).toString().replace(File.separatorChar, '/');
+                if (this.filter.test(path)) {
+                    resources.putIfAbsent(path, new Resource(() -> Files.newInputStream(file), -1));
+                }
+            });
+        }
+    }
+
+    /**
+     * Collects the mappers of the given archive.
+     *
+     * @param archive
+     *            The archive.
+     * @param resources
+     *            The map to add the mappers to by their resource path unless
+     *            the path is contained already.
+     */
+    private void collectArchive(final ZipFile archive, final Map<String, Resource> resources) {
+        final Enumeration<? extends ZipEntry> entries = archive.entries();
+        while (entries.hasMoreElements()) {
+            final ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && this.filter.test(entry.getName())) {
+                resources.putIfAbsent(entry.getName(), new Resource(() -> archive.getInputStream(entry), entry.getSize()));
+            }
+        }
+    }
+
+    /**
+     * Reads the given mapper into a pooled buffer and parses it.
+     *
+     * @param resource
+     *            The mapper.
+     * @return The parsed document.
+     * @throws IOException
+     *             If the mapper cannot be read.
+     * @throws ScannerException
+     *             If any scanner error occurs.
+     * @throws ParserException
+     *             If any parser error occurs.
+     */
+    private XmlDocument parse(final Resource resource) throws IOException, ScannerException, ParserException {
+        final int[] length = new int[1];
+        final byte[] buffer;
+        try (InputStream in = resource.opener.open()) {
+            buffer = this.buffers.read(in, resource.size, length);
+        }
+        try {
+            return XmlParser.parse(XmlScanner.scan(new ByteArrayInputStream(buffer, 0, length[0])));
+        } finally {
+            this.buffers.release(buffer);
+        }
+    }
+
+    /**
+     * A discovered mapper.
+     *
+     */
+    private static final class Resource {
+        /**
+         * Opens the mapper.
+         *
+         */
+        private final Opener opener;
+        /**
+         * The size of the mapper in bytes or <code>-1</code> if it is not
+         * known.
+         *
+         */
+        private final long size;
+
+        /**
+         * Constructor of Resource.
+         *
+         * @param opener
+         *            Opens the mapper.
+         * @param size
+         *            The size of the mapper in bytes or <code>-1</code> if it
+         *            is not known.
+         */
+        private Resource(final Opener opener, final long size) {
+            this.opener = opener;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Opens a discovered mapper.
+     *
+     */
+    @FunctionalInterface
+    private interface Opener {
+        /**
+         * Opens the mapper.
+         *
+         * @return The input stream containing the mapper.
+         * @throws IOException
+         *             If the mapper cannot be opened.
+         */
+        InputStream open() throws IOException;
+    }
+}
@@ -0,0 +1,276 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.lossless;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.parser.exception.ParserException;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+
+/**
+ * Re-parses a {@link LosslessDocument lossless document} after a text edit.
+ *
+ * <p>
+ * The damaged region of an edit is the smallest element whose content (the
+ * text between the end of its start tag and the start of its end tag)
+ * contains the edited range. Only the source code of that element is scanned
+ * and parsed again, all other subtrees are reused: Siblings and their syntax
+ * nodes are kept as they are (the syntax nodes store relative widths, so they
+ * do not depend on the position of the edit) and only the ancestors of the
+ * damaged element are rebuilt. Children of the damaged element that did not
+ * change are reused as well. Thus the work depends on the size of the damaged
+ * element rather than on the size of the document.
+ * </p>
+ *
+ * <p>
+ * If the re-parsed region does not form exactly one element anymore (e.g.
+ * because the edit inserted an end tag), the region is widened to the parent
+ * element. Edits touching the root tag itself, the prolog or the epilog
+ * result in a full re-parse.
+ * </p>
+ *
+ */
+final class IncrementalParser {
+    /**
+     * Constructor of IncrementalParser.
+     *
+     */
+    private IncrementalParser() {
+        // Nothing to do.
+    }
+
+    /**
+     * Applies the given edit to the given document and re-parses the damaged
+     * region.
+     *
+     * @param document
+     *            The document before the edit.
+     * @param offset
+     *            The offset of the edit in the source code.
+     * @param removedLength
+     *            The number of removed characters.
+     * @param insertedText
+     *            The inserted text.
+     * @return The document after the edit.
+     * @throws ScannerException
+     *             If the edited source code cannot be scanned.
+     * @throws ParserException
+     *             If the edited source code cannot be parsed.
+     */
+    static LosslessDocument reparse(final LosslessDocument document, final int offset, final int removedLength,
+            final String insertedText) throws ScannerException, ParserException {
+        final String oldSource = document.getSource();
+        if (offset < 0 || removedLength < 0 || offset + removedLength > oldSource.length()) {
+            throw new IndexOutOfBoundsException(
+                    "Edit [" + offset + ", " + (offset + removedLength) + ") out of range [0, " + oldSource.length() + ")");
+        }
+        final String source = new StringBuilder(oldSource.length() - removedLength + insertedText.length())
+                .append(oldSource, 0, offset)
+                .append(insertedText)
+                .append(oldSource, offset + removedLength, oldSource.length())
+                .toString();
+        final int delta = insertedText.length() - removedLength;
+        final int editEnd = offset + removedLength;
+
+        // Collect the elements whose content contains the edit, outermost
+        // first, together with their offsets and their indices in the parent.
+        final List<SyntaxNode> path = new ArrayList<>();
+        final List<Integer> starts = new ArrayList<>();
+        final List<Integer> indices = new ArrayList<>();
+        SyntaxNode node = document.getRoot();
+        int start = node.getLeadingTrivia();
+        int index = -1;
+        while (node != null && IncrementalParser.containsInContent(node, start, offset, editEnd)) {
+            path.add(node);
+            starts.add(start);
+            indices.add(index);
+
+            SyntaxNode next = null;
+            int childEnd = start + node.getHeaderWidth();
+            final SyntaxNode[] children = node.getChildren();
+            for (int i = 0; i < children.length && childEnd <= editEnd; i++) {
+                final int childStart = childEnd + children[i].getLeadingTrivia();
+                childEnd = childStart + children[i].getWidth();
+                if (childStart <= offset && editEnd <= childEnd) {
+                    next = children[i];
+                    start = childStart;
+                    index = i;
+                    break;
+                }
+            }
+            node = next;
+        }
+
+        for (int depth = path.size() - 1; depth >= 0; depth--) {
+            final SyntaxNode damaged = path.get(depth);
+            final int damagedStart = starts.get(depth);
+            final SyntaxNode reparsed = IncrementalParser.parseElement(source, damagedStart,
+                    damagedStart + damaged.getWidth() + delta);
+            if (reparsed == null || !((XmlTag) reparsed.getValue()).getName().equals(((XmlTag) damaged.getValue()).getName())) {
+                // The region does not form the same element anymore.
+                continue;
+            }
+
+            SyntaxNode replacement = IncrementalParser.reuseChildren(damaged, reparsed);
+            replacement = new SyntaxNode(replacement.getValue(), damaged.getLeadingTrivia(), replacement.getWidth(),
+                    replacement.getHeaderWidth(), replacement.getTrailingTrivia(), replacement.getChildren());
+            for (int i = depth - 1; i >= 0; i--) {
+                replacement = IncrementalParser.replaceChild(path.get(i), indices.get(i + 1), replacement, delta);
+            }
+            final XmlDocument old = document.getDocument();
+            return new LosslessDocument(source,
+                    new XmlDocument(old.getVersion(), old.getEncoding(), old.getDoctype(), (XmlTag) replacement.getValue()),
+                    replacement);
+        }
+
+        final XmlScanner scanner = new XmlScanner(new StringReader(source));
+        scanner.setPreserveSource(true);
+        return new XmlParser(scanner.scan()).parseLossless(source);
+    }
+
+    /**
+     * Checks whether the given range lies within the content of the given
+     * node.
+     *
+     * @param node
+     *            The node.
+     * @param start
+     *            The offset of the node (excluding its leading trivia).
+     * @param from
+     *            The start of the range (inclusive).
+     * @param to
+     *            The end of the range (exclusive).
+     * @return Whether the node is a tag with children and the range lies
+     *         between the end of its start tag and the start of its end tag.
+     */
+    private static boolean containsInContent(final SyntaxNode node, final int start, final int from, final int to) {
+        return node.getHeaderWidth() > 0 && start + node.getHeaderWidth() <= from
+                && to <= start + node.getWidth() - node.getEndTagWidth();
+    }
+
+    /**
+     * Scans and parses a single element.
+     *
+     * @param source
+     *            The source code.
+     * @param from
+     *            The start of the element (inclusive).
+     * @param to
+     *            The end of the element (exclusive).
+     * @return The syntax node of the element or <code>null</code> if the region
+     *         does not form exactly one tag with children.
+     */
+    private static SyntaxNode parseElement(final String source, final int from, final int to) {
+        final SyntaxNode node;
+        try {
+            node = new XmlParser(new XmlScanner(new StringReader(source.substring(from, to))).scan()).parseLosslessElement();
+        } catch (final ScannerException | ParserException cause) {
+            return null;
+        }
+        return node.getValue() instanceof XmlTag && node.getWidth() == to - from ? node : null;
+    }
+
+    /**
+     * Creates a copy of the given re-parsed node that reuses the unchanged
+     * leading and trailing children of the given damaged node. The widths of
+     * the reused nodes are still valid as every syntax node only covers its
+     * own trivia and value.
+     *
+     * @param damaged
+     *            The node before the edit.
+     * @param reparsed
+     *            The re-parsed node.
+     * @return The node that reuses the unchanged children of the damaged node.
+     */
+    private static SyntaxNode reuseChildren(final SyntaxNode damaged, final SyntaxNode reparsed) {
+        final SyntaxNode[] oldChildren = damaged.getChildren();
+        final SyntaxNode[] children = reparsed.getChildren();
+        int prefix = 0;
+        final int max = Math.min(oldChildren.length, children.length);
+        while (prefix < max && IncrementalParser.sameNode(oldChildren[prefix], children[prefix])) {
+            children[prefix] = oldChildren[prefix];
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix && IncrementalParser.sameNode(oldChildren[oldChildren.length - 1 - suffix],
+                children[children.length - 1 - suffix])) {
+            children[children.length - 1 - suffix] = oldChildren[oldChildren.length - 1 - suffix];
+            suffix++;
+        }
+        if (prefix == 0 && suffix == 0) {
+            return reparsed;
+        }
+
+        final XmlTag tag = (XmlTag) reparsed.getValue();
+        final List<AbstractXmlValue> values = new ArrayList<>(children.length);
+        for (final SyntaxNode child : children) {
+            values.add(child.getValue());
+        }
+        return new SyntaxNode(new XmlTag(tag.getName(), tag.getParameters(), values), reparsed.getLeadingTrivia(),
+                reparsed.getWidth(), reparsed.getHeaderWidth(), reparsed.getTrailingTrivia(), children);
+    }
+
+    /**
+     * Checks whether the given nodes have the same value and the same widths.
+     *
+     * @param a
+     *            The first node.
+     * @param b
+     *            The second node.
+     * @return Whether the nodes are interchangeable.
+     */
+    private static boolean sameNode(final SyntaxNode a, final SyntaxNode b) {
+        return a.getLeadingTrivia() == b.getLeadingTrivia() && a.getWidth() == b.getWidth()
+                && a.getHeaderWidth() == b.getHeaderWidth() && a.getTrailingTrivia() == b.getTrailingTrivia()
+                && a.getValue().equals(b.getValue());
+    }
+
+    /**
+     * Creates a copy of the given parent node with one child replaced.
+     *
+     * @param parent
+     *            The parent node.
+     * @param index
+     *            The index of the child to replace.
+     * @param child
+     *            The new child.
+     * @param delta
+     *            The change of the width.
+     * @return The new parent node.
+     */
+    private static SyntaxNode replaceChild(final SyntaxNode parent, final int index, final SyntaxNode child, final int delta) {
+        final SyntaxNode[] children = Arrays.copyOf(parent.getChildren(), parent.getChildren().length);
+        children[index] = child;
+
+        final XmlTag tag = (XmlTag) parent.getValue();
+        final List<AbstractXmlValue> values = new ArrayList<>(tag.getChildren());
+        values.set(index, child.getValue());
+        return new SyntaxNode(new XmlTag(tag.getName(), tag.getParameters(), values), parent.getLeadingTrivia(),
+                parent.getWidth() + delta, parent.getHeaderWidth(), parent.getTrailingTrivia(), children);
+    }
+}
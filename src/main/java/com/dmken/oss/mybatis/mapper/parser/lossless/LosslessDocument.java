@@ -0,0 +1,127 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.lossless;
+
+import java.io.InputStream;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.parser.exception.ParserException;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * An {@link XmlDocument XML document} together with its source code and a
+ * concrete {@link SyntaxNode syntax tree} that maps every value of the
+ * document to its region of the source code.
+ *
+ * <p>
+ * The trivia (whitespace, comments), the original quote style of parameters
+ * and the original spelling of escape sequences are not copied into separate
+ * strings but are kept as regions of the source code. This allows the
+ * {@link com.dmken.oss.mybatis.mapper.parser.writer.XmlWriter writer} to
+ * reproduce the source code exactly and to copy unmodified regions in bulk
+ * when writing a modified document.
+ * </p>
+ *
+ */
+@Getter
+@RequiredArgsConstructor
+public class LosslessDocument {
+    /**
+     * The source code.
+     *
+     */
+    private final String source;
+    /**
+     * The parsed document.
+     *
+     */
+    private final XmlDocument document;
+    /**
+     * The syntax node of the root tag. Its leading trivia is everything
+     * before the root tag (including the XML declaration and the document
+     * type).
+     *
+     */
+    private final SyntaxNode root;
+
+    /**
+     * Parses the given input stream while preserving the source code.
+     *
+     * @param in
+     *            The input stream containing the code.
+     * @return The lossless document.
+     * @throws ScannerException
+     *             If any scanner error occurs.
+     * @throws ParserException
+     *             If any parser error occurs.
+     */
+    public static LosslessDocument parse(final InputStream in) throws ScannerException, ParserException {
+        final XmlScanner scanner = new XmlScanner(in);
+        scanner.setPreserveSource(true);
+        return new XmlParser(scanner.scan()).parseLossless(scanner.getSource());
+    }
+
+    /**
+     * Applies a text edit to the source code and re-parses the smallest
+     * element that contains the edit. All subtrees outside of that element are
+     * shared with this document, so the cost of an edit depends on the size of
+     * the edited element rather than on the size of the document.
+     *
+     * @param offset
+     *            The offset of the edit.
+     * @param removedLength
+     *            The number of characters removed at the offset.
+     * @param insertedText
+     *            The text inserted at the offset.
+     * @return The edited document. This document is not modified.
+     * @throws ScannerException
+     *             If any scanner error occurs.
+     * @throws ParserException
+     *             If any parser error occurs.
+     * @see IncrementalParser
+     */
+    public LosslessDocument edit(final int offset, final int removedLength, final String insertedText)
+            throws ScannerException, ParserException {
+        return IncrementalParser.reparse(this, offset, removedLength, insertedText);
+    }
+
+    /**
+     * Retrieves the offset of the root tag.
+     *
+     * @return The offset.
+     */
+    public int getRootOffset() {
+        return this.root.getLeadingTrivia();
+    }
+
+    /**
+     * Retrieves the offset after the end tag of the root tag.
+     *
+     * @return The offset.
+     */
+    public int getRootEndOffset() {
+        return this.root.getFullWidth();
+    }
+}
@@ -0,0 +1,130 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.lossless;
+
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+
+import lombok.Getter;
+
+/**
+ * A node of the concrete syntax tree of a {@link LosslessDocument lossless
+ * document} that maps an {@link AbstractXmlValue XML value} to its region of
+ * the source code.
+ *
+ * <p>
+ * The region is stored as widths (in characters) relative to the end of the
+ * preceding sibling (or the end of the start tag of the parent) rather than
+ * as absolute offsets, so a subtree can be reused unmodified if the source
+ * code before it changes. The text between two values (whitespace and
+ * comments) is the <i>trivia</i> of the following value; the text between the
+ * last child and the end tag of a tag is the trailing trivia of the tag.
+ * </p>
+ *
+ */
+@Getter
+public class SyntaxNode {
+    /**
+     * The value represented by this node.
+     *
+     */
+    private final AbstractXmlValue value;
+    /**
+     * The number of characters of trivia preceding the value.
+     *
+     */
+    private final int leadingTrivia;
+    /**
+     * The number of characters of the value itself (excluding the leading
+     * trivia).
+     *
+     */
+    private final int width;
+    /**
+     * The number of characters of the start tag if the value is a tag with
+     * children, <code>0</code> otherwise.
+     *
+     */
+    private final int headerWidth;
+    /**
+     * The number of characters of trivia between the last child and the end
+     * tag if the value is a tag with children, <code>0</code> otherwise.
+     *
+     */
+    private final int trailingTrivia;
+    /**
+     * The nodes of the children of the value. Empty if the value has no
+     * children.
+     *
+     */
+    private final SyntaxNode[] children;
+
+    /**
+     * Constructor of SyntaxNode.
+     *
+     * @param value
+     *            The {@link #value} to set.
+     * @param leadingTrivia
+     *            The {@link #leadingTrivia} to set.
+     * @param width
+     *            The {@link #width} to set.
+     * @param headerWidth
+     *            The {@link #headerWidth} to set.
+     * @param trailingTrivia
+     *            The {@link #trailingTrivia} to set.
+     * @param children
+     *            The {@link #children} to set.
+     */
+    public SyntaxNode(final AbstractXmlValue value, final int leadingTrivia, final int width, final int headerWidth,
+            final int trailingTrivia, final SyntaxNode[] children) {
+        this.value = value;
+        this.leadingTrivia = leadingTrivia;
+        this.width = width;
+        this.headerWidth = headerWidth;
+        this.trailingTrivia = trailingTrivia;
+        this.children = children;
+    }
+
+    /**
+     * Retrieves the number of characters of the value including the leading
+     * trivia.
+     *
+     * @return The full width.
+     */
+    public int getFullWidth() {
+        return this.leadingTrivia + this.width;
+    }
+
+    /**
+     * Retrieves the number of characters of the end tag if the value is a tag
+     * with children.
+     *
+     * @return The width of the end tag or <code>0</code>.
+     */
+    public int getEndTagWidth() {
+        if (this.headerWidth == 0) {
+            return 0;
+        }
+        int width = this.width - this.headerWidth - this.trailingTrivia;
+        for (final SyntaxNode child : this.children) {
+            width -= child.getFullWidth();
+        }
+        return width;
+    }
+}
@@ -0,0 +1,105 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.metrics;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.exception.ParserException;
+import com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException;
+
+/**
+ * Receives the statistics of the {@link com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner
+ * scanner} and the {@link com.dmken.oss.mybatis.mapper.parser.parser.XmlParser
+ * parser} at the boundaries of their phases.
+ *
+ * <p>
+ * All methods have empty default implementations, so implementations only
+ * override the events they are interested in. If the listener is
+ * {@link #NOOP}, the scanner and the parser neither take timestamps nor
+ * create any statistics.
+ * </p>
+ *
+ * @see ParseMetrics
+ */
+public interface ParseListener {
+    /**
+     * The listener that ignores all events (the default).
+     *
+     */
+    ParseListener NOOP = new ParseListener() {
+        // Nothing to do.
+    };
+
+    /**
+     * Invoked before the scanner starts to read the input.
+     *
+     */
+    default void scanStarted() {
+        // Nothing to do.
+    }
+
+    /**
+     * Invoked if the scanner fails, right before
+     * {@link #scanFinished(ScanStatistics)}.
+     *
+     * @param cause
+     *            The error.
+     */
+    default void scanFailed(final ScannerException cause) {
+        // Nothing to do.
+    }
+
+    /**
+     * Invoked after the scanner produced the token stream or failed.
+     *
+     * @param statistics
+     *            The statistics of the scan.
+     */
+    default void scanFinished(final ScanStatistics statistics) {
+        // Nothing to do.
+    }
+
+    /**
+     * Invoked before the parser starts to process the token stream.
+     *
+     */
+    default void parseStarted() {
+        // Nothing to do.
+    }
+
+    /**
+     * Invoked if the parser fails, right before
+     * {@link #parseFinished(ParseStatistics)}.
+     *
+     * @param cause
+     *            The error.
+     */
+    default void parseFailed(final ParserException cause) {
+        // Nothing to do.
+    }
+
+    /**
+     * Invoked after the parser produced the document or failed.
+     *
+     * @param statistics
+     *            The statistics of the parse.
+     */
+    default void parseFinished(final ParseStatistics statistics) {
+        // Nothing to do.
+    }
+}
@@ -0,0 +1,175 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.dmken.oss.mybatis.mapper.parser.scanner.Token.TokenType;
+
+/**
+ * A {@link ParseListener} that aggregates the statistics of any number of
+ * (concurrent) scans and parses. A {@link #snapshot() snapshot} of the
+ * aggregated figures can be exported to a monitoring system.
+ *
+ */
+public class ParseMetrics implements ParseListener {
+    /**
+     * The number of finished scans.
+     *
+     */
+    private final LongAdder scanCount = new LongAdder();
+    /**
+     * The number of failed scans.
+     *
+     */
+    private final LongAdder scanFailureCount = new LongAdder();
+    /**
+     * The number of bytes read by all scans that read from an input stream.
+     *
+     */
+    private final LongAdder bytesRead = new LongAdder();
+    /**
+     * The number of characters decoded by all scans.
+     *
+     */
+    private final LongAdder charsDecoded = new LongAdder();
+    /**
+     * The number of produced tokens by {@link TokenType#ordinal() type}.
+     *
+     */
+    private final LongAdder[] tokenCounts = new LongAdder[TokenType.values().length];
+    /**
+     * The number of decoded entity references.
+     *
+     */
+    private final LongAdder entityDecodes = new LongAdder();
+    /**
+     * The number of skipped comments.
+     *
+     */
+    private final LongAdder commentsSkipped = new LongAdder();
+    /**
+     * The time spent scanning in nanoseconds.
+     *
+     */
+    private final LongAdder scanNanos = new LongAdder();
+    /**
+     * The number of finished parses.
+     *
+     */
+    private final LongAdder parseCount = new LongAdder();
+    /**
+     * The number of failed parses.
+     *
+     */
+    private final LongAdder parseFailureCount = new LongAdder();
+    /**
+     * The number of created tags.
+     *
+     */
+    private final LongAdder tagCount = new LongAdder();
+    /**
+     * The maximum nesting depth of all parsed documents.
+     *
+     */
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+    /**
+     * The time spent parsing in nanoseconds.
+     *
+     */
+    private final LongAdder parseNanos = new LongAdder();
+    /**
+     * The part of {@link #parseNanos} spent building the tree.
+     *
+     */
+    private final LongAdder treeBuildNanos = new LongAdder();
+
+    /**
+     * Constructor of ParseMetrics.
+     *
+     */
+    public ParseMetrics() {
+        for (int i = 0; i < this.tokenCounts.length; i++) {
+            this.tokenCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see com.dmken.oss.mybatis.mapper.parser.metrics.ParseListener#scanFinished(com.dmken.oss.mybatis.mapper.parser.metrics.ScanStatistics)
+     */
+    @Override
+    public void scanFinished(final ScanStatistics statistics) {
+        this.scanCount.increment();
+        if (!statistics.isSuccessful()) {
+            this.scanFailureCount.increment();
+        }
+        if (statistics.getBytesRead() > 0) {
+            this.bytesRead.add(statistics.getBytesRead());
+        }
+        this.charsDecoded.add(statistics.getCharsDecoded());
+        for (final TokenType type : TokenType.values()) {
+            this.tokenCounts[type.ordinal()].add(statistics.getTokenCount(type));
+        }
+        this.entityDecodes.add(statistics.getEntityDecodes());
+        this.commentsSkipped.add(statistics.getCommentsSkipped());
+        this.scanNanos.add(statistics.getScanNanos());
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see com.dmken.oss.mybatis.mapper.parser.metrics.ParseListener#parseFinished(com.dmken.oss.mybatis.mapper.parser.metrics.ParseStatistics)
+     */
+    @Override
+    public void parseFinished(final ParseStatistics statistics) {
+        this.parseCount.increment();
+        if (!statistics.isSuccessful()) {
+            this.parseFailureCount.increment();
+        }
+        this.tagCount.add(statistics.getTagCount());
+        this.maxDepth.accumulate(statistics.getMaxDepth());
+        this.parseNanos.add(statistics.getParseNanos());
+        this.treeBuildNanos.add(statistics.getTreeBuildNanos());
+    }
+
+    /**
+     * Creates a snapshot of the aggregated figures. The snapshot is not
+     * atomic with respect to concurrent scans and parses.
+     *
+     * @return The snapshot.
+     */
+    public ParseMetricsSnapshot snapshot() {
+        final Map<TokenType, Long> tokens = new EnumMap<>(TokenType.class);
+        for (final TokenType type : TokenType.values()) {
+            tokens.put(type, this.tokenCounts[type.ordinal()].sum());
+        }
+        return new ParseMetricsSnapshot(this.scanCount.sum(), this.scanFailureCount.sum(), this.bytesRead.sum(),
+                this.charsDecoded.sum(), tokens, this.entityDecodes.sum(), this.commentsSkipped.sum(), this.scanNanos.sum(),
+                this.parseCount.sum(), this.parseFailureCount.sum(), this.tagCount.sum(), (int) this.maxDepth.get(),
+                this.parseNanos.sum(), this.treeBuildNanos.sum());
+    }
+}
@@ -0,0 +1,117 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.metrics;
+
+import java.util.Map;
+
+import com.dmken.oss.mybatis.mapper.parser.scanner.Token.TokenType;
+
+import lombok.Data;
+
+/**
+ * A snapshot of the figures aggregated by {@link ParseMetrics}.
+ *
+ */
+@Data
+public class ParseMetricsSnapshot {
+    /**
+     * The number of scans.
+     *
+     */
+    private final long scanCount;
+    /**
+     * The number of failed scans.
+     *
+     */
+    private final long scanFailureCount;
+    /**
+     * The number of bytes read by all scans.
+     *
+     */
+    private final long bytesRead;
+    /**
+     * The number of characters decoded by all scans.
+     *
+     */
+    private final long charsDecoded;
+    /**
+     * The number of produced tokens by type.
+     *
+     */
+    private final Map<TokenType, Long> tokenCounts;
+    /**
+     * The number of decoded entity references.
+     *
+     */
+    private final long entityDecodes;
+    /**
+     * The number of skipped comments.
+     *
+     */
+    private final long commentsSkipped;
+    /**
+     * The time spent scanning in nanoseconds.
+     *
+     */
+    private final long scanNanos;
+    /**
+     * The number of parses.
+     *
+     */
+    private final long parseCount;
+    /**
+     * The number of failed parses.
+     *
+     */
+    private final long parseFailureCount;
+    /**
+     * The number of parsed tags.
+     *
+     */
+    private final long tagCount;
+    /**
+     * The maximum nesting depth of all parsed documents.
+     *
+     */
+    private final int maxDepth;
+    /**
+     * The time spent processing tokens in nanoseconds.
+     *
+     */
+    private final long parseNanos;
+    /**
+     * The time spent constructing document trees in nanoseconds.
+     *
+     */
+    private final long treeBuildNanos;
+
+    /**
+     * Retrieves the number of produced tokens of all types.
+     *
+     * @return The number of tokens.
+     */
+    public long getTokenCount() {
+        long count = 0;
+        for (final long tokenCount : this.tokenCounts.values()) {
+            count += tokenCount;
+        }
+        return count;
+    }
+}
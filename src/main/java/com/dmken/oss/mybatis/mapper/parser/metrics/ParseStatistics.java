@@ -0,0 +1,58 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.metrics;
+
+import lombok.Data;
+
+/**
+ * The statistics of a single run of the
+ * {@link com.dmken.oss.mybatis.mapper.parser.parser.XmlParser parser}.
+ *
+ */
+@Data
+public class ParseStatistics {
+    /**
+     * Whether the parse completed successfully.
+     *
+     */
+    private final boolean successful;
+    /**
+     * The number of parsed tags (including self-closing tags).
+     *
+     */
+    private final long tagCount;
+    /**
+     * The maximum nesting depth of the tags.
+     *
+     */
+    private final int maxDepth;
+    /**
+     * The time spent processing tokens in nanoseconds (excluding the
+     * {@link #treeBuildNanos}).
+     *
+     */
+    private final long parseNanos;
+    /**
+     * The time spent constructing the document tree (including the
+     * computation of the subtree hashes) in nanoseconds.
+     *
+     */
+    private final long treeBuildNanos;
+}
@@ -0,0 +1,96 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.metrics;
+
+import com.dmken.oss.mybatis.mapper.parser.scanner.Token.TokenType;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+
+/**
+ * The statistics of a single run of the
+ * {@link com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner scanner}.
+ *
+ */
+@Data
+public class ScanStatistics {
+    /**
+     * Whether the scan completed successfully.
+     *
+     */
+    private final boolean successful;
+    /**
+     * The number of bytes read from the input stream or <code>-1</code> if
+     * the scanner read from an already decoded reader.
+     *
+     */
+    private final long bytesRead;
+    /**
+     * The number of characters decoded from the input.
+     *
+     */
+    private final long charsDecoded;
+    /**
+     * The number of produced tokens by {@link TokenType#ordinal() type}.
+     *
+     */
+    @Getter(AccessLevel.NONE)
+    private final long[] tokenCounts;
+    /**
+     * The number of decoded entity references (e.g. <code>&amp;lt;</code>).
+     *
+     */
+    private final long entityDecodes;
+    /**
+     * The number of skipped comments.
+     *
+     */
+    private final long commentsSkipped;
+    /**
+     * The time spent scanning in nanoseconds.
+     *
+     */
+    private final long scanNanos;
+
+    /**
+     * Retrieves the number of produced tokens of the given type.
+     *
+     * @param type
+     *            The type.
+     * @return The number of tokens.
+     */
+    public long getTokenCount(final TokenType type) {
+        return this.tokenCounts[type.ordinal()];
+    }
+
+    /**
+     * Retrieves the number of produced tokens.
+     *
+     * @return The number of tokens of all types.
+     */
+    public long getTokenCount() {
+        long count = 0;
+        for (final long tokenCount : this.tokenCounts) {
+            count += tokenCount;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,195 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.exception.ParserException;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+
+/**
+ * Reads a file in chunks through an {@link AsynchronousFileChannel} and
+ * {@link XmlScanner#feed(ByteBuffer) feeds} them to a scanner (see
+ * {@link XmlParser#parseAsync(AsynchronousFileChannel, Executor)}).
+ *
+ * <p>
+ * The chunks are read one after the other: The next read is started after the
+ * last chunk was scanned, so the scanner sees the chunks in order and the
+ * buffer can be reused. No thread ever blocks waiting for the file.
+ * </p>
+ *
+ */
+final class AsyncFileParser implements CompletionHandler<Integer, Void> {
+    /**
+     * The size of the chunks to read.
+     *
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The channel to read from.
+     *
+     */
+    private final AsynchronousFileChannel channel;
+    /**
+     * The executor to scan and parse on.
+     *
+     */
+    private final Executor executor;
+    /**
+     * The scanner the chunks are fed to.
+     *
+     */
+    private final XmlScanner scanner = new XmlScanner(new ArrayDeque<>());
+    /**
+     * The buffer the chunks are read into.
+     *
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(AsyncFileParser.CHUNK_SIZE);
+    /**
+     * The future to complete with the parsed document.
+     *
+     */
+    private final CompletableFuture<XmlDocument> future = new CompletableFuture<>();
+    /**
+     * The position in the file of the next chunk.
+     *
+     */
+    private long position;
+
+    /**
+     * Constructor of AsyncFileParser.
+     *
+     * @param channel
+     *            The channel to read from.
+     * @param executor
+     *            The executor to scan and parse on.
+     */
+    AsyncFileParser(final AsynchronousFileChannel channel, final Executor executor) {
+        this.channel = channel;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts reading the file.
+     *
+     * @return The future that is completed with the parsed document.
+     */
+    CompletableFuture<XmlDocument> start() {
+        this.read();
+        return this.future;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.CompletionHandler#completed(java.lang.Object,
+     *      java.lang.Object)
+     */
+    @Override
+    public void completed(final Integer read, final Void attachment) {
+        this.execute(() -> {
+            if (read < 0) {
+                this.future.complete(XmlParser.parse(this.scanner.endOfInput()));
+            } else {
+                this.position += read;
+                this.buffer.flip();
+                this.scanner.feed(this.buffer);
+                this.read();
+            }
+        });
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.CompletionHandler#failed(java.lang.Throwable,
+     *      java.lang.Object)
+     */
+    @Override
+    public void failed(final Throwable cause, final Void attachment) {
+        this.future.completeExceptionally(cause);
+    }
+
+    /**
+     * Starts reading the next chunk unless the future was completed (e.g.
+     * cancelled) in the meantime.
+     *
+     */
+    private void read() {
+        if (this.future.isDone()) {
+            return;
+        }
+        this.buffer.clear();
+        try {
+            this.channel.read(this.buffer, this.position, null, this);
+        } catch (final RuntimeException cause) {
+            this.future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Runs the given step on the executor and completes the future
+     * exceptionally if it fails.
+     *
+     * @param step
+     *            The step.
+     */
+    private void execute(final Step step) {
+        try {
+            this.executor.execute(() -> {
+                try {
+                    step.run();
+                } catch (final ScannerException | ParserException | RuntimeException cause) {
+                    this.future.completeExceptionally(cause);
+                }
+            });
+        } catch (final RejectedExecutionException cause) {
+            this.future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * A step of scanning and parsing.
+     *
+     */
+    @FunctionalInterface
+    private interface Step {
+        /**
+         * Runs the step.
+         *
+         * @throws ScannerException
+         *             If any scanner error occurs.
+         * @throws ParserException
+         *             If any parser error occurs.
+         */
+        void run() throws ScannerException, ParserException;
+    }
+}
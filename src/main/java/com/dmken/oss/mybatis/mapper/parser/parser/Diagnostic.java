@@ -0,0 +1,107 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.parser;
+
+import com.dmken.oss.mybatis.mapper.parser.util.FormatUtil;
+
+import lombok.Getter;
+
+/**
+ * An error that was reported while {@link XmlParser#parseRecovering(int)
+ * parsing in recovery mode}.
+ *
+ * <p>
+ * Diagnostics are cheap to create: They do not capture a stack trace and the
+ * message is only formatted when it is {@link #getMessage() requested}.
+ * </p>
+ *
+ */
+@Getter
+public class Diagnostic {
+    /**
+     * The source code line of the error.
+     *
+     */
+    private final int line;
+    /**
+     * The source code column of the error.
+     *
+     */
+    private final int column;
+    /**
+     * The offset of the error in the source code (counted in characters) or
+     * <code>-1</code> if unknown.
+     *
+     */
+    private final int offset;
+    /**
+     * The {@link String#format(String, Object...) format string} of the
+     * message.
+     *
+     */
+    private final String pattern;
+    /**
+     * The arguments of the message.
+     *
+     */
+    private final Object[] arguments;
+
+    /**
+     * Constructor of Diagnostic.
+     *
+     * @param line
+     *            The {@link #line} to set.
+     * @param column
+     *            The {@link #column} to set.
+     * @param offset
+     *            The {@link #offset} to set.
+     * @param pattern
+     *            The {@link #pattern} to set.
+     * @param arguments
+     *            The {@link #arguments} to set.
+     */
+    public Diagnostic(final int line, final int column, final int offset, final String pattern, final Object... arguments) {
+        this.line = line;
+        this.column = column;
+        this.offset = offset;
+        this.pattern = pattern;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Formats the message of this diagnostic.
+     *
+     * @return The message.
+     */
+    public String getMessage() {
+        return String.format(this.pattern, this.arguments);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return FormatUtil.formatSourceLocation(this.line, this.column) + ' ' + this.getMessage();
+    }
+}
@@ -0,0 +1,62 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.parser;
+
+import java.util.List;
+
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+
+import lombok.Data;
+
+/**
+ * The result of {@link XmlParser#parseRecovering(int) parsing in recovery
+ * mode}.
+ *
+ */
+@Data
+public class ParseResult {
+    /**
+     * The (possibly partial) document. Parts of the source code that could not
+     * be parsed are left out. <code>null</code> if not even the root tag could
+     * be parsed.
+     *
+     */
+    private final XmlDocument document;
+    /**
+     * The reported errors in source code order.
+     *
+     */
+    private final List<Diagnostic> diagnostics;
+    /**
+     * The number of errors that were not recorded because the maximum number
+     * of diagnostics was reached.
+     *
+     */
+    private final int droppedDiagnosticCount;
+
+    /**
+     * Checks whether the source code was parsed without any error.
+     *
+     * @return Whether no error was reported.
+     */
+    public boolean isSuccessful() {
+        return this.diagnostics.isEmpty() && this.droppedDiagnosticCount == 0;
+    }
+}
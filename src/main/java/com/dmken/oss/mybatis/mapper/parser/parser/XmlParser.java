@@ -21,18 +21,39 @@ package com.dmken.oss.mybatis.mapper.parser.parser;
 
 import static com.dmken.oss.mybatis.mapper.parser.scanner.Token.TokenType.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.AsynchronousFileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Deque;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
+import com.dmken.oss.mybatis.mapper.parser.lossless.LosslessDocument;
+import com.dmken.oss.mybatis.mapper.parser.lossless.SyntaxNode;
+import com.dmken.oss.mybatis.mapper.parser.metrics.ParseListener;
+import com.dmken.oss.mybatis.mapper.parser.metrics.ParseStatistics;
 import com.dmken.oss.mybatis.mapper.parser.parser.exception.IllegalTokenException;
 import com.dmken.oss.mybatis.mapper.parser.parser.exception.ParserException;
 import com.dmken.oss.mybatis.mapper.parser.scanner.Token;
 import com.dmken.oss.mybatis.mapper.parser.scanner.Token.TokenType;
+import com.dmken.oss.mybatis.mapper.parser.scanner.TokenRing;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException;
 import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlTag;
 import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
 import com.dmken.oss.mybatis.mapper.parser.tree.SelfClosingXmlTag;
@@ -48,17 +69,110 @@ import com.dmken.oss.mybatis.mapper.parser.util.FormatUtil;
  *
  */
 public class XmlParser {
+    /**
+     * The (shared) children of syntax nodes without children.
+     *
+     */
+    private static final SyntaxNode[] NO_SYNTAX_NODES = new SyntaxNode[0];
+    /**
+     * The (shared) exception used to unwind to the next recovery point after
+     * an error was {@link #report(Token, Throwable, String, Object...)
+     * reported} in recovery mode.
+     *
+     */
+    private static final RecoveryException RECOVERY = new RecoveryException();
+
     /**
      * The remaining tokens.
      *
      */
-    private final Deque<Token> tokens;
+    private final Queue<Token> tokens;
 
     /**
      * The token that is currently getting processed.
      *
      */
     private Token currentToken;
+    /**
+     * The token that was processed before the {@link #currentToken}.
+     *
+     */
+    private Token previousToken;
+
+    /**
+     * Whether {@link SyntaxNode syntax nodes} are built.
+     *
+     */
+    private boolean lossless;
+    /**
+     * The syntax node of the last parsed value if {@link #lossless} is set.
+     *
+     */
+    private SyntaxNode lastSyntaxNode;
+
+    /**
+     * The reported errors if the parser is in recovery mode,
+     * <code>null</code> otherwise.
+     *
+     */
+    private List<Diagnostic> diagnostics;
+    /**
+     * The maximum number of {@link #diagnostics} to record.
+     *
+     */
+    private int maxDiagnostics;
+    /**
+     * The number of errors that were not recorded because of the
+     * {@link #maxDiagnostics limit}.
+     *
+     */
+    private int droppedDiagnosticCount;
+    /**
+     * The names of the tags that are currently open if the parser is in
+     * recovery mode.
+     *
+     */
+    private Deque<String> openTags;
+
+    /**
+     * The listener to notify.
+     *
+     */
+    private ParseListener listener = ParseListener.NOOP;
+    /**
+     * The number of parsed tags.
+     *
+     */
+    private long tagCount;
+    /**
+     * The current nesting depth of tags.
+     *
+     */
+    private int depth;
+    /**
+     * The maximum nesting depth of tags.
+     *
+     */
+    private int maxDepth;
+    /**
+     * The parameter maps to collect the parameters of a tag in, one per
+     * {@link #depth}. The tags copy them, so they are reused. They keep the
+     * source order of the parameters, which the copies preserve.
+     *
+     */
+    private final List<Map<String, String>> parameterBuffers = new ArrayList<>();
+    /**
+     * The lists to collect the children of a tag in, one per {@link #depth}.
+     * The tags copy them, so they are reused.
+     *
+     */
+    private final List<List<AbstractXmlValue>> childBuffers = new ArrayList<>();
+    /**
+     * The time spent constructing the tree if the {@link #listener} is not
+     * the {@link ParseListener#NOOP no-op listener}.
+     *
+     */
+    private long treeBuildNanos;
 
     /**
      * Constructor of XmlParser.
@@ -66,7 +180,7 @@ public class XmlParser {
      * @param tokens
      *            The token stream to parse.
      */
-    public XmlParser(final Deque<Token> tokens) {
+    public XmlParser(final Queue<Token> tokens) {
         this.tokens = tokens;
     }
 
@@ -79,10 +193,204 @@ public class XmlParser {
      * @throws ParserException
      *             If any error occurs.
      */
-    public static XmlDocument parse(final Deque<Token> tokens) throws ParserException {
+    public static XmlDocument parse(final Queue<Token> tokens) throws ParserException {
         return new XmlParser(tokens).parse();
     }
 
+    /**
+     * Scans and parses the given input stream while notifying the given
+     * listener about both phases.
+     *
+     * @param in
+     *            The input stream containing the code.
+     * @param listener
+     *            The listener to notify.
+     * @return The parsed {@link XmlDocument XML document}.
+     * @throws ScannerException
+     *             If any scanner error occurs.
+     * @throws ParserException
+     *             If any parser error occurs.
+     */
+    public static XmlDocument parse(final InputStream in, final ParseListener listener)
+            throws ScannerException, ParserException {
+        final XmlScanner scanner = new XmlScanner(in);
+        scanner.setParseListener(listener);
+        final XmlParser parser = new XmlParser(scanner.scan());
+        parser.setParseListener(listener);
+        return parser.parse();
+    }
+
+    /**
+     * Scans and parses the given input stream in a pipeline: The scanner runs
+     * on a new daemon thread and hands the tokens to the parser running on
+     * the current thread through a {@link TokenRing}.
+     *
+     * @param in
+     *            The input stream containing the code.
+     * @return The parsed {@link XmlDocument XML document}.
+     * @throws ScannerException
+     *             If any scanner error occurs.
+     * @throws ParserException
+     *             If any parser error occurs.
+     * @see #parsePipelined(InputStream, Executor)
+     */
+    public static XmlDocument parsePipelined(final InputStream in) throws ScannerException, ParserException {
+        return XmlParser.parsePipelined(in, task -> {
+            final Thread thread = new Thread(task, "mapper-scanner");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Scans and parses the given input stream in a pipeline: The scanner runs
+     * on the given executor and hands the tokens to the parser running on the
+     * current thread through a {@link TokenRing}. For large inputs, the time
+     * approaches the maximum of both phases rather than their sum.
+     *
+     * <p>
+     * The result is the same as the one of scanning the input stream with
+     * {@link XmlScanner#scan(InputStream)} and {@link #parse(Queue) parsing}
+     * the tokens afterwards. If the parser fails, the scanner is cancelled;
+     * a scanner error that already occurred takes precedence over the parser
+     * error as it most likely caused it.
+     * </p>
+     *
+     * @param in
+     *            The input stream containing the code.
+     * @param executor
+     *            The executor to run the scanner on. Must run the scanner
+     *            concurrently to the current thread.
+     * @return The parsed {@link XmlDocument XML document}.
+     * @throws ScannerException
+     *             If any scanner error occurs.
+     * @throws ParserException
+     *             If any parser error occurs.
+     */
+    public static XmlDocument parsePipelined(final InputStream in, final Executor executor)
+            throws ScannerException, ParserException {
+        final XmlScanner scanner = new XmlScanner(in);
+        final TokenRing ring = new TokenRing();
+        final AtomicReference<RuntimeException> scannerBug = new AtomicReference<>();
+        final AtomicReference<ScannerException> scannerFailure = new AtomicReference<>();
+        executor.execute(() -> {
+            try {
+                scanner.scan(ring);
+            } catch (final ScannerException cause) {
+                scannerFailure.set(cause);
+            } catch (final CancellationException cause) {
+                // The parser failed.
+            } catch (final RuntimeException cause) {
+                scannerBug.set(cause);
+            } finally {
+                ring.close();
+            }
+        });
+
+        final XmlDocument document;
+        boolean drained = false;
+        try {
+            document = new XmlParser(ring).parse();
+            // Wait for the end of the token stream (i.e. the scanner).
+            while (ring.poll() != null) {
+                // Nothing to do.
+            }
+            drained = true;
+        } catch (final ParserException | RuntimeException cause) {
+            XmlParser.rethrowScannerFailure(scannerFailure.get(), scannerBug.get());
+            throw cause;
+        } finally {
+            if (!drained) {
+                // Never leave the scanner blocked on a full ring (not even on
+                // errors).
+                ring.cancel();
+            }
+        }
+        XmlParser.rethrowScannerFailure(scannerFailure.get(), scannerBug.get());
+        return document;
+    }
+
+    /**
+     * Reads, scans and parses the given file asynchronously.
+     *
+     * @param path
+     *            The file containing the code.
+     * @param executor
+     *            The executor to scan and parse on.
+     * @return The future that is completed with the parsed {@link XmlDocument
+     *         XML document} or exceptionally with the {@link IOException},
+     *         {@link ScannerException} or {@link ParserException} that
+     *         occurred.
+     * @see #parseAsync(AsynchronousFileChannel, Executor)
+     */
+    public static CompletableFuture<XmlDocument> parseAsync(final Path path, final Executor executor) {
+        final AsynchronousFileChannel channel;
+        try {
+            channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+        } catch (final IOException cause) {
+            final CompletableFuture<XmlDocument> future = new CompletableFuture<>();
+            future.completeExceptionally(cause);
+            return future;
+        }
+        final CompletableFuture<XmlDocument> future = XmlParser.parseAsync(channel, executor);
+        future.whenComplete((document, failure) -> {
+            try {
+                channel.close();
+            } catch (final IOException cause) {
+                // The document was read already.
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Reads, scans and parses the content of the given channel
+     * asynchronously.
+     *
+     * <p>
+     * The channel is read in chunks from the start. Every chunk is
+     * {@link XmlScanner#feed(java.nio.ByteBuffer) fed} to a scanner on the
+     * given executor as soon as it was read, so neither the thread starting
+     * the parse nor any thread of the executor blocks waiting for the file
+     * and the raw bytes never have to be in memory at once. The tokens are
+     * parsed on the executor after the last chunk. Cancelling the future
+     * stops reading after the current chunk.
+     * </p>
+     *
+     * @param channel
+     *            The channel containing the code. Is not closed.
+     * @param executor
+     *            The executor to scan and parse on.
+     * @return The future that is completed with the parsed {@link XmlDocument
+     *         XML document} or exceptionally with the {@link IOException},
+     *         {@link ScannerException} or {@link ParserException} that
+     *         occurred.
+     */
+    public static CompletableFuture<XmlDocument> parseAsync(final AsynchronousFileChannel channel, final Executor executor) {
+        return new AsyncFileParser(channel, executor).start();
+    }
+
+    /**
+     * Rethrows the failure of the scanner thread of
+     * {@link #parsePipelined(InputStream, Executor)}, if any.
+     *
+     * @param failure
+     *            The scanner error or <code>null</code>.
+     * @param bug
+     *            The unexpected runtime exception or <code>null</code>.
+     * @throws ScannerException
+     *             If the scanner failed.
+     */
+    private static void rethrowScannerFailure(final ScannerException failure, final RuntimeException bug)
+            throws ScannerException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (bug != null) {
+            throw bug;
+        }
+    }
+
     /**
      * Parses the token stream and produces the {@link XmlDocument XML
      * document}.
@@ -92,6 +400,184 @@ public class XmlParser {
      *             If any error occurs.
      */
     public XmlDocument parse() throws ParserException {
+        this.lossless = false;
+        return this.parseDocument();
+    }
+
+    /**
+     * Parses the given tokens in recovery mode.
+     *
+     * @param tokens
+     *            The token stream to parse. Has to support iterating (i.e. not
+     *            a {@link TokenRing}) to look ahead at end tags.
+     * @param maxDiagnostics
+     *            The maximum number of diagnostics to record.
+     * @return The result containing the (possibly partial) document and the
+     *         diagnostics.
+     * @see #parseRecovering(int)
+     */
+    public static ParseResult parseRecovering(final Queue<Token> tokens, final int maxDiagnostics) {
+        return new XmlParser(tokens).parseRecovering(maxDiagnostics);
+    }
+
+    /**
+     * Parses the token stream in recovery mode: Instead of failing on the
+     * first error, the error is recorded as a {@link Diagnostic diagnostic}
+     * and the parser resynchronizes at the next tag boundary (the end of the
+     * current tag, the next <code>&lt;</code> or a matching end tag). The
+     * parts that could not be parsed are left out of the resulting document.
+     *
+     * <p>
+     * A missing end tag is reported once and the tag is closed implicitly
+     * when the end tag of an enclosing tag or the end of the token stream is
+     * reached. An end tag that does not match any open tag is reported and
+     * skipped.
+     * </p>
+     *
+     * @param maxDiagnostics
+     *            The maximum number of diagnostics to record. Further errors
+     *            are only counted.
+     * @return The result containing the (possibly partial) document and the
+     *         diagnostics.
+     */
+    public ParseResult parseRecovering(final int maxDiagnostics) {
+        if (maxDiagnostics < 0) {
+            throw new IllegalArgumentException("maxDiagnostics must not be negative");
+        }
+        this.lossless = false;
+        this.diagnostics = new ArrayList<>();
+        this.maxDiagnostics = maxDiagnostics;
+        this.droppedDiagnosticCount = 0;
+        this.openTags = new ArrayDeque<>();
+
+        XmlDocument document;
+        try {
+            document = this.parseDocument();
+            if (this.currentToken != null) {
+                this.report(this.currentToken, null, "Unexpected token %s after the root tag.", this.currentToken);
+            }
+        } catch (final ParserException cause) {
+            // Only recovery exceptions are thrown in recovery mode.
+            document = null;
+        }
+        final ParseResult result = new ParseResult(document, Collections.unmodifiableList(this.diagnostics),
+                this.droppedDiagnosticCount);
+        this.diagnostics = null;
+        this.openTags = null;
+        return result;
+    }
+
+    /**
+     * Parses the token stream and produces a {@link LosslessDocument lossless
+     * document}. The tokens must have been produced by a scanner that
+     * {@link com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner#setPreserveSource(boolean)
+     * preserved} the given source code.
+     *
+     * @param source
+     *            The source code of the tokens.
+     * @return The {@link LosslessDocument lossless document}.
+     * @throws ParserException
+     *             If any error occurs.
+     */
+    public LosslessDocument parseLossless(final String source) throws ParserException {
+        this.lossless = true;
+        final XmlDocument document = this.parseDocument();
+        return new LosslessDocument(source, document, this.lastSyntaxNode);
+    }
+
+    /**
+     * Parses the token stream of a single element (without XML declaration
+     * and document type) and produces its {@link SyntaxNode syntax node}. The
+     * offsets of the tokens must be relative to the start of the element. Used
+     * for re-parsing parts of a {@link LosslessDocument lossless document}.
+     *
+     * @return The syntax node of the element. Its leading trivia is
+     *         <code>0</code>.
+     * @throws ParserException
+     *             If the tokens do not form exactly one element.
+     */
+    public SyntaxNode parseLosslessElement() throws ParserException {
+        this.lossless = true;
+        this.skip();
+        this.expect(LANGEL);
+        this.parseTag(0);
+        if (this.currentToken != null) {
+            throw new ParserException("Unexpected token " + this.currentToken + " after the element at "
+                    + FormatUtil.formatSourceLocation(this.currentToken.getLine(), this.currentToken.getColumn()));
+        }
+        return this.lastSyntaxNode;
+    }
+
+    /**
+     * Parses the token stream assuming it forms exactly one
+     * {@link AbstractXmlValue XML value} (either content or a complete
+     * element). Used by {@link XmlPushParser} to parse the elements as soon
+     * as they are complete.
+     *
+     * @return The parsed value.
+     * @throws ParserException
+     *             If the tokens do not form exactly one value.
+     */
+    AbstractXmlValue parseValue() throws ParserException {
+        this.lossless = false;
+        this.skip();
+        final AbstractXmlValue value = this.parseValue(-1);
+        if (this.currentToken != null) {
+            throw new ParserException("Unexpected token " + this.currentToken + " after the element at "
+                    + FormatUtil.formatSourceLocation(this.currentToken.getLine(), this.currentToken.getColumn()));
+        }
+        return value;
+    }
+
+    /**
+     * Sets the listener to notify about the statistics of the parse.
+     *
+     * @param listener
+     *            The listener.
+     */
+    public void setParseListener(final ParseListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Parses the token stream and notifies the {@link #listener}.
+     *
+     * @return The {@link XmlDocument XML document}.
+     * @throws ParserException
+     *             If any error occurs.
+     */
+    private XmlDocument parseDocument() throws ParserException {
+        if (this.listener == ParseListener.NOOP) {
+            return this.parseTokens();
+        }
+
+        this.listener.parseStarted();
+        final long start = System.nanoTime();
+        boolean successful = false;
+        try {
+            final XmlDocument document = this.parseTokens();
+            successful = true;
+            return document;
+        } catch (final ParserException cause) {
+            if (cause != XmlParser.RECOVERY) {
+                this.listener.parseFailed(cause);
+            }
+            throw cause;
+        } finally {
+            final long nanos = System.nanoTime() - start;
+            this.listener.parseFinished(new ParseStatistics(successful, this.tagCount, this.maxDepth,
+                    nanos - this.treeBuildNanos, this.treeBuildNanos));
+        }
+    }
+
+    /**
+     * Parses the token stream.
+     *
+     * @return The {@link XmlDocument XML document}.
+     * @throws ParserException
+     *             If any error occurs.
+     */
+    private XmlDocument parseTokens() throws ParserException {
         this.skip();
 
         this.expect(LANGEL);
@@ -99,33 +585,37 @@ public class XmlParser {
         XmlVersion version = null;
         Charset encoding = null;
         if (this.optional(QMARK)) {
-            this.expect(IDENTIFIER, "xml", false);
-
-            boolean anyParsed = false;
-            do {
-                anyParsed = false;
-                if (this.optional(IDENTIFIER, "version", false)) {
-                    this.expect(EQUALS);
-                    final String versionString = this.expect(STRINGLIT).getToken();
-                    version = XmlVersion.findByVersion(versionString);
-                    if (version == null) {
-                        throw new ParserException("Unsupported version " + versionString + "!");
+            try {
+                this.expect(IDENTIFIER, "xml", false);
+
+                boolean anyParsed = false;
+                do {
+                    anyParsed = false;
+                    if (this.optional(IDENTIFIER, "version", false)) {
+                        this.expect(EQUALS);
+                        final Token versionToken = this.expect(STRINGLIT);
+                        version = XmlVersion.findByVersion(versionToken.getToken());
+                        if (version == null) {
+                            throw this.error(versionToken, null, "Unsupported version %s!", versionToken.getToken());
+                        }
+                        anyParsed = true;
                     }
-                    anyParsed = true;
-                }
-                if (this.optional(IDENTIFIER, "encoding", false)) {
-                    this.expect(EQUALS);
-                    final String encodingString = this.expect(STRINGLIT).getToken();
-                    try {
-                        encoding = Charset.forName(encodingString);
-                    } catch (final UnsupportedCharsetException cause) {
-                        throw new ParserException("Unsupported encoding " + encodingString + "!", cause);
+                    if (this.optional(IDENTIFIER, "encoding", false)) {
+                        this.expect(EQUALS);
+                        final Token encodingToken = this.expect(STRINGLIT);
+                        try {
+                            encoding = Charset.forName(encodingToken.getToken());
+                        } catch (final UnsupportedCharsetException cause) {
+                            throw this.error(encodingToken, cause, "Unsupported encoding %s!", encodingToken.getToken());
+                        }
+                        anyParsed = true;
                     }
-                    anyParsed = true;
-                }
-            } while (anyParsed);
-            this.expect(QMARK);
-            this.expect(RANGEL);
+                } while (anyParsed);
+                this.expect(QMARK);
+                this.expect(RANGEL);
+            } catch (final RecoveryException cause) {
+                this.recoverToEndOfTag();
+            }
 
             this.expect(LANGEL);
         }
@@ -138,17 +628,30 @@ public class XmlParser {
             // Mock.
             doctype = "";
             doctype += "DOCTYPE";
-            while (!this.is(RANGEL)) {
-                doctype += ' ' + this.skip().getToken();
+            while (this.currentToken != null && !this.is(RANGEL)) {
+                final Token token = this.skip();
+                if (token.getType() == STRINGLIT) {
+                    // Keep the quotes, so the DOCTYPE can be written again.
+                    final char quote = token.getToken().indexOf('"') < 0 ? '"' : '\'';
+                    doctype += " " + quote + token.getToken() + quote;
+                } else {
+                    doctype += ' ' + token.getToken();
+                }
             }
-            this.skip();
+            this.expect(RANGEL);
             // Mock.
 
             this.expect(LANGEL);
         }
-        final AbstractXmlTag rootTag = this.parseTag();
+        final Token rootToken = this.currentToken;
+        final AbstractXmlTag rootTag = this.parseTag(0);
         if (!(rootTag instanceof XmlTag)) {
-            throw new ParserException("Unexpected self-closing XML tag on root level! Expected normal.");
+            if (this.diagnostics == null) {
+                throw new ParserException("Unexpected self-closing XML tag on root level! Expected normal.");
+            }
+            this.report(rootToken, null, "Unexpected self-closing XML tag on root level! Expected normal.");
+            return new XmlDocument(version, encoding, doctype,
+                    new XmlTag(rootTag.getName(), rootTag.getParameters(), new ArrayList<>()));
         }
         return new XmlDocument(version, encoding, doctype, (XmlTag) rootTag);
     }
@@ -157,49 +660,195 @@ public class XmlParser {
      * Parses the next character assuming they form a tag while the opening
      * <code>&lt</code> is already parsed.
      *
+     * @param previousEnd
+     *            The source offset after the previous value (used to compute
+     *            the trivia if {@link #lossless} is set).
      * @return The parsed {@link AbstractXmlTag tag}.
      * @throws ParserException
      *             If any error occurs.
      */
-    private AbstractXmlTag parseTag() throws ParserException {
+    private AbstractXmlTag parseTag(final int previousEnd) throws ParserException {
+        final int start = this.previousToken.getOffset();
         final String name = this.expect(IDENTIFIER).getToken();
-        final Map<String, String> parameters = new HashMap<>();
-        while (this.is(IDENTIFIER)) {
-            final String key = this.expect(IDENTIFIER).getToken();
-            this.expect(EQUALS);
-            final String value = this.expect(STRINGLIT).getToken();
+        this.tagCount++;
+        if (++this.depth > this.maxDepth) {
+            this.maxDepth = this.depth;
+        }
+        while (this.parameterBuffers.size() < this.depth) {
+            this.parameterBuffers.add(new LinkedHashMap<>());
+            this.childBuffers.add(new ArrayList<>());
+        }
+        final Map<String, String> parameters = this.parameterBuffers.get(this.depth - 1);
+        parameters.clear();
+        boolean selfClosing;
+        int headerEnd;
+        try {
+            while (this.is(IDENTIFIER)) {
+                final String key = this.expect(IDENTIFIER).getToken();
+                this.expect(EQUALS);
+                final String value = this.expect(STRINGLIT).getToken();
 
-            parameters.put(key, value);
+                parameters.put(key, value);
+            }
+            selfClosing = this.optional(SLASH);
+            headerEnd = this.expect(RANGEL).getEndOffset();
+        } catch (final RecoveryException cause) {
+            selfClosing = this.recoverToEndOfTag();
+            headerEnd = -1;
         }
-        if (this.optional(SLASH)) {
-            this.expect(RANGEL);
-            return new SelfClosingXmlTag(name, parameters);
+        if (selfClosing) {
+            final long buildStart = this.treeBuildStart();
+            final SelfClosingXmlTag tag = new SelfClosingXmlTag(name, parameters);
+            this.treeBuildEnd(buildStart);
+            if (this.lossless) {
+                this.lastSyntaxNode = new SyntaxNode(tag, start - previousEnd, headerEnd - start, 0, 0,
+                        XmlParser.NO_SYNTAX_NODES);
+            }
+            this.depth--;
+            return tag;
         }
-        this.expect(RANGEL);
-        final List<AbstractXmlValue> children = new ArrayList<>();
-        while (!this.is(LANGEL) || this.tokens.peek().getType() != SLASH) {
-            children.add(this.parseValue());
+        final List<AbstractXmlValue> children = this.childBuffers.get(this.depth - 1);
+        children.clear();
+        final List<SyntaxNode> syntaxNodes = this.lossless ? new ArrayList<>() : null;
+        int childEnd = headerEnd;
+        if (this.diagnostics != null) {
+            this.openTags.push(name);
+            this.parseChildrenRecovering(name, children);
+            this.openTags.pop();
+            this.depth--;
+            return new XmlTag(name, parameters, children);
         }
-        this.expect(LANGEL);
+        while (!this.is(LANGEL) || this.tokens.peek() == null || this.tokens.peek().getType() != SLASH) {
+            children.add(this.parseValue(childEnd));
+            if (this.lossless) {
+                syntaxNodes.add(this.lastSyntaxNode);
+                childEnd += this.lastSyntaxNode.getFullWidth();
+            }
+        }
+        final int endTagStart = this.expect(LANGEL).getOffset();
         this.expect(SLASH);
         this.expect(IDENTIFIER, name, true);
-        this.expect(RANGEL);
-        return new XmlTag(name, parameters, children);
+        final int end = this.expect(RANGEL).getEndOffset();
+        final long buildStart = this.treeBuildStart();
+        final XmlTag tag = new XmlTag(name, parameters, children);
+        this.treeBuildEnd(buildStart);
+        if (this.lossless) {
+            this.lastSyntaxNode = new SyntaxNode(tag, start - previousEnd, end - start, headerEnd - start,
+                    endTagStart - childEnd, syntaxNodes.toArray(new SyntaxNode[syntaxNodes.size()]));
+        }
+        this.depth--;
+        return tag;
+    }
+
+    /**
+     * Parses the children and the end tag of a tag in recovery mode.
+     *
+     * <p>
+     * An end tag that does not match the tag is treated as a misspelled end
+     * tag of the tag unless it matches an enclosing tag. In that case (and at
+     * the end of the token stream), the tag is closed implicitly without
+     * consuming any end tag.
+     * </p>
+     *
+     * @param name
+     *            The name of the tag.
+     * @param children
+     *            The list to add the children to.
+     */
+    private void parseChildrenRecovering(final String name, final List<AbstractXmlValue> children) {
+        while (true) {
+            if (this.currentToken == null) {
+                this.report(null, null, "Missing end tag </%s>.", name);
+                return;
+            }
+            if (this.is(LANGEL) && this.tokens.peek() != null && this.tokens.peek().getType() == SLASH) {
+                final Token endTag = this.currentToken;
+                final Iterator<Token> iterator = this.tokens.iterator();
+                iterator.next();
+                final Token endName = iterator.hasNext() ? iterator.next() : null;
+                final boolean identifier = endName != null && endName.getType() == IDENTIFIER;
+                if (identifier && !endName.getToken().equals(name) && this.openTags.contains(endName.getToken())) {
+                    this.report(endTag, null, "Missing end tag </%s>.", name);
+                    return;
+                }
+                this.skip();
+                this.skip();
+                if (!identifier || !endName.getToken().equals(name)) {
+                    this.report(endTag, null, "Mismatched end tag </%s>. Expected </%s>.",
+                            identifier ? endName.getToken() : "", name);
+                    this.recoverToEndOfTag();
+                    return;
+                }
+                this.skip();
+                if (!this.optional(RANGEL)) {
+                    this.report(this.currentToken, null, "Illegal token %s. Expected %s.", this.currentToken, RANGEL);
+                    this.recoverToEndOfTag();
+                }
+                return;
+            }
+            try {
+                children.add(this.parseValue(-1));
+            } catch (final ParserException cause) {
+                // Resynchronize at the next tag. Tags are always started by
+                // skipping the <, so the parser makes progress.
+                while (this.currentToken != null && !this.is(LANGEL)) {
+                    this.skip();
+                }
+            }
+        }
+    }
+
+    /**
+     * Skips the remaining tokens of the current tag after an error in recovery
+     * mode.
+     *
+     * @return Whether the tag was closed by <code>/&gt;</code>. If the next
+     *         <code>&lt;</code> or the end of the token stream is reached
+     *         before any <code>&gt;</code>, <code>false</code> is returned and
+     *         the <code>&lt;</code> is not skipped.
+     */
+    private boolean recoverToEndOfTag() {
+        boolean slash = false;
+        while (this.currentToken != null && !this.is(LANGEL)) {
+            if (this.is(RANGEL)) {
+                this.skip();
+                return slash;
+            }
+            slash = this.is(SLASH);
+            this.skip();
+        }
+        return false;
     }
 
     /**
      * Parses the next tokens assuming they form a {@link AbstractXmlValue XML
      * value} (either content or a tag).
      *
+     * @param previousEnd
+     *            The source offset after the previous value (used to compute
+     *            the trivia if {@link #lossless} is set).
      * @return The parsed {@link AbstractXmlValue XML value}.
      * @throws ParserException
      *             If any error occurs.
      */
-    private AbstractXmlValue parseValue() throws ParserException {
+    private AbstractXmlValue parseValue(final int previousEnd) throws ParserException {
         if (this.is(CONTENT)) {
-            return new SimpleXmlValue(this.skip().getToken());
+            final Token token = this.skip();
+            final long buildStart = this.treeBuildStart();
+            final SimpleXmlValue value = new SimpleXmlValue(token.getToken());
+            this.treeBuildEnd(buildStart);
+            if (this.lossless) {
+                this.lastSyntaxNode = new SyntaxNode(value, token.getOffset() - previousEnd,
+                        token.getEndOffset() - token.getOffset(), 0, 0, XmlParser.NO_SYNTAX_NODES);
+            }
+            return value;
         } else if (this.optional(LANGEL)) {
-            return this.parseTag();
+            return this.parseTag(previousEnd);
+        } else if (this.diagnostics != null) {
+            throw this.report(this.currentToken, null, "Illegal token %s. Expected one of %s.", this.currentToken,
+                    Arrays.asList(CONTENT, LANGEL));
+        } else if (this.currentToken == null) {
+            throw new ParserException("Unexpected end of the token stream!");
         } else {
             throw new IllegalTokenException(this.currentToken, CONTENT, LANGEL);
         }
@@ -215,6 +864,12 @@ public class XmlParser {
      *             If the current token does not match the expected criteria.
      */
     private Token expect(final TokenType type) throws ParserException {
+        if (this.diagnostics != null && !this.is(type)) {
+            throw this.report(this.currentToken, null, "Illegal token %s. Expected %s.", this.currentToken, type);
+        }
+        if (this.currentToken == null) {
+            throw new ParserException("Unexpected end of the token stream! Expected " + type + ".");
+        }
         if (!this.is(type)) {
             throw new IllegalTokenException(this.currentToken, type);
         }
@@ -236,13 +891,98 @@ public class XmlParser {
      *             If the current token does not match the expected criteria.
      */
     private Token expect(final TokenType type, final String token, final boolean caseSensitive) throws ParserException {
+        if (this.diagnostics != null && !this.is(type, token, caseSensitive)) {
+            throw this.report(this.currentToken, null, "Illegal token %s. Expected %s(%s).", this.currentToken, type, token);
+        }
+        if (this.currentToken == null) {
+            throw new ParserException("Unexpected end of the token stream! Expected " + type + "(" + token + ").");
+        }
         if (!this.is(type, token, caseSensitive)) {
-            throw new ParserException("Illegal token " + this.currentToken + ". Expected " + new Token(0, 0, token, type) + " at "
+            throw new ParserException("Illegal token " + this.currentToken + ". Expected " + new Token(token, type) + " at "
                     + FormatUtil.formatSourceLocation(this.currentToken.getLine(), this.currentToken.getColumn()));
         }
         return this.skip();
     }
 
+    /**
+     * Starts measuring the time spent constructing a tree node.
+     *
+     * @return The start time or <code>0</code> if no
+     *         {@link #listener listener} is set.
+     */
+    private long treeBuildStart() {
+        return this.listener == ParseListener.NOOP ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Adds the time spent constructing a tree node to the
+     * {@link #treeBuildNanos}.
+     *
+     * @param start
+     *            The start time returned by {@link #treeBuildStart()}.
+     */
+    private void treeBuildEnd(final long start) {
+        if (start != 0) {
+            this.treeBuildNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Creates the exception for an error that is not covered by
+     * {@link #expect(TokenType)}. In recovery mode, the error is
+     * {@link #report(Token, Throwable, String, Object...) reported} instead.
+     *
+     * @param token
+     *            The token the error occurred at.
+     * @param cause
+     *            The cause of the error. May be <code>null</code>.
+     * @param pattern
+     *            The format string of the message.
+     * @param arguments
+     *            The arguments of the message.
+     * @return The exception to throw.
+     */
+    private ParserException error(final Token token, final Throwable cause, final String pattern, final Object... arguments) {
+        if (this.diagnostics != null) {
+            return this.report(token, cause, pattern, arguments);
+        }
+        return new ParserException(String.format(pattern, arguments), cause);
+    }
+
+    /**
+     * Records an error in recovery mode.
+     *
+     * @param token
+     *            The token the error occurred at. If <code>null</code> (i.e.
+     *            the end of the token stream was reached), the error is
+     *            located at the {@link #previousToken previous token}.
+     * @param cause
+     *            The cause of the error. Ignored, the diagnostics do not
+     *            retain exceptions.
+     * @param pattern
+     *            The format string of the message.
+     * @param arguments
+     *            The arguments of the message.
+     * @return The exception to unwind to the next recovery point.
+     */
+    private ParserException report(final Token token, final Throwable cause, final String pattern, final Object... arguments) {
+        if (this.diagnostics.size() < this.maxDiagnostics) {
+            final Token location = token == null ? this.previousToken : token;
+            if (location == null) {
+                this.diagnostics.add(new Diagnostic(1, 1, 0, pattern, arguments));
+            } else if (token == null) {
+                this.diagnostics.add(new Diagnostic(location.getLine(), location.getColumn(), location.getEndOffset(),
+                        "Unexpected end of the token stream! " + pattern, arguments));
+            } else {
+                this.diagnostics.add(new Diagnostic(location.getLine(), location.getColumn(), location.getOffset(), pattern,
+                        arguments));
+            }
+        } else {
+            this.droppedDiagnosticCount++;
+        }
+        return XmlParser.RECOVERY;
+    }
+
     /**
      * Checks whether the current token has the given type.
      *
@@ -298,7 +1038,7 @@ public class XmlParser {
      * @return Whether the current token matches the expected criteria.
      */
     private boolean is(final TokenType type) {
-        return this.currentToken.getType() == type;
+        return this.currentToken != null && this.currentToken.getType() == type;
     }
 
     /**
@@ -329,7 +1069,21 @@ public class XmlParser {
      */
     private Token skip() {
         final Token old = this.currentToken;
+        this.previousToken = old;
         this.currentToken = this.tokens.poll();
         return old;
     }
+
+    /**
+     * The exception used to unwind to the next recovery point in recovery
+     * mode. Does neither capture a stack trace nor a message.
+     *
+     */
+    private static final class RecoveryException extends ParserException {
+        private static final long serialVersionUID = -3462097311869236211L;
+
+        private RecoveryException() {
+            super(null, null, false, false);
+        }
+    }
 }
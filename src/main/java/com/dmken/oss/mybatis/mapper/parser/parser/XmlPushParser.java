@@ -0,0 +1,276 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.parser;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.exception.ParserException;
+import com.dmken.oss.mybatis.mapper.parser.scanner.ParserLimits;
+import com.dmken.oss.mybatis.mapper.parser.scanner.Token;
+import com.dmken.oss.mybatis.mapper.parser.scanner.Token.TokenType;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+
+/**
+ * A push parser that accepts the code in chunks as they arrive (e.g. the body
+ * of an HTTP upload) instead of reading it from a stream.
+ *
+ * <p>
+ * Every chunk is {@link XmlScanner#feed(ByteBuffer) fed} to a resumable
+ * scanner, so tokens split between two chunks (including entity references
+ * and comments) are completed once the next chunk arrives. The tokens are
+ * grouped by the children of the root tag: As soon as a child (e.g. a
+ * statement) is complete, it is parsed, passed to the listener and its tokens
+ * are dropped. Thus, neither the raw code nor the tokens of more than one
+ * child of the root tag are kept in memory.
+ * </p>
+ *
+ * <p>
+ * The parsed document is the same as the one produced by
+ * {@link XmlParser#parse(java.util.Queue)} for the complete code and errors
+ * are reported the same way, but as soon as the erroneous child is complete.
+ * The parser must not be used anymore after it threw an exception.
+ * </p>
+ *
+ * <p>
+ * As the chunks usually come from an untrusted source, the scanner enforces
+ * the {@link ParserLimits#DEFAULT default limits} unless other
+ * {@link ParserLimits limits} are given. Without the limits, a single
+ * unterminated token would buffer the complete remaining upload.
+ * </p>
+ *
+ */
+public final class XmlPushParser {
+    /**
+     * The scanner the chunks are fed to.
+     *
+     */
+    private final XmlScanner scanner;
+    /**
+     * The tokens produced by the {@link #scanner} that were not processed
+     * yet.
+     *
+     */
+    private final Deque<Token> scanned = new ArrayDeque<>();
+    /**
+     * The listener to notify about every parsed child of the root tag.
+     *
+     */
+    private final Consumer<AbstractXmlValue> listener;
+
+    /**
+     * The tokens of the prolog and the start tag of the root tag.
+     *
+     */
+    private final Deque<Token> header = new ArrayDeque<>();
+    /**
+     * The tokens of the incomplete child of the root tag.
+     *
+     */
+    private final Deque<Token> element = new ArrayDeque<>();
+    /**
+     * The tokens of the end tag of the root tag and all following tokens.
+     *
+     */
+    private final Deque<Token> trailer = new ArrayDeque<>();
+    /**
+     * The parsed children of the root tag.
+     *
+     */
+    private final List<AbstractXmlValue> children = new ArrayList<>();
+    /**
+     * The tokens currently being collected ({@link #header},
+     * {@link #element} or {@link #trailer}).
+     *
+     */
+    private Deque<Token> target = this.header;
+    /**
+     * The nesting depth of tags after the last processed token.
+     *
+     */
+    private int depth;
+    /**
+     * Whether the start tag of the root tag was reached.
+     *
+     */
+    private boolean rootOpened;
+    /**
+     * The type of the last processed token.
+     *
+     */
+    private TokenType previousType;
+
+    /**
+     * Constructor of XmlPushParser.
+     *
+     */
+    public XmlPushParser() {
+        this(child -> {
+            // Nothing to do.
+        });
+    }
+
+    /**
+     * Constructor of XmlPushParser.
+     *
+     * @param listener
+     *            The listener to notify about every child of the root tag
+     *            (elements and content) as soon as it is parsed.
+     */
+    public XmlPushParser(final Consumer<AbstractXmlValue> listener) {
+        this(listener, ParserLimits.DEFAULT);
+    }
+
+    /**
+     * Constructor of XmlPushParser.
+     *
+     * @param listener
+     *            The listener to notify about every child of the root tag
+     *            (elements and content) as soon as it is parsed.
+     * @param limits
+     *            The resource limits to enforce while scanning the chunks.
+     */
+    public XmlPushParser(final Consumer<AbstractXmlValue> listener, final ParserLimits limits) {
+        this.scanner = new XmlScanner(this.scanned);
+        this.scanner.setLimits(limits);
+        this.listener = listener;
+    }
+
+    /**
+     * Feeds the next chunk of the code.
+     *
+     * @param bytes
+     *            The array containing the next chunk.
+     * @param offset
+     *            The offset of the chunk in the array.
+     * @param length
+     *            The length of the chunk.
+     * @throws ScannerException
+     *             If any scanner error occurs.
+     * @throws ParserException
+     *             If any parser error occurs.
+     */
+    public void feed(final byte[] bytes, final int offset, final int length) throws ScannerException, ParserException {
+        this.feed(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Feeds the next chunk of the code.
+     *
+     * @param bytes
+     *            The next chunk. Is consumed completely.
+     * @throws ScannerException
+     *             If any scanner error occurs.
+     * @throws ParserException
+     *             If any parser error occurs.
+     */
+    public void feed(final ByteBuffer bytes) throws ScannerException, ParserException {
+        this.scanner.feed(bytes);
+        this.process();
+    }
+
+    /**
+     * Signals the end of the code and completes the document.
+     *
+     * @return The parsed {@link XmlDocument XML document}.
+     * @throws ScannerException
+     *             If any scanner error occurs.
+     * @throws ParserException
+     *             If any parser error occurs.
+     */
+    public XmlDocument endOfInput() throws ScannerException, ParserException {
+        this.scanner.endOfInput();
+        this.process();
+
+        // The prolog, the root tag without children and its end tag form a
+        // document on their own. Any incomplete child causes the same error
+        // as when parsing the complete code.
+        final Deque<Token> tokens = new ArrayDeque<>(this.header);
+        tokens.addAll(this.element);
+        tokens.addAll(this.trailer);
+        final XmlDocument document = XmlParser.parse(tokens);
+        if (this.children.isEmpty()) {
+            return document;
+        }
+        final XmlTag root = document.getRootTag();
+        return new XmlDocument(document.getVersion(), document.getEncoding(), document.getDoctype(),
+                new XmlTag(root.getName(), root.getParameters(), this.children));
+    }
+
+    /**
+     * Processes the tokens produced by the {@link #scanner}.
+     *
+     * @throws ParserException
+     *             If any completed child of the root tag cannot be parsed.
+     */
+    private void process() throws ParserException {
+        Token token;
+        while ((token = this.scanned.poll()) != null) {
+            final TokenType type = token.getType();
+            // Every identifier directly following a < opens a tag and every /
+            // closes one (see XmlScanner).
+            if (type == TokenType.IDENTIFIER && this.previousType == TokenType.LANGEL) {
+                this.depth++;
+                this.rootOpened = true;
+            } else if (type == TokenType.SLASH) {
+                this.depth--;
+            }
+            this.previousType = type;
+
+            if (this.target == this.element && this.depth == 0) {
+                // The < started the end tag of the root tag.
+                this.trailer.addAll(this.element);
+                this.element.clear();
+                this.target = this.trailer;
+            }
+            this.target.offer(token);
+
+            if (type == TokenType.RANGEL && this.target == this.header && this.rootOpened) {
+                // End of the start tag of the root tag (or of a self-closing
+                // root tag).
+                this.target = this.depth == 1 ? this.element : this.trailer;
+            } else if (this.target == this.element && this.depth == 1
+                    && (type == TokenType.RANGEL || type == TokenType.CONTENT)) {
+                this.complete();
+            }
+        }
+    }
+
+    /**
+     * Parses the completed child of the root tag and notifies the listener.
+     *
+     * @throws ParserException
+     *             If the child cannot be parsed.
+     */
+    private void complete() throws ParserException {
+        final AbstractXmlValue child = new XmlParser(this.element).parseValue();
+        this.element.clear();
+        this.children.add(child);
+        this.listener.accept(child);
+    }
+}
@@ -30,4 +30,9 @@ public class ParserException extends Exception {
     public ParserException(final String message) {
         super(message);
     }
+
+    protected ParserException(final String message, final Throwable cause, final boolean enableSuppression,
+            final boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
 }
@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.query;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive <code>int</code>s.
+ *
+ */
+final class IntList {
+    /**
+     * The elements. Only the first {@link #size} elements are valid.
+     *
+     */
+    private int[] elements;
+    /**
+     * The number of elements.
+     *
+     */
+    private int size;
+    /**
+     * Whether the elements were added in strictly ascending order.
+     *
+     */
+    private boolean ascending = true;
+
+    /**
+     * Constructor of IntList.
+     *
+     * @param capacity
+     *            The initial capacity.
+     */
+    IntList(final int capacity) {
+        this.elements = new int[Math.max(capacity, 4)];
+    }
+
+    void add(final int element) {
+        if (this.size == this.elements.length) {
+            this.elements = Arrays.copyOf(this.elements, this.size << 1);
+        }
+        if (this.size > 0 && this.elements[this.size - 1] >= element) {
+            this.ascending = false;
+        }
+        this.elements[this.size++] = element;
+    }
+
+    int get(final int index) {
+        return this.elements[index];
+    }
+
+    void set(final int index, final int element) {
+        this.elements[index] = element;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    void truncate(final int size) {
+        this.size = size;
+    }
+
+    void clear() {
+        this.size = 0;
+        this.ascending = true;
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(this.elements, this.size);
+    }
+
+    /**
+     * Creates an array of the distinct elements in ascending order.
+     *
+     * @return The sorted array.
+     */
+    int[] toSortedArray() {
+        final int[] array = this.toArray();
+        if (this.ascending) {
+            return array;
+        }
+        Arrays.sort(array);
+        int length = 0;
+        for (int i = 0; i < array.length; i++) {
+            if (length == 0 || array[length - 1] != array[i]) {
+                array[length++] = array[i];
+            }
+        }
+        return Arrays.copyOf(array, length);
+    }
+}
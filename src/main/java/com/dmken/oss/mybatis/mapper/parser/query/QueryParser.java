@@ -0,0 +1,268 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.dmken.oss.mybatis.mapper.parser.query.XmlQuery.ParameterPredicate;
+import com.dmken.oss.mybatis.mapper.parser.query.XmlQuery.PathPredicate;
+import com.dmken.oss.mybatis.mapper.parser.query.XmlQuery.PositionPredicate;
+import com.dmken.oss.mybatis.mapper.parser.query.XmlQuery.Predicate;
+import com.dmken.oss.mybatis.mapper.parser.query.XmlQuery.Step;
+import com.dmken.oss.mybatis.mapper.parser.query.exception.QueryException;
+
+/**
+ * The parser compiling query expressions into {@link XmlQuery queries}. See
+ * {@link XmlQuery} for the syntax.
+ *
+ */
+class QueryParser {
+    /**
+     * The expression to parse.
+     *
+     */
+    private final String expression;
+    /**
+     * The position of the next character.
+     *
+     */
+    private int position;
+
+    /**
+     * Constructor of QueryParser.
+     *
+     * @param expression
+     *            The expression to parse.
+     */
+    QueryParser(final String expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * Parses the expression.
+     *
+     * @return The compiled query.
+     * @throws QueryException
+     *             If the expression is invalid.
+     */
+    XmlQuery parse() throws QueryException {
+        this.skipWhitespace();
+        final XmlQuery query = this.parsePath(0);
+        this.skipWhitespace();
+        if (this.position < this.expression.length()) {
+            throw this.error("Unexpected character '" + this.expression.charAt(this.position) + "'!");
+        }
+        return query;
+    }
+
+    /**
+     * Parses a (possibly relative) path.
+     *
+     * @param start
+     *            The position the path starts at.
+     * @return The query representing the path.
+     * @throws QueryException
+     *             If the path is invalid.
+     */
+    private XmlQuery parsePath(final int start) throws QueryException {
+        final List<Step> steps = new ArrayList<>();
+        boolean descendant = false;
+        if (this.consume("//")) {
+            descendant = true;
+        } else if (this.consume("/")) {
+            if (this.atEndOfPath()) {
+                // Only the document itself.
+                return new XmlQuery(this.expression.substring(start, this.position), steps, null, false);
+            }
+        }
+
+        while (true) {
+            if (this.consume("@")) {
+                if (descendant) {
+                    steps.add(new Step(true, null, new ArrayList<>()));
+                }
+                final String parameter = this.parseName();
+                return new XmlQuery(this.expression.substring(start, this.position), steps, parameter, false);
+            } else if (this.consume("text()")) {
+                if (descendant) {
+                    steps.add(new Step(true, null, new ArrayList<>()));
+                }
+                return new XmlQuery(this.expression.substring(start, this.position), steps, null, true);
+            } else if (this.peek() == '.') {
+                this.position++;
+                if (descendant) {
+                    throw this.error("Unexpected '.' after '//'!");
+                }
+            } else {
+                final String name = this.consume("*") ? null : this.parseName();
+                steps.add(new Step(descendant, name, this.parsePredicates()));
+            }
+
+            if (this.consume("//")) {
+                descendant = true;
+            } else if (this.consume("/")) {
+                descendant = false;
+            } else {
+                return new XmlQuery(this.expression.substring(start, this.position), steps, null, false);
+            }
+        }
+    }
+
+    private List<Predicate> parsePredicates() throws QueryException {
+        final List<Predicate> predicates = new ArrayList<>();
+        while (this.consume("[")) {
+            this.skipWhitespace();
+            if (Character.isDigit(this.peek())) {
+                final int start = this.position;
+                int position = 0;
+                while (Character.isDigit(this.peek())) {
+                    final int digit = Character.digit(this.peek(), 10);
+                    if (position > (Integer.MAX_VALUE - digit) / 10) {
+                        this.position = start;
+                        throw this.error("Position too large!");
+                    }
+                    position = position * 10 + digit;
+                    this.position++;
+                }
+                if (position < 1) {
+                    throw this.error("Positions start at 1!");
+                }
+                predicates.add(new PositionPredicate(position));
+            } else {
+                do {
+                    this.skipWhitespace();
+                    predicates.add(this.parseCondition());
+                    this.skipWhitespace();
+                } while (this.consumeKeyword("and"));
+            }
+            this.skipWhitespace();
+            this.expect("]");
+        }
+        return predicates;
+    }
+
+    private Predicate parseCondition() throws QueryException {
+        if (this.peek() == '/') {
+            throw this.error("Absolute paths are not supported in predicates!");
+        }
+        if (!this.consume("@")) {
+            return new PathPredicate(this.parsePath(this.position));
+        }
+
+        final String name = this.parseName();
+        this.skipWhitespace();
+        final boolean negated;
+        if (this.consume("!=")) {
+            negated = true;
+        } else if (this.consume("=")) {
+            negated = false;
+        } else {
+            return new ParameterPredicate(name, null, false);
+        }
+        this.skipWhitespace();
+        return new ParameterPredicate(name, this.parseLiteral(), negated);
+    }
+
+    private String parseLiteral() throws QueryException {
+        final char quote = this.peek();
+        if (quote != '\'' && quote != '"') {
+            throw this.error("Expected string literal!");
+        }
+        final int end = this.expression.indexOf(quote, this.position + 1);
+        if (end < 0) {
+            throw this.error("Unterminated string literal!");
+        }
+        final String literal = this.expression.substring(this.position + 1, end);
+        this.position = end + 1;
+        return literal;
+    }
+
+    private String parseName() throws QueryException {
+        final int start = this.position;
+        if (!QueryParser.isNameStart(this.peek())) {
+            throw this.error("Expected name!");
+        }
+        while (QueryParser.isNamePart(this.peek())) {
+            this.position++;
+        }
+        return this.expression.substring(start, this.position);
+    }
+
+    private boolean atEndOfPath() {
+        final char c = this.peek();
+        return c == 0 || c == ']' || Character.isWhitespace(c);
+    }
+
+    private boolean consumeKeyword(final String keyword) {
+        if (this.expression.startsWith(keyword, this.position)
+                && !QueryParser.isNamePart(this.charAt(this.position + keyword.length()))) {
+            this.position += keyword.length();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean consume(final String token) {
+        if (this.expression.startsWith(token, this.position)) {
+            this.position += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final String token) throws QueryException {
+        if (!this.consume(token)) {
+            throw this.error("Expected '" + token + "'!");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (Character.isWhitespace(this.peek())) {
+            this.position++;
+        }
+    }
+
+    /**
+     * Retrieves the next character without consuming it.
+     *
+     * @return The next character or <code>0</code> at the end of the
+     *         expression.
+     */
+    private char peek() {
+        return this.charAt(this.position);
+    }
+
+    private char charAt(final int index) {
+        return index < this.expression.length() ? this.expression.charAt(index) : 0;
+    }
+
+    private QueryException error(final String message) {
+        return new QueryException(this.expression, this.position, message);
+    }
+
+    private static boolean isNameStart(final char c) {
+        return Character.isLetter(c) || c == '_' || c == ':';
+    }
+
+    private static boolean isNamePart(final char c) {
+        return QueryParser.isNameStart(c) || Character.isDigit(c) || c == '-' || c == '.';
+    }
+}
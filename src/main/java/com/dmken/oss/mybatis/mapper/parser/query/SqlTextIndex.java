@@ -0,0 +1,445 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.query;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.dmken.oss.mybatis.mapper.parser.binary.VarIntUtil;
+import com.dmken.oss.mybatis.mapper.parser.sql.IncludeResolver;
+import com.dmken.oss.mybatis.mapper.parser.sql.MapperStatement;
+import com.dmken.oss.mybatis.mapper.parser.sql.SqlLexer;
+import com.dmken.oss.mybatis.mapper.parser.sql.SqlLexer.TokenType;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.SimpleXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+
+/**
+ * An inverted index from the identifiers used in the SQL text of statements
+ * (tables, columns, aliases, keywords, ...) to the statements, e.g. to find
+ * all statements referencing a table during a schema migration.
+ *
+ * <p>
+ * The index is built over {@link IncludeResolver expanded} statements, so
+ * identifiers of included fragments count for the including statement. The
+ * text of all branches of the dynamic SQL is indexed, but not the parameters
+ * of the tags (e.g. the OGNL expressions of <code>&lt;if test="..."&gt;</code>
+ * ). Literals and parameters (<code>#{...}</code>, <code>${...}</code>) are
+ * not indexed. Terms are case-insensitive; qualified names (e.g.
+ * <code>s.users</code>) are indexed both as a whole and by their parts.
+ * </p>
+ *
+ * <p>
+ * The terms are kept in a sorted array and the posting list of every term is
+ * a sorted <code>int[]</code> of statement numbers, so a lookup is a binary
+ * search and lists can be intersected by merging. The index can be
+ * {@link #write(OutputStream) persisted} in a compact binary format (posting
+ * lists are delta-encoded varints) and {@link #read(InputStream) read} again.
+ * </p>
+ *
+ * <p>
+ * This class is immutable and thread-safe.
+ * </p>
+ *
+ */
+public final class SqlTextIndex {
+    /**
+     * The magic number every persisted index starts with (<code>MMSI</code>).
+     *
+     */
+    private static final int MAGIC = 0x4D4D5349;
+    /**
+     * The version of the persisted format. Has to be incremented whenever the
+     * format changes.
+     *
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The qualified IDs of the statements by their number.
+     *
+     */
+    private final String[] statementIds;
+    /**
+     * The terms in ascending order.
+     *
+     */
+    private final String[] terms;
+    /**
+     * The sorted statement numbers of every term.
+     *
+     */
+    private final int[][] postings;
+
+    /**
+     * Constructor of SqlTextIndex.
+     *
+     * @param statementIds
+     *            The {@link #statementIds} to set.
+     * @param terms
+     *            The {@link #terms} to set.
+     * @param postings
+     *            The {@link #postings} to set.
+     */
+    private SqlTextIndex(final String[] statementIds, final String[] terms, final int[][] postings) {
+        this.statementIds = statementIds;
+        this.terms = terms;
+        this.postings = postings;
+    }
+
+    /**
+     * Builds the index over the given statements.
+     *
+     * @param statements
+     *            The statements (e.g. from {@link IncludeResolver#getStatements()}
+     *            ).
+     * @return The index.
+     */
+    public static SqlTextIndex build(final Collection<MapperStatement> statements) {
+        final String[] statementIds = new String[statements.size()];
+        final Map<String, IntList> postings = new HashMap<>();
+        int number = 0;
+        for (final MapperStatement statement : statements) {
+            statementIds[number] = statement.getQualifiedId();
+            if (statement.getTag() instanceof XmlTag) {
+                SqlTextIndex.collect((XmlTag) statement.getTag(), number, postings);
+            }
+            number++;
+        }
+
+        final String[] terms = postings.keySet().toArray(new String[postings.size()]);
+        Arrays.sort(terms);
+        final int[][] lists = new int[terms.length][];
+        for (int i = 0; i < terms.length; i++) {
+            lists[i] = postings.get(terms[i]).toArray();
+        }
+        return new SqlTextIndex(statementIds, terms, lists);
+    }
+
+    /**
+     * Adds the terms of the SQL text of the given tag and its descendants to
+     * the posting lists.
+     *
+     * @param tag
+     *            The tag.
+     * @param number
+     *            The number of the statement.
+     * @param postings
+     *            The posting lists by term.
+     */
+    private static void collect(final XmlTag tag, final int number, final Map<String, IntList> postings) {
+        for (final AbstractXmlValue child : tag.getChildren()) {
+            if (child instanceof SimpleXmlValue) {
+                SqlTextIndex.tokenize(((SimpleXmlValue) child).getData(), number, postings);
+            } else if (child instanceof XmlTag) {
+                SqlTextIndex.collect((XmlTag) child, number, postings);
+            }
+        }
+    }
+
+    /**
+     * Adds the terms of the given SQL text to the posting lists.
+     *
+     * @param sql
+     *            The SQL text.
+     * @param number
+     *            The number of the statement.
+     * @param postings
+     *            The posting lists by term.
+     */
+    private static void tokenize(final String sql, final int number, final Map<String, IntList> postings) {
+        final SqlLexer lexer = new SqlLexer(sql);
+        // The qualified name ending at the last identifier, if any.
+        String qualified = null;
+        boolean afterDot = false;
+        TokenType type;
+        while ((type = lexer.next()) != null) {
+            if (type == TokenType.IDENTIFIER || type == TokenType.QUOTED_IDENTIFIER) {
+                final String term = lexer.getText().toLowerCase(Locale.ROOT);
+                SqlTextIndex.add(term, number, postings);
+                if (afterDot && qualified != null) {
+                    qualified = qualified + '.' + term;
+                    SqlTextIndex.add(qualified, number, postings);
+                } else {
+                    qualified = term;
+                }
+                afterDot = false;
+            } else if (type == TokenType.SYMBOL && lexer.is(".") && !afterDot) {
+                afterDot = true;
+            } else {
+                qualified = null;
+                afterDot = false;
+            }
+        }
+    }
+
+    /**
+     * Adds the given statement to the posting list of the given term unless
+     * it was added already.
+     *
+     * @param term
+     *            The term.
+     * @param number
+     *            The number of the statement.
+     * @param postings
+     *            The posting lists by term.
+     */
+    private static void add(final String term, final int number, final Map<String, IntList> postings) {
+        final IntList list = postings.computeIfAbsent(term, key -> new IntList(4));
+        // The statements are added in ascending order.
+        if (list.size() == 0 || list.get(list.size() - 1) != number) {
+            list.add(number);
+        }
+    }
+
+    /**
+     * Finds the statements whose SQL text contains the given term.
+     *
+     * @param term
+     *            The term (an identifier or a qualified name; the case is
+     *            ignored).
+     * @return The qualified IDs of the statements in the order they were
+     *         indexed.
+     */
+    public List<String> find(final String term) {
+        return this.toIds(this.postings(term));
+    }
+
+    /**
+     * Finds the statements whose SQL text contains all of the given terms.
+     *
+     * @param terms
+     *            The terms (identifiers or qualified names; the case is
+     *            ignored).
+     * @return The qualified IDs of the statements in the order they were
+     *         indexed.
+     */
+    public List<String> findAll(final String... terms) {
+        if (terms.length == 0) {
+            return Collections.emptyList();
+        }
+        final int[][] lists = new int[terms.length][];
+        for (int i = 0; i < terms.length; i++) {
+            lists[i] = this.postings(terms[i]);
+        }
+        // Intersecting the shortest lists first keeps the intermediate
+        // results small.
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        int[] result = lists[0];
+        for (int i = 1; i < lists.length && result.length > 0; i++) {
+            result = SqlTextIndex.intersect(result, lists[i]);
+        }
+        return this.toIds(result);
+    }
+
+    /**
+     * Retrieves the number of indexed statements.
+     *
+     * @return The number of statements.
+     */
+    public int getStatementCount() {
+        return this.statementIds.length;
+    }
+
+    /**
+     * Retrieves the number of distinct terms.
+     *
+     * @return The number of terms.
+     */
+    public int getTermCount() {
+        return this.terms.length;
+    }
+
+    /**
+     * Writes this index to the given output stream.
+     *
+     * @param out
+     *            The output stream. Is not closed.
+     * @throws IOException
+     *             If the output stream fails.
+     */
+    public void write(final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(SqlTextIndex.MAGIC);
+        data.writeInt(SqlTextIndex.FORMAT_VERSION);
+        VarIntUtil.write(data, this.statementIds.length);
+        for (final String statementId : this.statementIds) {
+            data.writeUTF(statementId);
+        }
+        VarIntUtil.write(data, this.terms.length);
+        for (int i = 0; i < this.terms.length; i++) {
+            data.writeUTF(this.terms[i]);
+            final int[] list = this.postings[i];
+            VarIntUtil.write(data, list.length);
+            int previous = -1;
+            for (final int number : list) {
+                VarIntUtil.write(data, number - previous);
+                previous = number;
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads an index that was {@link #write(OutputStream) written} before.
+     * Exactly the bytes of the index are read, so the stream may continue
+     * with other data. As the stream is read byte by byte, it should be
+     * buffered.
+     *
+     * <p>
+     * The counts and statement numbers are validated, so a corrupt index is
+     * reported as an {@link IOException}; the arrays grow with the data that
+     * is actually read rather than being allocated for the stored counts.
+     * </p>
+     *
+     * @param in
+     *            The input stream. Is not closed.
+     * @return The index.
+     * @throws IOException
+     *             If the input stream fails or does not contain a valid index.
+     */
+    public static SqlTextIndex read(final InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != SqlTextIndex.MAGIC) {
+            throw new IOException("Not a SQL text index!");
+        }
+        final int version = data.readInt();
+        if (version != SqlTextIndex.FORMAT_VERSION) {
+            throw new IOException("Unsupported SQL text index version " + version + "!");
+        }
+        final int statementCount = SqlTextIndex.readCount(data, Integer.MAX_VALUE, "statement count");
+        final List<String> statementIds = new ArrayList<>(Math.min(statementCount, 1024));
+        for (int i = 0; i < statementCount; i++) {
+            statementIds.add(data.readUTF());
+        }
+        final int termCount = SqlTextIndex.readCount(data, Integer.MAX_VALUE, "term count");
+        final List<String> terms = new ArrayList<>(Math.min(termCount, 1024));
+        final List<int[]> postings = new ArrayList<>(Math.min(termCount, 1024));
+        for (int i = 0; i < termCount; i++) {
+            final String term = data.readUTF();
+            if (i > 0 && terms.get(i - 1).compareTo(term) >= 0) {
+                throw new IOException("Terms of the SQL text index not sorted!");
+            }
+            terms.add(term);
+            // The statement numbers are distinct, so there are not more of
+            // them than statements.
+            final int[] list = new int[SqlTextIndex.readCount(data, statementCount, "posting list length")];
+            int previous = -1;
+            for (int j = 0; j < list.length; j++) {
+                final int delta = VarIntUtil.read(data);
+                if (delta <= 0 || delta >= (long) statementCount - previous) {
+                    throw new IOException("Invalid statement number delta " + delta + " in the SQL text index!");
+                }
+                previous += delta;
+                list[j] = previous;
+            }
+            postings.add(list);
+        }
+        return new SqlTextIndex(statementIds.toArray(new String[statementCount]), terms.toArray(new String[termCount]),
+                postings.toArray(new int[termCount][]));
+    }
+
+    /**
+     * Looks up the posting list of the given term.
+     *
+     * @param term
+     *            The term.
+     * @return The posting list (empty if the term is unknown).
+     */
+    private int[] postings(final String term) {
+        final int index = Arrays.binarySearch(this.terms, term.toLowerCase(Locale.ROOT));
+        return index < 0 ? new int[0] : this.postings[index];
+    }
+
+    /**
+     * Maps the given statement numbers to the qualified IDs.
+     *
+     * @param numbers
+     *            The statement numbers.
+     * @return The qualified IDs.
+     */
+    private List<String> toIds(final int[] numbers) {
+        final List<String> ids = new ArrayList<>(numbers.length);
+        for (final int number : numbers) {
+            ids.add(this.statementIds[number]);
+        }
+        return ids;
+    }
+
+    /**
+     * Intersects the given sorted lists.
+     *
+     * @param a
+     *            The first list.
+     * @param b
+     *            The second list.
+     * @return The sorted numbers contained in both lists.
+     */
+    private static int[] intersect(final int[] a, final int[] b) {
+        final int[] result = new int[Math.min(a.length, b.length)];
+        int length = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[length++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    /**
+     * Reads a count.
+     *
+     * @param in
+     *            The input stream.
+     * @param max
+     *            The maximum valid count.
+     * @param what
+     *            The description of the count for the error message.
+     * @return The count.
+     * @throws IOException
+     *             If the input stream fails or the count is negative or
+     *             greater than the maximum.
+     */
+    private static int readCount(final DataInputStream in, final int max, final String what) throws IOException {
+        final int count = VarIntUtil.read(in);
+        if (count < 0 || count > max) {
+            throw new IOException("Invalid " + what + " " + count + " in the SQL text index!");
+        }
+        return count;
+    }
+}
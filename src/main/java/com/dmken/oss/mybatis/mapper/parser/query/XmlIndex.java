@@ -0,0 +1,276 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+
+/**
+ * An index over the tags of a document that is used to evaluate
+ * {@link XmlQuery queries}.
+ *
+ * <p>
+ * On creation, the tags are numbered in document order (pre-order), and the
+ * number of the last descendant and the parent of every tag is recorded. Thus,
+ * the descendants of a tag form a contiguous range of numbers. Indexes from the
+ * tag name and from the <code>id</code> parameter to the sorted numbers of the
+ * tags are built lazily when they are first used by a query, so descendants
+ * with a specific name or ID are found by binary search instead of walking the
+ * subtree. Keeping an index for a document therefore pays off if the document
+ * is queried repeatedly.
+ * </p>
+ *
+ * <p>
+ * This class is thread-safe. The tree must not be modified after the index was
+ * created.
+ * </p>
+ *
+ */
+public class XmlIndex {
+    /**
+     * The name of the parameter identifying a tag.
+     *
+     */
+    private static final String ID_PARAMETER = "id";
+
+    /**
+     * The tags in document order.
+     *
+     */
+    private final AbstractXmlTag[] tags;
+    /**
+     * The number of the last descendant of every tag (or the number of the tag
+     * itself if it has no children).
+     *
+     */
+    private final int[] ends;
+    /**
+     * The number of the parent of every tag (<code>-1</code> for the root).
+     *
+     */
+    private final int[] parents;
+
+    /**
+     * The tag numbers by tag name. Built lazily.
+     *
+     */
+    private volatile Map<String, int[]> byName;
+    /**
+     * The tag numbers by ID. Built lazily.
+     *
+     */
+    private volatile Map<String, int[]> byId;
+
+    /**
+     * Constructor of XmlIndex.
+     *
+     * @param document
+     *            The document to index.
+     */
+    public XmlIndex(final XmlDocument document) {
+        this(document.getRootTag());
+    }
+
+    /**
+     * Constructor of XmlIndex.
+     *
+     * @param root
+     *            The root of the tree to index. May be <code>null</code>.
+     */
+    public XmlIndex(final AbstractXmlTag root) {
+        final List<AbstractXmlTag> tags = new ArrayList<>();
+        final IntList ends = new IntList(64);
+        final IntList parents = new IntList(64);
+        if (root != null) {
+            XmlIndex.collect(root, -1, tags, ends, parents);
+        }
+        this.tags = tags.toArray(new AbstractXmlTag[tags.size()]);
+        this.ends = ends.toArray();
+        this.parents = parents.toArray();
+    }
+
+    /**
+     * Numbers the given tag and all of its descendants.
+     *
+     * @param tag
+     *            The tag.
+     * @param parent
+     *            The number of the parent.
+     * @param tags
+     *            The tags numbered so far.
+     * @param ends
+     *            The ends of the tags numbered so far.
+     * @param parents
+     *            The parents of the tags numbered so far.
+     */
+    private static void collect(final AbstractXmlTag tag, final int parent, final List<AbstractXmlTag> tags, final IntList ends,
+            final IntList parents) {
+        final int number = tags.size();
+        tags.add(tag);
+        ends.add(number);
+        parents.add(parent);
+        if (tag instanceof XmlTag) {
+            for (final AbstractXmlValue child : ((XmlTag) tag).getChildren()) {
+                if (child instanceof AbstractXmlTag) {
+                    XmlIndex.collect((AbstractXmlTag) child, number, tags, ends, parents);
+                }
+            }
+        }
+        ends.set(number, tags.size() - 1);
+    }
+
+    /**
+     * Retrieves all tags with the given name in document order.
+     *
+     * @param name
+     *            The name.
+     * @return The tags.
+     */
+    public List<AbstractXmlTag> getTagsByName(final String name) {
+        return this.toTags(this.byName(name));
+    }
+
+    /**
+     * Retrieves all tags with the given <code>id</code> parameter in document
+     * order.
+     *
+     * @param id
+     *            The ID.
+     * @return The tags.
+     */
+    public List<AbstractXmlTag> getTagsById(final String id) {
+        return this.toTags(this.byId(id));
+    }
+
+    /**
+     * Retrieves the first tag with the given <code>id</code> parameter.
+     *
+     * @param id
+     *            The ID.
+     * @return The tag or <code>null</code> if no tag has the given ID.
+     */
+    public AbstractXmlTag getTagById(final String id) {
+        final int[] numbers = this.byId(id);
+        return numbers.length == 0 ? null : this.tags[numbers[0]];
+    }
+
+    /**
+     * Retrieves the number of indexed tags.
+     *
+     * @return The number of tags.
+     */
+    public int getTagCount() {
+        return this.tags.length;
+    }
+
+    AbstractXmlTag tag(final int number) {
+        return this.tags[number];
+    }
+
+    /**
+     * Retrieves the number of the last descendant of the given tag. The
+     * number <code>-1</code> denotes the document containing the root.
+     *
+     * @param number
+     *            The number of the tag.
+     * @return The number of the last descendant.
+     */
+    int end(final int number) {
+        return number < 0 ? this.tags.length - 1 : this.ends[number];
+    }
+
+    int parent(final int number) {
+        return this.parents[number];
+    }
+
+    /**
+     * Retrieves the sorted numbers of all tags with the given name.
+     *
+     * @param name
+     *            The name.
+     * @return The numbers. Must not be modified.
+     */
+    int[] byName(final String name) {
+        Map<String, int[]> byName = this.byName;
+        if (byName == null) {
+            // Building the index twice on concurrent first use is harmless.
+            this.byName = byName = this.group(false);
+        }
+        final int[] numbers = byName.get(name);
+        return numbers == null ? new int[0] : numbers;
+    }
+
+    /**
+     * Retrieves the sorted numbers of all tags with the given ID.
+     *
+     * @param id
+     *            The ID.
+     * @return The numbers. Must not be modified.
+     */
+    int[] byId(final String id) {
+        Map<String, int[]> byId = this.byId;
+        if (byId == null) {
+            this.byId = byId = this.group(true);
+        }
+        final int[] numbers = byId.get(id);
+        return numbers == null ? new int[0] : numbers;
+    }
+
+    /**
+     * Groups the tag numbers by name or ID.
+     *
+     * @param id
+     *            Whether to group by ID instead of by name.
+     * @return The sorted numbers by key.
+     */
+    private Map<String, int[]> group(final boolean id) {
+        final Map<String, IntList> lists = new HashMap<>();
+        for (int i = 0; i < this.tags.length; i++) {
+            final String key = id ? this.tags[i].getParameters().get(XmlIndex.ID_PARAMETER) : this.tags[i].getName();
+            if (key != null) {
+                lists.computeIfAbsent(key, k -> new IntList(4)).add(i);
+            }
+        }
+        final Map<String, int[]> groups = new HashMap<>(lists.size() * 4 / 3 + 1);
+        for (final Map.Entry<String, IntList> entry : lists.entrySet()) {
+            groups.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return groups;
+    }
+
+    private List<AbstractXmlTag> toTags(final int[] numbers) {
+        if (numbers.length == 0) {
+            return Collections.emptyList();
+        }
+        final List<AbstractXmlTag> tags = new ArrayList<>(numbers.length);
+        for (final int number : numbers) {
+            tags.add(this.tags[number]);
+        }
+        return tags;
+    }
+}
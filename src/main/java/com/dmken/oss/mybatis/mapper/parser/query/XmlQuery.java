@@ -0,0 +1,610 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.dmken.oss.mybatis.mapper.parser.query.exception.QueryException;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.SimpleXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+
+/**
+ * A compiled query selecting values of an XML tree.
+ *
+ * <p>
+ * The query language is a subset of XPath:
+ * </p>
+ *
+ * <ul>
+ * <li><code>/a/b</code> selects the <code>b</code> children of the root tag
+ * <code>a</code>, <code>//b</code> selects all <code>b</code> tags and
+ * <code>a//b</code> selects all <code>b</code> descendants of <code>a</code>.
+ * <code>*</code> matches tags of any name, <code>.</code> is the current
+ * tag.</li>
+ * <li>Predicates filter the tags selected by a step:
+ * <code>[@test]</code> (the parameter exists), <code>[@id='x']</code>,
+ * <code>[@id!='x']</code>, <code>[foreach]</code> or
+ * <code>[.//foreach/@collection]</code> (the relative path selects anything),
+ * <code>[2]</code> (the second match of the same parent). Conditions can be
+ * combined with <code>and</code>.</li>
+ * <li>The last step may select the parameters (<code>//if/@test</code>) or
+ * the text values (<code>//select/text()</code>) of the tags.</li>
+ * </ul>
+ *
+ * <p>
+ * Queries are evaluated against an {@link XmlIndex index}. Descendant steps
+ * use the name index (or the ID index for <code>[@id='x']</code>) of the index,
+ * so they do not walk the subtree. Queries are immutable and can be reused and
+ * shared between threads.
+ * </p>
+ *
+ */
+public class XmlQuery {
+    /**
+     * The expression this query was compiled from.
+     *
+     */
+    private final String expression;
+    /**
+     * The steps selecting tags.
+     *
+     */
+    private final List<Step> steps;
+    /**
+     * The parameter selected from the tags or <code>null</code>.
+     *
+     */
+    private final String parameter;
+    /**
+     * Whether the text values of the tags are selected.
+     *
+     */
+    private final boolean text;
+
+    /**
+     * Constructor of XmlQuery.
+     *
+     * @param expression
+     *            The {@link #expression} to set.
+     * @param steps
+     *            The {@link #steps} to set.
+     * @param parameter
+     *            The {@link #parameter} to set.
+     * @param text
+     *            The {@link #text} to set.
+     */
+    XmlQuery(final String expression, final List<Step> steps, final String parameter, final boolean text) {
+        this.expression = expression;
+        this.steps = steps;
+        this.parameter = parameter;
+        this.text = text;
+    }
+
+    /**
+     * Compiles the given expression.
+     *
+     * @param expression
+     *            The expression.
+     * @return The compiled query.
+     * @throws QueryException
+     *             If the expression is invalid.
+     */
+    public static XmlQuery compile(final String expression) throws QueryException {
+        return new QueryParser(expression).parse();
+    }
+
+    /**
+     * Selects the tags (or text values, if the query ends with
+     * <code>text()</code>) of the given document. If the query ends with a
+     * parameter, the tags having the parameter are selected.
+     *
+     * <p>
+     * This builds a temporary index. Use {@link #select(XmlIndex)} to query a
+     * document repeatedly.
+     * </p>
+     *
+     * @param document
+     *            The document.
+     * @return The selected values in document order.
+     */
+    public List<AbstractXmlValue> select(final XmlDocument document) {
+        return this.select(new XmlIndex(document));
+    }
+
+    /**
+     * Selects the tags (or text values, if the query ends with
+     * <code>text()</code>) of the indexed document. If the query ends with a
+     * parameter, the tags having the parameter are selected.
+     *
+     * @param index
+     *            The index of the document.
+     * @return The selected values in document order.
+     */
+    public List<AbstractXmlValue> select(final XmlIndex index) {
+        final int[] tags = this.evaluate(index, XmlQuery.documentContext());
+        final List<AbstractXmlValue> values = new ArrayList<>(tags.length);
+        for (final int number : tags) {
+            final AbstractXmlTag tag = index.tag(number);
+            if (this.text) {
+                XmlQuery.addTextValues(tag, values);
+            } else {
+                values.add(tag);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Selects the string values of the given document. See
+     * {@link #selectValues(XmlIndex)}.
+     *
+     * <p>
+     * This builds a temporary index. Use {@link #selectValues(XmlIndex)} to
+     * query a document repeatedly.
+     * </p>
+     *
+     * @param document
+     *            The document.
+     * @return The selected values in document order.
+     */
+    public List<String> selectValues(final XmlDocument document) {
+        return this.selectValues(new XmlIndex(document));
+    }
+
+    /**
+     * Selects the string values of the indexed document: The parameter values
+     * if the query ends with a parameter, the text values if the query ends
+     * with <code>text()</code> and otherwise the text content of the tags
+     * (all descendant text values separated by a space).
+     *
+     * @param index
+     *            The index of the document.
+     * @return The selected values in document order.
+     */
+    public List<String> selectValues(final XmlIndex index) {
+        final int[] tags = this.evaluate(index, XmlQuery.documentContext());
+        final List<String> values = new ArrayList<>(tags.length);
+        for (final int number : tags) {
+            final AbstractXmlTag tag = index.tag(number);
+            if (this.parameter != null) {
+                values.add(tag.getParameters().get(this.parameter));
+            } else if (this.text) {
+                final List<AbstractXmlValue> textValues = new ArrayList<>();
+                XmlQuery.addTextValues(tag, textValues);
+                for (final AbstractXmlValue value : textValues) {
+                    values.add(((SimpleXmlValue) value).getData());
+                }
+            } else {
+                final StringBuilder builder = new StringBuilder();
+                XmlQuery.appendTextContent(tag, builder);
+                values.add(builder.toString());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Retrieves the expression this query was compiled from.
+     *
+     * @return The expression.
+     */
+    public String getExpression() {
+        return this.expression;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return this.expression;
+    }
+
+    /**
+     * Evaluates this query.
+     *
+     * @param index
+     *            The index.
+     * @param context
+     *            The sorted numbers of the context tags.
+     * @return The sorted numbers of the selected tags.
+     */
+    int[] evaluate(final XmlIndex index, final int[] context) {
+        int[] tags = context;
+        for (final Step step : this.steps) {
+            if (tags.length == 0) {
+                break;
+            }
+            tags = step.apply(index, tags);
+        }
+        if (this.parameter != null) {
+            final IntList filtered = new IntList(tags.length);
+            for (final int number : tags) {
+                if (number >= 0 && index.tag(number).getParameters().containsKey(this.parameter)) {
+                    filtered.add(number);
+                }
+            }
+            tags = filtered.toArray();
+        } else if (tags.length > 0 && tags[0] < 0) {
+            // The document itself is not a tag.
+            tags = Arrays.copyOfRange(tags, 1, tags.length);
+        }
+        return tags;
+    }
+
+    private static int[] documentContext() {
+        return new int[] { -1 };
+    }
+
+    private static void addTextValues(final AbstractXmlTag tag, final List<AbstractXmlValue> values) {
+        if (tag instanceof XmlTag) {
+            for (final AbstractXmlValue child : ((XmlTag) tag).getChildren()) {
+                if (child instanceof SimpleXmlValue) {
+                    values.add(child);
+                }
+            }
+        }
+    }
+
+    private static void appendTextContent(final AbstractXmlValue value, final StringBuilder builder) {
+        if (value instanceof SimpleXmlValue) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(((SimpleXmlValue) value).getData());
+        } else if (value instanceof XmlTag) {
+            for (final AbstractXmlValue child : ((XmlTag) value).getChildren()) {
+                XmlQuery.appendTextContent(child, builder);
+            }
+        }
+    }
+
+    /**
+     * A location step selecting the children or descendants of the context
+     * tags.
+     *
+     */
+    static final class Step {
+        /**
+         * Whether descendants (instead of children) are selected.
+         *
+         */
+        private final boolean descendant;
+        /**
+         * The name of the selected tags or <code>null</code> for any name.
+         *
+         */
+        private final String name;
+        /**
+         * The predicates filtering the selected tags in order.
+         *
+         */
+        private final List<Predicate> predicates;
+        /**
+         * The predicates if all of them test the tags independently of each
+         * other, <code>null</code> if any predicate depends on the position of
+         * the tags.
+         *
+         */
+        private final List<TagPredicate> tagPredicates;
+        /**
+         * The ID required by a predicate or <code>null</code>. Used to look up
+         * the candidates in the ID index.
+         *
+         */
+        private final String id;
+
+        Step(final boolean descendant, final String name, final List<Predicate> predicates) {
+            this.descendant = descendant;
+            this.name = name;
+            this.predicates = predicates;
+
+            List<TagPredicate> tagPredicates = new ArrayList<>(predicates.size());
+            String id = null;
+            for (final Predicate predicate : predicates) {
+                if (predicate instanceof TagPredicate) {
+                    if (tagPredicates != null) {
+                        tagPredicates.add((TagPredicate) predicate);
+                    }
+                } else {
+                    tagPredicates = null;
+                }
+                if (predicate instanceof ParameterPredicate) {
+                    final ParameterPredicate parameterPredicate = (ParameterPredicate) predicate;
+                    if ("id".equals(parameterPredicate.name) && parameterPredicate.value != null
+                            && !parameterPredicate.negated) {
+                        id = parameterPredicate.value;
+                    }
+                }
+            }
+            this.tagPredicates = tagPredicates;
+            this.id = id;
+        }
+
+        /**
+         * Applies this step to the given context.
+         *
+         * @param index
+         *            The index.
+         * @param context
+         *            The sorted numbers of the context tags.
+         * @return The sorted numbers of the selected tags.
+         */
+        int[] apply(final XmlIndex index, final int[] context) {
+            final IntList result = new IntList(16);
+            if (this.descendant && this.tagPredicates != null) {
+                this.applyDescendant(index, context, result);
+            } else {
+                final int[] parents = this.descendant ? Step.descendantsOrSelf(index, context) : context;
+                final IntList candidates = new IntList(16);
+                for (final int parent : parents) {
+                    candidates.clear();
+                    final int end = index.end(parent);
+                    for (int child = parent + 1; child <= end; child = index.end(child) + 1) {
+                        if (this.name == null || this.name.equals(index.tag(child).getName())) {
+                            candidates.add(child);
+                        }
+                    }
+                    this.filter(index, candidates);
+                    for (int i = 0; i < candidates.size(); i++) {
+                        result.add(candidates.get(i));
+                    }
+                }
+            }
+            return result.toSortedArray();
+        }
+
+        /**
+         * Selects the descendants of the context tags using the name or ID
+         * index.
+         *
+         * @param index
+         *            The index.
+         * @param context
+         *            The sorted numbers of the context tags.
+         * @param result
+         *            The list to add the selected tags to.
+         */
+        private void applyDescendant(final XmlIndex index, final int[] context, final IntList result) {
+            final int[] pool = this.id != null ? index.byId(this.id) : this.name != null ? index.byName(this.name) : null;
+            int covered = -2;
+            for (final int tag : context) {
+                if (tag <= covered) {
+                    // Nested in the previous context tag, so all descendants were already selected.
+                    continue;
+                }
+                final int end = index.end(tag);
+                covered = end;
+                if (pool == null) {
+                    for (int candidate = tag + 1; candidate <= end; candidate++) {
+                        if (this.matches(index, candidate)) {
+                            result.add(candidate);
+                        }
+                    }
+                } else {
+                    for (int i = Step.lowerBound(pool, tag + 1); i < pool.length && pool[i] <= end; i++) {
+                        if (this.matches(index, pool[i])) {
+                            result.add(pool[i]);
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean matches(final XmlIndex index, final int tag) {
+            if (this.name != null && !this.name.equals(index.tag(tag).getName())) {
+                return false;
+            }
+            for (final TagPredicate predicate : this.tagPredicates) {
+                if (!predicate.test(index, tag)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Applies the predicates in order to the given children of a single
+         * parent.
+         *
+         * @param index
+         *            The index.
+         * @param candidates
+         *            The candidates. Filtered in place.
+         */
+        private void filter(final XmlIndex index, final IntList candidates) {
+            for (final Predicate predicate : this.predicates) {
+                predicate.filter(index, candidates);
+            }
+        }
+
+        private static int[] descendantsOrSelf(final XmlIndex index, final int[] context) {
+            final IntList result = new IntList(16);
+            int covered = -2;
+            for (final int tag : context) {
+                if (tag <= covered) {
+                    continue;
+                }
+                covered = index.end(tag);
+                for (int descendant = tag; descendant <= covered; descendant++) {
+                    result.add(descendant);
+                }
+            }
+            return result.toArray();
+        }
+
+        private static int lowerBound(final int[] array, final int key) {
+            int low = 0;
+            int high = array.length;
+            while (low < high) {
+                final int middle = low + high >>> 1;
+                if (array[middle] < key) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * A predicate filtering the candidates of a step that share a parent.
+     *
+     */
+    interface Predicate {
+        /**
+         * Filters the given candidates.
+         *
+         * @param index
+         *            The index.
+         * @param candidates
+         *            The sorted numbers of the candidates sharing a parent.
+         *            Filtered in place.
+         */
+        void filter(XmlIndex index, IntList candidates);
+    }
+
+    /**
+     * A predicate testing every tag on its own, independently of the other
+     * candidates. Steps only consisting of such predicates can select
+     * descendants without grouping them by their parents.
+     *
+     */
+    interface TagPredicate extends Predicate {
+        /**
+         * Tests the given tag.
+         *
+         * @param index
+         *            The index.
+         * @param tag
+         *            The number of the tag.
+         * @return Whether the tag is selected.
+         */
+        boolean test(XmlIndex index, int tag);
+
+        @Override
+        default void filter(final XmlIndex index, final IntList candidates) {
+            int size = 0;
+            for (int i = 0; i < candidates.size(); i++) {
+                if (this.test(index, candidates.get(i))) {
+                    candidates.set(size++, candidates.get(i));
+                }
+            }
+            candidates.truncate(size);
+        }
+    }
+
+    /**
+     * Selects the tag at the given position among the candidates of the same
+     * parent.
+     *
+     */
+    static final class PositionPredicate implements Predicate {
+        /**
+         * The one-based position.
+         *
+         */
+        private final int position;
+
+        PositionPredicate(final int position) {
+            this.position = position;
+        }
+
+        @Override
+        public void filter(final XmlIndex index, final IntList candidates) {
+            if (this.position <= candidates.size()) {
+                candidates.set(0, candidates.get(this.position - 1));
+                candidates.truncate(1);
+            } else {
+                candidates.truncate(0);
+            }
+        }
+    }
+
+    /**
+     * Tests the existence or the value of a parameter.
+     *
+     */
+    static final class ParameterPredicate implements TagPredicate {
+        private final String name;
+        /**
+         * The expected value or <code>null</code> to only test the existence.
+         *
+         */
+        private final String value;
+        /**
+         * Whether the value must not be equal to the expected value.
+         *
+         */
+        private final boolean negated;
+
+        ParameterPredicate(final String name, final String value, final boolean negated) {
+            this.name = name;
+            this.value = value;
+            this.negated = negated;
+        }
+
+        @Override
+        public boolean test(final XmlIndex index, final int tag) {
+            final String actual = index.tag(tag).getParameters().get(this.name);
+            if (actual == null) {
+                return false;
+            }
+            return this.value == null || this.value.equals(actual) != this.negated;
+        }
+    }
+
+    /**
+     * Tests whether a relative path selects anything.
+     *
+     */
+    static final class PathPredicate implements TagPredicate {
+        private final XmlQuery path;
+
+        PathPredicate(final XmlQuery path) {
+            this.path = path;
+        }
+
+        @Override
+        public boolean test(final XmlIndex index, final int tag) {
+            final int[] selected = this.path.evaluate(index, new int[] { tag });
+            if (!this.path.text) {
+                return selected.length > 0;
+            }
+            for (final int number : selected) {
+                final List<AbstractXmlValue> values = new ArrayList<>();
+                XmlQuery.addTextValues(index.tag(number), values);
+                if (!values.isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
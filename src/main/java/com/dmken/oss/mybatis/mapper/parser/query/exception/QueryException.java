@@ -0,0 +1,33 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.query.exception;
+
+@SuppressWarnings("javadoc")
+public class QueryException extends Exception {
+    private static final long serialVersionUID = -3940285817316424745L;
+
+    public QueryException(final String message) {
+        super(message);
+    }
+
+    public QueryException(final String expression, final int position, final String message) {
+        super(message + " Position " + position + " of query " + expression);
+    }
+}
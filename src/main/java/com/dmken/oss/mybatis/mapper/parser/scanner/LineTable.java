@@ -0,0 +1,178 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.scanner;
+
+import java.util.Arrays;
+
+/**
+ * The offsets at which the lines of a source code start. Resolves the offsets
+ * of {@link Token tokens} to lines and columns on demand, so the scanner only
+ * has to track offsets.
+ *
+ * <p>
+ * Line breaks are all line breaks of the Unicode standard, where
+ * <code>\r\n</code> counts as a single line break. Lines and columns start at
+ * <code>1</code>; columns are counted in characters.
+ * </p>
+ *
+ * <p>
+ * The table may be read by one thread while another one (the scanner) adds
+ * lines, e.g. if the tokens are handed over to the parser through a
+ * {@link TokenRing}. The line starts and the line count are published with
+ * volatile writes, so a reader always sees a consistent prefix of the table.
+ * </p>
+ *
+ */
+public final class LineTable {
+    /**
+     * The offsets of the first characters of the lines. The first
+     * {@link #lineCount} entries are valid. Replaced when it is full, before
+     * the {@link #lineCount} is increased.
+     *
+     */
+    private volatile int[] lineStarts = new int[64];
+    /**
+     * The number of lines.
+     *
+     */
+    private volatile int lineCount = 1;
+    /**
+     * The number of the first line.
+     *
+     */
+    private int firstLine = 1;
+
+    /**
+     * Creates a table of a single line that starts at offset <code>0</code>,
+     * so an offset resolves to the given line and the column after the
+     * offset.
+     *
+     * @param line
+     *            The number of the line.
+     * @return The line table.
+     */
+    static LineTable fixed(final int line) {
+        final LineTable table = new LineTable();
+        table.firstLine = line;
+        return table;
+    }
+
+    /**
+     * Adds a line.
+     *
+     * @param start
+     *            The offset of the first character of the line. Must be
+     *            greater than the start of the last line.
+     */
+    void addLine(final int start) {
+        final int count = this.lineCount;
+        int[] starts = this.lineStarts;
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            this.lineStarts = starts;
+        }
+        starts[count] = start;
+        // Publish the new line after its start was written.
+        this.lineCount = count + 1;
+    }
+
+    /**
+     * Moves the start of the last line (e.g. after a <code>\r</code> turned
+     * out to be followed by a <code>\n</code>).
+     *
+     * @param start
+     *            The new offset of the first character of the last line.
+     */
+    void moveLastLine(final int start) {
+        this.lineStarts[this.lineCount - 1] = start;
+    }
+
+    /**
+     * Continues the given line table of the source code before the chunk
+     * this table was built for (e.g. by the {@link ParallelScanner}). The
+     * first line of this table becomes the last line of the given table.
+     *
+     * @param previous
+     *            The line table of the source code before the chunk.
+     */
+    void continueFrom(final LineTable previous) {
+        this.firstLine = previous.firstLine + previous.lineCount - 1;
+        this.lineStarts[0] = previous.lineStarts[previous.lineCount - 1];
+    }
+
+    /**
+     * Retrieves the number of lines.
+     *
+     * @return The number of lines seen so far.
+     */
+    public int getLineCount() {
+        return this.lineCount;
+    }
+
+    /**
+     * Resolves the line of the given offset.
+     *
+     * @param offset
+     *            The offset.
+     * @return The line or <code>-1</code> if the offset is negative (i.e.
+     *         unknown).
+     */
+    public int getLine(final int offset) {
+        if (offset < 0) {
+            return -1;
+        }
+        final int count = this.lineCount;
+        return this.firstLine + LineTable.lineIndex(this.lineStarts, count, offset);
+    }
+
+    /**
+     * Resolves the column of the given offset.
+     *
+     * @param offset
+     *            The offset.
+     * @return The column or <code>-1</code> if the offset is negative (i.e.
+     *         unknown).
+     */
+    public int getColumn(final int offset) {
+        if (offset < 0) {
+            return -1;
+        }
+        // Read the count before the starts (see addLine(int)).
+        final int count = this.lineCount;
+        final int[] starts = this.lineStarts;
+        return offset - starts[LineTable.lineIndex(starts, count, offset)] + 1;
+    }
+
+    /**
+     * Finds the index of the line containing the given offset.
+     *
+     * @param starts
+     *            The {@link #lineStarts}.
+     * @param count
+     *            The {@link #lineCount} (read before the line starts).
+     * @param offset
+     *            The offset.
+     * @return The index into the line starts.
+     */
+    private static int lineIndex(final int[] starts, final int count, final int offset) {
+        final int index = Arrays.binarySearch(starts, 0, count, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+}
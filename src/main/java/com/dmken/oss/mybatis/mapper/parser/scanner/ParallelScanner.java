@@ -0,0 +1,351 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.scanner;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException;
+
+/**
+ * Scans a single large source code in parallel.
+ *
+ * <p>
+ * The source code is split into chunks at speculative boundaries: a
+ * <code>&lt;</code> that is followed by a name or a <code>/</code> and
+ * preferably starts a line, which usually is the start or end tag of an
+ * element. As it is not known whether such a <code>&lt;</code> is part of a
+ * comment or a string, all chunks are scanned on the {@link ForkJoinPool} as
+ * if they started with a token. Afterwards, the seams are verified in order:
+ * The speculation at a seam was correct if the chunk before it (which starts
+ * at a verified boundary) stopped exactly at the <code>&lt;</code> of the
+ * seam. If not, the seam is dropped and the chunk is scanned again up to the
+ * next seam. Hence only the chunks after a failed speculation are scanned a
+ * second time and the result is always the same as scanning the source code
+ * sequentially.
+ * </p>
+ *
+ * <p>
+ * {@link ParserLimits Limits}, {@link com.dmken.oss.mybatis.mapper.parser.metrics.ParseListener
+ * listeners} and {@link XmlScanner#setPreserveSource(boolean) preserving the
+ * source} are not supported, as the parallel mode is meant for large
+ * generated (i.e. trusted) mappers. Use the {@link XmlScanner} for
+ * everything else.
+ * </p>
+ *
+ */
+public final class ParallelScanner {
+    /**
+     * The character set used to decode files (the same as the one of the
+     * {@link XmlScanner}).
+     *
+     */
+    private static final Charset CHARSET = Charset.forName("ASCII");
+    /**
+     * The minimum size of a chunk in characters. Smaller inputs are scanned
+     * sequentially.
+     *
+     */
+    private static final int MIN_CHUNK_SIZE = 1024 * 1024;
+    /**
+     * The number of chunks per thread of the pool, so the load is balanced
+     * even if some chunks are scanned faster than others.
+     *
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+    /**
+     * The maximum number of characters to search for a boundary that starts
+     * a line before falling back to any boundary.
+     *
+     */
+    private static final int LINE_START_SEARCH_LIMIT = 64 * 1024;
+
+    /**
+     * Constructor of ParallelScanner.
+     *
+     */
+    private ParallelScanner() {
+        // Nothing to do.
+    }
+
+    /**
+     * Scans the given file in parallel.
+     *
+     * @param file
+     *            The file.
+     * @param pool
+     *            The pool to scan the chunks on.
+     * @return The token stream.
+     * @throws IOException
+     *             If the file cannot be read.
+     * @throws ScannerException
+     *             If any error occurs.
+     */
+    public static Deque<Token> scan(final Path file, final ForkJoinPool pool) throws IOException, ScannerException {
+        final CharBuffer chars = ParallelScanner.CHARSET.decode(ByteBuffer.wrap(Files.readAllBytes(file)));
+        return ParallelScanner.scan(chars.array(), chars.limit(), pool);
+    }
+
+    /**
+     * Scans the given source code in parallel.
+     *
+     * @param source
+     *            The source code.
+     * @param length
+     *            The number of valid characters in the source code.
+     * @param pool
+     *            The pool to scan the chunks on.
+     * @return The token stream.
+     * @throws ScannerException
+     *             If any error occurs.
+     */
+    public static Deque<Token> scan(final char[] source, final int length, final ForkJoinPool pool) throws ScannerException {
+        final int chunkCount = Math.max(1,
+                Math.min(pool.getParallelism() * ParallelScanner.CHUNKS_PER_THREAD, length / ParallelScanner.MIN_CHUNK_SIZE));
+        return ParallelScanner.scan(source, length, pool, chunkCount);
+    }
+
+    /**
+     * Scans the given source code in parallel.
+     *
+     * @param source
+     *            The source code.
+     * @param length
+     *            The number of valid characters in the source code.
+     * @param pool
+     *            The pool to scan the chunks on.
+     * @param chunkCount
+     *            The number of chunks to split the source code into.
+     * @return The token stream.
+     * @throws ScannerException
+     *             If any error occurs.
+     */
+    static Deque<Token> scan(final char[] source, final int length, final ForkJoinPool pool, final int chunkCount)
+            throws ScannerException {
+        final int[] boundaries = ParallelScanner.split(source, length, chunkCount);
+        final int count = boundaries.length - 1;
+        if (count == 1) {
+            return new XmlScanner(new CharArrayReader(source, 0, length)).scan();
+        }
+
+        final List<ForkJoinTask<Chunk>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int start = boundaries[i];
+            final int stop = i + 1 < count ? boundaries[i + 1] : Integer.MAX_VALUE;
+            tasks.add(pool.submit(() -> ParallelScanner.scanChunk(source, length, start, stop, null)));
+        }
+
+        final List<Chunk> chunks = new ArrayList<>(count);
+        LineTable previous = null;
+        int tokenCount = 0;
+        for (int i = 0; i < count; i++) {
+            final int start = boundaries[i];
+            Chunk chunk = tasks.get(i).join();
+            // The line table of the first chunk and of re-scanned chunks is
+            // already complete.
+            boolean continued = i == 0;
+            while (chunk.tokens == null) {
+                if (i + 1 < count) {
+                    // Drop the seam and scan up to the next one.
+                    tasks.get(++i).cancel(false);
+                } else if (continued) {
+                    throw chunk.failure != null ? chunk.failure : new ScannerException("Unexpected end of stream!");
+                }
+                chunk = ParallelScanner.scanChunk(source, length, start,
+                        i + 1 < count ? boundaries[i + 1] : Integer.MAX_VALUE, previous);
+                continued = true;
+            }
+            if (!continued) {
+                chunk.lines.continueFrom(previous);
+            }
+            previous = chunk.lines;
+            tokenCount += chunk.tokens.size();
+            chunks.add(chunk);
+        }
+
+        final Deque<Token> tokens = new ArrayDeque<>(tokenCount);
+        for (final Chunk chunk : chunks) {
+            tokens.addAll(chunk.tokens);
+        }
+        return tokens;
+    }
+
+    /**
+     * Splits the given source code at speculative boundaries.
+     *
+     * @param source
+     *            The source code.
+     * @param length
+     *            The number of valid characters in the source code.
+     * @param chunkCount
+     *            The desired number of chunks.
+     * @return The offsets of the chunks followed by the length of the source
+     *         code. Contains fewer chunks than desired if no boundaries were
+     *         found.
+     */
+    private static int[] split(final char[] source, final int length, final int chunkCount) {
+        final int[] boundaries = new int[chunkCount + 1];
+        int count = 1;
+        for (int i = 1; i < chunkCount; i++) {
+            final int from = Math.max((int) ((long) length * i / chunkCount), boundaries[count - 1] + 1);
+            final int boundary = ParallelScanner.findBoundary(source, length, from);
+            if (boundary < 0) {
+                break;
+            }
+            if (boundary > boundaries[count - 1]) {
+                boundaries[count++] = boundary;
+            }
+        }
+        boundaries[count] = length;
+        final int[] result = new int[count + 1];
+        System.arraycopy(boundaries, 0, result, 0, count + 1);
+        return result;
+    }
+
+    /**
+     * Finds a speculative boundary.
+     *
+     * @param source
+     *            The source code.
+     * @param length
+     *            The number of valid characters in the source code.
+     * @param from
+     *            The offset to start searching at.
+     * @return The offset of the boundary or <code>-1</code> if there is none.
+     */
+    private static int findBoundary(final char[] source, final int length, final int from) {
+        int fallback = -1;
+        for (int i = from; i < length - 1; i++) {
+            if (source[i] != '<' || !(source[i + 1] == '/' || Character.isAlphabetic(source[i + 1]))) {
+                continue;
+            }
+            if (ParallelScanner.startsLine(source, i)) {
+                return i;
+            }
+            if (fallback < 0) {
+                fallback = i;
+            }
+            if (i - from > ParallelScanner.LINE_START_SEARCH_LIMIT) {
+                break;
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Checks whether the character at the given offset is only preceded by
+     * spaces and tabs in its line.
+     *
+     * @param source
+     *            The source code.
+     * @param offset
+     *            The offset.
+     * @return Whether the character starts the line (ignoring indentation).
+     */
+    private static boolean startsLine(final char[] source, final int offset) {
+        for (int i = offset - 1; i >= 0; i--) {
+            if (source[i] == '\n' || source[i] == '\r') {
+                return true;
+            }
+            if (source[i] != ' ' && source[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scans a chunk.
+     *
+     * @param source
+     *            The source code.
+     * @param length
+     *            The number of valid characters in the source code.
+     * @param start
+     *            The offset of the chunk.
+     * @param stop
+     *            The offset of the next chunk or {@link Integer#MAX_VALUE}
+     *            if this is the last chunk.
+     * @param previous
+     *            The line table of the source code before the chunk or
+     *            <code>null</code> if not known yet.
+     * @return The scanned chunk.
+     */
+    private static Chunk scanChunk(final char[] source, final int length, final int start, final int stop,
+            final LineTable previous) {
+        final int end = stop == Integer.MAX_VALUE ? length : stop + 1;
+        final XmlScanner scanner = new XmlScanner(new CharArrayReader(source, start, end - start), start, previous);
+        try {
+            return new Chunk(scanner.scanChunk(stop), scanner.getLines(), null);
+        } catch (final ScannerException cause) {
+            return new Chunk(null, scanner.getLines(), cause);
+        }
+    }
+
+    /**
+     * The result of scanning a chunk.
+     *
+     */
+    private static final class Chunk {
+        /**
+         * The tokens or <code>null</code> if the chunk did not stop at the
+         * next seam or scanning failed.
+         *
+         */
+        private final Deque<Token> tokens;
+        /**
+         * The line table of the chunk.
+         *
+         */
+        private final LineTable lines;
+        /**
+         * The failure or <code>null</code> if scanning succeeded.
+         *
+         */
+        private final ScannerException failure;
+
+        /**
+         * Constructor of Chunk.
+         *
+         * @param tokens
+         *            The {@link #tokens} to set.
+         * @param lines
+         *            The {@link #lines} to set.
+         * @param failure
+         *            The {@link #failure} to set.
+         */
+        private Chunk(final Deque<Token> tokens, final LineTable lines, final ScannerException failure) {
+            this.tokens = tokens;
+            this.lines = lines;
+            this.failure = failure;
+        }
+    }
+}
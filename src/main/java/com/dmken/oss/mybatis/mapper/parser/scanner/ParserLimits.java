@@ -0,0 +1,119 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.scanner;
+
+import lombok.Data;
+
+/**
+ * Resource limits for scanning and parsing untrusted documents.
+ *
+ * <p>
+ * The limits are enforced by the {@link XmlScanner scanner} while it reads
+ * the input, so a document exceeding a limit is rejected with a
+ * {@link com.dmken.oss.mybatis.mapper.parser.scanner.exception.LimitExceededException}
+ * before it consumes more memory than allowed and before the parser (which
+ * recurses once per nesting level) sees it. Each check is a single integer
+ * comparison per token (or per character for the text length).
+ * </p>
+ *
+ */
+@Data
+public class ParserLimits {
+    /**
+     * No limits at all.
+     *
+     */
+    public static final ParserLimits UNLIMITED = new ParserLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+            Integer.MAX_VALUE);
+    /**
+     * Limits that are generous for any real mapper but stop pathological
+     * inputs: A depth of 256, 4 million tokens, 256 attributes per tag and 1
+     * million characters per token.
+     *
+     */
+    public static final ParserLimits DEFAULT = new ParserLimits(256, 4 * 1024 * 1024, 256, 1024 * 1024);
+
+    /**
+     * The maximum nesting depth of tags.
+     *
+     */
+    private final int maxDepth;
+    /**
+     * The maximum number of tokens of a document.
+     *
+     */
+    private final int maxTokenCount;
+    /**
+     * The maximum number of attributes of a single tag.
+     *
+     */
+    private final int maxAttributeCount;
+    /**
+     * The maximum number of characters of a single token, i.e. of the content
+     * between two tags, of an attribute value or of a name. Also limits the
+     * length of comments, although they are skipped.
+     *
+     */
+    private final int maxTextLength;
+
+    /**
+     * Creates a copy of these limits with the given maximum depth.
+     *
+     * @param maxDepth
+     *            The {@link #maxDepth} to set.
+     * @return The new limits.
+     */
+    public ParserLimits withMaxDepth(final int maxDepth) {
+        return new ParserLimits(maxDepth, this.maxTokenCount, this.maxAttributeCount, this.maxTextLength);
+    }
+
+    /**
+     * Creates a copy of these limits with the given maximum token count.
+     *
+     * @param maxTokenCount
+     *            The {@link #maxTokenCount} to set.
+     * @return The new limits.
+     */
+    public ParserLimits withMaxTokenCount(final int maxTokenCount) {
+        return new ParserLimits(this.maxDepth, maxTokenCount, this.maxAttributeCount, this.maxTextLength);
+    }
+
+    /**
+     * Creates a copy of these limits with the given maximum attribute count.
+     *
+     * @param maxAttributeCount
+     *            The {@link #maxAttributeCount} to set.
+     * @return The new limits.
+     */
+    public ParserLimits withMaxAttributeCount(final int maxAttributeCount) {
+        return new ParserLimits(this.maxDepth, this.maxTokenCount, maxAttributeCount, this.maxTextLength);
+    }
+
+    /**
+     * Creates a copy of these limits with the given maximum text length.
+     *
+     * @param maxTextLength
+     *            The {@link #maxTextLength} to set.
+     * @return The new limits.
+     */
+    public ParserLimits withMaxTextLength(final int maxTextLength) {
+        return new ParserLimits(this.maxDepth, this.maxTokenCount, this.maxAttributeCount, maxTextLength);
+    }
+}
@@ -0,0 +1,193 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.scanner;
+
+import java.util.Arrays;
+
+/**
+ * A bitmap of the structural characters of a character buffer, in the style
+ * of the first stage of simdjson.
+ *
+ * <p>
+ * The index is built in a separate pass over the buffer that classifies four
+ * characters at once by packing them into the 16 bit lanes of a
+ * <code>long</code> (SWAR, SIMD within a register). Afterwards, the scanner
+ * can jump from one structural character to the next by looking at the set
+ * bits instead of inspecting every character.
+ * </p>
+ *
+ * <p>
+ * Structural characters are <code>&lt;</code>, <code>&gt;</code>,
+ * <code>&amp;</code>, <code>"</code>, <code>'</code>, all control characters
+ * (including all ASCII line breaks) and all non-ASCII characters (including
+ * the Unicode line breaks). The index is conservative: A position that is
+ * marked might not be relevant for the scanner, but every position that is
+ * not marked is a character that can be copied as it is without affecting
+ * the line count.
+ * </p>
+ *
+ */
+final class StructuralIndex {
+    /**
+     * The most significant bit of every lane.
+     *
+     */
+    private static final long HIGH_BITS = 0x8000800080008000L;
+    /**
+     * All but the most significant bit of every lane.
+     *
+     */
+    private static final long LOW_BITS = 0x7FFF7FFF7FFF7FFFL;
+    /**
+     * The bits of every lane that are set for non-ASCII characters.
+     *
+     */
+    private static final long NON_ASCII_BITS = 0xFF80FF80FF80FF80L;
+    /**
+     * The first printable character (space) in every lane.
+     *
+     */
+    private static final long SPACES = 0x0020002000200020L;
+
+    /**
+     * The bitmap. Bit <code>i % 64</code> of word <code>i / 64</code> is set
+     * if the character at index <code>i</code> is structural.
+     *
+     */
+    private long[] bits = new long[0];
+
+    /**
+     * Rebuilds the index for the given buffer.
+     *
+     * @param chars
+     *            The buffer.
+     * @param length
+     *            The number of valid characters in the buffer.
+     */
+    void build(final char[] chars, final int length) {
+        this.build(chars, 0, length);
+    }
+
+    /**
+     * Updates the index for the characters of the given buffer that were
+     * appended at the given index. The index of the characters before is
+     * kept.
+     *
+     * @param chars
+     *            The buffer.
+     * @param from
+     *            The index of the first new character.
+     * @param length
+     *            The number of valid characters in the buffer.
+     */
+    void build(final char[] chars, final int from, final int length) {
+        final int words = length + 63 >>> 6;
+        if (this.bits.length < words) {
+            this.bits = from == 0 ? new long[words] : Arrays.copyOf(this.bits, Math.max(words, this.bits.length * 2));
+        }
+        int i = from & ~63;
+        for (int w = from >>> 6; w < words; w++) {
+            final int end = Math.min(length, w + 1 << 6);
+            long word = 0;
+            for (; i + 4 <= end; i += 4) {
+                final long lanes = chars[i] | (long) chars[i + 1] << 16 | (long) chars[i + 2] << 32 | (long) chars[i + 3] << 48;
+                word |= StructuralIndex.classify(lanes) << (i & 63);
+            }
+            for (; i < end; i++) {
+                if (StructuralIndex.isStructural(chars[i])) {
+                    word |= 1L << (i & 63);
+                }
+            }
+            this.bits[w] = word;
+        }
+    }
+
+    /**
+     * Finds the next structural character.
+     *
+     * @param from
+     *            The index to start at (inclusive).
+     * @param limit
+     *            The number of valid characters in the buffer the index was
+     *            built for.
+     * @return The index of the next structural character or
+     *         <code>limit</code> if there is none.
+     */
+    int next(final int from, final int limit) {
+        if (from >= limit) {
+            return limit;
+        }
+        int w = from >>> 6;
+        long word = this.bits[w] & -1L << from;
+        while (word == 0) {
+            if (++w << 6 >= limit) {
+                return limit;
+            }
+            word = this.bits[w];
+        }
+        return Math.min(limit, (w << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    /**
+     * Checks whether the given character is structural.
+     *
+     * @param c
+     *            The character.
+     * @return Whether the character is structural.
+     */
+    static boolean isStructural(final char c) {
+        return c < ' ' || c >= 0x80 || c == '<' || c == '>' || c == '&' || c == '"' || c == '\'';
+    }
+
+    /**
+     * Classifies the four characters in the 16 bit lanes of the given value.
+     *
+     * @param lanes
+     *            The characters, the first one in the least significant lane.
+     * @return A mask with bit <code>i</code> set if the character in lane
+     *         <code>i</code> is structural.
+     */
+    private static long classify(final long lanes) {
+        final long nonAscii = lanes & StructuralIndex.NON_ASCII_BITS;
+        final long flags = ((nonAscii & StructuralIndex.LOW_BITS) + StructuralIndex.LOW_BITS | nonAscii)
+                // Control characters (no lane borrows as every lane is >= 0x8000).
+                | ~((lanes | StructuralIndex.HIGH_BITS) - StructuralIndex.SPACES)
+                // '<' (0x3C) and '>' (0x3E).
+                | StructuralIndex.zeroLanes((lanes | 0x0002000200020002L) ^ 0x003E003E003E003EL)
+                // '&' (0x26) and '\'' (0x27).
+                | StructuralIndex.zeroLanes((lanes | 0x0001000100010001L) ^ 0x0027002700270027L)
+                // '"' (0x22).
+                | StructuralIndex.zeroLanes(lanes ^ 0x0022002200220022L);
+        final long high = flags & StructuralIndex.HIGH_BITS;
+        return high >>> 15 & 1 | high >>> 30 & 2 | high >>> 45 & 4 | high >>> 60 & 8;
+    }
+
+    /**
+     * Finds the lanes that are zero.
+     *
+     * @param lanes
+     *            The lanes.
+     * @return A value with the most significant bit of every zero lane set
+     *         (other bits are undefined).
+     */
+    private static long zeroLanes(final long lanes) {
+        return ~((lanes & StructuralIndex.LOW_BITS) + StructuralIndex.LOW_BITS | lanes);
+    }
+}
@@ -21,6 +21,7 @@ package com.dmken.oss.mybatis.mapper.parser.scanner;
 
 import java.util.Arrays;
 
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -32,18 +33,29 @@ import lombok.RequiredArgsConstructor;
  *
  */
 @Data
-@EqualsAndHashCode(exclude = { "line", "column" })
+@EqualsAndHashCode(exclude = { "lines", "offset", "endOffset" })
 public class Token {
     /**
-     * The source code line.
+     * The line table of the source code used to resolve the {@link #offset}
+     * to a line and a column or <code>null</code> if unknown.
      *
      */
-    private final int line;
+    @Getter(AccessLevel.NONE)
+    private final LineTable lines;
     /**
-     * The source code column.
+     * The offset of the first character of the token in the source code
+     * (counted in characters) or <code>-1</code> if unknown.
      *
      */
-    private final int column;
+    private final int offset;
+    /**
+     * The offset after the last character of the token in the source code or
+     * <code>-1</code> if unknown. The source code between {@link #offset} and
+     * this offset is the original spelling of the token (e.g. including the
+     * quotes of a string literal and undecoded escape sequences).
+     *
+     */
+    private final int endOffset;
     /**
      * The actual token.
      *
@@ -56,6 +68,80 @@ public class Token {
      */
     private final TokenType type;
 
+    /**
+     * Constructor of Token.
+     *
+     * @param lines
+     *            The {@link #lines} to set.
+     * @param offset
+     *            The {@link #offset} to set.
+     * @param endOffset
+     *            The {@link #endOffset} to set.
+     * @param token
+     *            The {@link #token} to set.
+     * @param type
+     *            The {@link #type} to set.
+     */
+    public Token(final LineTable lines, final int offset, final int endOffset, final String token, final TokenType type) {
+        this.lines = lines;
+        this.offset = offset;
+        this.endOffset = endOffset;
+        this.token = token;
+        this.type = type;
+    }
+
+    /**
+     * Constructor of Token for a token without a known source location.
+     *
+     * @param token
+     *            The {@link #token} to set.
+     * @param type
+     *            The {@link #type} to set.
+     */
+    public Token(final String token, final TokenType type) {
+        this(null, -1, -1, token, type);
+    }
+
+    /**
+     * Constructor of Token for a token at a fixed source location. The
+     * location is unknown if the line or the column is less than
+     * <code>1</code>.
+     *
+     * @param line
+     *            The source code line.
+     * @param column
+     *            The source code column.
+     * @param token
+     *            The {@link #token} to set.
+     * @param type
+     *            The {@link #type} to set.
+     * @deprecated The scanner resolves the location from a {@link LineTable}
+     *             on demand; use {@link #Token(String, TokenType)} or
+     *             {@link #Token(LineTable, int, int, String, TokenType)}.
+     */
+    @Deprecated
+    public Token(final int line, final int column, final String token, final TokenType type) {
+        this(line < 1 || column < 1 ? null : LineTable.fixed(line), line < 1 || column < 1 ? -1 : column - 1, -1, token, type);
+    }
+
+    /**
+     * Retrieves the source code line.
+     *
+     * @return The line or <code>-1</code> if unknown.
+     */
+    public int getLine() {
+        return this.lines == null ? -1 : this.lines.getLine(this.offset);
+    }
+
+    /**
+     * Retrieves the source code column.
+     *
+     * @return The column or <code>-1</code> if unknown.
+     */
+    public int getColumn() {
+        return this.lines == null ? -1 : this.lines.getColumn(this.offset);
+    }
+
     /**
      *
      * {@inheritDoc}
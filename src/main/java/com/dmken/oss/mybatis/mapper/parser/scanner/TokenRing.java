@@ -0,0 +1,401 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.scanner;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free token stream that hands tokens from exactly one
+ * producer thread (the {@link XmlScanner scanner}) to exactly one consumer
+ * thread (the parser).
+ *
+ * <p>
+ * Tokens are handed off in batches to amortize the synchronization: The
+ * producer collects tokens in a private batch and publishes the batch to a
+ * ring of slots once it is full; the consumer takes whole batches out of the
+ * ring. The positions in the ring are only written by one side each (with
+ * ordered writes) and read by the other side, so no locks and no
+ * compare-and-set operations are needed. A side that has to wait for the
+ * other one spins briefly, yields and finally parks for short intervals.
+ * </p>
+ *
+ * <p>
+ * The ring is a {@link Queue}, so it can be passed to the scanner and the
+ * parser unchanged. It supports {@link #offer(Token)} (and
+ * {@link #add(Token)}) for the producer and {@link #poll()},
+ * {@link #peek()} (and the methods based on them) for the consumer. Both
+ * block if the ring is full or empty respectively. {@link #size()} and
+ * {@link #iterator()} are not supported as the tokens only become visible to
+ * the consumer batch by batch. After the producer {@link #close() closed}
+ * the ring, the consumer receives the remaining tokens followed by
+ * <code>null</code>.
+ * </p>
+ *
+ */
+public final class TokenRing extends AbstractQueue<Token> {
+    /**
+     * The default number of tokens per batch.
+     *
+     */
+    private static final int DEFAULT_BATCH_SIZE = 512;
+    /**
+     * The default number of batches in the ring.
+     *
+     */
+    private static final int DEFAULT_CAPACITY = 64;
+    /**
+     * The number of times a waiting side spins before yielding.
+     *
+     */
+    private static final int SPINS = 16;
+    /**
+     * The number of times a waiting side yields before parking.
+     *
+     */
+    private static final int YIELDS = 64;
+    /**
+     * The time a waiting side parks.
+     *
+     */
+    private static final long PARK_NANOS = 20_000;
+    /**
+     * The batch of the consumer before the first batch is taken.
+     *
+     */
+    private static final Token[] NO_TOKENS = new Token[0];
+
+    /**
+     * The slots of the ring, each holding a published batch. A batch that is
+     * not full is terminated by <code>null</code>.
+     *
+     */
+    private final Token[][] slots;
+    /**
+     * The mask to map a position to a slot.
+     *
+     */
+    private final int mask;
+    /**
+     * The number of tokens per batch.
+     *
+     */
+    private final int batchSize;
+    /**
+     * The number of batches taken by the consumer. Written by the consumer
+     * only.
+     *
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * The number of batches published by the producer. Written by the
+     * producer only.
+     *
+     */
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * Whether the producer closed the ring.
+     *
+     */
+    private volatile boolean closed;
+    /**
+     * Whether the consumer cancelled the ring.
+     *
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * The batch the producer is filling.
+     *
+     */
+    private Token[] producerBatch;
+    /**
+     * The number of tokens in the {@link #producerBatch}.
+     *
+     */
+    private int producerBatchLength;
+    /**
+     * The last value of the {@link #head} seen by the producer.
+     *
+     */
+    private long producerHead;
+    /**
+     * The batch the consumer is reading.
+     *
+     */
+    private Token[] consumerBatch = TokenRing.NO_TOKENS;
+    /**
+     * The index of the next token in the {@link #consumerBatch}.
+     *
+     */
+    private int consumerIndex;
+    /**
+     * The last value of the {@link #tail} seen by the consumer.
+     *
+     */
+    private long consumerTail;
+
+    /**
+     * Constructor of TokenRing with 64 batches of 512 tokens.
+     *
+     */
+    public TokenRing() {
+        this(TokenRing.DEFAULT_BATCH_SIZE, TokenRing.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor of TokenRing.
+     *
+     * @param batchSize
+     *            The number of tokens per batch.
+     * @param capacity
+     *            The number of batches in the ring. Must be a power of two.
+     */
+    public TokenRing(final int batchSize, final int capacity) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+        this.batchSize = batchSize;
+        this.slots = new Token[capacity][];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Adds a token. Called by the producer only. Blocks while the ring is
+     * full.
+     *
+     * @param token
+     *            The token.
+     * @return Always <code>true</code>.
+     * @throws CancellationException
+     *             If the consumer {@link #cancel() cancelled} the ring.
+     * @see java.util.Queue#offer(java.lang.Object)
+     */
+    @Override
+    public boolean offer(final Token token) {
+        if (token == null) {
+            throw new NullPointerException();
+        }
+        if (this.producerBatch == null) {
+            this.producerBatch = new Token[this.batchSize];
+        }
+        this.producerBatch[this.producerBatchLength++] = token;
+        if (this.producerBatchLength == this.batchSize) {
+            this.publish();
+        }
+        return true;
+    }
+
+    /**
+     * Publishes the remaining tokens and marks the end of the token stream.
+     * Called by the producer only, which must not add tokens afterwards.
+     *
+     */
+    public void close() {
+        try {
+            if (this.producerBatchLength > 0) {
+                this.publish();
+            }
+        } catch (final CancellationException cause) {
+            // Nobody consumes the tokens anymore.
+        } finally {
+            this.closed = true;
+        }
+    }
+
+    /**
+     * Cancels the ring, so the producer fails with a
+     * {@link CancellationException} on its next hand-off instead of blocking
+     * forever. Called by the consumer if it stops consuming early.
+     *
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Retrieves and removes the next token. Called by the consumer only.
+     * Blocks until a token is available or the ring is closed.
+     *
+     * @return The next token or <code>null</code> if the ring is closed and
+     *         all tokens were consumed.
+     * @see java.util.Queue#poll()
+     */
+    @Override
+    public Token poll() {
+        if (!this.available()) {
+            return null;
+        }
+        return this.consumerBatch[this.consumerIndex++];
+    }
+
+    /**
+     * Retrieves the next token without removing it. Called by the consumer
+     * only. Blocks until a token is available or the ring is closed.
+     *
+     * @return The next token or <code>null</code> if the ring is closed and
+     *         all tokens were consumed.
+     * @see java.util.Queue#peek()
+     */
+    @Override
+    public Token peek() {
+        if (!this.available()) {
+            return null;
+        }
+        return this.consumerBatch[this.consumerIndex];
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.util.AbstractCollection#isEmpty()
+     */
+    @Override
+    public boolean isEmpty() {
+        return this.peek() == null;
+    }
+
+    /**
+     * Publishes the {@link #producerBatch}.
+     *
+     * @throws CancellationException
+     *             If the consumer {@link #cancel() cancelled} the ring.
+     */
+    private void publish() {
+        final long position = this.tail.get();
+        int waits = 0;
+        while (position - this.producerHead >= this.slots.length) {
+            this.producerHead = this.head.get();
+            if (position - this.producerHead >= this.slots.length) {
+                if (this.cancelled) {
+                    throw new CancellationException("Token ring was cancelled!");
+                }
+                TokenRing.await(waits++);
+            }
+        }
+        if (this.cancelled) {
+            throw new CancellationException("Token ring was cancelled!");
+        }
+        if (this.producerBatchLength < this.batchSize) {
+            this.producerBatch[this.producerBatchLength] = null;
+        }
+        this.slots[(int) position & this.mask] = this.producerBatch;
+        this.tail.lazySet(position + 1);
+        this.producerBatch = null;
+        this.producerBatchLength = 0;
+    }
+
+    /**
+     * Makes sure that the {@link #consumerBatch} has a next token, taking the
+     * next batch out of the ring if necessary.
+     *
+     * @return Whether a token is available (<code>false</code> if the ring is
+     *         closed and all tokens were consumed).
+     */
+    private boolean available() {
+        if (this.consumerIndex < this.consumerBatch.length && this.consumerBatch[this.consumerIndex] != null) {
+            return true;
+        }
+
+        final long position = this.head.get();
+        int waits = 0;
+        while (position == this.consumerTail) {
+            final boolean wasClosed = this.closed;
+            this.consumerTail = this.tail.get();
+            if (position == this.consumerTail) {
+                if (wasClosed) {
+                    return false;
+                }
+                TokenRing.await(waits++);
+            }
+        }
+        final int slot = (int) position & this.mask;
+        this.consumerBatch = this.slots[slot];
+        this.slots[slot] = null;
+        this.consumerIndex = 0;
+        this.head.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * Waits for the other side.
+     *
+     * @param waits
+     *            The number of times the caller already waited.
+     */
+    private static void await(final int waits) {
+        if (waits < TokenRing.SPINS) {
+            return;
+        }
+        if (waits < TokenRing.SPINS + TokenRing.YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(TokenRing.PARK_NANOS);
+        }
+    }
+
+    /**
+     * Not supported.
+     *
+     * @return Never returns normally.
+     * @throws UnsupportedOperationException
+     *             Always.
+     * @see java.util.AbstractCollection#size()
+     */
+    @Override
+    public int size() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Not supported.
+     *
+     * @return Never returns normally.
+     * @throws UnsupportedOperationException
+     *             Always.
+     * @see java.util.AbstractCollection#iterator()
+     */
+    @Override
+    public Iterator<Token> iterator() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Describes the ring without its tokens, as they can only be seen by the
+     * consumer.
+     *
+     * {@inheritDoc}
+     *
+     * @see java.util.AbstractCollection#toString()
+     */
+    @Override
+    public String toString() {
+        return "TokenRing[published=" + this.tail.get() + ", taken=" + this.head.get() + ", batchSize=" + this.batchSize
+                + ", closed=" + this.closed + ", cancelled=" + this.cancelled + "]";
+    }
+}
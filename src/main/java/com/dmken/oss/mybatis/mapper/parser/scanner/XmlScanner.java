@@ -19,17 +19,28 @@
  */
 package com.dmken.oss.mybatis.mapper.parser.scanner;
 
-import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.Queue;
 
+import com.dmken.oss.mybatis.mapper.parser.metrics.ParseListener;
+import com.dmken.oss.mybatis.mapper.parser.metrics.ScanStatistics;
 import com.dmken.oss.mybatis.mapper.parser.scanner.Token.TokenType;
 import com.dmken.oss.mybatis.mapper.parser.scanner.exception.IllegalSymbolException;
+import com.dmken.oss.mybatis.mapper.parser.scanner.exception.LimitExceededException;
 import com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException;
 
 /**
@@ -43,12 +54,62 @@ public class XmlScanner {
      *
      */
     private static final Charset DEFAULT_CHARSET = Charset.forName("ASCII");
+    /**
+     * The size of the {@link #buffer}.
+     *
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+    /**
+     * The maximum number of characters that can be read after
+     * {@link #mark() marking} the position before the mark becomes invalid.
+     *
+     */
+    private static final int MARK_LIMIT = 8 * 1024;
+    /**
+     * The (shared) exception used to unwind to the start of the current token
+     * if a {@link #feed(ByteBuffer) fed} scanner runs out of input.
+     *
+     */
+    private static final SuspendedException SUSPENDED = new SuspendedException();
 
     /**
-     * The reader the code is coming from.
+     * The reader the code is coming from or <code>null</code> if the code is
+     * {@link #feed(ByteBuffer) fed}.
      *
      */
     private final Reader reader;
+    /**
+     * The input stream the {@link #reader} decodes or <code>null</code> if
+     * the scanner reads from an already decoded reader.
+     *
+     */
+    private final CountingInputStream input;
+    /**
+     * The characters read from the {@link #reader} in bulk.
+     *
+     */
+    private char[] buffer = new char[XmlScanner.BUFFER_SIZE];
+    /**
+     * The index of the next character to read from the {@link #buffer}.
+     *
+     */
+    private int bufferPosition;
+    /**
+     * The number of valid characters in the {@link #buffer}.
+     *
+     */
+    private int bufferLimit;
+    /**
+     * The index of the {@link #mark() marked} position in the {@link #buffer}
+     * or <code>-1</code> if there is no valid mark.
+     *
+     */
+    private int bufferMark = -1;
+    /**
+     * The structural characters of the {@link #buffer}.
+     *
+     */
+    private final StructuralIndex index = new StructuralIndex();
 
     /**
      * The current character.
@@ -62,15 +123,189 @@ public class XmlScanner {
      */
     private StringBuilder builder;
     /**
-     * The current line.
+     * The offset of the first character of the {@link #buffer} in the source
+     * code.
+     *
+     */
+    private int bufferOffset;
+    /**
+     * Whether the last character of the previous {@link #fill() fill} was a
+     * <code>\r</code>.
+     *
+     */
+    private boolean pendingCarriageReturn;
+    /**
+     * The line table of the source code read so far. Shared with all
+     * produced tokens.
+     *
+     */
+    private final LineTable lines = new LineTable();
+    /**
+     * The offset at which scanning stops when scanning a
+     * {@link #scanChunk(int) chunk}.
+     *
+     */
+    private int stopOffset = Integer.MAX_VALUE;
+    /**
+     * Whether scanning stopped at the {@link #stopOffset}.
+     *
+     */
+    private boolean stopped;
+    /**
+     * Whether the source code is kept (see {@link #getSource()}).
      *
      */
-    private int line = 1;
+    private boolean preserveSource;
     /**
-     * The current column.
+     * The source code read so far if {@link #preserveSource} is set.
      *
      */
-    private int column = 1;
+    private StringBuilder source;
+    /**
+     * The length of the {@link #source} when the position was marked.
+     *
+     */
+    private int sourceMark;
+
+    /**
+     * The decoder of the {@link #feed(ByteBuffer) fed} bytes or
+     * <code>null</code> if the code is read from the {@link #reader}.
+     *
+     */
+    private final CharsetDecoder decoder;
+    /**
+     * The bytes of an incomplete character at the end of the last
+     * {@link #feed(ByteBuffer) fed} chunk.
+     *
+     */
+    private ByteBuffer undecoded;
+    /**
+     * The decoded characters that were not copied into the {@link #buffer}
+     * yet.
+     *
+     */
+    private CharBuffer decoded;
+    /**
+     * Whether the end of the input was {@link #endOfInput() signalled}.
+     *
+     */
+    private boolean endOfInput;
+    /**
+     * The token stream the tokens of the {@link #feed(ByteBuffer) fed} code
+     * are added to.
+     *
+     */
+    private final Deque<Token> fedTokens;
+    /**
+     * Whether the first character was read.
+     *
+     */
+    private boolean started;
+    /**
+     * The index of the first character of the current token in the
+     * {@link #buffer}. Scanning is resumed from there if the token cannot be
+     * completed with the {@link #feed(ByteBuffer) fed} code.
+     *
+     */
+    private int resumePosition;
+    /**
+     * The length of the {@link #source} at the start of the current token.
+     *
+     */
+    private int resumeSourceLength;
+    /**
+     * The {@link #entityDecodes} at the start of the current token.
+     *
+     */
+    private long resumeEntityDecodes;
+    /**
+     * The {@link #commentsSkipped} at the start of the current token.
+     *
+     */
+    private long resumeCommentsSkipped;
+    /**
+     * The index of the first character of the token in the {@link #buffer}
+     * the {@link #awaitToken() lookahead} belongs to or <code>-1</code>.
+     *
+     */
+    private int lookaheadStart = -1;
+    /**
+     * The index in the {@link #buffer} the {@link #awaitToken() lookahead}
+     * continues at.
+     *
+     */
+    private int lookaheadPosition;
+    /**
+     * Whether the {@link #awaitToken() lookahead} of a content token stopped
+     * inside of a comment.
+     *
+     */
+    private boolean lookaheadInComment;
+    /**
+     * Whether the last token was content.
+     *
+     */
+    private boolean lastWasContent;
+    /**
+     * Whether the next token is content.
+     *
+     */
+    private boolean nextIsContent;
+
+    /**
+     * The resource limits.
+     *
+     */
+    private ParserLimits limits = ParserLimits.UNLIMITED;
+    /**
+     * The {@link ParserLimits#getMaxTextLength() maximum text length} of the
+     * {@link #limits} (copied as it is checked for every character).
+     *
+     */
+    private int maxTextLength = Integer.MAX_VALUE;
+    /**
+     * The number of tokens produced so far.
+     *
+     */
+    private int tokenCount;
+    /**
+     * The current nesting depth of tags.
+     *
+     */
+    private int depth;
+    /**
+     * The number of attributes of the current tag.
+     *
+     */
+    private int attributeCount;
+    /**
+     * The type of the last produced token.
+     *
+     */
+    private TokenType previousType;
+
+    /**
+     * The listener to notify.
+     *
+     */
+    private ParseListener listener = ParseListener.NOOP;
+    /**
+     * The number of produced tokens by type if the {@link #listener} is not
+     * the {@link ParseListener#NOOP no-op listener}, <code>null</code>
+     * otherwise.
+     *
+     */
+    private long[] tokenCounts;
+    /**
+     * The number of decoded entity references.
+     *
+     */
+    private long entityDecodes;
+    /**
+     * The number of skipped comments.
+     *
+     */
+    private long commentsSkipped;
 
     /**
      * Constructor of XmlScanner.
@@ -81,7 +316,63 @@ public class XmlScanner {
      *             If any error occurs.
      */
     public XmlScanner(final InputStream in) throws ScannerException {
-        this.reader = new BufferedReader(new InputStreamReader(in, XmlScanner.DEFAULT_CHARSET));
+        this.input = new CountingInputStream(in);
+        this.reader = new InputStreamReader(this.input, XmlScanner.DEFAULT_CHARSET);
+        this.decoder = null;
+        this.fedTokens = null;
+    }
+
+    /**
+     * Constructor of XmlScanner.
+     *
+     * @param reader
+     *            The reader to read the (already decoded) code from.
+     */
+    public XmlScanner(final Reader reader) {
+        this.input = null;
+        this.reader = reader;
+        this.decoder = null;
+        this.fedTokens = null;
+    }
+
+    /**
+     * Constructor of XmlScanner for code that is pushed to the scanner in
+     * chunks with {@link #feed(ByteBuffer)} instead of being read from a
+     * stream.
+     *
+     * @param tokens
+     *            The token stream to add the tokens to. Every token is added
+     *            as soon as it is complete.
+     */
+    public XmlScanner(final Deque<Token> tokens) {
+        this.input = null;
+        this.reader = null;
+        this.decoder = XmlScanner.DEFAULT_CHARSET.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.undecoded = ByteBuffer.allocate(0);
+        this.decoded = CharBuffer.allocate(0);
+        this.fedTokens = tokens;
+    }
+
+    /**
+     * Constructor of XmlScanner for a chunk of a larger source code.
+     *
+     * @param reader
+     *            The reader to read the chunk from.
+     * @param offset
+     *            The offset of the chunk in the source code.
+     * @param previous
+     *            The line table of the source code before the chunk or
+     *            <code>null</code> if it is not known yet (see
+     *            {@link LineTable#continueFrom(LineTable)}).
+     */
+    XmlScanner(final Reader reader, final int offset, final LineTable previous) {
+        this(reader);
+        this.bufferOffset = offset;
+        if (previous != null) {
+            this.lines.continueFrom(previous);
+        }
     }
 
     /**
@@ -97,6 +388,24 @@ public class XmlScanner {
         return new XmlScanner(in).scan();
     }
 
+    /**
+     * Scans the given input stream while enforcing the given limits.
+     *
+     * @param in
+     *            The input stream containing the code.
+     * @param limits
+     *            The resource limits.
+     * @return The parsed token stream.
+     * @throws ScannerException
+     *             If any error occurs, especially a
+     *             {@link LimitExceededException} if any limit is exceeded.
+     */
+    public static Deque<Token> scan(final InputStream in, final ParserLimits limits) throws ScannerException {
+        final XmlScanner scanner = new XmlScanner(in);
+        scanner.setLimits(limits);
+        return scanner.scan();
+    }
+
     /**
      * Scans the code and produces the token stream.
      *
@@ -105,49 +414,325 @@ public class XmlScanner {
      *             If any error occurs.
      */
     public Deque<Token> scan() throws ScannerException {
-        final Deque<Token> tokens = new LinkedList<>();
+        return this.scan(new LinkedList<>());
+    }
+
+    /**
+     * Scans the code and adds the tokens to the given token stream (e.g. a
+     * {@link TokenRing} that is consumed concurrently).
+     *
+     * @param <T>
+     *            The type of the token stream.
+     * @param tokens
+     *            The token stream to add the tokens to.
+     * @return The token stream.
+     * @throws ScannerException
+     *             If any error occurs.
+     */
+    public <T extends Queue<Token>> T scan(final T tokens) throws ScannerException {
+        if (this.listener == ParseListener.NOOP) {
+            return this.scanTokens(tokens);
+        }
+
+        this.listener.scanStarted();
+        this.tokenCounts = new long[TokenType.values().length];
+        final long start = System.nanoTime();
+        boolean successful = false;
+        try {
+            this.scanTokens(tokens);
+            successful = true;
+            return tokens;
+        } catch (final ScannerException cause) {
+            this.listener.scanFailed(cause);
+            throw cause;
+        } finally {
+            this.listener.scanFinished(new ScanStatistics(successful, this.input == null ? -1 : this.input.count, this.position(),
+                    this.tokenCounts, this.entityDecodes, this.commentsSkipped, System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Scans a chunk of a larger source code (see {@link ParallelScanner}).
+     * The chunk has to start at a <code>&lt;</code> that starts a token.
+     *
+     * @param stop
+     *            The offset of the <code>&lt;</code> starting the next chunk
+     *            or {@link Integer#MAX_VALUE} if this is the last chunk. The
+     *            reader has to provide the character at this offset.
+     * @return The tokens of the chunk or <code>null</code> if scanning did
+     *         not stop at a token starting at the given offset (i.e. the
+     *         offset is inside of a comment, a string, ...).
+     * @throws ScannerException
+     *             If any error occurs.
+     */
+    Deque<Token> scanChunk(final int stop) throws ScannerException {
+        this.stopOffset = stop;
+        final Deque<Token> tokens = this.scanTokens(new ArrayDeque<>());
+        return stop == Integer.MAX_VALUE || this.stopped ? tokens : null;
+    }
 
+    /**
+     * Scans the code into the given token stream.
+     *
+     * @param <T>
+     *            The type of the token stream.
+     * @param tokens
+     *            The token stream to add the tokens to.
+     * @return The token stream.
+     * @throws ScannerException
+     *             If any error occurs.
+     */
+    private <T extends Queue<Token>> T scanTokens(final T tokens) throws ScannerException {
+        if (this.preserveSource) {
+            this.source = new StringBuilder(8 * 1024);
+        }
         this.current = this.read();
+        this.scanNext(tokens, false);
+        return tokens;
+    }
 
-        boolean lastWasContent = false;
-        boolean nextIsContent = false;
+    /**
+     * Scans the tokens starting at the current character and adds them to
+     * the given token stream until the end of the code or the
+     * {@link #stopOffset} is reached.
+     *
+     * @param tokens
+     *            The token stream to add the tokens to.
+     * @param resumable
+     *            Whether to record the start of every token, so scanning can
+     *            be {@link #resume() resumed} from there.
+     * @throws ScannerException
+     *             If any error occurs.
+     */
+    private void scanNext(final Queue<Token> tokens, final boolean resumable) throws ScannerException {
         while (this.current != -1) {
+            if (resumable) {
+                this.resumePosition = this.bufferPosition - 1;
+                this.resumeSourceLength = this.source == null ? 0 : this.source.length();
+                this.resumeEntityDecodes = this.entityDecodes;
+                this.resumeCommentsSkipped = this.commentsSkipped;
+            }
             if (Character.isWhitespace(this.current)) {
                 this.skip();
                 continue;
             }
+            if (this.offset() >= this.stopOffset) {
+                this.stopped = this.offset() == this.stopOffset;
+                break;
+            }
+            if (resumable) {
+                this.awaitToken();
+            }
 
             this.builder = new StringBuilder();
 
-            final int currentLine = this.line;
-            final int currentColumn = this.column;
+            final int currentOffset = this.offset();
 
             if (this.current == '<') {
                 this.take();
                 if (this.scanComment()) {
-                    nextIsContent = lastWasContent;
-                    lastWasContent = false;
+                    this.commentsSkipped++;
+                    this.nextIsContent = this.lastWasContent;
+                    this.lastWasContent = false;
                 } else {
-                    tokens.offer(new Token(currentLine, currentColumn, this.builder.toString(), TokenType.LANGEL));
-                    nextIsContent = false;
-                    lastWasContent = false;
+                    this.count(TokenType.LANGEL, currentOffset);
+                    tokens.offer(new Token(this.lines, currentOffset, this.offset(), this.builder.toString(), TokenType.LANGEL));
+                    this.nextIsContent = false;
+                    this.lastWasContent = false;
                 }
-            } else if (nextIsContent) {
-                nextIsContent = false;
-                lastWasContent = true;
-
+            } else if (this.nextIsContent) {
                 this.scanContent();
-                tokens.offer(new Token(currentLine, currentColumn, this.builder.toString().trim(), TokenType.CONTENT));
+                this.count(TokenType.CONTENT, currentOffset);
+                tokens.offer(
+                        new Token(this.lines, currentOffset, this.offset(), this.builder.toString().trim(), TokenType.CONTENT));
+                this.nextIsContent = false;
+                this.lastWasContent = true;
             } else {
                 final TokenType type = this.scanToken();
-                final Token token = new Token(currentLine, currentColumn, this.builder.toString(), type);
+                this.count(type, currentOffset);
+                final Token token = new Token(this.lines, currentOffset, this.offset(), this.builder.toString(), type);
                 tokens.offer(token);
-                nextIsContent = type == TokenType.RANGEL;
-                lastWasContent = false;
+                this.nextIsContent = type == TokenType.RANGEL;
+                this.lastWasContent = false;
             }
         }
+    }
 
-        return tokens;
+    /**
+     * Decodes the given chunk of the code and scans as many tokens as
+     * possible. A token that is not complete at the end of the chunk (e.g. an
+     * identifier, a comment or a long SQL text that continues in the next
+     * chunk) is only scanned once its end was fed, so the scanner never blocks
+     * waiting for input. The search for the end of the token continues where
+     * it stopped, so the work is linear in the size of the code regardless of
+     * the size of the chunks.
+     *
+     * <p>
+     * Only the characters of the incomplete token are kept between two
+     * chunks. The scanner must have been created with
+     * {@link #XmlScanner(Deque)} and must not be used anymore after it threw
+     * an exception.
+     * </p>
+     *
+     * @param bytes
+     *            The next chunk of the code. Is consumed completely.
+     * @throws ScannerException
+     *             If any error occurs.
+     * @see #endOfInput()
+     */
+    public void feed(final ByteBuffer bytes) throws ScannerException {
+        if (this.decoder == null) {
+            throw new IllegalStateException("The scanner reads from a stream!");
+        }
+        if (this.endOfInput) {
+            throw new IllegalStateException("The end of the input was already signalled!");
+        }
+        this.decode(bytes);
+        this.resume();
+    }
+
+    /**
+     * Decodes the given chunk of the code and scans as many tokens as
+     * possible.
+     *
+     * @param bytes
+     *            The array containing the next chunk of the code.
+     * @param offset
+     *            The offset of the chunk in the array.
+     * @param length
+     *            The length of the chunk.
+     * @throws ScannerException
+     *             If any error occurs.
+     * @see #feed(ByteBuffer)
+     */
+    public void feed(final byte[] bytes, final int offset, final int length) throws ScannerException {
+        this.feed(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Signals the end of the {@link #feed(ByteBuffer) fed} code and scans the
+     * remaining tokens.
+     *
+     * @return The token stream passed to {@link #XmlScanner(Deque)}.
+     * @throws ScannerException
+     *             If any error occurs, especially if the code ends in the
+     *             middle of a token.
+     */
+    public Deque<Token> endOfInput() throws ScannerException {
+        if (this.decoder == null) {
+            throw new IllegalStateException("The scanner reads from a stream!");
+        }
+        if (!this.endOfInput) {
+            this.endOfInput = true;
+            this.decode(ByteBuffer.allocate(0));
+            this.resume();
+        }
+        return this.fedTokens;
+    }
+
+    /**
+     * Decodes the given bytes (prepended by the {@link #undecoded} bytes of
+     * the last chunk) into the {@link #decoded} characters.
+     *
+     * @param bytes
+     *            The bytes to decode.
+     */
+    private void decode(final ByteBuffer bytes) {
+        ByteBuffer in = bytes;
+        if (this.undecoded.hasRemaining()) {
+            in = ByteBuffer.allocate(this.undecoded.remaining() + bytes.remaining());
+            in.put(this.undecoded).put(bytes).flip();
+        }
+        final int capacity = (int) Math.ceil(in.remaining() * (double) this.decoder.maxCharsPerByte()) + 1;
+        if (this.decoded.capacity() < capacity) {
+            this.decoded = CharBuffer.allocate(capacity);
+        }
+        this.decoded.clear();
+        CoderResult result = this.decoder.decode(in, this.decoded, this.endOfInput);
+        if (!result.isOverflow() && this.endOfInput) {
+            result = this.decoder.flush(this.decoded);
+        }
+        if (result.isOverflow()) {
+            // Cannot happen as the capacity suffices for the bytes.
+            throw new IllegalStateException("Decoder overflow!");
+        }
+        this.decoded.flip();
+
+        this.undecoded = ByteBuffer.allocate(in.remaining());
+        this.undecoded.put(in).flip();
+    }
+
+    /**
+     * Continues scanning the {@link #feed(ByteBuffer) fed} code until the end
+     * of the code or of the {@link #decoded} characters is reached.
+     *
+     * @throws ScannerException
+     *             If any error occurs.
+     */
+    private void resume() throws ScannerException {
+        try {
+            if (!this.started) {
+                if (this.preserveSource && this.source == null) {
+                    this.source = new StringBuilder(8 * 1024);
+                }
+                this.current = this.read();
+                this.started = true;
+            }
+            this.scanNext(this.fedTokens, true);
+        } catch (final SuspendedException cause) {
+            if (this.started) {
+                // Rewind to the start of the current token.
+                this.bufferPosition = this.resumePosition + 1;
+                this.bufferMark = -1;
+                this.current = this.buffer[this.resumePosition];
+                if (this.source != null) {
+                    this.source.setLength(this.resumeSourceLength);
+                }
+                this.entityDecodes = this.resumeEntityDecodes;
+                this.commentsSkipped = this.resumeCommentsSkipped;
+            }
+        }
+    }
+
+    /**
+     * Counts a produced token and checks the {@link #limits}.
+     *
+     * <p>
+     * Every identifier directly following a <code>&lt;</code> opens a tag and
+     * every <code>/</code> closes one (either as part of an end tag or of a
+     * self-closing tag), so the depth can be tracked without knowing the
+     * structure of the document. Attributes are counted by their
+     * <code>=</code>.
+     * </p>
+     *
+     * @param type
+     *            The type of the token.
+     * @param offset
+     *            The offset of the token.
+     * @throws LimitExceededException
+     *             If any limit is exceeded.
+     */
+    private void count(final TokenType type, final int offset) throws LimitExceededException {
+        if (this.tokenCounts != null) {
+            this.tokenCounts[type.ordinal()]++;
+        }
+        if (++this.tokenCount > this.limits.getMaxTokenCount()) {
+            throw new LimitExceededException("maxTokenCount", this.limits.getMaxTokenCount(), this.lines.getLine(offset),
+                    this.lines.getColumn(offset));
+        }
+        if (type == TokenType.IDENTIFIER && this.previousType == TokenType.LANGEL) {
+            this.attributeCount = 0;
+            if (++this.depth > this.limits.getMaxDepth()) {
+                throw new LimitExceededException("maxDepth", this.limits.getMaxDepth(), this.lines.getLine(offset),
+                        this.lines.getColumn(offset));
+            }
+        } else if (type == TokenType.SLASH) {
+            this.depth--;
+        } else if (type == TokenType.EQUALS && ++this.attributeCount > this.limits.getMaxAttributeCount()) {
+            throw new LimitExceededException("maxAttributeCount", this.limits.getMaxAttributeCount(), this.lines.getLine(offset),
+                    this.lines.getColumn(offset));
+        }
+        this.previousType = type;
     }
 
     /**
@@ -179,7 +764,8 @@ public class XmlScanner {
             case '!':
                 return TokenType.EXMARK;
             default:
-                throw new IllegalSymbolException(this.line, this.column, (char) old, "\"", "identifier", ">", "=", "/", "?", "!");
+                throw new IllegalSymbolException(this.line(), this.column(), (char) old, "\"", "identifier", ">", "=", "/", "?",
+                        "!");
         }
     }
 
@@ -195,20 +781,23 @@ public class XmlScanner {
             if (this.current == '<') {
                 try {
                     // Mark position.
-                    this.reader.mark(1024 * 8);
+                    this.mark();
 
                     // Hacky way to allow comments inside the content.
                     final int old = this.current;
                     this.skip();
                     if (this.scanComment()) {
+                        this.commentsSkipped++;
                         // Remove whitespaces around the comment.
-                        this.builder = new StringBuilder(this.builder.toString().trim());
+                        this.trimBuilder();
                         this.skipWhitespace();
+                        // The comment might be followed by a tag.
+                        continue;
                     } else {
                         this.current = old;
                         // Reset position to ensure the correct character is
                         // read.
-                        this.reader.reset();
+                        this.reset();
                         break;
                     }
                 } catch (final IOException cause) {
@@ -216,11 +805,31 @@ public class XmlScanner {
                 }
             }
             if (!this.scanEscapeSequences()) {
-                this.take();
+                this.takeRun();
             }
         }
     }
 
+    /**
+     * Removes the leading and trailing whitespaces from the builder like
+     * {@link String#trim()}, but in place, so skipping many comments inside of
+     * a long content does not copy the content over and over again.
+     */
+    private void trimBuilder() {
+        int end = this.builder.length();
+        while (end > 0 && this.builder.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        this.builder.setLength(end);
+        int start = 0;
+        while (start < end && this.builder.charAt(start) <= ' ') {
+            start++;
+        }
+        if (start > 0) {
+            this.builder.delete(0, start);
+        }
+    }
+
     /**
      * Assuming the next characters form a string starting with <code>"</code>
      * or <code>'</code>, scans the string.
@@ -233,7 +842,7 @@ public class XmlScanner {
         this.skip();
         while (this.current != endChar) {
             if (!this.scanEscapeSequences()) {
-                this.take();
+                this.takeRun();
             }
         }
         this.skip();
@@ -304,9 +913,16 @@ public class XmlScanner {
      * Assuming the last read character is a <code>&lt;</code>, checks whether
      * the next characters form a comment and if so, skips it.
      *
+     * <p>
+     * Comments are limited by the {@link ParserLimits#getMaxTextLength()
+     * maximum text length} like any other token. Otherwise, an unterminated
+     * comment would make a fed scanner buffer all of the remaining input.
+     * </p>
+     *
      * @return Whether there was a comment or not.
      * @throws ScannerException
-     *             If any error occurs.
+     *             If any error occurs, especially a
+     *             {@link LimitExceededException} if the comment is too long.
      */
     private boolean scanComment() throws ScannerException {
         if (this.current != '!') {
@@ -316,13 +932,17 @@ public class XmlScanner {
         final int old = this.current;
         try {
             // Mark position.
-            this.reader.mark(1024 * 8);
+            this.mark();
 
             this.skip();
             if (this.current == '-') {
                 this.skip();
                 if (this.current == '-') {
-                    while (true) {
+                    for (int length = 0;; length++) {
+                        if (length > this.maxTextLength) {
+                            throw new LimitExceededException("maxTextLength", this.maxTextLength, this.line(),
+                                    this.column());
+                        }
                         this.skip();
                         if (this.current == '-') {
                             this.skip();
@@ -332,18 +952,18 @@ public class XmlScanner {
                                     this.skip();
                                     return true;
                                 } else {
-                                    throw new IllegalSymbolException(this.line, this.column, (char) this.current, '>');
+                                    throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, '>');
                                 }
                             }
                         }
                     }
                 } else {
-                    throw new IllegalSymbolException(this.line, this.column, (char) this.current, '-');
+                    throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, '-');
                 }
             } else {
                 this.current = old;
                 // Reset position to ensure the correct character is read.
-                this.reader.reset();
+                this.reset();
                 return false;
             }
         } catch (final IOException cause) {
@@ -374,10 +994,10 @@ public class XmlScanner {
                     this.skip();
                     this.append('<');
                 } else {
-                    throw new IllegalSymbolException(this.line, this.column, (char) this.current, ';');
+                    throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, ';');
                 }
             } else {
-                throw new IllegalSymbolException(this.line, this.column, (char) this.current, 't');
+                throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, 't');
             }
         } else if (this.current == 'g') {
             this.skip();
@@ -387,10 +1007,10 @@ public class XmlScanner {
                     this.skip();
                     this.append('>');
                 } else {
-                    throw new IllegalSymbolException(this.line, this.column, (char) this.current, ';');
+                    throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, ';');
                 }
             } else {
-                throw new IllegalSymbolException(this.line, this.column, (char) this.current, 't');
+                throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, 't');
             }
         } else if (this.current == 'a') {
             this.skip();
@@ -402,10 +1022,10 @@ public class XmlScanner {
                         this.skip();
                         this.append('&');
                     } else {
-                        throw new IllegalSymbolException(this.line, this.column, (char) this.current, ';');
+                        throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, ';');
                     }
                 } else {
-                    throw new IllegalSymbolException(this.line, this.column, (char) this.current, 'p');
+                    throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, 'p');
                 }
             } else if (this.current == 'p') {
                 this.skip();
@@ -417,16 +1037,16 @@ public class XmlScanner {
                             this.skip();
                             this.append('\'');
                         } else {
-                            throw new IllegalSymbolException(this.line, this.column, (char) this.current, ';');
+                            throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, ';');
                         }
                     } else {
-                        throw new IllegalSymbolException(this.line, this.column, (char) this.current, 's');
+                        throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, 's');
                     }
                 } else {
-                    throw new IllegalSymbolException(this.line, this.column, (char) this.current, 'o');
+                    throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, 'o');
                 }
             } else {
-                throw new IllegalSymbolException(this.line, this.column, (char) this.current, 'm', 'p');
+                throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, 'm', 'p');
             }
         } else if (this.current == 'q') {
             this.skip();
@@ -440,21 +1060,22 @@ public class XmlScanner {
                             this.skip();
                             this.append('"');
                         } else {
-                            throw new IllegalSymbolException(this.line, this.column, (char) this.current, ';');
+                            throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, ';');
                         }
                     } else {
-                        throw new IllegalSymbolException(this.line, this.column, (char) this.current, 't');
+                        throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, 't');
                     }
                 } else {
-                    throw new IllegalSymbolException(this.line, this.column, (char) this.current, 'o');
+                    throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, 'o');
                 }
             } else {
-                throw new IllegalSymbolException(this.line, this.column, (char) this.current, 'u');
+                throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, 'u');
             }
         } else {
-            throw new IllegalSymbolException(this.line, this.column, (char) this.current, 'l', 'g', 'a', 'q');
+            throw new IllegalSymbolException(this.line(), this.column(), (char) this.current, 'l', 'g', 'a', 'q');
         }
 
+        this.entityDecodes++;
         return true;
     }
 
@@ -469,14 +1090,49 @@ public class XmlScanner {
         this.skip();
     }
 
+    /**
+     * Appends the current character and all following characters up to the
+     * next {@link StructuralIndex structural character} to the builder and
+     * skips them. The characters are copied in bulk, so this is considerably
+     * faster than {@link #take() taking} them one by one.
+     *
+     * @throws ScannerException
+     *             If any error occurs.
+     */
+    private void takeRun() throws ScannerException {
+        if (this.current == -1 || StructuralIndex.isStructural((char) this.current)) {
+            this.take();
+            return;
+        }
+        final int run = this.index.next(this.bufferPosition, this.bufferLimit) - this.bufferPosition;
+        if (this.builder.length() + run + 1 > this.maxTextLength) {
+            // Let take() report the exceeded limit at the correct location.
+            this.take();
+            return;
+        }
+
+        this.builder.append((char) this.current).append(this.buffer, this.bufferPosition, run);
+        if (this.source != null) {
+            this.source.append(this.buffer, this.bufferPosition, run);
+        }
+        this.bufferPosition += run;
+        this.current = this.read();
+    }
+
     /**
      * Appends the given character (identified by the integer value) to the
      * builder.
      *
      * @param val
      *            The code of the character to append.
+     * @throws LimitExceededException
+     *             If the {@link ParserLimits#getMaxTextLength() maximum text
+     *             length} is exceeded.
      */
-    private void append(final int val) {
+    private void append(final int val) throws LimitExceededException {
+        if (this.builder.length() >= this.maxTextLength) {
+            throw new LimitExceededException("maxTextLength", this.maxTextLength, this.line(), this.column());
+        }
         this.builder.append((char) val);
     }
 
@@ -499,20 +1155,12 @@ public class XmlScanner {
      *             If any error occurs.
      */
     private void skip() throws ScannerException {
-        // Handle all possible line breaks according to the Unicode standard.
         int old = this.current;
         this.current = this.read();
         if (old == '\r' && this.current == '\n') {
             old = this.current;
             this.current = this.read();
         }
-        if (old == '\n' || old == '\r' || old == '\u000b' || old == '\u000c' || old == '\u0085' || old == '\u2028'
-                || old == '\u2029') {
-            this.line++;
-            this.column = 1;
-        } else {
-            this.column++;
-        }
 
         if (old == -1 && this.current == -1) {
             throw new ScannerException("Unexpected end of stream!");
@@ -528,10 +1176,489 @@ public class XmlScanner {
      *             If any error occurs.
      */
     private int read() throws ScannerException {
+        if (this.bufferPosition == this.bufferLimit && !this.fill()) {
+            return -1;
+        }
+        final char c = this.buffer[this.bufferPosition++];
+        if (this.source != null) {
+            this.source.append(c);
+        }
+        return c;
+    }
+
+    /**
+     * Refills the {@link #buffer} from the {@link #reader}, rebuilds the
+     * {@link #index} and records the line breaks of the new characters in the
+     * {@link #lines line table}. The characters after the {@link #mark()
+     * mark} are kept unless more than {@link #MARK_LIMIT} characters were
+     * read since.
+     *
+     * @return Whether any characters were read or the end of the stream was
+     *         reached.
+     * @throws ScannerException
+     *             If the reader fails.
+     */
+    private boolean fill() throws ScannerException {
+        if (this.decoder != null) {
+            return this.fillDecoded();
+        }
+
+        int kept = 0;
+        if (this.bufferMark >= 0 && this.bufferLimit - this.bufferMark <= XmlScanner.MARK_LIMIT) {
+            kept = this.bufferLimit - this.bufferMark;
+            System.arraycopy(this.buffer, this.bufferMark, this.buffer, 0, kept);
+            this.bufferOffset += this.bufferMark;
+            this.bufferMark = 0;
+        } else {
+            this.bufferOffset += this.bufferLimit;
+            this.bufferMark = -1;
+        }
+
+        int read;
         try {
-            return this.reader.read();
+            do {
+                read = this.reader.read(this.buffer, kept, this.buffer.length - kept);
+            } while (read == 0);
         } catch (final IOException cause) {
             throw new ScannerException("Failed to read from the input!", cause);
         }
+        this.bufferPosition = kept;
+        this.bufferLimit = kept + Math.max(read, 0);
+        this.index.build(this.buffer, this.bufferLimit);
+        this.recordLines(kept);
+        return read > 0;
+    }
+
+    /**
+     * Refills the {@link #buffer} from the {@link #decoded} characters of the
+     * {@link #feed(ByteBuffer) fed} code like {@link #fill()}.
+     *
+     * @return Whether any characters were read (<code>false</code> if the
+     *         {@link #endOfInput() end of the input} was reached).
+     * @throws SuspendedException
+     *             If there are no decoded characters left, but the end of the
+     *             input was not reached yet.
+     */
+    private boolean fillDecoded() throws SuspendedException {
+        if (this.appendDecoded()) {
+            return true;
+        }
+        if (this.endOfInput) {
+            return false;
+        }
+        throw XmlScanner.SUSPENDED;
+    }
+
+    /**
+     * Appends {@link #decoded} characters to the {@link #buffer}. The
+     * characters of the current token are kept, so scanning can be resumed
+     * from the start of the token. The buffer is only compacted if it is full
+     * and grows if the current token occupies more than half of it, so every
+     * character is moved a constant number of times on average.
+     *
+     * @return Whether any characters were appended.
+     */
+    private boolean appendDecoded() {
+        if (!this.decoded.hasRemaining()) {
+            return false;
+        }
+
+        if (this.bufferLimit == this.buffer.length) {
+            final int start = this.started ? this.resumePosition : this.bufferPosition;
+            final int kept = this.bufferLimit - start;
+            if (kept > this.buffer.length / 2) {
+                this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+            }
+            System.arraycopy(this.buffer, start, this.buffer, 0, kept);
+            this.bufferOffset += start;
+            this.bufferPosition -= start;
+            this.bufferLimit = kept;
+            this.bufferMark = this.bufferMark >= start ? this.bufferMark - start : -1;
+            this.resumePosition -= start;
+            if (this.lookaheadStart >= start) {
+                this.lookaheadStart -= start;
+                this.lookaheadPosition -= start;
+            } else {
+                this.lookaheadStart = -1;
+            }
+            this.index.build(this.buffer, kept);
+        }
+
+        final int from = this.bufferLimit;
+        final int read = Math.min(this.decoded.remaining(), this.buffer.length - from);
+        this.decoded.get(this.buffer, from, read);
+        this.bufferLimit = from + read;
+        this.index.build(this.buffer, from, this.bufferLimit);
+        this.recordLines(from);
+        return true;
+    }
+
+    /**
+     * Makes sure that the token starting at the {@link #current current}
+     * character is completely in the {@link #buffer} (including the
+     * character following it) before it is scanned, so it does not have to be
+     * scanned again if the {@link #feed(ByteBuffer) fed} code ends inside of
+     * it. The lookahead only searches for the end of the token and continues
+     * where it stopped when the next chunk is fed.
+     *
+     * <p>
+     * If {@link ParserLimits#getMaxTextLength() the maximum text length} is
+     * limited, the lookahead stops waiting once the token is longer, so the
+     * limit is reported instead of buffering the token.
+     * </p>
+     *
+     * @throws SuspendedException
+     *             If the token is not complete, but the end of the input was
+     *             not reached yet.
+     */
+    private void awaitToken() throws SuspendedException {
+        if (this.lookaheadStart != this.bufferPosition - 1) {
+            this.lookaheadStart = this.bufferPosition - 1;
+            this.lookaheadPosition = this.lookaheadStart + 1;
+            this.lookaheadInComment = false;
+        }
+        while (this.tokenEnd() >= this.bufferLimit && this.bufferLimit - this.lookaheadStart <= this.maxTextLength) {
+            if (!this.appendDecoded()) {
+                if (this.endOfInput) {
+                    return;
+                }
+                throw XmlScanner.SUSPENDED;
+            }
+        }
+    }
+
+    /**
+     * Finds the end of the token starting at the {@link #lookaheadStart}.
+     *
+     * @return The index of the last character that is read when scanning the
+     *         token (i.e. the character following it) or an index not less
+     *         than the {@link #bufferLimit} if the token is not complete.
+     */
+    private int tokenEnd() {
+        final int start = this.lookaheadStart;
+        final char first = this.buffer[start];
+        if (first == '<') {
+            final int end = this.commentStartEnd(start);
+            return end >= 0 ? end : this.commentEnd(start + 4);
+        }
+        if (this.nextIsContent) {
+            return this.contentEnd();
+        }
+        int i = this.lookaheadPosition;
+        if (this.isStringStart(first)) {
+            while (i < this.bufferLimit && this.buffer[i] != first) {
+                i++;
+            }
+            this.lookaheadPosition = i;
+            return i + 1;
+        }
+        if (this.isIdentifierStart(first)) {
+            while (i < this.bufferLimit && this.isIdentifierPart(this.buffer[i])) {
+                i++;
+            }
+            this.lookaheadPosition = i;
+            return i;
+        }
+        return start + 1;
+    }
+
+    /**
+     * Checks whether the <code>&lt;</code> at the given index starts a
+     * comment.
+     *
+     * @param start
+     *            The index of the <code>&lt;</code>.
+     * @return <code>-1</code> if the <code>&lt;</code> is followed by
+     *         <code>!--</code>, otherwise the index of the last character that
+     *         is read to find out that it does not start a (valid) comment.
+     * @see #tokenEnd()
+     */
+    private int commentStartEnd(final int start) {
+        for (int i = 1; i <= 3; i++) {
+            if (start + i >= this.bufferLimit || this.buffer[start + i] != "!--".charAt(i - 1)) {
+                return start + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the end of a comment.
+     *
+     * @param from
+     *            The index of the first character after <code>&lt;!--</code>.
+     * @return The index of the last character that is read.
+     * @see #tokenEnd()
+     */
+    private int commentEnd(final int from) {
+        int i = Math.max(from, this.lookaheadPosition);
+        while (i + 1 < this.bufferLimit && !(this.buffer[i] == '-' && this.buffer[i + 1] == '-')) {
+            i++;
+        }
+        this.lookaheadPosition = i;
+        if (i + 1 >= this.bufferLimit) {
+            return this.bufferLimit;
+        }
+        // The character after "--" must be a '>' followed by the next one.
+        return i + 2 < this.bufferLimit && this.buffer[i + 2] == '>' ? i + 3 : i + 2;
+    }
+
+    /**
+     * Finds the end of the content (that may contain comments) starting at
+     * the {@link #lookaheadStart}.
+     *
+     * @return The index of the last character that is read.
+     * @see #tokenEnd()
+     */
+    private int contentEnd() {
+        while (true) {
+            if (this.lookaheadInComment) {
+                final int end = this.commentEnd(this.lookaheadPosition);
+                if (end >= this.bufferLimit || this.buffer[end - 1] != '>') {
+                    // Incomplete or invalid comment.
+                    return end;
+                }
+                this.lookaheadInComment = false;
+                this.lookaheadPosition = end;
+            }
+            int i = this.index.next(this.lookaheadPosition, this.bufferLimit);
+            while (i < this.bufferLimit && this.buffer[i] != '<') {
+                i = this.index.next(i + 1, this.bufferLimit);
+            }
+            this.lookaheadPosition = i;
+            if (i >= this.bufferLimit) {
+                return i;
+            }
+            final int end = this.commentStartEnd(i);
+            if (end >= 0) {
+                // The end of the content (or an invalid comment).
+                return end;
+            }
+            this.lookaheadInComment = true;
+            this.lookaheadPosition = i + 4;
+        }
+    }
+
+    /**
+     * Records the line breaks of the {@link #buffer} starting at the given
+     * index in the {@link #lines line table}. Only the
+     * {@link StructuralIndex structural characters} are inspected as they
+     * include all line breaks.
+     *
+     * @param from
+     *            The index of the first new character.
+     */
+    private void recordLines(final int from) {
+        for (int i = this.index.next(from, this.bufferLimit); i < this.bufferLimit; i = this.index.next(i + 1,
+                this.bufferLimit)) {
+            final char c = this.buffer[i];
+            if (c == '\n' && (i == 0 ? this.pendingCarriageReturn : this.buffer[i - 1] == '\r')) {
+                // "\r\n" is a single line break.
+                this.lines.moveLastLine(this.bufferOffset + i + 1);
+            } else if (c == '\n' || c == '\r' || c == '\u000b' || c == '\u000c' || c == '\u0085' || c == '\u2028'
+                    || c == '\u2029') {
+                this.lines.addLine(this.bufferOffset + i + 1);
+            }
+        }
+        if (this.bufferLimit > from) {
+            this.pendingCarriageReturn = this.buffer[this.bufferLimit - 1] == '\r';
+        }
+    }
+
+    /**
+     * Marks the current position, so {@link #reset()} can return to it as
+     * long as at most {@link #MARK_LIMIT} characters are read in between.
+     *
+     */
+    private void mark() {
+        this.bufferMark = this.bufferPosition;
+        this.sourceMark = this.source == null ? 0 : this.source.length();
+    }
+
+    /**
+     * Resets the reader to the position that was last {@link #mark()
+     * marked}. The source location and the preserved source are reset, too.
+     *
+     * @throws IOException
+     *             If the mark is invalid.
+     */
+    private void reset() throws IOException {
+        if (this.bufferMark < 0) {
+            throw new IOException("Mark invalid");
+        }
+        this.bufferPosition = this.bufferMark;
+        if (this.source != null) {
+            this.source.setLength(this.sourceMark);
+        }
+    }
+
+    /**
+     * Retrieves the offset of the {@link #current current} character.
+     *
+     * @return The offset in characters.
+     */
+    private int offset() {
+        return this.current == -1 ? this.position() : this.position() - 1;
+    }
+
+    /**
+     * Retrieves the number of characters read so far.
+     *
+     * @return The number of characters.
+     */
+    private int position() {
+        return this.bufferOffset + this.bufferPosition;
+    }
+
+    /**
+     * Resolves the line of the {@link #current current} character.
+     *
+     * @return The line.
+     */
+    private int line() {
+        return this.lines.getLine(this.offset());
+    }
+
+    /**
+     * Resolves the column of the {@link #current current} character.
+     *
+     * @return The column.
+     */
+    private int column() {
+        return this.lines.getColumn(this.offset());
+    }
+
+    /**
+     * Retrieves the line table of the source code read so far.
+     *
+     * @return The line table.
+     */
+    LineTable getLines() {
+        return this.lines;
+    }
+
+    /**
+     * Sets whether the source code is kept while scanning. Must be set before
+     * {@link #scan() scanning}. Together with the {@link Token#getOffset()
+     * offsets} of the tokens, the source code allows lossless processing
+     * (e.g. re-emitting the original whitespace and comments).
+     *
+     * @param preserveSource
+     *            Whether to keep the source code.
+     */
+    public void setPreserveSource(final boolean preserveSource) {
+        this.preserveSource = preserveSource;
+    }
+
+    /**
+     * Sets the resource limits to enforce. Must be set before
+     * {@link #scan() scanning}.
+     *
+     * @param limits
+     *            The limits.
+     */
+    public void setLimits(final ParserLimits limits) {
+        this.limits = limits;
+        this.maxTextLength = limits.getMaxTextLength();
+    }
+
+    /**
+     * Sets the listener to notify about the statistics of the scan. Must be
+     * set before {@link #scan() scanning}.
+     *
+     * @param listener
+     *            The listener.
+     */
+    public void setParseListener(final ParseListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Retrieves the source code read by {@link #scan()}.
+     *
+     * @return The source code or <code>null</code> if the source code was
+     *         not {@link #setPreserveSource(boolean) preserved}.
+     */
+    public String getSource() {
+        return this.source == null ? null : this.source.toString();
+    }
+
+    /**
+     * The exception used to unwind to the start of the current token if a
+     * {@link #feed(ByteBuffer) fed} scanner runs out of input. Does neither
+     * capture a stack trace nor a message.
+     *
+     */
+    private static final class SuspendedException extends ScannerException {
+        private static final long serialVersionUID = 4920514361385335519L;
+
+        private SuspendedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * An input stream that counts the bytes read from the underlying stream.
+     *
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        /**
+         * The number of bytes read so far.
+         *
+         */
+        private long count;
+
+        /**
+         * Constructor of CountingInputStream.
+         *
+         * @param in
+         *            The underlying input stream.
+         */
+        private CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         *
+         * @see java.io.FilterInputStream#read()
+         */
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                this.count++;
+            }
+            return b;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         *
+         * @see java.io.FilterInputStream#read(byte[], int, int)
+         */
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                this.count += read;
+            }
+            return read;
+        }
+
+        /**
+         *
+         * {@inheritDoc}
+         *
+         * @see java.io.FilterInputStream#skip(long)
+         */
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            this.count += skipped;
+            return skipped;
+        }
     }
 }
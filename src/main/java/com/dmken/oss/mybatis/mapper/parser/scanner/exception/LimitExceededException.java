@@ -0,0 +1,39 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.scanner.exception;
+
+import com.dmken.oss.mybatis.mapper.parser.util.FormatUtil;
+
+import lombok.Getter;
+
+@Getter
+@SuppressWarnings("javadoc")
+public class LimitExceededException extends ScannerException {
+    private static final long serialVersionUID = -6170384326526826917L;
+
+    private final String limit;
+    private final int maximum;
+
+    public LimitExceededException(final String limit, final int maximum, final int line, final int column) {
+        super("Limit " + limit + " of " + maximum + " exceeded at " + FormatUtil.formatSourceLocation(line, column));
+        this.limit = limit;
+        this.maximum = maximum;
+    }
+}
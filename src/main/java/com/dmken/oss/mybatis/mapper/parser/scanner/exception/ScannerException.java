@@ -30,4 +30,9 @@ public class ScannerException extends Exception {
     public ScannerException(final String message) {
         super(message);
     }
+
+    protected ScannerException(final String message, final Throwable cause, final boolean enableSuppression,
+            final boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
 }
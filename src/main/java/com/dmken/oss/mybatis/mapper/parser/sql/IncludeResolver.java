@@ -0,0 +1,335 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.SelfClosingXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.SimpleXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+
+/**
+ * Expands the <code>&lt;include refid="..."/&gt;</code> tags of the
+ * statements of a set of mappers like MyBatis does.
+ *
+ * <p>
+ * An include is replaced by the children of the referenced
+ * <code>&lt;sql&gt;</code> fragment. A reference without a <code>.</code> is
+ * qualified with the namespace of the including mapper; nested includes are
+ * resolved against the same namespace. The <code>&lt;property&gt;</code>
+ * children of an include replace the <code>${name}</code> placeholders in the
+ * text and in the parameters of the fragment. Unlike MyBatis, unknown and
+ * cyclic references are not an error: The include tag is kept as it is, so a
+ * single broken mapper does not prevent analyzing the others.
+ * </p>
+ *
+ * <p>
+ * Texts that become adjacent by expanding an include are merged. Subtrees
+ * without includes and placeholders are not copied, so the expanded
+ * statements share them with the original documents.
+ * </p>
+ *
+ */
+public final class IncludeResolver {
+    /**
+     * The names of the statement tags.
+     *
+     */
+    private static final Set<String> STATEMENT_NAMES = new HashSet<>(Arrays.asList("select", "insert", "update", "delete"));
+
+    /**
+     * The documents of the mappers.
+     *
+     */
+    private final Collection<XmlDocument> documents;
+    /**
+     * The <code>&lt;sql&gt;</code> fragments by their qualified ID.
+     *
+     */
+    private final Map<String, AbstractXmlTag> fragments = new HashMap<>();
+
+    /**
+     * Constructor of IncludeResolver.
+     *
+     * @param documents
+     *            The documents of the mappers. Fragments may be included
+     *            across all of them.
+     */
+    public IncludeResolver(final Collection<XmlDocument> documents) {
+        this.documents = documents;
+        for (final XmlDocument document : documents) {
+            final XmlTag root = document.getRootTag();
+            if (root == null) {
+                continue;
+            }
+            final String namespace = root.getParameters().get("namespace");
+            for (final AbstractXmlValue child : root.getChildren()) {
+                if (child instanceof AbstractXmlTag && "sql".equals(((AbstractXmlTag) child).getName())) {
+                    final String id = ((AbstractXmlTag) child).getParameters().get("id");
+                    if (id != null) {
+                        this.fragments.putIfAbsent(IncludeResolver.qualify(namespace, id), (AbstractXmlTag) child);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the statements of all mappers with their includes expanded.
+     *
+     * @return The statements in document order. Statements without an ID are
+     *         skipped.
+     */
+    public List<MapperStatement> getStatements() {
+        final List<MapperStatement> statements = new ArrayList<>();
+        for (final XmlDocument document : this.documents) {
+            final XmlTag root = document.getRootTag();
+            if (root == null) {
+                continue;
+            }
+            final String namespace = root.getParameters().get("namespace");
+            for (final AbstractXmlValue child : root.getChildren()) {
+                if (!(child instanceof AbstractXmlTag)) {
+                    continue;
+                }
+                final AbstractXmlTag tag = (AbstractXmlTag) child;
+                final String id = tag.getParameters().get("id");
+                if (id != null && IncludeResolver.STATEMENT_NAMES.contains(tag.getName())) {
+                    statements.add(new MapperStatement(namespace, id, this.expand(namespace, tag)));
+                }
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Expands the includes of the given tag.
+     *
+     * @param namespace
+     *            The namespace of the mapper containing the tag (used to
+     *            qualify the references). May be <code>null</code>.
+     * @param tag
+     *            The tag (e.g. a statement).
+     * @return The tag with all includes expanded or the tag itself if it does
+     *         not contain any include.
+     */
+    public AbstractXmlTag expand(final String namespace, final AbstractXmlTag tag) {
+        final List<AbstractXmlValue> expanded = new ArrayList<>(1);
+        this.expand(namespace, tag, Collections.emptyMap(), new HashSet<>(), expanded);
+        return (AbstractXmlTag) expanded.get(0);
+    }
+
+    /**
+     * Expands the includes of the given value.
+     *
+     * @param namespace
+     *            The namespace used to qualify the references.
+     * @param value
+     *            The value.
+     * @param properties
+     *            The properties of the enclosing includes.
+     * @param active
+     *            The qualified IDs of the fragments that are currently being
+     *            expanded (to detect cycles).
+     * @param out
+     *            The list to add the expanded value (or the values replacing
+     *            an include) to.
+     */
+    private void expand(final String namespace, final AbstractXmlValue value, final Map<String, String> properties,
+            final Set<String> active, final List<AbstractXmlValue> out) {
+        if (value instanceof SimpleXmlValue) {
+            final String data = ((SimpleXmlValue) value).getData();
+            final String substituted = IncludeResolver.substitute(data, properties);
+            out.add(substituted == data ? value : new SimpleXmlValue(substituted));
+            return;
+        }
+
+        final AbstractXmlTag tag = (AbstractXmlTag) value;
+        if ("include".equals(tag.getName())) {
+            final String refid = IncludeResolver.substitute(tag.getParameters().get("refid"), properties);
+            final String qualified = refid == null ? null : IncludeResolver.qualify(namespace, refid);
+            final AbstractXmlTag fragment = qualified == null ? null : this.fragments.get(qualified);
+            if (fragment != null && active.add(qualified)) {
+                final Map<String, String> fragmentProperties = this.properties(tag, properties);
+                if (fragment instanceof XmlTag) {
+                    for (final AbstractXmlValue child : ((XmlTag) fragment).getChildren()) {
+                        this.expand(namespace, child, fragmentProperties, active, out);
+                    }
+                }
+                active.remove(qualified);
+                return;
+            }
+        }
+
+        final Map<String, String> parameters = IncludeResolver.substitute(tag.getParameters(), properties);
+        if (tag instanceof SelfClosingXmlTag) {
+            out.add(parameters == tag.getParameters() ? tag : new SelfClosingXmlTag(tag.getName(), parameters));
+            return;
+        }
+        final List<AbstractXmlValue> oldChildren = ((XmlTag) tag).getChildren();
+        final List<AbstractXmlValue> children = new ArrayList<>(oldChildren.size());
+        boolean changed = parameters != tag.getParameters();
+        for (final AbstractXmlValue child : oldChildren) {
+            final int size = children.size();
+            this.expand(namespace, child, properties, active, children);
+            changed |= children.size() != size + 1 || children.get(size) != child;
+        }
+        out.add(changed ? new XmlTag(tag.getName(), parameters, IncludeResolver.mergeText(children)) : tag);
+    }
+
+    /**
+     * Merges adjacent text values (as created by expanding an include between
+     * two texts) into one, separated by a space, so the expanded tree looks
+     * like a parsed one.
+     *
+     * @param children
+     *            The children.
+     * @return The merged children.
+     */
+    private static List<AbstractXmlValue> mergeText(final List<AbstractXmlValue> children) {
+        final List<AbstractXmlValue> merged = new ArrayList<>(children.size());
+        for (final AbstractXmlValue child : children) {
+            final int last = merged.size() - 1;
+            if (child instanceof SimpleXmlValue && last >= 0 && merged.get(last) instanceof SimpleXmlValue) {
+                merged.set(last, new SimpleXmlValue(
+                        ((SimpleXmlValue) merged.get(last)).getData() + ' ' + ((SimpleXmlValue) child).getData()));
+            } else {
+                merged.add(child);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Collects the properties of the given include.
+     *
+     * @param include
+     *            The include tag.
+     * @param properties
+     *            The properties of the enclosing includes (used to substitute
+     *            the values).
+     * @return The properties of the enclosing includes overridden by the
+     *         properties of the include.
+     */
+    private Map<String, String> properties(final AbstractXmlTag include, final Map<String, String> properties) {
+        if (!(include instanceof XmlTag)) {
+            return properties;
+        }
+        Map<String, String> result = properties;
+        for (final AbstractXmlValue child : ((XmlTag) include).getChildren()) {
+            if (child instanceof AbstractXmlTag && "property".equals(((AbstractXmlTag) child).getName())) {
+                final Map<String, String> parameters = ((AbstractXmlTag) child).getParameters();
+                if (parameters.get("name") != null && parameters.get("value") != null) {
+                    if (result == properties) {
+                        result = new HashMap<>(properties);
+                    }
+                    result.put(parameters.get("name"), IncludeResolver.substitute(parameters.get("value"), properties));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Qualifies the given reference with the given namespace unless it is
+     * qualified already.
+     *
+     * @param namespace
+     *            The namespace. May be <code>null</code>.
+     * @param reference
+     *            The reference.
+     * @return The qualified reference.
+     */
+    private static String qualify(final String namespace, final String reference) {
+        return namespace == null || reference.indexOf('.') >= 0 ? reference : namespace + '.' + reference;
+    }
+
+    /**
+     * Replaces the <code>${name}</code> placeholders in the values of the
+     * given parameters.
+     *
+     * @param parameters
+     *            The parameters.
+     * @param properties
+     *            The properties.
+     * @return The substituted parameters or the given parameters if nothing
+     *         was replaced.
+     */
+    private static Map<String, String> substitute(final Map<String, String> parameters, final Map<String, String> properties) {
+        if (properties.isEmpty()) {
+            return parameters;
+        }
+        Map<String, String> result = parameters;
+        for (final Map.Entry<String, String> entry : parameters.entrySet()) {
+            final String substituted = IncludeResolver.substitute(entry.getValue(), properties);
+            if (substituted != entry.getValue()) {
+                if (result == parameters) {
+                    result = new LinkedHashMap<>(parameters);
+                }
+                result.put(entry.getKey(), substituted);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the <code>${name}</code> placeholders of the given properties
+     * in the given string. Placeholders of unknown properties are kept.
+     *
+     * @param str
+     *            The string. May be <code>null</code>.
+     * @param properties
+     *            The properties.
+     * @return The substituted string or the given string if nothing was
+     *         replaced.
+     */
+    private static String substitute(final String str, final Map<String, String> properties) {
+        if (str == null || properties.isEmpty() || str.indexOf("${") < 0) {
+            return str;
+        }
+        final StringBuilder builder = new StringBuilder(str.length());
+        boolean replaced = false;
+        int from = 0;
+        int start;
+        while ((start = str.indexOf("${", from)) >= 0) {
+            final int end = str.indexOf('}', start + 2);
+            if (end < 0) {
+                break;
+            }
+            final String value = properties.get(str.substring(start + 2, end));
+            builder.append(str, from, start).append(value == null ? str.substring(start, end + 1) : value);
+            replaced |= value != null;
+            from = end + 1;
+        }
+        return replaced ? builder.append(str, from, str.length()).toString() : str;
+    }
+}
@@ -0,0 +1,60 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.sql;
+
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlTag;
+
+import lombok.Data;
+
+/**
+ * A statement (<code>&lt;select&gt;</code>, <code>&lt;insert&gt;</code>,
+ * <code>&lt;update&gt;</code> or <code>&lt;delete&gt;</code>) of a mapper with
+ * all includes {@link IncludeResolver expanded}.
+ *
+ */
+@Data
+public class MapperStatement {
+    /**
+     * The namespace of the mapper or <code>null</code> if the mapper does not
+     * declare a namespace.
+     *
+     */
+    private final String namespace;
+    /**
+     * The ID of the statement within the mapper.
+     *
+     */
+    private final String id;
+    /**
+     * The statement tag with all includes expanded.
+     *
+     */
+    private final AbstractXmlTag tag;
+
+    /**
+     * Retrieves the ID of the statement qualified with the namespace (as used
+     * by MyBatis to look up the statement).
+     *
+     * @return The qualified ID.
+     */
+    public String getQualifiedId() {
+        return this.namespace == null ? this.id : this.namespace + '.' + this.id;
+    }
+}
@@ -0,0 +1,58 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.sql;
+
+import java.util.Set;
+
+import lombok.Data;
+
+/**
+ * The tables and columns referenced by the SQL of a statement as extracted by
+ * the {@link SqlDependencyAnalyzer}.
+ *
+ * <p>
+ * All names are lower case. Table names are kept qualified as written (e.g.
+ * <code>app.users</code>), column names are unqualified. The sets contain the
+ * names of all branches of the dynamic SQL in the order of their first
+ * occurrence.
+ * </p>
+ *
+ */
+@Data
+public class SqlDependencies {
+    /**
+     * The tables read or written by the statement (including the joined
+     * tables).
+     *
+     */
+    private final Set<String> tables;
+    /**
+     * The tables that are the target of a <code>JOIN</code>.
+     *
+     */
+    private final Set<String> joinedTables;
+    /**
+     * The columns referenced by the statement (e.g. in the select list, in
+     * conditions, in the column list of an <code>INSERT</code> or in the
+     * <code>SET</code> clause of an <code>UPDATE</code>).
+     *
+     */
+    private final Set<String> columns;
+}
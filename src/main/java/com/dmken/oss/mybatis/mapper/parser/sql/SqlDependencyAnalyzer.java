@@ -0,0 +1,245 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.sql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.util.VersionUtil;
+
+/**
+ * Extracts the tables and columns referenced by statements (see
+ * {@link SqlDependencies}) and caches the results.
+ *
+ * <p>
+ * The results are cached by the {@link AbstractXmlValue#getSubtreeHash()
+ * subtree hash} of the (expanded) statement tag, so a statement is only
+ * analyzed again if its content changed. The cache can be
+ * {@link #save(OutputStream) saved} and {@link #load(InputStream) loaded}, so
+ * unchanged statements are not analyzed again across runs either. Saved caches
+ * record the {@link VersionUtil#getBuildVersion() build version} of the parser,
+ * caches of any other build are ignored when loading. Only the results of statements
+ * that were analyzed by this analyzer are saved, so results of statements that
+ * changed or were removed since do not pile up in the saved cache.
+ * </p>
+ *
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ *
+ */
+public class SqlDependencyAnalyzer {
+    /**
+     * The magic number every saved cache starts with (<code>MMSD</code>).
+     *
+     */
+    private static final int MAGIC = 0x4D4D5344;
+    /**
+     * The version of the format of the saved cache. Has to be incremented
+     * whenever the format or the extraction changes.
+     *
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The cached dependencies by the subtree hash of the statement tag.
+     *
+     */
+    private final Map<Long, SqlDependencies> cache = new ConcurrentHashMap<>();
+    /**
+     * The subtree hashes of the statements that were analyzed by this
+     * analyzer (i.e. the entries of the {@link #cache} that are still in use).
+     *
+     */
+    private final Set<Long> used = ConcurrentHashMap.newKeySet();
+    /**
+     * The build version of the parser the cache is valid for.
+     *
+     */
+    private final String parserVersion = VersionUtil.getBuildVersion();
+    /**
+     * The number of statements that were answered by the cache.
+     *
+     */
+    private final LongAdder hitCount = new LongAdder();
+    /**
+     * The number of statements that had to be analyzed.
+     *
+     */
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Analyzes the given statements.
+     *
+     * @param statements
+     *            The statements (e.g. from {@link IncludeResolver#getStatements()}
+     *            ).
+     * @return The dependencies by the {@link MapperStatement#getQualifiedId()
+     *         qualified ID} of the statements.
+     */
+    public Map<String, SqlDependencies> analyze(final Collection<MapperStatement> statements) {
+        final Map<String, SqlDependencies> dependencies = new LinkedHashMap<>();
+        for (final MapperStatement statement : statements) {
+            dependencies.put(statement.getQualifiedId(), this.analyze(statement.getTag()));
+        }
+        return dependencies;
+    }
+
+    /**
+     * Analyzes the given statement or retrieves the cached result.
+     *
+     * @param statement
+     *            The statement tag with all includes {@link IncludeResolver
+     *            expanded}.
+     * @return The dependencies.
+     */
+    public SqlDependencies analyze(final AbstractXmlTag statement) {
+        final Long key = statement.getSubtreeHash();
+        this.used.add(key);
+        final SqlDependencies cached = this.cache.get(key);
+        if (cached != null) {
+            this.hitCount.increment();
+            return cached;
+        }
+        this.missCount.increment();
+        final SqlDependencies dependencies = SqlDependencyExtractor.extract(statement);
+        this.cache.put(key, dependencies);
+        return dependencies;
+    }
+
+    /**
+     * Retrieves the number of statements that were answered by the cache.
+     *
+     * @return The hit count.
+     */
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    /**
+     * Retrieves the number of statements that had to be analyzed.
+     *
+     * @return The miss count.
+     */
+    public long getMissCount() {
+        return this.missCount.sum();
+    }
+
+    /**
+     * Retrieves the number of cached results.
+     *
+     * @return The number of entries.
+     */
+    public int getCacheSize() {
+        return this.cache.size();
+    }
+
+    /**
+     * Writes the cached results of the statements that were analyzed by this
+     * analyzer to the given output stream. Other results (e.g.
+     * {@link #load(InputStream) loaded} ones of statements that do not exist
+     * anymore) are dropped from the cache.
+     *
+     * @param out
+     *            The output stream. Is not closed.
+     * @throws IOException
+     *             If the output stream fails.
+     */
+    public void save(final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(SqlDependencyAnalyzer.MAGIC);
+        data.writeInt(SqlDependencyAnalyzer.FORMAT_VERSION);
+        data.writeUTF(this.parserVersion);
+        this.cache.keySet().retainAll(this.used);
+        final Map<Long, SqlDependencies> snapshot = new LinkedHashMap<>(this.cache);
+        data.writeInt(snapshot.size());
+        for (final Map.Entry<Long, SqlDependencies> entry : snapshot.entrySet()) {
+            data.writeLong(entry.getKey());
+            SqlDependencyAnalyzer.writeSet(data, entry.getValue().getTables());
+            SqlDependencyAnalyzer.writeSet(data, entry.getValue().getJoinedTables());
+            SqlDependencyAnalyzer.writeSet(data, entry.getValue().getColumns());
+        }
+        data.flush();
+    }
+
+    /**
+     * Adds the results that were {@link #save(OutputStream) saved} before to
+     * the cache.
+     *
+     * @param in
+     *            The input stream. Is not closed.
+     * @return Whether the results were loaded; <code>false</code> if they were
+     *         saved by another version and thus ignored.
+     * @throws IOException
+     *             If the input stream fails or is broken.
+     */
+    public boolean load(final InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != SqlDependencyAnalyzer.MAGIC) {
+            throw new IOException("Not a SQL dependency cache!");
+        }
+        if (data.readInt() != SqlDependencyAnalyzer.FORMAT_VERSION || !this.parserVersion.equals(data.readUTF())) {
+            return false;
+        }
+        final int size = data.readInt();
+        final Map<Long, SqlDependencies> entries = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            final long key = data.readLong();
+            entries.put(key, new SqlDependencies(SqlDependencyAnalyzer.readSet(data), SqlDependencyAnalyzer.readSet(data),
+                    SqlDependencyAnalyzer.readSet(data)));
+        }
+        this.cache.putAll(entries);
+        return true;
+    }
+
+    private static void writeSet(final DataOutputStream out, final Set<String> set) throws IOException {
+        out.writeInt(set.size());
+        for (final String str : set) {
+            out.writeUTF(str);
+        }
+    }
+
+    private static Set<String> readSet(final DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Invalid set size " + size + "!");
+        }
+        final Set<String> set = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+            set.add(in.readUTF());
+        }
+        return Collections.unmodifiableSet(set);
+    }
+}
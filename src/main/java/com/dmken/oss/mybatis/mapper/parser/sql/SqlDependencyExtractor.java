@@ -0,0 +1,414 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.dmken.oss.mybatis.mapper.parser.sql.SqlLexer.TokenType;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.SimpleXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+
+/**
+ * Extracts the {@link SqlDependencies dependencies} of a single statement.
+ *
+ * <p>
+ * The text of all branches of the dynamic SQL is {@link SqlLexer tokenized}
+ * in document order, including the implicit keywords of the dynamic tags
+ * (e.g. <code>WHERE</code> of <code>&lt;where&gt;</code> or the
+ * <code>open</code>, <code>separator</code> and <code>close</code> parameters
+ * of <code>&lt;foreach&gt;</code>). As the alternatives of a
+ * <code>&lt;choose&gt;</code> are mutually exclusive, a boundary is recorded
+ * between them, so <code>FROM &lt;when&gt;a&lt;/when&gt;&lt;otherwise&gt;b&lt;/otherwise&gt;</code>
+ * results in the tables <code>a</code> and <code>b</code> rather than the
+ * table <code>a</code> with the alias <code>b</code>.
+ * </p>
+ *
+ * <p>
+ * The token stream is then scanned for table references (after
+ * <code>FROM</code>, <code>JOIN</code>, <code>INTO</code>, <code>UPDATE</code>
+ * and <code>TABLE</code>) with their aliases and for column references (all
+ * other identifiers that are neither keywords, function names nor table
+ * names). An unqualified reference to a name that was declared as an alias
+ * before (e.g. in <code>ORDER BY total</code> after
+ * <code>COUNT(*) AS total</code>) refers to the alias; all other references
+ * are reported, so <code>u.name AS name</code> still reports the column
+ * <code>name</code>. This is a heuristic that does not need to know the SQL
+ * dialect; dynamic table names (<code>${...}</code>) are not resolved.
+ * </p>
+ *
+ */
+final class SqlDependencyExtractor {
+    /**
+     * The reserved words that are never reported as columns.
+     *
+     */
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("all", "and", "any", "as", "asc", "between",
+            "by", "case", "cast", "collate", "conflict", "cross", "current_date", "current_time", "current_timestamp",
+            "default", "delete", "desc", "distinct", "do", "duplicate", "else", "end", "escape", "except", "exists",
+            "false", "fetch", "first", "for", "from", "full", "group", "having", "ignore", "ilike", "in", "inner",
+            "insert", "intersect", "interval", "into", "is", "join", "key", "last", "lateral", "left", "like", "limit", "locked",
+            "matched", "merge", "natural", "next", "not", "nothing", "nowait", "null", "nulls", "of", "offset", "on", "only", "or",
+            "order", "outer", "over", "partition", "recursive", "regexp", "replace", "returning", "right", "row", "rows",
+            "select", "set", "skip", "some", "table", "then", "true", "union", "unique", "update", "using", "values", "when",
+            "where", "window", "with"));
+
+    /**
+     * The types of the tokens.
+     *
+     */
+    private final List<TokenType> types = new ArrayList<>();
+    /**
+     * The texts of the tokens (lower case unless quoted).
+     *
+     */
+    private final List<String> texts = new ArrayList<>();
+    /**
+     * The indices of the tokens that start an alternative of a
+     * <code>&lt;choose&gt;</code> (except the first one), i.e. that are
+     * preceded by a boundary.
+     *
+     */
+    private final BitSet boundaries = new BitSet();
+
+    /**
+     * The tables.
+     *
+     */
+    private final Set<String> tables = new LinkedHashSet<>();
+    /**
+     * The joined tables.
+     *
+     */
+    private final Set<String> joinedTables = new LinkedHashSet<>();
+    /**
+     * The columns.
+     *
+     */
+    private final Set<String> columns = new LinkedHashSet<>();
+    /**
+     * The table and column aliases.
+     *
+     */
+    private final Set<String> aliases = new HashSet<>();
+
+    /**
+     * Constructor of SqlDependencyExtractor.
+     *
+     */
+    private SqlDependencyExtractor() {
+        // Nothing to do.
+    }
+
+    /**
+     * Extracts the dependencies of the given statement.
+     *
+     * @param statement
+     *            The statement tag with all includes expanded.
+     * @return The dependencies.
+     */
+    static SqlDependencies extract(final AbstractXmlTag statement) {
+        final SqlDependencyExtractor extractor = new SqlDependencyExtractor();
+        extractor.tokenize(statement);
+        extractor.scan(0, extractor.types.size());
+        return new SqlDependencies(Collections.unmodifiableSet(extractor.tables),
+                Collections.unmodifiableSet(extractor.joinedTables), Collections.unmodifiableSet(extractor.columns));
+    }
+
+    /**
+     * Tokenizes the text of all branches of the given value.
+     *
+     * @param value
+     *            The value.
+     */
+    private void tokenize(final AbstractXmlValue value) {
+        if (value instanceof SimpleXmlValue) {
+            this.tokenize(((SimpleXmlValue) value).getData());
+            return;
+        }
+        final AbstractXmlTag tag = (AbstractXmlTag) value;
+        final List<AbstractXmlValue> children = tag instanceof XmlTag ? ((XmlTag) tag).getChildren()
+                : Collections.<AbstractXmlValue> emptyList();
+        switch (tag.getName()) {
+            case "where":
+                this.tokenize("WHERE");
+                break;
+            case "set":
+                this.tokenize("SET");
+                break;
+            case "trim":
+            case "foreach":
+                this.tokenize(tag.getParameters().get(tag.getName().equals("trim") ? "prefix" : "open"));
+                break;
+            case "bind":
+            case "include":
+            case "property":
+            case "selectKey":
+                // Not part of the statement text (or an unresolved include).
+                return;
+            default:
+                break;
+        }
+
+        boolean first = true;
+        for (final AbstractXmlValue child : children) {
+            if ("choose".equals(tag.getName()) && child instanceof AbstractXmlTag) {
+                if (!first) {
+                    this.boundaries.set(this.types.size());
+                }
+                first = false;
+            }
+            this.tokenize(child);
+        }
+
+        if ("trim".equals(tag.getName())) {
+            this.tokenize(tag.getParameters().get("suffix"));
+        } else if ("foreach".equals(tag.getName())) {
+            this.tokenize(tag.getParameters().get("separator"));
+            this.tokenize(tag.getParameters().get("close"));
+        }
+    }
+
+    /**
+     * Tokenizes the given text.
+     *
+     * @param sql
+     *            The text. May be <code>null</code>.
+     */
+    private void tokenize(final String sql) {
+        if (sql == null) {
+            return;
+        }
+        final SqlLexer lexer = new SqlLexer(sql);
+        TokenType type;
+        while ((type = lexer.next()) != null) {
+            this.types.add(type);
+            this.texts.add(type == TokenType.IDENTIFIER ? lexer.getText().toLowerCase(Locale.ROOT) : lexer.getText());
+        }
+    }
+
+    /**
+     * Scans the tokens for table and column references.
+     *
+     * @param start
+     *            The index of the first token to scan.
+     * @param end
+     *            The index after the last token to scan.
+     */
+    private void scan(final int start, final int end) {
+        int i = start;
+        while (i < end) {
+            if (this.isKeyword(i, "from") || this.isKeyword(i, "table")
+                    || this.isKeyword(i, "update") && !this.isKeyword(i - 1, "key") && !this.isKeyword(i - 1, "for")) {
+                i = this.tableList(i + 1, false, true, true);
+            } else if (this.isKeyword(i, "join")) {
+                i = this.tableList(i + 1, true, false, true);
+            } else if (this.isKeyword(i, "into")) {
+                i = this.tableList(i + 1, false, false, false);
+                if (this.isSymbol(i, "(")) {
+                    i = this.columnList(i + 1);
+                }
+            } else if (this.isKeyword(i, "as") && this.isName(i + 1)) {
+                this.aliases.add(this.texts.get(i + 1));
+                i += 2;
+            } else if (this.isName(i) && this.isKeyword(i + 1, "as") && this.isSymbol(i + 2, "(")) {
+                // The name of a common table expression.
+                this.aliases.add(this.texts.get(i));
+                i += 3;
+            } else if (this.isName(i)) {
+                i = this.columnReference(i);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Reads a list of table references.
+     *
+     * @param start
+     *            The index of the first token of the list.
+     * @param joined
+     *            Whether the tables are joined.
+     * @param list
+     *            Whether multiple tables may be separated by commas.
+     * @param functions
+     *            Whether a parenthesis after a name starts the arguments of a
+     *            table function (rather than a column list) and a parenthesis
+     *            instead of a name a derived table.
+     * @return The index of the first token after the list.
+     */
+    private int tableList(final int start, final boolean joined, final boolean list, final boolean functions) {
+        int i = start;
+        while (true) {
+            if (functions && this.isSymbol(i, "(")) {
+                // A derived table (or parenthesized joins), the contents are
+                // scanned as usual and the name after it is an alias.
+                final int end = this.closingParenthesis(i);
+                this.scan(this.isName(i + 1) ? this.tableList(i + 1, joined, list, functions) : i + 1, end);
+                i = end + 1;
+            } else if (this.isName(i)) {
+                final StringBuilder name = new StringBuilder(this.texts.get(i));
+                i++;
+                while (this.isSymbol(i, ".") && this.isName(i + 1)) {
+                    name.append('.').append(this.texts.get(i + 1));
+                    i += 2;
+                }
+                if (functions && this.isSymbol(i, "(")) {
+                    // A table function, the arguments are scanned as usual.
+                    return i;
+                }
+                this.tables.add(name.toString());
+                if (joined) {
+                    this.joinedTables.add(name.toString());
+                }
+            } else {
+                break;
+            }
+
+            if (!this.boundaries.get(i) && this.isKeyword(i, "as")) {
+                i++;
+            }
+            if (!this.boundaries.get(i) && this.isName(i)) {
+                this.aliases.add(this.texts.get(i));
+                i++;
+            }
+            if (this.boundaries.get(i)) {
+                // The table of the next alternative.
+                continue;
+            }
+            if (list && this.isSymbol(i, ",")) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Finds the parenthesis that closes the given one.
+     *
+     * @param open
+     *            The index of the opening parenthesis.
+     * @return The index of the closing parenthesis or the number of tokens if
+     *         it is missing.
+     */
+    private int closingParenthesis(final int open) {
+        int depth = 0;
+        for (int i = open; i < this.types.size(); i++) {
+            if (this.isSymbol(i, "(")) {
+                depth++;
+            } else if (this.isSymbol(i, ")") && --depth == 0) {
+                return i;
+            }
+        }
+        return this.types.size();
+    }
+
+    /**
+     * Reads a parenthesized list of columns (e.g. of an <code>INSERT</code>).
+     *
+     * @param start
+     *            The index of the first token after the opening parenthesis.
+     * @return The index of the first token after the list.
+     */
+    private int columnList(final int start) {
+        int i = start;
+        while (i < this.types.size() && !this.isSymbol(i, ")")) {
+            if (this.isName(i)) {
+                this.columns.add(this.texts.get(i));
+            }
+            i++;
+        }
+        return i + 1;
+    }
+
+    /**
+     * Reads a possibly qualified column reference.
+     *
+     * @param start
+     *            The index of the first part of the name.
+     * @return The index of the first token after the name.
+     */
+    private int columnReference(final int start) {
+        int i = start;
+        while (this.isSymbol(i + 1, ".") && (this.isName(i + 2) || this.isSymbol(i + 2, "*"))) {
+            i += 2;
+        }
+        if (!this.isSymbol(i + 1, "(") && this.isName(i) && (i > start || !this.aliases.contains(this.texts.get(i)))) {
+            // Neither a function call nor a reference to an alias.
+            this.columns.add(this.texts.get(i));
+        }
+        return i + 1;
+    }
+
+    /**
+     * Checks whether the given token is an identifier that is not a keyword.
+     *
+     * @param index
+     *            The index of the token.
+     * @return Whether the token names a table, alias or column.
+     */
+    private boolean isName(final int index) {
+        if (index >= this.types.size()) {
+            return false;
+        }
+        final TokenType type = this.types.get(index);
+        return type == TokenType.QUOTED_IDENTIFIER
+                || type == TokenType.IDENTIFIER && !SqlDependencyExtractor.KEYWORDS.contains(this.texts.get(index));
+    }
+
+    /**
+     * Checks whether the given token is the given keyword.
+     *
+     * @param index
+     *            The index of the token.
+     * @param keyword
+     *            The keyword (lower case).
+     * @return Whether the token is the keyword.
+     */
+    private boolean isKeyword(final int index, final String keyword) {
+        return index >= 0 && index < this.types.size() && this.types.get(index) == TokenType.IDENTIFIER
+                && keyword.equals(this.texts.get(index));
+    }
+
+    /**
+     * Checks whether the given token is the given symbol.
+     *
+     * @param index
+     *            The index of the token.
+     * @param symbol
+     *            The symbol.
+     * @return Whether the token is the symbol.
+     */
+    private boolean isSymbol(final int index, final String symbol) {
+        return index < this.types.size() && this.types.get(index) == TokenType.SYMBOL && symbol.equals(this.texts.get(index));
+    }
+}
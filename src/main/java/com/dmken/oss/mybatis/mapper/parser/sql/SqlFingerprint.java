@@ -0,0 +1,53 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.sql;
+
+import com.dmken.oss.mybatis.mapper.parser.util.HashUtil;
+
+import lombok.Data;
+
+/**
+ * The fingerprint of one possible shape of a statement.
+ *
+ * @see SqlFingerprinter
+ */
+@Data
+public class SqlFingerprint {
+    /**
+     * The {@link SqlFingerprinter#normalize(CharSequence) normalized} SQL.
+     *
+     */
+    private final String sql;
+    /**
+     * The {@link HashUtil#hash(CharSequence) hash} of the normalized SQL.
+     *
+     */
+    private final long hash;
+
+    /**
+     * Retrieves the {@link #hash} formatted as hexadecimal string (e.g. to
+     * correlate it with log entries).
+     *
+     * @return The formatted hash.
+     */
+    public String getHashString() {
+        return HashUtil.toHexString(this.hash);
+    }
+}
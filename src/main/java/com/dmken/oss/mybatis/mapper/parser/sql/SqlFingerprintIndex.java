@@ -0,0 +1,110 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.sql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dmken.oss.mybatis.mapper.parser.util.HashUtil;
+
+/**
+ * The {@link SqlFingerprint fingerprints} of a set of statements, indexed by
+ * their hashes.
+ *
+ * <p>
+ * This class is immutable and thread-safe.
+ * </p>
+ *
+ * @see SqlFingerprinter
+ */
+public final class SqlFingerprintIndex {
+    /**
+     * The fingerprints of the statements.
+     *
+     */
+    private final List<StatementFingerprints> statements;
+    /**
+     * The qualified IDs of the statements by the hashes of their fingerprints.
+     *
+     */
+    private final Map<Long, List<String>> statementIds = new HashMap<>();
+
+    /**
+     * Constructor of SqlFingerprintIndex.
+     *
+     * @param statements
+     *            The {@link #statements} to set.
+     */
+    SqlFingerprintIndex(final List<StatementFingerprints> statements) {
+        this.statements = Collections.unmodifiableList(statements);
+        for (final StatementFingerprints statement : statements) {
+            for (final SqlFingerprint fingerprint : statement.getFingerprints()) {
+                this.statementIds.computeIfAbsent(fingerprint.getHash(), key -> new ArrayList<>(1))
+                        .add(statement.getStatementId());
+            }
+        }
+    }
+
+    /**
+     * Retrieves the fingerprints of all statements.
+     *
+     * @return The fingerprints in the order of the statements.
+     */
+    public List<StatementFingerprints> getStatements() {
+        return this.statements;
+    }
+
+    /**
+     * Retrieves the number of distinct shapes of all statements.
+     *
+     * @return The number of distinct fingerprints.
+     */
+    public int getFingerprintCount() {
+        return this.statementIds.size();
+    }
+
+    /**
+     * Finds the statements that may have produced the given SQL.
+     *
+     * @param sql
+     *            The SQL, e.g. as sent to the database or as found in a log.
+     *            Is {@link SqlFingerprinter#normalize(CharSequence)
+     *            normalized} first.
+     * @return The qualified IDs of the statements.
+     */
+    public List<String> find(final CharSequence sql) {
+        return this.find(HashUtil.hash(SqlFingerprinter.normalize(sql)));
+    }
+
+    /**
+     * Finds the statements having a shape with the given fingerprint hash.
+     *
+     * @param hash
+     *            The {@link SqlFingerprint#getHash() hash}.
+     * @return The qualified IDs of the statements.
+     */
+    public List<String> find(final long hash) {
+        final List<String> ids = this.statementIds.get(hash);
+        return ids == null ? Collections.emptyList() : Collections.unmodifiableList(ids);
+    }
+}
@@ -0,0 +1,233 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.sql;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.dmken.oss.mybatis.mapper.parser.sql.SqlLexer.TokenType;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.util.HashUtil;
+
+/**
+ * Computes the {@link SqlFingerprint fingerprints} of all possible shapes of
+ * statements, e.g. to pre-warm prepared statement caches or to match the SQL
+ * of a slow query log back to the statement.
+ *
+ * <p>
+ * A shape is the SQL a statement produces for one combination of the
+ * branches of its dynamic SQL (see {@link SqlShapeExpander}). The number of
+ * shapes per statement is bounded by the branch limit; statements with more
+ * shapes are marked as {@link StatementFingerprints#isTruncated() truncated}.
+ * </p>
+ *
+ * <p>
+ * Every shape is {@link #normalize(CharSequence) normalized}: Keywords and
+ * unquoted identifiers are lower-cased, literals and parameters are replaced
+ * by <code>?</code>, lists of parameters after <code>IN</code> are collapsed
+ * to a single one, comments are removed and the tokens are separated by
+ * exactly one space. Thus the normalized SQL of a statement equals the
+ * normalized SQL MyBatis sends to the database for the same shape (except for
+ * text substitutions with <code>${...}</code>, which cannot be predicted).
+ * </p>
+ *
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ *
+ */
+public final class SqlFingerprinter {
+    /**
+     * The default maximum number of shapes per statement.
+     *
+     */
+    private static final int DEFAULT_BRANCH_LIMIT = 256;
+
+    /**
+     * The maximum number of shapes per statement.
+     *
+     */
+    private final int branchLimit;
+
+    /**
+     * Constructor of SqlFingerprinter.
+     *
+     * <p>
+     * Uses a branch limit of 256 shapes per statement.
+     * </p>
+     *
+     */
+    public SqlFingerprinter() {
+        this(SqlFingerprinter.DEFAULT_BRANCH_LIMIT);
+    }
+
+    /**
+     * Constructor of SqlFingerprinter.
+     *
+     * @param branchLimit
+     *            The maximum number of shapes per statement.
+     */
+    public SqlFingerprinter(final int branchLimit) {
+        if (branchLimit < 1) {
+            throw new IllegalArgumentException("Branch limit must be positive: " + branchLimit);
+        }
+        this.branchLimit = branchLimit;
+    }
+
+    /**
+     * Computes the fingerprints of the given statements.
+     *
+     * @param statements
+     *            The statements (e.g. from {@link IncludeResolver#getStatements()}
+     *            ).
+     * @return The index of the fingerprints.
+     */
+    public SqlFingerprintIndex fingerprint(final Collection<MapperStatement> statements) {
+        // Identical shapes of different statements share one fingerprint.
+        final Map<Long, SqlFingerprint> fingerprints = new HashMap<>();
+        final List<StatementFingerprints> result = new ArrayList<>(statements.size());
+        for (final MapperStatement statement : statements) {
+            result.add(this.fingerprint(statement, fingerprints));
+        }
+        return new SqlFingerprintIndex(result);
+    }
+
+    /**
+     * Computes the fingerprints of the given statement.
+     *
+     * @param statement
+     *            The statement.
+     * @return The fingerprints.
+     */
+    public StatementFingerprints fingerprint(final MapperStatement statement) {
+        return this.fingerprint(statement, new HashMap<>());
+    }
+
+    /**
+     * Computes the fingerprints of the given statement.
+     *
+     * @param statement
+     *            The statement.
+     * @param fingerprints
+     *            The known fingerprints by hash, to share instances.
+     * @return The fingerprints.
+     */
+    private StatementFingerprints fingerprint(final MapperStatement statement, final Map<Long, SqlFingerprint> fingerprints) {
+        final AbstractXmlTag tag = statement.getTag();
+        final List<List<String>> shapes = new ArrayList<>();
+        final boolean truncated = SqlShapeExpander.expand(tag, this.branchLimit, shapes);
+
+        final Map<Long, SqlFingerprint> distinct = new HashMap<>();
+        final List<SqlFingerprint> result = new ArrayList<>(shapes.size());
+        for (final List<String> shape : shapes) {
+            final String sql = SqlFingerprinter.join(shape);
+            final long hash = HashUtil.hash(sql);
+            if (distinct.containsKey(hash)) {
+                // Different token lists may normalize to the same SQL.
+                continue;
+            }
+            final SqlFingerprint fingerprint = fingerprints.computeIfAbsent(hash, key -> new SqlFingerprint(sql, key));
+            distinct.put(hash, fingerprint);
+            result.add(fingerprint);
+        }
+        return new StatementFingerprints(statement.getQualifiedId(), result, truncated);
+    }
+
+    /**
+     * Normalizes the given SQL (see the {@link SqlFingerprinter class
+     * description}).
+     *
+     * @param sql
+     *            The SQL, e.g. as sent to the database or as found in a log.
+     * @return The normalized SQL.
+     */
+    public static String normalize(final CharSequence sql) {
+        final List<String> tokens = new ArrayList<>();
+        SqlFingerprinter.tokenize(sql, tokens);
+        return SqlFingerprinter.join(tokens);
+    }
+
+    /**
+     * Splits the given SQL into normalized tokens.
+     *
+     * @param sql
+     *            The SQL. May be <code>null</code>.
+     * @param tokens
+     *            The list to add the tokens to.
+     */
+    static void tokenize(final CharSequence sql, final List<String> tokens) {
+        if (sql == null) {
+            return;
+        }
+        final SqlLexer lexer = new SqlLexer(sql);
+        TokenType type;
+        while ((type = lexer.next()) != null) {
+            switch (type) {
+                case IDENTIFIER:
+                    tokens.add(lexer.getText().toLowerCase(Locale.ROOT));
+                    break;
+                case STRING:
+                case NUMBER:
+                case PARAMETER:
+                    tokens.add("?");
+                    break;
+                default:
+                    // Symbols and quoted identifiers (including the quotes).
+                    tokens.add(sql.subSequence(lexer.getStart(), lexer.getEnd()).toString());
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Joins the given normalized tokens, collapsing lists of parameters after
+     * <code>IN</code>.
+     *
+     * @param tokens
+     *            The tokens.
+     * @return The normalized SQL.
+     */
+    static String join(final List<String> tokens) {
+        final StringBuilder builder = new StringBuilder(tokens.size() * 8);
+        final int size = tokens.size();
+        for (int i = 0; i < size; i++) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(tokens.get(i));
+            if ("in".equals(tokens.get(i)) && i + 3 < size && "(".equals(tokens.get(i + 1)) && "?".equals(tokens.get(i + 2))) {
+                // Skip ", ?" repetitions of "IN (?, ?, ...)".
+                int end = i + 3;
+                while (end + 1 < size && ",".equals(tokens.get(end)) && "?".equals(tokens.get(end + 1))) {
+                    end += 2;
+                }
+                if (end < size && ")".equals(tokens.get(end))) {
+                    builder.append(" ( ? )");
+                    i = end;
+                }
+            }
+        }
+        return builder.toString();
+    }
+}
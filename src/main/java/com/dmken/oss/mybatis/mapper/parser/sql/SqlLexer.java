@@ -0,0 +1,349 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.sql;
+
+/**
+ * A lightweight lexer splitting the SQL text of a statement into tokens.
+ *
+ * <p>
+ * The lexer does not know any SQL dialect: It only separates identifiers
+ * (including keywords and quoted identifiers), string and number literals,
+ * parameters (<code>#{...}</code>, <code>${...}</code> and <code>?</code>)
+ * and symbols. Whitespace and comments are skipped. The lexer never fails, any
+ * unknown character is returned as symbol.
+ * </p>
+ *
+ * <p>
+ * The lexer does not allocate anything while scanning; the
+ * {@link #getText() text} of a token is only created on request.
+ * </p>
+ *
+ */
+public final class SqlLexer {
+    /**
+     * The SQL text.
+     *
+     */
+    private final CharSequence sql;
+    /**
+     * The position of the next character.
+     *
+     */
+    private int position;
+    /**
+     * The type of the current token.
+     *
+     */
+    private TokenType type;
+    /**
+     * The start of the current token.
+     *
+     */
+    private int start;
+    /**
+     * The end of the current token (exclusive).
+     *
+     */
+    private int end;
+
+    /**
+     * Constructor of SqlLexer.
+     *
+     * @param sql
+     *            The SQL text.
+     */
+    public SqlLexer(final CharSequence sql) {
+        this.sql = sql;
+    }
+
+    /**
+     * Scans the next token.
+     *
+     * @return The type of the token or <code>null</code> if the end of the
+     *         text is reached.
+     */
+    public TokenType next() {
+        final int length = this.sql.length();
+        this.skipWhitespaceAndComments();
+        this.start = this.position;
+        if (this.position >= length) {
+            this.end = length;
+            this.type = null;
+            return null;
+        }
+
+        final char c = this.sql.charAt(this.position);
+        final char next = this.position + 1 < length ? this.sql.charAt(this.position + 1) : '\0';
+        if (Character.isLetter(c) || c == '_') {
+            this.position++;
+            while (this.position < length && SqlLexer.isIdentifierPart(this.sql.charAt(this.position))) {
+                this.position++;
+            }
+            this.type = TokenType.IDENTIFIER;
+        } else if (c == '"' || c == '`') {
+            this.skipQuoted(c);
+            this.type = TokenType.QUOTED_IDENTIFIER;
+        } else if (c == '\'') {
+            this.skipQuoted(c);
+            this.type = TokenType.STRING;
+        } else if (Character.isDigit(c) || c == '.' && Character.isDigit(next)) {
+            this.skipNumber();
+            this.type = TokenType.NUMBER;
+        } else if ((c == '#' || c == '$') && next == '{') {
+            final int close = SqlLexer.indexOf(this.sql, '}', this.position + 2);
+            this.position = close < 0 ? length : close + 1;
+            this.type = TokenType.PARAMETER;
+        } else if (c == '?') {
+            this.position++;
+            this.type = TokenType.PARAMETER;
+        } else {
+            this.position += SqlLexer.isTwoCharOperator(c, next) ? 2 : 1;
+            this.type = TokenType.SYMBOL;
+        }
+        this.end = this.position;
+        return this.type;
+    }
+
+    /**
+     * Retrieves the type of the current token.
+     *
+     * @return The type or <code>null</code> if the end of the text is reached.
+     */
+    public TokenType getType() {
+        return this.type;
+    }
+
+    /**
+     * Retrieves the start of the current token.
+     *
+     * @return The offset of the first character of the token.
+     */
+    public int getStart() {
+        return this.start;
+    }
+
+    /**
+     * Retrieves the end of the current token.
+     *
+     * @return The offset after the last character of the token.
+     */
+    public int getEnd() {
+        return this.end;
+    }
+
+    /**
+     * Retrieves the text of the current token. The quotes of
+     * {@link TokenType#QUOTED_IDENTIFIER quoted identifiers} are removed, all
+     * other tokens are returned as they are.
+     *
+     * @return The text of the token.
+     */
+    public String getText() {
+        if (this.type == TokenType.QUOTED_IDENTIFIER) {
+            final boolean closed = this.end - this.start > 1 && this.sql.charAt(this.end - 1) == this.sql.charAt(this.start);
+            return this.sql.subSequence(this.start + 1, closed ? this.end - 1 : this.end).toString();
+        }
+        return this.sql.subSequence(this.start, this.end).toString();
+    }
+
+    /**
+     * Checks whether the current token is the given symbol or identifier
+     * (ignoring the case).
+     *
+     * @param text
+     *            The text to compare with.
+     * @return Whether the current token is an unquoted identifier or a symbol
+     *         with the given text.
+     */
+    public boolean is(final String text) {
+        if (this.type != TokenType.IDENTIFIER && this.type != TokenType.SYMBOL || this.end - this.start != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.toUpperCase(this.sql.charAt(this.start + i)) != Character.toUpperCase(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skips whitespace, line comments (<code>--</code>) and block comments.
+     *
+     */
+    private void skipWhitespaceAndComments() {
+        final int length = this.sql.length();
+        while (this.position < length) {
+            final char c = this.sql.charAt(this.position);
+            final char next = this.position + 1 < length ? this.sql.charAt(this.position + 1) : '\0';
+            if (Character.isWhitespace(c)) {
+                this.position++;
+            } else if (c == '-' && next == '-') {
+                final int lineEnd = SqlLexer.indexOf(this.sql, '\n', this.position + 2);
+                this.position = lineEnd < 0 ? length : lineEnd + 1;
+            } else if (c == '/' && next == '*') {
+                int i = this.position + 2;
+                while (i + 1 < length && !(this.sql.charAt(i) == '*' && this.sql.charAt(i + 1) == '/')) {
+                    i++;
+                }
+                this.position = Math.min(length, i + 2);
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skips a quoted string or identifier. A doubled quote and a quote
+     * preceded by a backslash are part of the string.
+     *
+     * @param quote
+     *            The quote character.
+     */
+    private void skipQuoted(final char quote) {
+        final int length = this.sql.length();
+        int i = this.position + 1;
+        while (i < length) {
+            final char c = this.sql.charAt(i);
+            if (c == '\\' && quote == '\'') {
+                i += 2;
+            } else if (c == quote) {
+                if (i + 1 < length && this.sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    i++;
+                    break;
+                }
+            } else {
+                i++;
+            }
+        }
+        this.position = Math.min(length, i);
+    }
+
+    /**
+     * Skips a number (digits with an optional fraction and exponent).
+     *
+     */
+    private void skipNumber() {
+        final int length = this.sql.length();
+        while (this.position < length) {
+            final char c = this.sql.charAt(this.position);
+            if (Character.isDigit(c) || c == '.') {
+                this.position++;
+            } else if ((c == 'e' || c == 'E') && this.position + 1 < length
+                    && (Character.isDigit(this.sql.charAt(this.position + 1)) || this.sql.charAt(this.position + 1) == '-'
+                            || this.sql.charAt(this.position + 1) == '+')) {
+                this.position += 2;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the given character is part of an identifier.
+     *
+     * @param c
+     *            The character.
+     * @return Whether the character is a letter, a digit, <code>_</code> or
+     *         <code>$</code>.
+     */
+    private static boolean isIdentifierPart(final char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    /**
+     * Checks whether the given characters form an operator of two characters.
+     *
+     * @param c
+     *            The first character.
+     * @param next
+     *            The second character.
+     * @return Whether the characters form <code>&lt;=</code>,
+     *         <code>&gt;=</code>, <code>&lt;&gt;</code>, <code>!=</code>,
+     *         <code>||</code> or <code>::</code>.
+     */
+    private static boolean isTwoCharOperator(final char c, final char next) {
+        return (c == '<' || c == '>' || c == '!') && next == '=' || c == '<' && next == '>' || c == '|' && next == '|'
+                || c == ':' && next == ':';
+    }
+
+    /**
+     * Finds the given character in the given text.
+     *
+     * @param text
+     *            The text.
+     * @param c
+     *            The character.
+     * @param from
+     *            The index to start at.
+     * @return The index of the character or <code>-1</code> if it was not
+     *         found.
+     */
+    private static int indexOf(final CharSequence text, final char c, final int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The types of the tokens.
+     *
+     */
+    public enum TokenType {
+        /**
+         * An unquoted identifier or keyword (e.g. <code>SELECT</code> or
+         * <code>user_id</code>).
+         *
+         */
+        IDENTIFIER,
+        /**
+         * A quoted identifier (e.g. <code>"order"</code>).
+         *
+         */
+        QUOTED_IDENTIFIER,
+        /**
+         * A string literal (e.g. <code>'abc'</code>).
+         *
+         */
+        STRING,
+        /**
+         * A number literal (e.g. <code>42</code>).
+         *
+         */
+        NUMBER,
+        /**
+         * A parameter (<code>#{...}</code>, <code>${...}</code> or
+         * <code>?</code>).
+         *
+         */
+        PARAMETER,
+        /**
+         * Any other character or operator (e.g. <code>,</code> or
+         * <code>&lt;=</code>).
+         *
+         */
+        SYMBOL;
+    }
+}
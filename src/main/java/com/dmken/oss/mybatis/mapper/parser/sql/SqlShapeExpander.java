@@ -0,0 +1,304 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.sql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.SimpleXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+
+/**
+ * Enumerates the possible shapes of a single statement as lists of
+ * {@link SqlFingerprinter#tokenize(CharSequence, List) normalized tokens}.
+ *
+ * <p>
+ * Every <code>&lt;if&gt;</code> doubles the shapes (its content is present or
+ * not), every <code>&lt;choose&gt;</code> selects one of its alternatives.
+ * <code>&lt;where&gt;</code>, <code>&lt;set&gt;</code> and
+ * <code>&lt;trim&gt;</code> are applied to every shape of their content like
+ * MyBatis does (adding the prefix and suffix and removing the overrides). A
+ * <code>&lt;foreach&gt;</code> is expanded to a single iteration, as lists of
+ * parameters are collapsed by the normalization anyway. Identical shapes are
+ * merged as soon as they are created and the number of shapes is bounded by
+ * the branch limit at every step, so the work is bounded for any statement.
+ * </p>
+ *
+ */
+final class SqlShapeExpander {
+    /**
+     * The maximum number of shapes.
+     *
+     */
+    private final int branchLimit;
+    /**
+     * Whether any shapes were dropped because of the {@link #branchLimit}.
+     *
+     */
+    private boolean truncated;
+
+    /**
+     * Constructor of SqlShapeExpander.
+     *
+     * @param branchLimit
+     *            The {@link #branchLimit} to set.
+     */
+    private SqlShapeExpander(final int branchLimit) {
+        this.branchLimit = branchLimit;
+    }
+
+    /**
+     * Enumerates the shapes of the given statement.
+     *
+     * @param statement
+     *            The statement tag with all includes expanded.
+     * @param branchLimit
+     *            The maximum number of shapes.
+     * @param shapes
+     *            The list to add the distinct shapes to.
+     * @return Whether shapes were dropped because of the branch limit.
+     */
+    static boolean expand(final AbstractXmlTag statement, final int branchLimit, final List<List<String>> shapes) {
+        final SqlShapeExpander expander = new SqlShapeExpander(branchLimit);
+        shapes.addAll(expander.children(statement));
+        return expander.truncated;
+    }
+
+    /**
+     * Enumerates the shapes of the given value.
+     *
+     * @param value
+     *            The value.
+     * @return The distinct shapes.
+     */
+    private List<List<String>> shapes(final AbstractXmlValue value) {
+        if (value instanceof SimpleXmlValue) {
+            final List<String> tokens = new ArrayList<>();
+            SqlFingerprinter.tokenize(((SimpleXmlValue) value).getData(), tokens);
+            return Collections.singletonList(tokens);
+        }
+
+        final AbstractXmlTag tag = (AbstractXmlTag) value;
+        switch (tag.getName()) {
+            case "if": {
+                final Set<List<String>> shapes = new LinkedHashSet<>(this.children(tag));
+                this.add(shapes, Collections.emptyList());
+                return new ArrayList<>(shapes);
+            }
+            case "choose": {
+                final Set<List<String>> shapes = new LinkedHashSet<>();
+                boolean otherwise = false;
+                for (final AbstractXmlValue child : SqlShapeExpander.childrenOf(tag)) {
+                    if (child instanceof AbstractXmlTag) {
+                        otherwise |= "otherwise".equals(((AbstractXmlTag) child).getName());
+                        for (final List<String> shape : this.children((AbstractXmlTag) child)) {
+                            this.add(shapes, shape);
+                        }
+                    }
+                }
+                if (!otherwise) {
+                    this.add(shapes, Collections.emptyList());
+                }
+                return new ArrayList<>(shapes);
+            }
+            case "where":
+                return this.trim(tag, "WHERE", null, "AND |OR ", null);
+            case "set":
+                return this.trim(tag, "SET", null, ",", ",");
+            case "trim":
+                return this.trim(tag, tag.getParameters().get("prefix"), tag.getParameters().get("suffix"),
+                        tag.getParameters().get("prefixOverrides"), tag.getParameters().get("suffixOverrides"));
+            case "foreach": {
+                final List<String> open = new ArrayList<>();
+                SqlFingerprinter.tokenize(tag.getParameters().get("open"), open);
+                final List<String> close = new ArrayList<>();
+                SqlFingerprinter.tokenize(tag.getParameters().get("close"), close);
+                return this.concat(this.concat(Collections.singletonList(open), this.children(tag)),
+                        Collections.singletonList(close));
+            }
+            case "bind":
+            case "include":
+            case "selectKey":
+                // Not part of the statement text (or an unresolved include).
+                return Collections.singletonList(Collections.emptyList());
+            default:
+                return this.children(tag);
+        }
+    }
+
+    /**
+     * Enumerates the shapes of the content of the given tag.
+     *
+     * @param tag
+     *            The tag.
+     * @return The distinct shapes.
+     */
+    private List<List<String>> children(final AbstractXmlTag tag) {
+        List<List<String>> shapes = Collections.singletonList(Collections.emptyList());
+        for (final AbstractXmlValue child : SqlShapeExpander.childrenOf(tag)) {
+            shapes = this.concat(shapes, this.shapes(child));
+        }
+        return shapes;
+    }
+
+    /**
+     * Enumerates the shapes of the content of the given tag and applies the
+     * given prefix, suffix and overrides to every non-empty shape.
+     *
+     * @param tag
+     *            The tag.
+     * @param prefix
+     *            The prefix. May be <code>null</code>.
+     * @param suffix
+     *            The suffix. May be <code>null</code>.
+     * @param prefixOverrides
+     *            The <code>|</code> separated prefixes to remove. May be
+     *            <code>null</code>.
+     * @param suffixOverrides
+     *            The <code>|</code> separated suffixes to remove. May be
+     *            <code>null</code>.
+     * @return The distinct shapes.
+     */
+    private List<List<String>> trim(final AbstractXmlTag tag, final String prefix, final String suffix,
+            final String prefixOverrides, final String suffixOverrides) {
+        final List<String> prefixTokens = new ArrayList<>();
+        SqlFingerprinter.tokenize(prefix, prefixTokens);
+        final List<String> suffixTokens = new ArrayList<>();
+        SqlFingerprinter.tokenize(suffix, suffixTokens);
+        final List<List<String>> prefixes = SqlShapeExpander.overrides(prefixOverrides);
+        final List<List<String>> suffixes = SqlShapeExpander.overrides(suffixOverrides);
+
+        final Set<List<String>> shapes = new LinkedHashSet<>();
+        for (final List<String> shape : this.children(tag)) {
+            int from = 0;
+            int to = shape.size();
+            for (final List<String> override : prefixes) {
+                if (to - from >= override.size() && shape.subList(from, from + override.size()).equals(override)) {
+                    from += override.size();
+                    break;
+                }
+            }
+            for (final List<String> override : suffixes) {
+                if (to - from >= override.size() && shape.subList(to - override.size(), to).equals(override)) {
+                    to -= override.size();
+                    break;
+                }
+            }
+            if (from == to) {
+                shapes.add(Collections.emptyList());
+                continue;
+            }
+            final List<String> trimmed = new ArrayList<>(prefixTokens.size() + to - from + suffixTokens.size());
+            trimmed.addAll(prefixTokens);
+            trimmed.addAll(shape.subList(from, to));
+            trimmed.addAll(suffixTokens);
+            shapes.add(trimmed);
+        }
+        return new ArrayList<>(shapes);
+    }
+
+    /**
+     * Creates all combinations of the given shapes, bounded by the
+     * {@link #branchLimit}.
+     *
+     * @param prefixes
+     *            The shapes of the first part.
+     * @param suffixes
+     *            The shapes of the second part.
+     * @return The distinct concatenated shapes.
+     */
+    private List<List<String>> concat(final List<List<String>> prefixes, final List<List<String>> suffixes) {
+        if (suffixes.size() == 1 && suffixes.get(0).isEmpty()) {
+            return prefixes;
+        }
+        if (prefixes.size() == 1 && prefixes.get(0).isEmpty()) {
+            return suffixes;
+        }
+        final Set<List<String>> shapes = new LinkedHashSet<>();
+        for (final List<String> prefix : prefixes) {
+            for (final List<String> suffix : suffixes) {
+                final List<String> shape = new ArrayList<>(prefix.size() + suffix.size());
+                shape.addAll(prefix);
+                shape.addAll(suffix);
+                if (!this.add(shapes, shape)) {
+                    return new ArrayList<>(shapes);
+                }
+            }
+        }
+        return new ArrayList<>(shapes);
+    }
+
+    /**
+     * Adds the given shape unless the {@link #branchLimit} is reached.
+     *
+     * @param shapes
+     *            The shapes.
+     * @param shape
+     *            The shape to add.
+     * @return Whether more shapes may be added.
+     */
+    private boolean add(final Set<List<String>> shapes, final List<String> shape) {
+        if (shapes.size() >= this.branchLimit && !shapes.contains(shape)) {
+            this.truncated = true;
+            return false;
+        }
+        shapes.add(shape);
+        return true;
+    }
+
+    /**
+     * Tokenizes the given overrides.
+     *
+     * @param overrides
+     *            The <code>|</code> separated overrides. May be
+     *            <code>null</code>.
+     * @return The tokens of every override.
+     */
+    private static List<List<String>> overrides(final String overrides) {
+        if (overrides == null) {
+            return Collections.emptyList();
+        }
+        final List<List<String>> result = new ArrayList<>();
+        for (final String override : overrides.split("\\|")) {
+            final List<String> tokens = new ArrayList<>();
+            SqlFingerprinter.tokenize(override, tokens);
+            if (!tokens.isEmpty()) {
+                result.add(tokens);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the children of the given tag.
+     *
+     * @param tag
+     *            The tag.
+     * @return The children or an empty list for self-closing tags.
+     */
+    private static List<AbstractXmlValue> childrenOf(final AbstractXmlTag tag) {
+        return tag instanceof XmlTag ? ((XmlTag) tag).getChildren() : Collections.<AbstractXmlValue> emptyList();
+    }
+}
@@ -0,0 +1,50 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.sql;
+
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * The fingerprints of all possible shapes of a statement.
+ *
+ * @see SqlFingerprinter
+ */
+@Data
+public class StatementFingerprints {
+    /**
+     * The {@link MapperStatement#getQualifiedId() qualified ID} of the
+     * statement.
+     *
+     */
+    private final String statementId;
+    /**
+     * The fingerprints of the distinct shapes.
+     *
+     */
+    private final List<SqlFingerprint> fingerprints;
+    /**
+     * Whether the statement has more shapes than the branch limit allows, so
+     * only some of the shapes are contained in the {@link #fingerprints}.
+     *
+     */
+    private final boolean truncated;
+}
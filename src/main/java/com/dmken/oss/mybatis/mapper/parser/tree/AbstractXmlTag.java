@@ -19,10 +19,13 @@
  */
 package com.dmken.oss.mybatis.mapper.parser.tree;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
+import com.dmken.oss.mybatis.mapper.parser.util.HashUtil;
+
+import lombok.Getter;
 
 /**
  * Represents an abstract XML tag (either open or self-closing).
@@ -30,8 +33,7 @@ import lombok.EqualsAndHashCode;
  * @see XmlTag
  * @see SelfClosingXmlTag
  */
-@Data
-@EqualsAndHashCode(callSuper = false)
+@Getter
 public abstract class AbstractXmlTag extends AbstractXmlValue {
     /**
      * The name of the XML tag.
@@ -39,8 +41,83 @@ public abstract class AbstractXmlTag extends AbstractXmlValue {
      */
     private final String name;
     /**
-     * The parameters of the XML tag.
+     * The parameters of the XML tag. The map is a copy of the given one and
+     * cannot be modified, so it always matches the subtree hash.
      *
      */
     private final Map<String, String> parameters;
+
+    /**
+     * Constructor of AbstractXmlTag.
+     *
+     * @param name
+     *            The {@link #name} to set.
+     * @param parameters
+     *            The {@link #parameters} to set.
+     * @param subtreeHash
+     *            See {@link AbstractXmlValue}.
+     */
+    protected AbstractXmlTag(final String name, final Map<String, String> parameters, final long subtreeHash) {
+        super(subtreeHash);
+
+        this.name = name;
+        this.parameters = AbstractXmlTag.copy(parameters);
+    }
+
+    /**
+     * Copies the given parameters into an unmodifiable map keeping their
+     * order. Tags without or with a single parameter (most of them) share the
+     * empty map or get a singleton map, so the copy allocates little.
+     *
+     * @param parameters
+     *            The parameters to copy.
+     * @return The unmodifiable copy.
+     */
+    private static Map<String, String> copy(final Map<String, String> parameters) {
+        switch (parameters.size()) {
+            case 0:
+                return Collections.emptyMap();
+            case 1:
+                final Map.Entry<String, String> parameter = parameters.entrySet().iterator().next();
+                return Collections.singletonMap(parameter.getKey(), parameter.getValue());
+            default:
+                return Collections.unmodifiableMap(new LinkedHashMap<>(parameters));
+        }
+    }
+
+    /**
+     * Computes the hash of the given name and parameters. The order of the
+     * parameters does not affect the hash.
+     *
+     * @param type
+     *            The type of the tag to mix into the hash.
+     * @param name
+     *            The name of the tag.
+     * @param parameters
+     *            The parameters of the tag.
+     * @return The hash.
+     */
+    protected static long hash(final Class<? extends AbstractXmlTag> type, final String name,
+            final Map<String, String> parameters) {
+        long parametersHash = 0;
+        for (final Map.Entry<String, String> parameter : parameters.entrySet()) {
+            // Summing up the parameter hashes makes the result independent of the order.
+            parametersHash += HashUtil.combine(HashUtil.hash(parameter.getKey()), HashUtil.hash(parameter.getValue()));
+        }
+        long hash = HashUtil.combine(type.getName().hashCode(), HashUtil.hash(name));
+        hash = HashUtil.combine(hash, parametersHash);
+        return HashUtil.combine(hash, parameters.size());
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue#contentEquals(com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue)
+     */
+    @Override
+    protected boolean contentEquals(final AbstractXmlValue other) {
+        final AbstractXmlTag tag = (AbstractXmlTag) other;
+        return this.name.equals(tag.name) && this.parameters.equals(tag.parameters);
+    }
 }
@@ -19,11 +19,76 @@
  */
 package com.dmken.oss.mybatis.mapper.parser.tree;
 
+import lombok.Getter;
+
 /**
  * Represents an abstract XML value that can be the child of a normal, open
  * {@link XmlTag XML tag}.
  *
+ * <p>
+ * Every value carries a Merkle-style {@link #subtreeHash subtree hash} that is
+ * computed once when the value is created from the hashes of its content and
+ * its children. It is used for {@link #hashCode()}, to short-circuit
+ * {@link #equals(Object)} and to skip identical subtrees when comparing trees.
+ * Therefore, the tree must not be modified after it was created.
+ * </p>
+ *
  */
+@Getter
 public abstract class AbstractXmlValue {
-    // Nothing to do.
+    /**
+     * The hash of this value and all of its children.
+     *
+     */
+    private final long subtreeHash;
+
+    /**
+     * Constructor of AbstractXmlValue.
+     *
+     * @param subtreeHash
+     *            The {@link #subtreeHash} to set.
+     */
+    protected AbstractXmlValue(final long subtreeHash) {
+        this.subtreeHash = subtreeHash;
+    }
+
+    /**
+     * Checks whether the content of this value equals the content of the
+     * given value. Only invoked if both values are of the same class and have
+     * the same subtree hash.
+     *
+     * @param other
+     *            The other value.
+     * @return Whether the contents are equal.
+     */
+    protected abstract boolean contentEquals(AbstractXmlValue other);
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || this.getClass() != obj.getClass()) {
+            return false;
+        }
+        final AbstractXmlValue other = (AbstractXmlValue) obj;
+        return this.subtreeHash == other.subtreeHash && this.contentEquals(other);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return (int) (this.subtreeHash ^ this.subtreeHash >>> 32);
+    }
 }
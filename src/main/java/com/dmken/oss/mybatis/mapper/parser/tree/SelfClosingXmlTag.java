@@ -37,7 +37,7 @@ public class SelfClosingXmlTag extends AbstractXmlTag {
      *            See {@link AbstractXmlTag}.
      */
     public SelfClosingXmlTag(final String name, final Map<String, String> parameters) {
-        super(name, parameters);
+        super(name, parameters, AbstractXmlTag.hash(SelfClosingXmlTag.class, name, parameters));
     }
 
     /**
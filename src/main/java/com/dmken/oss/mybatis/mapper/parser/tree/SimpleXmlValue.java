@@ -19,8 +19,11 @@
  */
 package com.dmken.oss.mybatis.mapper.parser.tree;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
+import java.util.Objects;
+
+import com.dmken.oss.mybatis.mapper.parser.util.HashUtil;
+
+import lombok.Getter;
 
 /**
  * Represents a simple XML value that can be a child of an {@link XmlTag XML
@@ -29,8 +32,7 @@ import lombok.EqualsAndHashCode;
  * <code>&lt;help&gt;Hello, World!&lt;/help&gt;</code>).
  *
  */
-@Data
-@EqualsAndHashCode(callSuper = false)
+@Getter
 public class SimpleXmlValue extends AbstractXmlValue {
     /**
      * The data represented by this value.
@@ -38,6 +40,29 @@ public class SimpleXmlValue extends AbstractXmlValue {
      */
     private final String data;
 
+    /**
+     * Constructor of SimpleXmlValue.
+     *
+     * @param data
+     *            The {@link #data} to set.
+     */
+    public SimpleXmlValue(final String data) {
+        super(HashUtil.combine(SimpleXmlValue.class.getName().hashCode(), HashUtil.hash(data)));
+
+        this.data = data;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue#contentEquals(com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue)
+     */
+    @Override
+    protected boolean contentEquals(final AbstractXmlValue other) {
+        return Objects.equals(this.data, ((SimpleXmlValue) other).data);
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -19,11 +19,14 @@
  */
 package com.dmken.oss.mybatis.mapper.parser.tree;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
+import com.dmken.oss.mybatis.mapper.parser.util.HashUtil;
+
+import lombok.Getter;
 
 /**
  * Represents a XML tag that is not self-closing (e.g.
@@ -34,11 +37,11 @@ import lombok.EqualsAndHashCode;
  *
  * @see SelfClosingXmlTag
  */
-@Data
-@EqualsAndHashCode(callSuper = true)
+@Getter
 public class XmlTag extends AbstractXmlTag {
     /**
-     * The children of this XML tag.
+     * The children of this XML tag. The list is a copy of the given one and
+     * cannot be modified, so it always matches the subtree hash.
      *
      */
     private final List<AbstractXmlValue> children;
@@ -54,9 +57,61 @@ public class XmlTag extends AbstractXmlTag {
      *            The {@link #children} to set.
      */
     public XmlTag(final String name, final Map<String, String> parameters, final List<AbstractXmlValue> children) {
-        super(name, parameters);
+        super(name, parameters, XmlTag.hash(name, parameters, children));
+
+        this.children = XmlTag.copy(children);
+    }
+
+    /**
+     * Copies the given children into an unmodifiable list. The copy is backed
+     * by an array of the exact size and tags without or with a single child
+     * share the empty list or get a singleton list, so the copy allocates
+     * little.
+     *
+     * @param children
+     *            The children to copy.
+     * @return The unmodifiable copy.
+     */
+    private static List<AbstractXmlValue> copy(final List<AbstractXmlValue> children) {
+        switch (children.size()) {
+            case 0:
+                return Collections.emptyList();
+            case 1:
+                return Collections.singletonList(children.get(0));
+            default:
+                return Collections.unmodifiableList(Arrays.asList(children.toArray(new AbstractXmlValue[children.size()])));
+        }
+    }
 
-        this.children = children;
+    /**
+     * Computes the subtree hash of a tag with the given name, parameters and
+     * children.
+     *
+     * @param name
+     *            The name.
+     * @param parameters
+     *            The parameters.
+     * @param children
+     *            The children.
+     * @return The hash.
+     */
+    private static long hash(final String name, final Map<String, String> parameters, final List<AbstractXmlValue> children) {
+        long hash = AbstractXmlTag.hash(XmlTag.class, name, parameters);
+        for (final AbstractXmlValue child : children) {
+            hash = HashUtil.combine(hash, child.getSubtreeHash());
+        }
+        return HashUtil.combine(hash, children.size());
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlTag#contentEquals(com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue)
+     */
+    @Override
+    protected boolean contentEquals(final AbstractXmlValue other) {
+        return super.contentEquals(other) && this.children.equals(((XmlTag) other).children);
     }
 
     /**
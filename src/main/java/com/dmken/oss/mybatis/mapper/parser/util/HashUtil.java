@@ -0,0 +1,193 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Utility class for fast, non-cryptographic hashing.
+ *
+ * <p>
+ * The hash function is <a href="http://cyan4973.github.io/xxHash/">xxHash64</a>
+ * with a seed of <code>0</code>. It is used to identify content (e.g. for
+ * caching) and is therefore <b>not</b> suitable for security purposes.
+ * </p>
+ *
+ */
+@UtilityClass
+public class HashUtil {
+    private final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private final long PRIME_3 = 0x165667B19E3779F9L;
+    private final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private final long PRIME_5 = 0x27D4EB2F165667C5L;
+
+    /**
+     * Hashes the given bytes.
+     *
+     * @param bytes
+     *            The bytes to hash.
+     * @param offset
+     *            The offset of the first byte to hash.
+     * @param length
+     *            The number of bytes to hash.
+     * @return The 64 bit hash.
+     */
+    public long hash(final byte[] bytes, final int offset, final int length) {
+        return HashUtil.hash(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Hashes the remaining bytes of the given buffer. The position of the
+     * buffer is not modified.
+     *
+     * @param buffer
+     *            The buffer to hash.
+     * @return The 64 bit hash.
+     */
+    public long hash(final ByteBuffer buffer) {
+        final ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final int length = in.remaining();
+
+        long hash;
+        int i = in.position();
+        final int end = in.limit();
+        if (length >= 32) {
+            long v1 = HashUtil.PRIME_1 + HashUtil.PRIME_2;
+            long v2 = HashUtil.PRIME_2;
+            long v3 = 0;
+            long v4 = -HashUtil.PRIME_1;
+            final int limit = end - 32;
+            do {
+                v1 = HashUtil.round(v1, in.getLong(i));
+                v2 = HashUtil.round(v2, in.getLong(i + 8));
+                v3 = HashUtil.round(v3, in.getLong(i + 16));
+                v4 = HashUtil.round(v4, in.getLong(i + 24));
+                i += 32;
+            } while (i <= limit);
+
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = HashUtil.mergeRound(hash, v1);
+            hash = HashUtil.mergeRound(hash, v2);
+            hash = HashUtil.mergeRound(hash, v3);
+            hash = HashUtil.mergeRound(hash, v4);
+        } else {
+            hash = HashUtil.PRIME_5;
+        }
+
+        hash += length;
+
+        while (i + 8 <= end) {
+            hash ^= HashUtil.round(0, in.getLong(i));
+            hash = Long.rotateLeft(hash, 27) * HashUtil.PRIME_1 + HashUtil.PRIME_4;
+            i += 8;
+        }
+        if (i + 4 <= end) {
+            hash ^= (in.getInt(i) & 0xFFFFFFFFL) * HashUtil.PRIME_1;
+            hash = Long.rotateLeft(hash, 23) * HashUtil.PRIME_2 + HashUtil.PRIME_3;
+            i += 4;
+        }
+        while (i < end) {
+            hash ^= (in.get(i) & 0xFF) * HashUtil.PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * HashUtil.PRIME_1;
+            i++;
+        }
+
+        return HashUtil.avalanche(hash);
+    }
+
+    /**
+     * Hashes the characters of the given string.
+     *
+     * <p>
+     * This is not xxHash64 of any encoding of the string, but it uses the same
+     * mixing steps and avoids encoding the string into bytes first.
+     * </p>
+     *
+     * @param str
+     *            The string to hash. May be <code>null</code>.
+     * @return The 64 bit hash. <code>0</code> if the string is
+     *         <code>null</code>.
+     */
+    public long hash(final CharSequence str) {
+        if (str == null) {
+            return 0;
+        }
+        final int length = str.length();
+        long hash = HashUtil.PRIME_5 + length;
+        for (int i = 0; i < length; i++) {
+            hash ^= str.charAt(i) * HashUtil.PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * HashUtil.PRIME_1;
+        }
+        return HashUtil.avalanche(hash);
+    }
+
+    /**
+     * Mixes the given value into the given hash. Used to build hashes of
+     * composite structures (e.g. a tree of hashes).
+     *
+     * @param hash
+     *            The hash so far.
+     * @param value
+     *            The value to mix in.
+     * @return The new hash.
+     */
+    public long combine(final long hash, final long value) {
+        return Long.rotateLeft(hash ^ HashUtil.round(0, value), 27) * HashUtil.PRIME_1 + HashUtil.PRIME_4;
+    }
+
+    /**
+     * Formats the given hash as a zero-padded hexadecimal string with 16
+     * characters.
+     *
+     * @param hash
+     *            The hash to format.
+     * @return The formatted hash.
+     */
+    public String toHexString(final long hash) {
+        final String hex = Long.toHexString(hash);
+        final StringBuilder builder = new StringBuilder(16);
+        for (int i = hex.length(); i < 16; i++) {
+            builder.append('0');
+        }
+        return builder.append(hex).toString();
+    }
+
+    private long round(final long accumulator, final long input) {
+        return Long.rotateLeft(accumulator + input * HashUtil.PRIME_2, 31) * HashUtil.PRIME_1;
+    }
+
+    private long mergeRound(final long accumulator, final long value) {
+        return (accumulator ^ HashUtil.round(0, value)) * HashUtil.PRIME_1 + HashUtil.PRIME_4;
+    }
+
+    private long avalanche(final long value) {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= HashUtil.PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= HashUtil.PRIME_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+}
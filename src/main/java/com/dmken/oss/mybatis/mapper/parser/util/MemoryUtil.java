@@ -0,0 +1,161 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.util;
+
+import java.util.List;
+import java.util.Map;
+
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.SimpleXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Utility class for estimating the memory consumption of document trees.
+ *
+ * <p>
+ * The estimations assume a 64 bit JVM with compressed object pointers (i.e.
+ * 12 byte object headers, 4 byte references and an object alignment of 8
+ * bytes), the field layout of Java 8 (the fields of a class start after the
+ * aligned fields of its superclass) and strings that are backed by a
+ * <code>char[]</code>. Shared objects
+ * (e.g. interned strings) are counted every time they are referenced, so the
+ * estimation is an upper bound rather than an exact value.
+ * </p>
+ *
+ * <p>
+ * The parameters and children of tags are estimated according to the compact
+ * copies the tags make of them: The shared empty collections for no elements,
+ * singleton collections for a single element and unmodifiable views of a
+ * <code>LinkedHashMap</code> or an array-backed list otherwise.
+ * </p>
+ *
+ */
+@UtilityClass
+public class MemoryUtil {
+    private final int OBJECT_HEADER = 12;
+    private final int ARRAY_HEADER = 16;
+    private final int REFERENCE = 4;
+
+    /**
+     * Estimates the number of bytes retained by the given document.
+     *
+     * @param document
+     *            The document.
+     * @return The estimated number of retained bytes.
+     */
+    public long estimateRetainedSize(final XmlDocument document) {
+        long size = MemoryUtil.align(MemoryUtil.OBJECT_HEADER + 4 * MemoryUtil.REFERENCE);
+        size += MemoryUtil.estimateRetainedSize(document.getDoctype());
+        if (document.getRootTag() != null) {
+            size += MemoryUtil.estimateRetainedSize(document.getRootTag());
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the number of bytes retained by the given value and all of its
+     * children.
+     *
+     * @param value
+     *            The value.
+     * @return The estimated number of retained bytes.
+     */
+    public long estimateRetainedSize(final AbstractXmlValue value) {
+        // The subtree hash of AbstractXmlValue.
+        final long valueFields = MemoryUtil.align(MemoryUtil.OBJECT_HEADER + 8);
+        if (value instanceof SimpleXmlValue) {
+            // Data.
+            return MemoryUtil.align(valueFields + MemoryUtil.REFERENCE)
+                    + MemoryUtil.estimateRetainedSize(((SimpleXmlValue) value).getData());
+        }
+
+        final AbstractXmlTag tag = (AbstractXmlTag) value;
+        // Name and parameters of AbstractXmlTag, children of XmlTag.
+        long size = MemoryUtil.align(valueFields + 2 * MemoryUtil.REFERENCE
+                + (tag instanceof XmlTag ? MemoryUtil.REFERENCE : 0));
+        size += MemoryUtil.estimateRetainedSize(tag.getName());
+        size += MemoryUtil.estimateRetainedSize(tag.getParameters());
+        if (tag instanceof XmlTag) {
+            final List<AbstractXmlValue> children = ((XmlTag) tag).getChildren();
+            if (children.size() == 1) {
+                // Singleton list (modification count and element).
+                size += MemoryUtil.align(MemoryUtil.OBJECT_HEADER + 4 + MemoryUtil.REFERENCE);
+            } else if (children.size() > 1) {
+                // Unmodifiable view, array-backed list (modification count and
+                // array) and the array.
+                size += MemoryUtil.align(MemoryUtil.OBJECT_HEADER + 2 * MemoryUtil.REFERENCE);
+                size += MemoryUtil.align(MemoryUtil.OBJECT_HEADER + 4 + MemoryUtil.REFERENCE);
+                size += MemoryUtil.align(MemoryUtil.ARRAY_HEADER + (long) children.size() * MemoryUtil.REFERENCE);
+            }
+            for (final AbstractXmlValue child : children) {
+                size += MemoryUtil.estimateRetainedSize(child);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the number of bytes retained by the given string.
+     *
+     * @param str
+     *            The string. May be <code>null</code>.
+     * @return The estimated number of retained bytes.
+     */
+    public long estimateRetainedSize(final String str) {
+        if (str == null) {
+            return 0;
+        }
+        return MemoryUtil.align(MemoryUtil.OBJECT_HEADER + MemoryUtil.REFERENCE + 4)
+                + MemoryUtil.align(MemoryUtil.ARRAY_HEADER + 2L * str.length());
+    }
+
+    private long estimateRetainedSize(final Map<String, String> map) {
+        long size = 0;
+        if (map.size() == 1) {
+            // Singleton map (key, value, three lazily created views and the
+            // two views inherited from AbstractMap).
+            size += MemoryUtil.align(MemoryUtil.OBJECT_HEADER + 7 * MemoryUtil.REFERENCE);
+        } else if (map.size() > 1) {
+            // Unmodifiable view (map and three lazily created views).
+            size += MemoryUtil.align(MemoryUtil.OBJECT_HEADER + 4 * MemoryUtil.REFERENCE);
+            // LinkedHashMap (table, three views, head and tail, four integers
+            // and the access order) and its table as sized by the copy
+            // constructor.
+            size += MemoryUtil.align(MemoryUtil.OBJECT_HEADER + 6 * MemoryUtil.REFERENCE + 4 * 4 + 1);
+            final long capacity = Long.highestOneBit((long) (map.size() / 0.75F + 1.0F) - 1) << 1;
+            size += MemoryUtil.align(MemoryUtil.ARRAY_HEADER + capacity * MemoryUtil.REFERENCE);
+            // The entries (hash, key, value, next, before and after).
+            size += map.size() * MemoryUtil.align(MemoryUtil.OBJECT_HEADER + 4 + 5 * MemoryUtil.REFERENCE);
+        }
+        for (final Map.Entry<String, String> entry : map.entrySet()) {
+            size += MemoryUtil.estimateRetainedSize(entry.getKey());
+            size += MemoryUtil.estimateRetainedSize(entry.getValue());
+        }
+        return size;
+    }
+
+    private long align(final long size) {
+        return size + 7 & ~7L;
+    }
+}
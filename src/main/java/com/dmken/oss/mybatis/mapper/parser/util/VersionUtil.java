@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Utility class for retrieving version information of the parser.
+ *
+ */
+@UtilityClass
+public class VersionUtil {
+    /**
+     * The resource containing the version information. It is filtered by Maven
+     * during the build.
+     *
+     */
+    private final String VERSION_RESOURCE = "/com/dmken/oss/mybatis/mapper/parser/version.properties";
+    /**
+     * The version used if the version resource is not available.
+     *
+     */
+    private final String UNKNOWN_VERSION = "unknown";
+
+    /**
+     * The lazily loaded version resource.
+     *
+     */
+    private volatile Properties versionProperties;
+
+    /**
+     * Retrieves the version of the parser (i.e. the version of the Maven
+     * artifact).
+     *
+     * @return The parser version. Never <code>null</code>.
+     */
+    public String getParserVersion() {
+        return VersionUtil.getVersionProperties().getProperty("version", VersionUtil.UNKNOWN_VERSION);
+    }
+
+    /**
+     * Retrieves the version of the parser build (i.e. the
+     * {@link #getParserVersion() parser version} followed by the timestamp of
+     * the build).
+     *
+     * <p>
+     * In contrast to the parser version, the build version changes with every
+     * build, even if the version of the Maven artifact does not (e.g. for
+     * snapshots). Persistent caches of parse results have to be keyed by the
+     * build version, otherwise a changed scanner or parser would be served the
+     * results of its predecessor.
+     * </p>
+     *
+     * @return The build version. Never <code>null</code>.
+     */
+    public String getBuildVersion() {
+        final String build = VersionUtil.getVersionProperties().getProperty("build");
+        if (build == null || build.isEmpty()) {
+            return VersionUtil.getParserVersion();
+        }
+        return VersionUtil.getParserVersion() + '+' + build;
+    }
+
+    private Properties getVersionProperties() {
+        if (VersionUtil.versionProperties == null) {
+            VersionUtil.versionProperties = VersionUtil.loadVersionProperties();
+        }
+        return VersionUtil.versionProperties;
+    }
+
+    private Properties loadVersionProperties() {
+        final Properties properties = new Properties();
+        try (InputStream in = VersionUtil.class.getResourceAsStream(VersionUtil.VERSION_RESOURCE)) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (final IOException cause) {
+            properties.clear();
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.watch;
+
+import java.nio.file.Path;
+
+import lombok.Data;
+
+/**
+ * Represents the change of a single top-level element of a mapper (e.g. a
+ * statement or a result map).
+ *
+ */
+@Data
+public class MapperChange {
+    /**
+     * The file containing the element.
+     *
+     */
+    private final Path file;
+    /**
+     * The type of the change.
+     *
+     */
+    private final Type type;
+    /**
+     * The name of the element (e.g. <code>select</code> or
+     * <code>resultMap</code>).
+     *
+     */
+    private final String element;
+    /**
+     * The ID of the element. If the element has no <code>id</code> parameter,
+     * this is the index of the element among all elements of the same name
+     * without an ID (e.g. <code>#0</code>).
+     *
+     */
+    private final String id;
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return this.element + " " + this.id + " " + this.type.name().toLowerCase() + " (" + this.file + ")";
+    }
+
+    /**
+     * The type of a change.
+     *
+     */
+    @SuppressWarnings("javadoc")
+    public static enum Type {
+        ADDED,
+        CHANGED,
+        REMOVED;
+    }
+}
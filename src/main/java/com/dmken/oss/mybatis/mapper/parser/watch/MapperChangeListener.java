@@ -0,0 +1,37 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.watch;
+
+/**
+ * Listener that is notified by the {@link MapperWatcher} about changed
+ * mappers.
+ *
+ */
+@FunctionalInterface
+public interface MapperChangeListener {
+    /**
+     * Invoked after changed files were re-parsed. Invoked on the thread of the
+     * watcher.
+     *
+     * @param changeSet
+     *            The detected changes. Never empty.
+     */
+    void mappersChanged(MapperChangeSet changeSet);
+}
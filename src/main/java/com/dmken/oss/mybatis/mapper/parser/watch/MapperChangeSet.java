@@ -0,0 +1,67 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.watch;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+
+import lombok.Data;
+
+/**
+ * The set of changes that were detected by the {@link MapperWatcher} in one
+ * reload.
+ *
+ */
+@Data
+public class MapperChangeSet {
+    /**
+     * The changed elements.
+     *
+     */
+    private final List<MapperChange> changes;
+    /**
+     * The new documents of all files that were re-parsed successfully.
+     *
+     */
+    private final Map<Path, XmlDocument> documents;
+    /**
+     * The files that were removed.
+     *
+     */
+    private final List<Path> removedFiles;
+    /**
+     * The files that could not be read or parsed, mapped to the error. The
+     * previous document of such a file is kept.
+     *
+     */
+    private final Map<Path, Exception> failures;
+
+    /**
+     * Checks whether this change set does not contain any changes or failures.
+     *
+     * @return Whether this change set is empty.
+     */
+    public boolean isEmpty() {
+        return this.changes.isEmpty() && this.removedFiles.isEmpty() && this.failures.isEmpty();
+    }
+}
@@ -0,0 +1,149 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.watch;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+
+/**
+ * Computes the {@link MapperChange changes} between two versions of a mapper.
+ *
+ * <p>
+ * The top-level elements of the root tag (statements, result maps, SQL
+ * fragments, ...) are matched by their name and their <code>id</code>
+ * parameter. Elements without an ID are matched by their name and their
+ * index among the elements of the same name without an ID.
+ * </p>
+ *
+ */
+public final class MapperDiffer {
+    /**
+     * The name of the parameter identifying an element.
+     *
+     */
+    private static final String ID_PARAMETER = "id";
+
+    /**
+     * Constructor of MapperDiffer.
+     *
+     */
+    private MapperDiffer() {
+        // Nothing to do.
+    }
+
+    /**
+     * Computes the changes between the given versions of a mapper.
+     *
+     * @param file
+     *            The file containing the mapper.
+     * @param oldDocument
+     *            The old version. If <code>null</code>, all elements of the
+     *            new version are reported as {@link MapperChange.Type#ADDED
+     *            added}.
+     * @param newDocument
+     *            The new version. If <code>null</code>, all elements of the
+     *            old version are reported as {@link MapperChange.Type#REMOVED
+     *            removed}.
+     * @return The changes in document order (removed elements last).
+     */
+    public static List<MapperChange> diff(final Path file, final XmlDocument oldDocument, final XmlDocument newDocument) {
+        final List<MapperChange> changes = new ArrayList<>();
+        final XmlTag oldRoot = oldDocument == null ? null : oldDocument.getRootTag();
+        final XmlTag newRoot = newDocument == null ? null : newDocument.getRootTag();
+        if (oldRoot != null && newRoot != null && (!oldRoot.getName().equals(newRoot.getName())
+                || !oldRoot.getParameters().equals(newRoot.getParameters()))) {
+            final String namespace = newRoot.getParameters().get("namespace");
+            changes.add(new MapperChange(file, MapperChange.Type.CHANGED, newRoot.getName(), namespace == null ? "#0" : namespace));
+        }
+
+        final Map<String, AbstractXmlTag> oldElements = MapperDiffer.elements(oldRoot);
+        final Map<String, AbstractXmlTag> newElements = MapperDiffer.elements(newRoot);
+        for (final Map.Entry<String, AbstractXmlTag> entry : newElements.entrySet()) {
+            final AbstractXmlTag newElement = entry.getValue();
+            final AbstractXmlTag oldElement = oldElements.remove(entry.getKey());
+            if (oldElement == null) {
+                changes.add(MapperDiffer.change(file, MapperChange.Type.ADDED, newElement, entry.getKey()));
+            } else if (!Objects.equals(oldElement, newElement)) {
+                changes.add(MapperDiffer.change(file, MapperChange.Type.CHANGED, newElement, entry.getKey()));
+            }
+        }
+        for (final Map.Entry<String, AbstractXmlTag> entry : oldElements.entrySet()) {
+            changes.add(MapperDiffer.change(file, MapperChange.Type.REMOVED, entry.getValue(), entry.getKey()));
+        }
+        return changes;
+    }
+
+    /**
+     * Creates a change of the given element.
+     *
+     * @param file
+     *            The file containing the mapper.
+     * @param type
+     *            The type of the change.
+     * @param element
+     *            The element.
+     * @param key
+     *            The key of the element as created by {@link #elements(XmlTag)}.
+     * @return The change.
+     */
+    private static MapperChange change(final Path file, final MapperChange.Type type, final AbstractXmlTag element,
+            final String key) {
+        return new MapperChange(file, type, element.getName(), key.substring(key.indexOf(' ') + 1));
+    }
+
+    /**
+     * Collects the top-level elements of the given root tag, keyed by
+     * <code>name + ' ' + id</code>.
+     *
+     * @param root
+     *            The root tag. May be <code>null</code>.
+     * @return The elements in document order.
+     */
+    private static Map<String, AbstractXmlTag> elements(final XmlTag root) {
+        final Map<String, AbstractXmlTag> elements = new LinkedHashMap<>();
+        if (root == null) {
+            return elements;
+        }
+        final Map<String, Integer> anonymousCounts = new HashMap<>();
+        for (final AbstractXmlValue child : root.getChildren()) {
+            if (!(child instanceof AbstractXmlTag)) {
+                continue;
+            }
+            final AbstractXmlTag element = (AbstractXmlTag) child;
+            String id = element.getParameters().get(MapperDiffer.ID_PARAMETER);
+            if (id == null) {
+                final int index = anonymousCounts.merge(element.getName(), 1, Integer::sum) - 1;
+                id = "#" + index;
+            }
+            elements.put(element.getName() + ' ' + id, element);
+        }
+        return elements;
+    }
+}
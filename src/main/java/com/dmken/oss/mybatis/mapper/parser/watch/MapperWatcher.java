@@ -0,0 +1,346 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.watch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.dmken.oss.mybatis.mapper.parser.jfr.JfrEvents;
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.parser.exception.ParserException;
+import com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+
+/**
+ * Watches a directory tree for changed mapper files and re-parses only the
+ * files that changed.
+ *
+ * <p>
+ * The watcher is built on the {@link WatchService} of the file system. File
+ * system events are debounced: After the first event, the watcher waits until
+ * no further event arrives for the debounce interval, so a burst of events
+ * (e.g. an editor writing a file in multiple steps or a deployment replacing
+ * many files) results in a single reload. Every reload re-parses the changed
+ * files, {@link MapperDiffer diffs} the new documents against the old ones and
+ * publishes the resulting {@link MapperChangeSet change set} to the
+ * {@link MapperChangeListener listener}.
+ * </p>
+ *
+ * <p>
+ * On {@link #start()}, all matching files are parsed and published as added.
+ * </p>
+ *
+ */
+public class MapperWatcher implements Closeable {
+    /**
+     * The default debounce interval in milliseconds.
+     *
+     */
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 200;
+
+    /**
+     * The root directory to watch.
+     *
+     */
+    private final Path root;
+    /**
+     * The filter selecting the mapper files.
+     *
+     */
+    private final PathMatcher filter;
+    /**
+     * The debounce interval in milliseconds.
+     *
+     */
+    private final long debounceMillis;
+    /**
+     * The listener to notify.
+     *
+     */
+    private final MapperChangeListener listener;
+    /**
+     * The current documents of all mapper files.
+     *
+     */
+    private final Map<Path, XmlDocument> documents = new ConcurrentHashMap<>();
+
+    /**
+     * The watch service. Set on {@link #start()}.
+     *
+     */
+    private WatchService watchService;
+    /**
+     * The thread processing the events. Set on {@link #start()}.
+     *
+     */
+    private Thread thread;
+
+    /**
+     * Constructor of MapperWatcher.
+     *
+     * <p>
+     * Watches all <code>*.xml</code> files with the default debounce interval
+     * of 200 milliseconds.
+     * </p>
+     *
+     * @param root
+     *            The root directory to watch (recursively).
+     * @param listener
+     *            The listener to notify.
+     */
+    public MapperWatcher(final Path root, final MapperChangeListener listener) {
+        this(root, FileSystems.getDefault().getPathMatcher("glob:**.xml"), MapperWatcher.DEFAULT_DEBOUNCE_MILLIS, listener);
+    }
+
+    /**
+     * Constructor of MapperWatcher.
+     *
+     * @param root
+     *            The root directory to watch (recursively).
+     * @param filter
+     *            The filter selecting the mapper files. Is matched against the
+     *            absolute path of the files.
+     * @param debounceMillis
+     *            The debounce interval in milliseconds.
+     * @param listener
+     *            The listener to notify.
+     */
+    public MapperWatcher(final Path root, final PathMatcher filter, final long debounceMillis,
+            final MapperChangeListener listener) {
+        this.root = root.toAbsolutePath().normalize();
+        this.filter = filter;
+        this.debounceMillis = debounceMillis;
+        this.listener = listener;
+    }
+
+    /**
+     * Parses all mapper files, publishes them as added and starts watching the
+     * directory tree on a new daemon thread.
+     *
+     * @throws IOException
+     *             If the directory tree cannot be read.
+     */
+    public synchronized void start() throws IOException {
+        if (this.watchService != null) {
+            throw new IllegalStateException("Watcher already started!");
+        }
+        this.watchService = this.root.getFileSystem().newWatchService();
+
+        final Set<Path> files = new LinkedHashSet<>();
+        this.register(this.root, files);
+        this.reload(files);
+
+        this.thread = new Thread(this::run, "mapper-watcher-" + this.root.getFileName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Retrieves the current documents of all mapper files that were parsed
+     * successfully.
+     *
+     * @return An unmodifiable snapshot of the documents by file.
+     */
+    public Map<Path, XmlDocument> getDocuments() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(this.documents));
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.watchService != null) {
+            this.watchService.close();
+        }
+        if (this.thread != null) {
+            this.thread.interrupt();
+        }
+    }
+
+    /**
+     * Processes the file system events until the watcher is closed.
+     *
+     */
+    private void run() {
+        try {
+            while (true) {
+                final Set<Path> changed = new LinkedHashSet<>();
+                WatchKey key = this.watchService.take();
+                do {
+                    this.collect(key, changed);
+                    key = this.watchService.poll(this.debounceMillis, TimeUnit.MILLISECONDS);
+                } while (key != null);
+                this.reload(changed);
+            }
+        } catch (final InterruptedException | ClosedWatchServiceException cause) {
+            // The watcher was closed.
+        }
+    }
+
+    /**
+     * Collects the paths of the mapper files affected by the events of the
+     * given key.
+     *
+     * @param key
+     *            The key.
+     * @param changed
+     *            The set to add the affected files to.
+     */
+    private void collect(final WatchKey key, final Set<Path> changed) {
+        final Path directory = (Path) key.watchable();
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, so everything has to be checked.
+                changed.addAll(this.documents.keySet());
+                try {
+                    this.register(this.root, changed);
+                } catch (final IOException cause) {
+                    // Reported as failure of the files during the reload.
+                }
+                continue;
+            }
+
+            final Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    this.register(path, changed);
+                } catch (final IOException cause) {
+                    // Reported as failure of the files during the reload.
+                }
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                // The path might have been a directory containing mappers.
+                for (final Path file : this.documents.keySet()) {
+                    if (file.startsWith(path)) {
+                        changed.add(file);
+                    }
+                }
+                if (this.filter.matches(path)) {
+                    changed.add(path);
+                }
+            } else if (this.filter.matches(path)) {
+                changed.add(path);
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Registers the given directory and all its subdirectories with the watch
+     * service and collects the mapper files inside.
+     *
+     * @param directory
+     *            The directory.
+     * @param files
+     *            The set to add the mapper files to.
+     * @throws IOException
+     *             If the directory tree cannot be read.
+     */
+    private void register(final Path directory, final Set<Path> files) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+                dir.register(MapperWatcher.this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && MapperWatcher.this.filter.matches(file)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Re-parses the given files and publishes the changes.
+     *
+     * @param files
+     *            The files to re-parse. Files that do not exist anymore are
+     *            removed.
+     */
+    private void reload(final Set<Path> files) {
+        final List<MapperChange> changes = new ArrayList<>();
+        final Map<Path, XmlDocument> parsed = new LinkedHashMap<>();
+        final List<Path> removed = new ArrayList<>();
+        final Map<Path, Exception> failures = new LinkedHashMap<>();
+        for (final Path file : files) {
+            if (Files.isRegularFile(file)) {
+                final XmlDocument document;
+                try (InputStream in = Files.newInputStream(file)) {
+                    document = XmlParser.parse(in, JfrEvents.listener(file));
+                } catch (final IOException | ScannerException | ParserException cause) {
+                    failures.put(file, cause);
+                    continue;
+                }
+                final XmlDocument old = this.documents.put(file, document);
+                final List<MapperChange> fileChanges = MapperDiffer.diff(file, old, document);
+                if (old == null || !fileChanges.isEmpty()) {
+                    parsed.put(file, document);
+                    changes.addAll(fileChanges);
+                }
+            } else {
+                final XmlDocument old = this.documents.remove(file);
+                if (old != null) {
+                    removed.add(file);
+                    changes.addAll(MapperDiffer.diff(file, old, null));
+                }
+            }
+        }
+
+        final MapperChangeSet changeSet = new MapperChangeSet(changes, parsed, removed, failures);
+        if (!changeSet.isEmpty()) {
+            try {
+                this.listener.mappersChanged(changeSet);
+            } catch (final RuntimeException cause) {
+                final Thread current = Thread.currentThread();
+                current.getUncaughtExceptionHandler().uncaughtException(current, cause);
+            }
+        }
+    }
+}
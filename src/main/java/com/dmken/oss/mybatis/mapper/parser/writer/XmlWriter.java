@@ -0,0 +1,695 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.writer;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.dmken.oss.mybatis.mapper.parser.lossless.LosslessDocument;
+import com.dmken.oss.mybatis.mapper.parser.lossless.SyntaxNode;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.SimpleXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Writes {@link XmlDocument XML documents} as XML text to a {@link Writer} or
+ * a {@link WritableByteChannel}.
+ *
+ * <p>
+ * The writer is streaming: All output (including escaped characters) is
+ * copied directly into a fixed-size character buffer that is flushed as soon
+ * as it is full, so no intermediate strings are created and the memory used
+ * besides the tree does not depend on the size of the document. When writing
+ * to a channel, the buffer is encoded into a fixed-size byte buffer as well.
+ * </p>
+ *
+ * <p>
+ * The characters <code>&amp;</code>, <code>&lt;</code> and
+ * <code>&gt;</code> are escaped in text values, parameter values are written
+ * in double quotes and <code>&quot;</code> is escaped additionally. The output
+ * can be configured using the setters before writing:
+ * </p>
+ *
+ * <ul>
+ * <li>{@link #setIndent(String) indent}: If not <code>null</code>, the output
+ * is pretty-printed. Every tag and text value is written on its own line and
+ * indented by the indent per level. Tags that only contain a single text
+ * value are written on a single line. Defaults to <code>null</code>.</li>
+ * <li>{@link #setLineSeparator(String) line separator}: The line separator
+ * used for pretty-printing. Defaults to <code>\n</code>.</li>
+ * <li>{@link #setParameterOrder(Comparator) parameter order}: If not
+ * <code>null</code>, the parameters of every tag are written in the order
+ * defined by the comparator of the parameter names. Otherwise, they are
+ * written in the iteration order of the parameter map. Defaults to
+ * <code>null</code>.</li>
+ * </ul>
+ *
+ * <p>
+ * Documents derived from a {@link LosslessDocument lossless document} can be
+ * written with {@link #write(XmlDocument, LosslessDocument)}, which copies the
+ * unmodified regions of the original source code (including whitespace,
+ * comments, quote style and escape sequences) instead of formatting them.
+ * </p>
+ *
+ */
+public class XmlWriter implements Closeable, Flushable {
+    /**
+     * The size of the output buffer in characters.
+     *
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * The writer to write to or <code>null</code> if writing to a channel.
+     *
+     */
+    private final Writer writer;
+    /**
+     * The channel to write to or <code>null</code> if writing to a writer.
+     *
+     */
+    private final WritableByteChannel channel;
+    /**
+     * The encoder used for writing to the {@link #channel}.
+     *
+     */
+    private final CharsetEncoder encoder;
+    /**
+     * The buffer for the encoded bytes if writing to a channel.
+     *
+     */
+    private final ByteBuffer byteBuffer;
+    /**
+     * The output buffer.
+     *
+     */
+    private final char[] buffer = new char[XmlWriter.BUFFER_SIZE];
+    /**
+     * The output buffer wrapped for encoding.
+     *
+     */
+    private final CharBuffer charBuffer = CharBuffer.wrap(this.buffer);
+
+    /**
+     * The string used to indent one level or <code>null</code> to disable
+     * pretty-printing.
+     *
+     */
+    @Getter
+    @Setter
+    private String indent;
+    /**
+     * The line separator used for pretty-printing.
+     *
+     */
+    @Getter
+    @Setter
+    private String lineSeparator = "\n";
+    /**
+     * The order of the parameters or <code>null</code> to keep the iteration
+     * order of the parameter maps.
+     *
+     */
+    @Getter
+    @Setter
+    private Comparator<String> parameterOrder;
+
+    /**
+     * The number of characters in the {@link #buffer}.
+     *
+     */
+    private int count;
+    /**
+     * Reusable array for sorting parameter names.
+     *
+     */
+    private String[] names = new String[8];
+
+    /**
+     * Constructor of XmlWriter.
+     *
+     * @param writer
+     *            The writer to write to.
+     */
+    public XmlWriter(final Writer writer) {
+        this.writer = writer;
+        this.channel = null;
+        this.encoder = null;
+        this.byteBuffer = null;
+    }
+
+    /**
+     * Constructor of XmlWriter.
+     *
+     * @param channel
+     *            The channel to write to.
+     * @param charset
+     *            The charset to encode the characters with. Should match the
+     *            encoding declared by the written documents.
+     */
+    public XmlWriter(final WritableByteChannel channel, final Charset charset) {
+        this.writer = null;
+        this.channel = channel;
+        this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        this.byteBuffer = ByteBuffer.allocate((int) Math.ceil(XmlWriter.BUFFER_SIZE * this.encoder.maxBytesPerChar()));
+    }
+
+    /**
+     * Writes the complete given document and flushes the writer.
+     *
+     * @param document
+     *            The document to write.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    public void write(final XmlDocument document) throws IOException {
+        this.writeProlog(document);
+        if (document.getRootTag() != null) {
+            this.writeValue(document.getRootTag(), 0);
+        }
+        this.flush();
+    }
+
+    /**
+     * Writes the source code of the given lossless document unmodified and
+     * flushes the writer.
+     *
+     * @param document
+     *            The document to write.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    public void write(final LosslessDocument document) throws IOException {
+        this.append(document.getSource());
+        this.flush();
+    }
+
+    /**
+     * Writes the given document that was derived from the given lossless
+     * document and flushes the writer.
+     *
+     * <p>
+     * Values of the document that are contained in the original document
+     * (i.e. the same instances or equal values at the same position) are
+     * copied from the source code of the original document, including their
+     * leading trivia. Tags that were modified but
+     * still have the same name keep their original start tag (if the
+     * parameters are equal), end tag and trivia, and their children are
+     * compared recursively. Everything else is written without pretty-printing
+     * and separated by the trivia of the first original sibling.
+     * </p>
+     *
+     * @param document
+     *            The document to write.
+     * @param original
+     *            The document the given document was derived from.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    public void write(final XmlDocument document, final LosslessDocument original) throws IOException {
+        final XmlDocument originalDocument = original.getDocument();
+        final String source = original.getSource();
+        final SyntaxNode root = original.getRoot();
+
+        if (document.getVersion() == originalDocument.getVersion()
+                && Objects.equals(document.getEncoding(), originalDocument.getEncoding())
+                && Objects.equals(document.getDoctype(), originalDocument.getDoctype())) {
+            this.append(source, 0, root.getLeadingTrivia());
+        } else {
+            this.writeProlog(document);
+        }
+        if (document.getRootTag() != null) {
+            this.writeLossless(document.getRootTag(), root, source, root.getLeadingTrivia());
+        }
+        this.append(source, root.getFullWidth(), source.length());
+        this.flush();
+    }
+
+    /**
+     * Writes the XML declaration and the document type of the given document.
+     *
+     * @param document
+     *            The document.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    private void writeProlog(final XmlDocument document) throws IOException {
+        if (document.getVersion() != null || document.getEncoding() != null) {
+            this.append("<?xml");
+            if (document.getVersion() != null) {
+                this.append(" version=\"");
+                this.append(document.getVersion().getVersion());
+                this.append('"');
+            }
+            if (document.getEncoding() != null) {
+                this.append(" encoding=\"");
+                this.append(document.getEncoding().name());
+                this.append('"');
+            }
+            this.append("?>");
+            this.newLine();
+        }
+        if (document.getDoctype() != null) {
+            this.append("<!");
+            this.append(document.getDoctype());
+            this.append('>');
+            this.newLine();
+        }
+    }
+
+    /**
+     * Writes the given value (and all of its children). The writer is not
+     * flushed.
+     *
+     * @param value
+     *            The value to write.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    public void write(final AbstractXmlValue value) throws IOException {
+        this.writeValue(value, 0);
+    }
+
+    /**
+     * Writes the given value.
+     *
+     * @param value
+     *            The value.
+     * @param depth
+     *            The nesting depth of the value.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    private void writeValue(final AbstractXmlValue value, final int depth) throws IOException {
+        this.writeIndent(depth);
+        if (value instanceof SimpleXmlValue) {
+            this.appendEscaped(((SimpleXmlValue) value).getData(), false);
+            this.newLine();
+            return;
+        }
+
+        final AbstractXmlTag tag = (AbstractXmlTag) value;
+        this.append('<');
+        this.append(tag.getName());
+        this.writeParameters(tag.getParameters());
+        if (!(tag instanceof XmlTag)) {
+            this.append(" />");
+            this.newLine();
+            return;
+        }
+        this.append('>');
+
+        final List<AbstractXmlValue> children = ((XmlTag) tag).getChildren();
+        if (children.size() == 1 && children.get(0) instanceof SimpleXmlValue) {
+            this.appendEscaped(((SimpleXmlValue) children.get(0)).getData(), false);
+        } else if (!children.isEmpty()) {
+            this.newLine();
+            for (final AbstractXmlValue child : children) {
+                this.writeValue(child, depth + 1);
+            }
+            this.writeIndent(depth);
+        }
+        this.append("</");
+        this.append(tag.getName());
+        this.append('>');
+        this.newLine();
+    }
+
+    /**
+     * Writes the given value reusing the source code of the given syntax node
+     * where possible.
+     *
+     * @param value
+     *            The value to write.
+     * @param node
+     *            The syntax node of the original value at the same position.
+     * @param source
+     *            The source code of the original document.
+     * @param start
+     *            The offset of the original value (after its leading trivia).
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    private void writeLossless(final AbstractXmlValue value, final SyntaxNode node, final String source, final int start)
+            throws IOException {
+        // Cheap unless equal, as the subtree hashes are compared first.
+        if (value.equals(node.getValue())) {
+            this.append(source, start, start + node.getWidth());
+            return;
+        }
+        if (!(value instanceof XmlTag) || !(node.getValue() instanceof XmlTag)
+                || !((XmlTag) value).getName().equals(((XmlTag) node.getValue()).getName())) {
+            this.writeCompact(value);
+            return;
+        }
+
+        final XmlTag tag = (XmlTag) value;
+        if (tag.getParameters().equals(((XmlTag) node.getValue()).getParameters())) {
+            this.append(source, start, start + node.getHeaderWidth());
+        } else {
+            this.append('<');
+            this.append(tag.getName());
+            this.writeParameters(tag.getParameters());
+            this.append('>');
+        }
+
+        final SyntaxNode[] originals = node.getChildren();
+        final int[] starts = new int[originals.length];
+        final Map<AbstractXmlValue, Integer> indexes = new IdentityHashMap<>(originals.length * 2);
+        int offset = start + node.getHeaderWidth();
+        for (int i = 0; i < originals.length; i++) {
+            offset += originals[i].getLeadingTrivia();
+            starts[i] = offset;
+            offset += originals[i].getWidth();
+            indexes.put(originals[i].getValue(), i);
+        }
+        final boolean[] reused = new boolean[originals.length];
+        for (final AbstractXmlValue child : tag.getChildren()) {
+            final Integer index = indexes.get(child);
+            if (index != null) {
+                reused[index] = true;
+            }
+        }
+
+        int previous = -1;
+        for (final AbstractXmlValue child : tag.getChildren()) {
+            final Integer index = indexes.get(child);
+            final int candidate = index != null ? index : previous + 1;
+            if (index != null || candidate < originals.length && !reused[candidate]) {
+                if (candidate == previous + 1) {
+                    this.append(source, starts[candidate] - originals[candidate].getLeadingTrivia(), starts[candidate]);
+                } else {
+                    this.writeSeparator(originals, source, starts);
+                }
+                this.writeLossless(child, originals[candidate], source, starts[candidate]);
+                previous = candidate;
+            } else {
+                this.writeSeparator(originals, source, starts);
+                this.writeCompact(child);
+            }
+        }
+
+        final int endTagWidth = node.getEndTagWidth();
+        final int end = start + node.getWidth();
+        this.append(source, end - endTagWidth - node.getTrailingTrivia(), end);
+    }
+
+    /**
+     * Writes the trivia of the first original child to separate a child that
+     * was not copied from the source code.
+     *
+     * @param originals
+     *            The syntax nodes of the original children.
+     * @param source
+     *            The source code of the original document.
+     * @param starts
+     *            The offsets of the original children.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    private void writeSeparator(final SyntaxNode[] originals, final String source, final int[] starts) throws IOException {
+        if (originals.length > 0) {
+            this.append(source, starts[0] - originals[0].getLeadingTrivia(), starts[0]);
+        }
+    }
+
+    /**
+     * Writes the given value without pretty-printing.
+     *
+     * @param value
+     *            The value to write.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    private void writeCompact(final AbstractXmlValue value) throws IOException {
+        final String indent = this.indent;
+        this.indent = null;
+        try {
+            this.writeValue(value, 0);
+        } finally {
+            this.indent = indent;
+        }
+    }
+
+    /**
+     * Writes the given parameters in the configured order.
+     *
+     * @param parameters
+     *            The parameters.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    private void writeParameters(final Map<String, String> parameters) throws IOException {
+        if (parameters.isEmpty()) {
+            return;
+        }
+        if (this.parameterOrder == null) {
+            for (final Map.Entry<String, String> parameter : parameters.entrySet()) {
+                this.writeParameter(parameter.getKey(), parameter.getValue());
+            }
+            return;
+        }
+
+        final int size = parameters.size();
+        if (this.names.length < size) {
+            this.names = new String[Math.max(size, this.names.length << 1)];
+        }
+        int i = 0;
+        for (final String name : parameters.keySet()) {
+            this.names[i++] = name;
+        }
+        Arrays.sort(this.names, 0, size, this.parameterOrder);
+        for (i = 0; i < size; i++) {
+            this.writeParameter(this.names[i], parameters.get(this.names[i]));
+            this.names[i] = null;
+        }
+    }
+
+    private void writeParameter(final String name, final String value) throws IOException {
+        this.append(' ');
+        this.append(name);
+        this.append("=\"");
+        this.appendEscaped(value, true);
+        this.append('"');
+    }
+
+    private void writeIndent(final int depth) throws IOException {
+        if (this.indent != null) {
+            for (int i = 0; i < depth; i++) {
+                this.append(this.indent);
+            }
+        }
+    }
+
+    private void newLine() throws IOException {
+        if (this.indent != null) {
+            this.append(this.lineSeparator);
+        }
+    }
+
+    /**
+     * Appends the given string escaping all characters that have a special
+     * meaning in XML.
+     *
+     * @param str
+     *            The string.
+     * @param parameter
+     *            Whether the string is a parameter value (i.e. whether
+     *            <code>"</code> has to be escaped).
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    private void appendEscaped(final String str, final boolean parameter) throws IOException {
+        final int length = str.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            final String escaped;
+            switch (str.charAt(i)) {
+                case '&':
+                    escaped = "&amp;";
+                    break;
+                case '<':
+                    escaped = "&lt;";
+                    break;
+                case '>':
+                    escaped = "&gt;";
+                    break;
+                case '"':
+                    escaped = parameter ? "&quot;" : null;
+                    break;
+                default:
+                    escaped = null;
+                    break;
+            }
+            if (escaped != null) {
+                this.append(str, start, i);
+                this.append(escaped);
+                start = i + 1;
+            }
+        }
+        this.append(str, start, length);
+    }
+
+    private void append(final String str) throws IOException {
+        this.append(str, 0, str.length());
+    }
+
+    /**
+     * Copies the given range of the given string into the buffer, flushing
+     * the buffer whenever it is full.
+     *
+     * @param str
+     *            The string.
+     * @param start
+     *            The start of the range (inclusive).
+     * @param end
+     *            The end of the range (exclusive).
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    private void append(final String str, final int start, final int end) throws IOException {
+        int offset = start;
+        while (offset < end) {
+            if (this.count == this.buffer.length) {
+                this.flushBuffer(false);
+            }
+            final int length = Math.min(end - offset, this.buffer.length - this.count);
+            str.getChars(offset, offset + length, this.buffer, this.count);
+            this.count += length;
+            offset += length;
+        }
+    }
+
+    private void append(final char c) throws IOException {
+        if (this.count == this.buffer.length) {
+            this.flushBuffer(false);
+        }
+        this.buffer[this.count++] = c;
+    }
+
+    /**
+     * Writes the buffered characters to the writer or encodes them into the
+     * channel. If the buffer ends with an incomplete surrogate pair, the
+     * remaining character is kept in the buffer unless this is the end of the
+     * input.
+     *
+     * @param endOfInput
+     *            Whether no more characters follow.
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    private void flushBuffer(final boolean endOfInput) throws IOException {
+        if (this.writer != null) {
+            this.writer.write(this.buffer, 0, this.count);
+            this.count = 0;
+            return;
+        }
+
+        this.charBuffer.limit(this.count).position(0);
+        while (true) {
+            final CoderResult result = this.encoder.encode(this.charBuffer, this.byteBuffer, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            this.drain();
+            if (result.isUnderflow()) {
+                break;
+            }
+        }
+        if (endOfInput) {
+            while (this.encoder.flush(this.byteBuffer).isOverflow()) {
+                this.drain();
+            }
+            this.drain();
+            this.encoder.reset();
+        }
+        final int remaining = this.charBuffer.remaining();
+        System.arraycopy(this.buffer, this.charBuffer.position(), this.buffer, 0, remaining);
+        this.count = remaining;
+    }
+
+    /**
+     * Writes the encoded bytes to the channel.
+     *
+     * @throws IOException
+     *             If any I/O error occurs.
+     */
+    private void drain() throws IOException {
+        this.byteBuffer.flip();
+        while (this.byteBuffer.hasRemaining()) {
+            this.channel.write(this.byteBuffer);
+        }
+        this.byteBuffer.clear();
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.io.Flushable#flush()
+     */
+    @Override
+    public void flush() throws IOException {
+        this.flushBuffer(true);
+        if (this.writer != null) {
+            this.writer.flush();
+        }
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.flush();
+        } finally {
+            if (this.writer != null) {
+                this.writer.close();
+            } else {
+                this.channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import com.dmken.oss.mybatis.mapper.parser.binary.BinaryXmlReader;
+import com.dmken.oss.mybatis.mapper.parser.binary.BinaryXmlWriter;
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+
+/**
+ * Compares decoding the {@link BinaryXmlReader binary XML format} with
+ * scanning and parsing the XML. Not part of the test suite; run the main
+ * method with the test classpath.
+ *
+ * <p>
+ * Encodes a generated mapper of about 650 KB once and then decodes the binary
+ * document and parses the XML alternately. Prints the median time per round
+ * of both and the speedup of decoding.
+ * </p>
+ *
+ */
+@SuppressWarnings("javadoc")
+public final class BinaryXmlBenchmark {
+    private static final int WARMUP_ROUNDS = 30;
+    private static final int MEASURED_ROUNDS = 50;
+
+    private BinaryXmlBenchmark() {
+        // Nothing to do.
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final byte[] mapper = MapperCorpus.generate(42, 4000);
+        final XmlDocument document = BinaryXmlBenchmark.parse(mapper);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryXmlWriter(out).write(document);
+        final byte[] binary = out.toByteArray();
+        if (!document.equals(BinaryXmlBenchmark.decode(binary))) {
+            throw new IllegalStateException("Round trip failed!");
+        }
+
+        for (int i = 0; i < BinaryXmlBenchmark.WARMUP_ROUNDS; i++) {
+            BinaryXmlBenchmark.decode(binary);
+            BinaryXmlBenchmark.parse(mapper);
+        }
+        final long[] decode = new long[BinaryXmlBenchmark.MEASURED_ROUNDS];
+        final long[] parse = new long[BinaryXmlBenchmark.MEASURED_ROUNDS];
+        for (int i = 0; i < BinaryXmlBenchmark.MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            BinaryXmlBenchmark.decode(binary);
+            decode[i] = System.nanoTime() - start;
+            start = System.nanoTime();
+            BinaryXmlBenchmark.parse(mapper);
+            parse[i] = System.nanoTime() - start;
+        }
+        final long decodeMedian = BinaryXmlBenchmark.median(decode);
+        final long parseMedian = BinaryXmlBenchmark.median(parse);
+        System.out.printf("Input:   %d bytes XML, %d bytes binary%n", mapper.length, binary.length);
+        System.out.printf("Parse:   %.3f ms%n", parseMedian / 1e6);
+        System.out.printf("Decode:  %.3f ms%n", decodeMedian / 1e6);
+        System.out.printf("Speedup: %.2fx%n", (double) parseMedian / decodeMedian);
+    }
+
+    private static XmlDocument parse(final byte[] mapper) throws Exception {
+        return XmlParser.parse(XmlScanner.scan(new ByteArrayInputStream(mapper)));
+    }
+
+    private static XmlDocument decode(final byte[] binary) throws Exception {
+        return new BinaryXmlReader(new ByteArrayInputStream(binary), binary.length).readDocument();
+    }
+
+    private static long median(final long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates synthetic but realistic mapper files for benchmarks. The output
+ * only depends on the seed and the number of statements.
+ *
+ */
+public final class MapperCorpus {
+    private static final String[] TABLES = { "users", "orders", "order_items", "products", "customers", "invoices" };
+    private static final String[] COLUMNS = { "id", "name", "created_at", "status", "amount", "owner_id", "version" };
+
+    private MapperCorpus() {
+        // Nothing to do.
+    }
+
+    /**
+     * Generates a mapper.
+     *
+     * @param seed
+     *            The seed of the random generator.
+     * @param statementCount
+     *            The number of statements.
+     * @return The mapper encoded in ASCII.
+     */
+    public static byte[] generate(final long seed, final int statementCount) {
+        final Random random = new Random(seed);
+        final StringBuilder xml = new StringBuilder(statementCount * 400);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<mapper namespace=\"com.example.Mapper").append(seed).append("\">\n");
+        xml.append("    <!-- Generated mapper. -->\n");
+        for (int i = 0; i < statementCount; i++) {
+            final String table = MapperCorpus.TABLES[random.nextInt(MapperCorpus.TABLES.length)];
+            final String column = MapperCorpus.COLUMNS[random.nextInt(MapperCorpus.COLUMNS.length)];
+            switch (random.nextInt(4)) {
+                case 0:
+                    xml.append("    <select id=\"find").append(i).append("\" resultType=\"map\">\n");
+                    xml.append("        SELECT * FROM ").append(table).append("\n");
+                    xml.append("        <where>\n");
+                    xml.append("            <if test=\"").append(column).append(" != null\">AND ").append(column)
+                            .append(" = #{").append(column).append("}</if>\n");
+                    xml.append("            <if test=\"limit &gt; 0\">AND rownum &lt;= #{limit}</if>\n");
+                    xml.append("        </where>\n");
+                    xml.append("    </select>\n");
+                    break;
+                case 1:
+                    xml.append("    <insert id=\"insert").append(i).append("\" useGeneratedKeys=\"true\">\n");
+                    xml.append("        INSERT INTO ").append(table).append(" (").append(column).append(", version)\n");
+                    xml.append("        VALUES (#{").append(column).append("}, 0)\n");
+                    xml.append("    </insert>\n");
+                    break;
+                case 2:
+                    xml.append("    <update id=\"update").append(i).append("\">\n");
+                    xml.append("        UPDATE ").append(table).append("\n");
+                    xml.append("        <set>\n");
+                    xml.append("            <if test=\"").append(column).append(" != null\">").append(column)
+                            .append(" = #{").append(column).append("},</if>\n");
+                    xml.append("        </set>\n");
+                    xml.append("        WHERE id = #{id}\n");
+                    xml.append("    </update>\n");
+                    break;
+                default:
+                    xml.append("    <sql id=\"columns").append(i).append("\">").append(column).append(", id</sql>\n");
+                    xml.append("    <delete id=\"delete").append(i).append("\"/>\n");
+                    break;
+            }
+        }
+        xml.append("</mapper>\n");
+        return xml.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Generates a mapper dominated by long SQL bodies (reporting queries with
+     * many joins and columns) and only few tags.
+     *
+     * @param seed
+     *            The seed of the random generator.
+     * @param statementCount
+     *            The number of statements.
+     * @return The mapper encoded in ASCII.
+     */
+    public static byte[] generateSqlHeavy(final long seed, final int statementCount) {
+        final Random random = new Random(seed);
+        final StringBuilder xml = new StringBuilder(statementCount * 2500);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<mapper namespace=\"com.example.ReportMapper").append(seed).append("\">\n");
+        for (int i = 0; i < statementCount; i++) {
+            xml.append("    <select id=\"report").append(i).append("\" resultType=\"map\">\n");
+            xml.append("        SELECT ");
+            final int columnCount = 8 + random.nextInt(16);
+            for (int j = 0; j < columnCount; j++) {
+                final String table = MapperCorpus.TABLES[random.nextInt(MapperCorpus.TABLES.length)];
+                final String column = MapperCorpus.COLUMNS[random.nextInt(MapperCorpus.COLUMNS.length)];
+                xml.append(j == 0 ? "" : ", ").append("coalesce(").append(table).append('.').append(column)
+                        .append(", 0) AS ").append(table).append('_').append(column).append('_').append(j);
+            }
+            xml.append("\n        FROM ").append(MapperCorpus.TABLES[0]).append('\n');
+            final int joinCount = 2 + random.nextInt(5);
+            for (int j = 1; j <= joinCount; j++) {
+                final String table = MapperCorpus.TABLES[j % MapperCorpus.TABLES.length];
+                xml.append("        LEFT OUTER JOIN ").append(table).append(" ON ").append(table).append(".owner_id = ")
+                        .append(MapperCorpus.TABLES[0]).append(".id AND ").append(table).append(".status IN (1, 2, 3)\n");
+            }
+            xml.append("        WHERE ").append(MapperCorpus.TABLES[0]).append(".created_at BETWEEN #{from} AND #{to}\n");
+            xml.append("        <if test=\"status != null\">AND ").append(MapperCorpus.TABLES[0])
+                    .append(".status = #{status}</if>\n");
+            xml.append("        GROUP BY ").append(MapperCorpus.TABLES[0]).append(".id HAVING count(*) &gt; 1\n");
+            xml.append("        ORDER BY ").append(MapperCorpus.TABLES[0]).append(".created_at DESC\n");
+            xml.append("    </select>\n");
+        }
+        xml.append("</mapper>\n");
+        return xml.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,99 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.benchmark;
+
+import java.io.CharArrayReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import com.dmken.oss.mybatis.mapper.parser.scanner.ParallelScanner;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+
+/**
+ * Measures the speedup of the {@link ParallelScanner} against the number of
+ * threads. Not part of the test suite; run the main method with the test
+ * classpath (and a large heap, e.g. <code>-Xmx2g</code>).
+ *
+ * <p>
+ * Scans a generated mapper of about 100 MB (<code>-Dstatements=600000</code>)
+ * sequentially with the {@link XmlScanner} and in parallel with pools of 1,
+ * 2, 4, ... threads up to the number of available processors and prints the
+ * median time per round and the speedup against the sequential scan.
+ * </p>
+ *
+ */
+@SuppressWarnings("javadoc")
+public final class ParallelScannerBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 7;
+
+    private ParallelScannerBenchmark() {
+        // Nothing to do.
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final char[] source = new String(MapperCorpus.generate(42, Integer.getInteger("statements", 600_000)),
+                StandardCharsets.US_ASCII).toCharArray();
+        final int processors = Runtime.getRuntime().availableProcessors();
+        System.out.printf("Input: %d chars, %d processors%n", source.length, processors);
+
+        final List<ForkJoinPool> pools = new ArrayList<>();
+        for (int threads = 1; threads <= processors; threads *= 2) {
+            pools.add(new ForkJoinPool(threads));
+        }
+        // The rounds of all configurations are interleaved, so they all run
+        // with the same heap state.
+        final long[][] nanos = new long[pools.size() + 1][ParallelScannerBenchmark.MEASURED_ROUNDS];
+        for (int i = -ParallelScannerBenchmark.WARMUP_ROUNDS; i < ParallelScannerBenchmark.MEASURED_ROUNDS; i++) {
+            for (int j = 0; j <= pools.size(); j++) {
+                final ForkJoinPool pool = j == 0 ? null : pools.get(j - 1);
+                final long start = System.nanoTime();
+                if (pool == null) {
+                    new XmlScanner(new CharArrayReader(source)).scan();
+                } else {
+                    ParallelScanner.scan(source, source.length, pool);
+                }
+                if (i >= 0) {
+                    nanos[j][i] = System.nanoTime() - start;
+                }
+            }
+        }
+        for (final ForkJoinPool pool : pools) {
+            pool.shutdown();
+        }
+
+        final long sequential = ParallelScannerBenchmark.median(nanos[0]);
+        System.out.printf("%-12s %10.1f ms%n", "Sequential", sequential / 1e6);
+        for (int j = 1; j <= pools.size(); j++) {
+            final long parallel = ParallelScannerBenchmark.median(nanos[j]);
+            System.out.printf("%-12s %10.1f ms %8.2fx%n", pools.get(j - 1).getParallelism() + " threads", parallel / 1e6,
+                    (double) sequential / parallel);
+        }
+    }
+
+    private static long median(final long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,179 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.ibatis.builder.xml.XMLMapperEntityResolver;
+import org.apache.ibatis.parsing.XPathParser;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.util.MemoryUtil;
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Compares this parser against the XML parsers of the JDK and the one of
+ * MyBatis. Not part of the test suite; run the main method with the test
+ * classpath.
+ *
+ * <p>
+ * Parses the same generated mapper of about 650 kB with
+ * <ul>
+ * <li>{@link XmlScanner} and {@link XmlParser} into an {@link XmlDocument},</li>
+ * <li>a {@link DocumentBuilder} into a DOM tree,</li>
+ * <li>the {@link XPathParser} of MyBatis (the DOM tree MyBatis builds before
+ * evaluating a mapper) and</li>
+ * <li>an {@link XMLStreamReader} by pulling all events (the lower bound of any
+ * tree built on top of StAX, no tree is retained)</li>
+ * </ul>
+ * and prints the median time per round, the throughput, the allocated bytes
+ * per input byte and the retained size of the resulting tree. The retained
+ * size is measured as the growth of the used heap after a garbage collection
+ * while holding several trees, so it is comparable between the parsers; for
+ * this parser, the estimation of {@link MemoryUtil} is printed as well.
+ * DTDs and external entities are disabled for the JDK parsers, so the
+ * benchmark runs offline.
+ * </p>
+ *
+ */
+@SuppressWarnings("javadoc")
+public final class ParserComparisonBenchmark {
+    private static final int WARMUP_ROUNDS = 30;
+    private static final int MEASURED_ROUNDS = 30;
+    private static final int RETAINED_COPIES = 20;
+
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private ParserComparisonBenchmark() {
+        // Nothing to do.
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final byte[] mapper = MapperCorpus.generate(42, 4000);
+
+        final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        documentBuilderFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        documentBuilderFactory.setExpandEntityReferences(false);
+        final DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
+
+        final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        final Candidate[] candidates = {
+                new Candidate("XmlScanner+XmlParser", in -> XmlParser.parse(XmlScanner.scan(in))),
+                new Candidate("DocumentBuilder (DOM)", documentBuilder::parse),
+                new Candidate("XPathParser (MyBatis)",
+                        in -> new XPathParser(in, false, null, new XMLMapperEntityResolver()).evalNode("/mapper")),
+                new Candidate("XMLStreamReader (StAX)", in -> {
+                    final XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+                    int events = 0;
+                    while (reader.hasNext()) {
+                        reader.next();
+                        events++;
+                    }
+                    reader.close();
+                    return events;
+                }) };
+
+        for (int i = 0; i < ParserComparisonBenchmark.WARMUP_ROUNDS; i++) {
+            for (final Candidate candidate : candidates) {
+                candidate.parser.parse(new ByteArrayInputStream(mapper));
+            }
+        }
+
+        System.out.printf("Input: %d bytes%n%n", mapper.length);
+        System.out.printf("%-24s %10s %10s %14s %14s%n", "Parser", "ms", "MB/s", "alloc B/B", "retained B");
+        for (final Candidate candidate : candidates) {
+            final long[] nanos = new long[ParserComparisonBenchmark.MEASURED_ROUNDS];
+            long allocated = Long.MAX_VALUE;
+            for (int i = 0; i < ParserComparisonBenchmark.MEASURED_ROUNDS; i++) {
+                final ByteArrayInputStream in = new ByteArrayInputStream(mapper);
+                final long allocatedBefore = ParserComparisonBenchmark.allocatedBytes();
+                final long start = System.nanoTime();
+                candidate.parser.parse(in);
+                nanos[i] = System.nanoTime() - start;
+                allocated = Math.min(allocated, ParserComparisonBenchmark.allocatedBytes() - allocatedBefore);
+            }
+            final long median = ParserComparisonBenchmark.median(nanos);
+            System.out.printf("%-24s %10.3f %10.1f %14.2f %14d%n", candidate.name, median / 1e6, mapper.length * 1e3 / median,
+                    (double) allocated / mapper.length, ParserComparisonBenchmark.retainedBytes(candidate, mapper));
+        }
+
+        final XmlDocument document = XmlParser.parse(XmlScanner.scan(new ByteArrayInputStream(mapper)));
+        System.out.printf("%nEstimated retained size of the XmlDocument (MemoryUtil): %d bytes%n",
+                MemoryUtil.estimateRetainedSize(document));
+    }
+
+    private static long retainedBytes(final Candidate candidate, final byte[] mapper) throws Exception {
+        final Object[] trees = new Object[ParserComparisonBenchmark.RETAINED_COPIES];
+        final long before = ParserComparisonBenchmark.usedHeap();
+        for (int i = 0; i < trees.length; i++) {
+            trees[i] = candidate.parser.parse(new ByteArrayInputStream(mapper));
+        }
+        final long after = ParserComparisonBenchmark.usedHeap();
+        // Keep the trees reachable until the heap was measured.
+        return trees[trees.length - 1] == null ? 0 : (after - before) / trees.length;
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long allocatedBytes() {
+        return ParserComparisonBenchmark.THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long median(final long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    @FunctionalInterface
+    private interface Parser {
+        Object parse(ByteArrayInputStream in) throws Exception;
+    }
+
+    private static final class Candidate {
+        private final String name;
+        private final Parser parser;
+
+        private Candidate(final String name, final Parser parser) {
+            this.name = name;
+            this.parser = parser;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.scanner.ParserLimits;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+
+/**
+ * Measures the overhead of enforcing {@link ParserLimits}. Not part of the
+ * test suite; run the main method with the test classpath.
+ *
+ * <p>
+ * Scans and parses a generated mapper of about 1 MB alternately without and
+ * with the {@link ParserLimits#DEFAULT default limits} and prints the median
+ * time per round of both configurations.
+ * </p>
+ *
+ */
+@SuppressWarnings("javadoc")
+public final class ParserLimitsBenchmark {
+    private static final int WARMUP_ROUNDS = 30;
+    private static final int MEASURED_ROUNDS = 50;
+
+    private ParserLimitsBenchmark() {
+        // Nothing to do.
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final byte[] mapper = MapperCorpus.generate(42, 4000);
+        for (int i = 0; i < ParserLimitsBenchmark.WARMUP_ROUNDS; i++) {
+            ParserLimitsBenchmark.run(mapper, ParserLimits.UNLIMITED);
+            ParserLimitsBenchmark.run(mapper, ParserLimits.DEFAULT);
+        }
+        final long[] unlimited = new long[ParserLimitsBenchmark.MEASURED_ROUNDS];
+        final long[] limited = new long[ParserLimitsBenchmark.MEASURED_ROUNDS];
+        for (int i = 0; i < ParserLimitsBenchmark.MEASURED_ROUNDS; i++) {
+            unlimited[i] = ParserLimitsBenchmark.run(mapper, ParserLimits.UNLIMITED);
+            limited[i] = ParserLimitsBenchmark.run(mapper, ParserLimits.DEFAULT);
+        }
+        final long unlimitedMedian = ParserLimitsBenchmark.median(unlimited);
+        final long limitedMedian = ParserLimitsBenchmark.median(limited);
+        System.out.printf("Input:     %d bytes%n", mapper.length);
+        System.out.printf("Unlimited: %.3f ms%n", unlimitedMedian / 1e6);
+        System.out.printf("Default:   %.3f ms%n", limitedMedian / 1e6);
+        System.out.printf("Overhead:  %+.2f %%%n", (limitedMedian - unlimitedMedian) * 100.0 / unlimitedMedian);
+    }
+
+    private static long run(final byte[] mapper, final ParserLimits limits) throws Exception {
+        final long start = System.nanoTime();
+        XmlParser.parse(XmlScanner.scan(new ByteArrayInputStream(mapper), limits));
+        return System.nanoTime() - start;
+    }
+
+    private static long median(final long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,171 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.scanner.Token;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.util.HashUtil;
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Guards the allocation rate and the throughput of the scanner and the parser
+ * against regressions. Run with <code>mvn test -Pperformance</code>; excluded
+ * from the unit tests.
+ *
+ * <p>
+ * The measured figures are compared against the baselines in
+ * <code>src/test/resources/performance/baselines.properties</code>. The
+ * allocated bytes per input byte are stable across machines and runs and are
+ * checked with a tight tolerance. The throughput is measured relative to a
+ * reference workload (decoding and hashing the input) timed in the same run,
+ * so it does not depend on the speed of the machine. It still varies between
+ * runs (e.g. with the compilation decisions of the JIT), so it is only
+ * reported unless <code>-Dperformance.checkThroughput=true</code> is given.
+ * After an intended change, the baselines are rewritten by running with
+ * <code>-Dperformance.updateBaselines=true</code>. The tolerances can be
+ * overridden with <code>-Dperformance.allocationTolerance</code> and
+ * <code>-Dperformance.throughputTolerance</code>.
+ * </p>
+ *
+ */
+@SuppressWarnings("javadoc")
+public class ParserPerformanceTest {
+    private static final Path BASELINES = Paths.get("src", "test", "resources", "performance", "baselines.properties");
+    private static final double ALLOCATION_TOLERANCE = Double.parseDouble(System.getProperty("performance.allocationTolerance",
+            "0.10"));
+    private static final double THROUGHPUT_TOLERANCE = Double.parseDouble(System.getProperty("performance.throughputTolerance",
+            "0.50"));
+    private static final boolean CHECK_THROUGHPUT = Boolean.getBoolean("performance.checkThroughput");
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int MEASURED_ROUNDS = 20;
+
+    @Test
+    public void testScanAndParse() throws Exception {
+        final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        final long thread = Thread.currentThread().getId();
+
+        final byte[] corpus = MapperCorpus.generate(7, 2000);
+        long checksum = 0;
+        for (int i = 0; i < ParserPerformanceTest.WARMUP_ROUNDS; i++) {
+            XmlParser.parse(XmlScanner.scan(new ByteArrayInputStream(corpus)));
+            checksum += ParserPerformanceTest.reference(corpus);
+        }
+
+        long scanBytes = Long.MAX_VALUE;
+        long parseBytes = Long.MAX_VALUE;
+        long scanNanos = Long.MAX_VALUE;
+        long parseNanos = Long.MAX_VALUE;
+        long referenceNanos = Long.MAX_VALUE;
+        int tokenCount = 0;
+        for (int i = 0; i < ParserPerformanceTest.MEASURED_ROUNDS; i++) {
+            // Interleaved with the measured rounds, so both are affected by
+            // the same state of the machine.
+            final long beforeReference = System.nanoTime();
+            checksum += ParserPerformanceTest.reference(corpus);
+            referenceNanos = Math.min(referenceNanos, System.nanoTime() - beforeReference);
+
+            final InputStream in = new ByteArrayInputStream(corpus);
+            final long allocatedBeforeScan = threads.getThreadAllocatedBytes(thread);
+            final long beforeScan = System.nanoTime();
+            final Deque<Token> tokens = XmlScanner.scan(in);
+            final long afterScan = System.nanoTime();
+            final long allocatedAfterScan = threads.getThreadAllocatedBytes(thread);
+            tokenCount = tokens.size();
+            final long allocatedBeforeParse = threads.getThreadAllocatedBytes(thread);
+            final long beforeParse = System.nanoTime();
+            XmlParser.parse(tokens);
+            final long afterParse = System.nanoTime();
+            final long allocatedAfterParse = threads.getThreadAllocatedBytes(thread);
+
+            scanBytes = Math.min(scanBytes, allocatedAfterScan - allocatedBeforeScan);
+            parseBytes = Math.min(parseBytes, allocatedAfterParse - allocatedBeforeParse);
+            scanNanos = Math.min(scanNanos, afterScan - beforeScan);
+            parseNanos = Math.min(parseNanos, afterParse - beforeParse);
+        }
+
+        final Map<String, Double> measured = new LinkedHashMap<>();
+        measured.put("scan.allocatedBytesPerInputByte", (double) scanBytes / corpus.length);
+        measured.put("parse.allocatedBytesPerInputByte", (double) parseBytes / corpus.length);
+        measured.put("scan.relativeThroughput", (double) referenceNanos / scanNanos);
+        measured.put("parse.relativeThroughput", (double) referenceNanos / parseNanos);
+        System.out.println("Performance of " + corpus.length + " bytes / " + tokenCount + " tokens (reference "
+                + referenceNanos / 1000 + " us, checksum " + checksum + "): " + measured);
+
+        if (Boolean.getBoolean("performance.updateBaselines")) {
+            final Properties baselines = new Properties();
+            for (final Map.Entry<String, Double> entry : measured.entrySet()) {
+                baselines.setProperty(entry.getKey(), String.format("%.2f", entry.getValue()));
+            }
+            try (OutputStream out = Files.newOutputStream(ParserPerformanceTest.BASELINES)) {
+                baselines.store(out, "Baselines of ParserPerformanceTest");
+            }
+            return;
+        }
+
+        final Properties baselines = new Properties();
+        try (InputStream in = Files.newInputStream(ParserPerformanceTest.BASELINES)) {
+            baselines.load(in);
+        }
+        final List<String> regressions = new ArrayList<>();
+        for (final Map.Entry<String, Double> entry : measured.entrySet()) {
+            final String baselineString = baselines.getProperty(entry.getKey());
+            Assert.assertNotNull("No baseline for " + entry.getKey(), baselineString);
+            final double baseline = Double.parseDouble(baselineString);
+            final double value = entry.getValue();
+            if (entry.getKey().endsWith("allocatedBytesPerInputByte")
+                    ? value > baseline * (1 + ParserPerformanceTest.ALLOCATION_TOLERANCE)
+                    : ParserPerformanceTest.CHECK_THROUGHPUT
+                            && value < baseline * (1 - ParserPerformanceTest.THROUGHPUT_TOLERANCE)) {
+                regressions.add(String.format("%s: %.2f (baseline %.2f)", entry.getKey(), value, baseline));
+            }
+        }
+        Assert.assertTrue("Performance regressions: " + regressions, regressions.isEmpty());
+    }
+
+    /**
+     * The reference workload the throughput is measured against: A single
+     * pass decoding and hashing the input.
+     */
+    private static long reference(final byte[] corpus) {
+        return HashUtil.hash(new String(corpus, StandardCharsets.UTF_8));
+    }
+}
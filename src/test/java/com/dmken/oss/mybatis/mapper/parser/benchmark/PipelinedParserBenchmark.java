@@ -0,0 +1,86 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Deque;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.scanner.Token;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+
+/**
+ * Compares the pipelined scan and parse of
+ * {@link XmlParser#parsePipelined(java.io.InputStream)} with scanning and
+ * parsing one after the other. Not part of the test suite; run the main method
+ * with the test classpath.
+ *
+ * <p>
+ * Prints the median time of the scanner alone, the parser alone, both one
+ * after the other and the pipeline for a generated mapper of about 16 MB
+ * (<code>-Dstatements=100000</code>). With at least two cores, the pipeline
+ * should approach the maximum of the scanner and the parser.
+ * </p>
+ *
+ */
+@SuppressWarnings("javadoc")
+public final class PipelinedParserBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 11;
+
+    private PipelinedParserBenchmark() {
+        // Nothing to do.
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final byte[] mapper = MapperCorpus.generate(42, Integer.getInteger("statements", 100_000));
+        System.out.printf("Input: %d bytes, %d processors%n", mapper.length, Runtime.getRuntime().availableProcessors());
+
+        // The rounds of all configurations are interleaved, so they all run
+        // with the same heap state.
+        final long[][] nanos = new long[4][PipelinedParserBenchmark.MEASURED_ROUNDS];
+        for (int i = -PipelinedParserBenchmark.WARMUP_ROUNDS; i < PipelinedParserBenchmark.MEASURED_ROUNDS; i++) {
+            final long start = System.nanoTime();
+            final Deque<Token> tokens = XmlScanner.scan(new ByteArrayInputStream(mapper));
+            final long scanned = System.nanoTime();
+            XmlParser.parse(tokens);
+            final long parsed = System.nanoTime();
+            XmlParser.parsePipelined(new ByteArrayInputStream(mapper));
+            final long pipelined = System.nanoTime();
+            if (i >= 0) {
+                nanos[0][i] = scanned - start;
+                nanos[1][i] = parsed - scanned;
+                nanos[2][i] = parsed - start;
+                nanos[3][i] = pipelined - parsed;
+            }
+        }
+        final String[] names = { "Scan", "Parse", "Sequential", "Pipelined" };
+        for (int j = 0; j < names.length; j++) {
+            System.out.printf("%-12s %10.1f ms%n", names[j], PipelinedParserBenchmark.median(nanos[j]) / 1e6);
+        }
+    }
+
+    private static long median(final long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,79 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+
+/**
+ * Measures the throughput of the {@link XmlScanner} alone. Not part of the
+ * test suite; run the main method with the test classpath.
+ *
+ * <p>
+ * Scans a tag-heavy mapper ({@link MapperCorpus#generate(long, int)}) and a
+ * SQL-heavy mapper ({@link MapperCorpus#generateSqlHeavy(long, int)}) and
+ * prints the median time per round and the throughput of both.
+ * </p>
+ *
+ */
+@SuppressWarnings("javadoc")
+public final class ScannerBenchmark {
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int MEASURED_ROUNDS = 50;
+
+    private ScannerBenchmark() {
+        // Nothing to do.
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final byte[] tagHeavy = MapperCorpus.generate(42, 4000);
+        final byte[] sqlHeavy = MapperCorpus.generateSqlHeavy(42, 600);
+        for (int i = 0; i < ScannerBenchmark.WARMUP_ROUNDS; i++) {
+            ScannerBenchmark.run(tagHeavy);
+            ScannerBenchmark.run(sqlHeavy);
+        }
+        final long[] tagHeavyNanos = new long[ScannerBenchmark.MEASURED_ROUNDS];
+        final long[] sqlHeavyNanos = new long[ScannerBenchmark.MEASURED_ROUNDS];
+        for (int i = 0; i < ScannerBenchmark.MEASURED_ROUNDS; i++) {
+            tagHeavyNanos[i] = ScannerBenchmark.run(tagHeavy);
+            sqlHeavyNanos[i] = ScannerBenchmark.run(sqlHeavy);
+        }
+        ScannerBenchmark.print("Tag-heavy", tagHeavy, ScannerBenchmark.median(tagHeavyNanos));
+        ScannerBenchmark.print("SQL-heavy", sqlHeavy, ScannerBenchmark.median(sqlHeavyNanos));
+    }
+
+    private static long run(final byte[] mapper) throws Exception {
+        final long start = System.nanoTime();
+        XmlScanner.scan(new ByteArrayInputStream(mapper));
+        return System.nanoTime() - start;
+    }
+
+    private static void print(final String name, final byte[] mapper, final long median) {
+        System.out.printf("%-10s %8d bytes %10.3f ms %8.1f MB/s%n", name, mapper.length, median / 1e6, mapper.length * 1e3 / median);
+    }
+
+    private static long median(final long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
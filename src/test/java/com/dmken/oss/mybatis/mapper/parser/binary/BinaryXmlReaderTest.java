@@ -0,0 +1,184 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.dmken.oss.mybatis.mapper.parser.binary.BinaryXmlReader.Event;
+import com.dmken.oss.mybatis.mapper.parser.binary.exception.BinaryFormatException;
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.SimpleXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+
+@SuppressWarnings("javadoc")
+public class BinaryXmlReaderTest {
+    @Test
+    public void testRoundTrip() throws Exception {
+        final XmlDocument expected;
+        try (InputStream in = BinaryXmlReaderTest.class.getClassLoader().getResourceAsStream("xml/simple.xml")) {
+            expected = XmlParser.parse(XmlScanner.scan(in));
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryXmlWriter(out).write(expected);
+
+        final XmlDocument actual = new BinaryXmlReader(new ByteArrayInputStream(out.toByteArray())).readDocument();
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testLargeValue() throws Exception {
+        final char[] chars = new char[100 * 1024];
+        Arrays.fill(chars, 'ä');
+        final XmlDocument expected = new XmlDocument(null, null, null, new XmlTag("root", new HashMap<>(),
+                Arrays.<AbstractXmlValue> asList(new SimpleXmlValue(new String(chars)))));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryXmlWriter(out).write(expected);
+
+        final XmlDocument actual = new BinaryXmlReader(new ByteArrayInputStream(out.toByteArray())).readDocument();
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        final Map<String, String> parameters = new HashMap<>();
+        parameters.put("id", "findAll");
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryXmlWriter writer = new BinaryXmlWriter(out, true)) {
+            writer.startDocument(null, null, null);
+            writer.startTag("mapper", Collections.emptyMap(), 1, 1);
+            writer.startTag("select", parameters, 2, 5);
+            writer.value("SELECT * FROM users");
+            writer.endTag();
+            writer.selfClosingTag("select", parameters, 3, 5);
+            writer.endTag();
+            writer.endDocument();
+        }
+
+        final BinaryXmlReader reader = new BinaryXmlReader(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals(Event.START_TAG, reader.next());
+        Assert.assertEquals("mapper", reader.getName());
+        Assert.assertEquals(1, reader.getLine());
+        Assert.assertEquals(Event.START_TAG, reader.next());
+        Assert.assertEquals("select", reader.getName());
+        Assert.assertEquals(parameters, reader.getParameters());
+        Assert.assertEquals(2, reader.getLine());
+        Assert.assertEquals(5, reader.getColumn());
+        Assert.assertEquals(Event.VALUE, reader.next());
+        Assert.assertEquals("SELECT * FROM users", reader.getData());
+        Assert.assertEquals(Event.END_TAG, reader.next());
+        Assert.assertEquals(Event.SELF_CLOSING_TAG, reader.next());
+        Assert.assertEquals("select", reader.getName());
+        Assert.assertEquals(parameters, reader.getParameters());
+        Assert.assertEquals(3, reader.getLine());
+        Assert.assertEquals(Event.END_TAG, reader.next());
+        Assert.assertEquals(Event.END_DOCUMENT, reader.next());
+
+        // Unknown positions are distinguishable from real ones and trees
+        // (which do not know any positions) are written without positions.
+        out.reset();
+        try (BinaryXmlWriter writer = new BinaryXmlWriter(out, true)) {
+            writer.startDocument(null, null, null);
+            writer.startTag("mapper", Collections.emptyMap());
+            writer.selfClosingTag("select", parameters, 0, 0);
+            writer.endTag();
+            writer.endDocument();
+        }
+        final BinaryXmlReader unknownReader = new BinaryXmlReader(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals(Event.START_TAG, unknownReader.next());
+        Assert.assertEquals(-1, unknownReader.getLine());
+        Assert.assertEquals(-1, unknownReader.getColumn());
+        Assert.assertEquals(Event.SELF_CLOSING_TAG, unknownReader.next());
+        Assert.assertEquals(0, unknownReader.getLine());
+        Assert.assertEquals(0, unknownReader.getColumn());
+
+        out.reset();
+        new BinaryXmlWriter(out, true).write(new XmlDocument(null, null, null,
+                new XmlTag("mapper", parameters, Collections.<AbstractXmlValue> emptyList())));
+        Assert.assertEquals(0, out.toByteArray()[5]);
+        final BinaryXmlReader treeReader = new BinaryXmlReader(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals(Event.START_TAG, treeReader.next());
+        Assert.assertEquals(-1, treeReader.getLine());
+        Assert.assertEquals(Event.END_TAG, treeReader.next());
+        Assert.assertEquals(Event.END_DOCUMENT, treeReader.next());
+    }
+
+    @Test
+    public void testCorrupt() throws Exception {
+        // Negative name length.
+        this.assertCorrupt(0x01, 0x00, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F);
+        // Name length exceeding the document.
+        this.assertCorrupt(0x01, 0x00, 0xFF, 0xFF, 0xFF, 0xFF, 0x07);
+        this.assertCorrupt(0x01, 0x00, 0x05, 'a');
+        // Negative and too large parameter counts.
+        this.assertCorrupt(0x01, 0x00, 0x01, 'a', 0xFF, 0xFF, 0xFF, 0xFF, 0x0F);
+        this.assertCorrupt(0x01, 0x00, 0x01, 'a', 0xFF, 0xFF, 0xFF, 0xFF, 0x07);
+        // Negative string reference.
+        this.assertCorrupt(0x01, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F);
+    }
+
+    @Test(expected = EOFException.class)
+    public void testCorruptUnknownSize() throws Exception {
+        // Without the size, a huge length must fail at the end of the stream
+        // instead of allocating the complete string up front.
+        new BinaryXmlReader(new ByteArrayInputStream(this.document(0x01, 0x00, 0xFF, 0xFF, 0xFF, 0xFF, 0x07)))
+                .readDocument();
+    }
+
+    @Test(expected = BinaryFormatException.class)
+    public void testInvalidMagic() throws Exception {
+        new BinaryXmlReader(new ByteArrayInputStream("<?xml".getBytes("ASCII")));
+    }
+
+    private void assertCorrupt(final int... records) throws Exception {
+        final byte[] bytes = this.document(records);
+        try {
+            new BinaryXmlReader(new ByteArrayInputStream(bytes), bytes.length).readDocument();
+            Assert.fail("Corrupt document was read");
+        } catch (final BinaryFormatException expected) {
+            // Expected.
+        }
+    }
+
+    private byte[] document(final int... records) {
+        // Magic, format version, flags and no version, encoding and doctype.
+        final byte[] header = { 'M', 'M', 'P', 'B', 0x02, 0x00, 0x00, 0x00, 0x00 };
+        final byte[] bytes = Arrays.copyOf(header, header.length + records.length);
+        for (int i = 0; i < records.length; i++) {
+            bytes[header.length + i] = (byte) records[i];
+        }
+        return bytes;
+    }
+}
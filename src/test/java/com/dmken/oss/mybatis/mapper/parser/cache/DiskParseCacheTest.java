@@ -0,0 +1,159 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.cache;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.util.HashUtil;
+
+@SuppressWarnings("javadoc")
+public class DiskParseCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHit() throws Exception {
+        final Path source = this.copy("xml/simple.xml");
+        final Path directory = this.folder.getRoot().toPath().resolve("cache");
+
+        final XmlDocument expected = this.parse("xml/simple.xml");
+        Assert.assertEquals(expected, new DiskParseCache(directory).parse(source));
+
+        final Path entry = this.singleEntry(directory);
+        final long modified = Files.getLastModifiedTime(entry).toMillis();
+        Assert.assertEquals(expected, new DiskParseCache(directory).parse(source));
+        Assert.assertEquals(modified, Files.getLastModifiedTime(entry).toMillis());
+    }
+
+    @Test
+    public void testBrokenEntry() throws Exception {
+        final Path source = this.copy("xml/simple.xml");
+        final Path directory = this.folder.getRoot().toPath().resolve("cache");
+
+        final XmlDocument expected = this.parse("xml/simple.xml");
+        new DiskParseCache(directory).parse(source);
+
+        final Path entry = this.singleEntry(directory);
+        final byte[] bytes = Files.readAllBytes(entry);
+        Files.write(entry, java.util.Arrays.copyOf(bytes, bytes.length / 2));
+
+        Assert.assertEquals(expected, new DiskParseCache(directory).parse(source));
+        Assert.assertArrayEquals(bytes, Files.readAllBytes(entry));
+    }
+
+    @Test
+    public void testPrune() throws Exception {
+        final Path source = this.copy("xml/simple.xml");
+        final byte[] content = Files.readAllBytes(source);
+        final Path directory = this.folder.getRoot().toPath().resolve("cache");
+        // Every version of the file gets an entry of the same size.
+        new DiskParseCache(directory).parse(source);
+        final long entrySize = Files.size(this.singleEntry(directory));
+        Files.delete(this.singleEntry(directory));
+
+        final DiskParseCache cache = new DiskParseCache(directory, 2 * entrySize);
+        final long base = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+        final Path[] entries = new Path[6];
+        for (int i = 0; i < 5; i++) {
+            entries[i] = this.version(source, content, i, directory);
+            cache.parse(source);
+            Files.setLastModifiedTime(entries[i], FileTime.fromMillis(base + i * 1000));
+        }
+        Assert.assertEquals(new HashSet<>(Arrays.asList(entries[3], entries[4])), this.entries(directory));
+
+        // A hit refreshes an entry that was not used for a while, so the other
+        // entry is deleted when the next one is stored.
+        this.version(source, content, 3, directory);
+        cache.parse(source);
+        Assert.assertTrue(Files.getLastModifiedTime(entries[3]).toMillis() > base + 5000);
+        entries[5] = this.version(source, content, 5, directory);
+        cache.parse(source);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(entries[3], entries[5])), this.entries(directory));
+
+        // Existing entries are pruned when the cache is opened.
+        Files.setLastModifiedTime(entries[3], FileTime.fromMillis(base + 5000));
+        Files.setLastModifiedTime(entries[5], FileTime.fromMillis(base + 6000));
+        new DiskParseCache(directory, entrySize);
+        Assert.assertEquals(Collections.singleton(entries[5]), this.entries(directory));
+    }
+
+    private Path version(final Path source, final byte[] content, final int version, final Path directory)
+            throws Exception {
+        final byte[] bytes = Arrays.copyOf(content, content.length + 10);
+        System.arraycopy(("<!-- " + version + " -->").getBytes(StandardCharsets.US_ASCII), 0, bytes, content.length, 10);
+        Files.write(source, bytes);
+        return directory.resolve(HashUtil.toHexString(HashUtil.hash(bytes, 0, bytes.length)) + ".mpc");
+    }
+
+    private Set<Path> entries(final Path directory) throws Exception {
+        final Set<Path> entries = new HashSet<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+            for (final Path path : paths) {
+                entries.add(path);
+            }
+        }
+        return entries;
+    }
+
+    private Path copy(final String path) throws Exception {
+        final Path target = this.folder.newFile().toPath();
+        try (InputStream in = DiskParseCacheTest.class.getClassLoader().getResourceAsStream(path)) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return target;
+    }
+
+    private XmlDocument parse(final String path) throws Exception {
+        try (InputStream in = DiskParseCacheTest.class.getClassLoader().getResourceAsStream(path)) {
+            return XmlParser.parse(XmlScanner.scan(in));
+        }
+    }
+
+    private Path singleEntry(final Path directory) throws Exception {
+        Path entry = null;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (final Path path : entries) {
+                Assert.assertNull("More than one cache entry", entry);
+                entry = path;
+            }
+        }
+        Assert.assertNotNull("No cache entry", entry);
+        return entry;
+    }
+}
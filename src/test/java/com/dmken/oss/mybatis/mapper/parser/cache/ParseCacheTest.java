@@ -0,0 +1,186 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.exception.ParserException;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+import com.dmken.oss.mybatis.mapper.parser.util.MemoryUtil;
+
+@SuppressWarnings("javadoc")
+public class ParseCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        final byte[] content = this.read("xml/simple.xml");
+        final ParseCache cache = new ParseCache(1024 * 1024);
+
+        final XmlDocument first = cache.parse(content);
+        final XmlDocument second = cache.parse(content.clone());
+        Assert.assertSame(first, second);
+
+        final ParseCacheStatistics statistics = cache.getStatistics();
+        Assert.assertEquals(1, statistics.getHitCount());
+        Assert.assertEquals(1, statistics.getMissCount());
+        Assert.assertEquals(1, statistics.getEntryCount());
+        Assert.assertTrue(statistics.getRetainedBytes() > 0);
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        final ParseCache cache = new ParseCache(1000, 1);
+        final XmlDocument document = new XmlDocument(null, null, null, new XmlTag("root", new HashMap<>(), new ArrayList<>()));
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertSame(document, cache.get(i, () -> document));
+        }
+
+        final ParseCacheStatistics statistics = cache.getStatistics();
+        Assert.assertTrue(statistics.getRetainedBytes() <= 1000);
+        Assert.assertEquals(100 - statistics.getEntryCount(), statistics.getEvictionCount());
+
+        // The most recently used entry is still cached.
+        Assert.assertSame(document, cache.get(99, () -> null));
+    }
+
+    @Test
+    public void testSharedLimit() throws Exception {
+        final XmlDocument document = new XmlDocument(null, null, null, new XmlTag("root", new HashMap<>(), new ArrayList<>()));
+        final long weight = MemoryUtil.estimateRetainedSize(document);
+        // Every segment is entitled to less than a single document.
+        final ParseCache cache = new ParseCache(3 * weight, 4);
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertSame(document, cache.get(i, () -> document));
+        }
+        final ParseCacheStatistics statistics = cache.getStatistics();
+        Assert.assertEquals(3, statistics.getEntryCount());
+        Assert.assertEquals(3 * weight, statistics.getRetainedBytes());
+        Assert.assertEquals(7, statistics.getEvictionCount());
+        // The most recently used entries are still cached, even though they
+        // are in different segments.
+        for (int i = 7; i < 10; i++) {
+            Assert.assertSame(document, cache.get(i, () -> null));
+        }
+
+        // Documents larger than the complete limit are not cached.
+        final ParseCache small = new ParseCache(weight - 1, 1);
+        Assert.assertSame(document, small.get("key", () -> document));
+        Assert.assertEquals(0, small.getStatistics().getEntryCount());
+        Assert.assertEquals(0, small.getStatistics().getRetainedBytes());
+    }
+
+    @Test
+    public void testChangedFile() throws Exception {
+        final ParseCache cache = new ParseCache(1024 * 1024);
+        final Path file = this.folder.newFile("mapper.xml").toPath();
+        Files.write(file, "<mapper><select/></mapper>".getBytes(StandardCharsets.US_ASCII));
+        final XmlDocument first = cache.parse(file);
+        Assert.assertSame(first, cache.parse(file));
+
+        Files.write(file, "<mapper><insert/></mapper>".getBytes(StandardCharsets.US_ASCII));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 10000));
+        final XmlDocument second = cache.parse(file);
+        Assert.assertNotEquals(first, second);
+        Assert.assertSame(second, cache.parse(file));
+
+        // The previous version is gone.
+        final ParseCacheStatistics statistics = cache.getStatistics();
+        Assert.assertEquals(1, statistics.getEntryCount());
+        Assert.assertEquals(MemoryUtil.estimateRetainedSize(second), statistics.getRetainedBytes());
+        Assert.assertEquals(0, statistics.getEvictionCount());
+    }
+
+    @Test
+    public void testSingleLoad() throws Exception {
+        final ParseCache cache = new ParseCache(1024 * 1024);
+        final XmlDocument document = new XmlDocument(null, null, null, new XmlTag("root", new HashMap<>(), new ArrayList<>()));
+        final AtomicInteger loads = new AtomicInteger();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<XmlDocument>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> cache.get("key", () -> {
+                    loads.incrementAndGet();
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                    return document;
+                })));
+            }
+            for (final Future<XmlDocument> future : futures) {
+                Assert.assertSame(document, future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(7, cache.getStatistics().getHitCount());
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() throws Exception {
+        final ParseCache cache = new ParseCache(1024 * 1024);
+        try {
+            cache.get("key", () -> {
+                throw new ParserException("Broken!");
+            });
+            Assert.fail("Expected exception");
+        } catch (final ParserException expected) {
+            // Expected.
+        }
+        Assert.assertEquals(0, cache.getStatistics().getEntryCount());
+        Assert.assertEquals(1, cache.getStatistics().getLoadFailureCount());
+    }
+
+    private byte[] read(final String path) throws Exception {
+        try (InputStream in = ParseCacheTest.class.getClassLoader().getResourceAsStream(path)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.diff;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.SelfClosingXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.SimpleXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+
+@SuppressWarnings("javadoc")
+public class XmlDiffTest {
+    private static final String MAPPER = "<mapper namespace=\"users\">" //
+            + "<sql id=\"columns\">id, name</sql>" //
+            + "<select id=\"findAll\">SELECT <include refid=\"columns\" /> FROM users</select>" //
+            + "<select id=\"findById\">SELECT * FROM users WHERE id = #{id}</select>" //
+            + "<delete id=\"deleteAll\">DELETE FROM users</delete>" //
+            + "</mapper>";
+
+    @Test
+    public void testIdentical() throws Exception {
+        final XmlDocument oldDocument = this.parse(XmlDiffTest.MAPPER);
+        final XmlDocument newDocument = this.parse(XmlDiffTest.MAPPER);
+        Assert.assertNotSame(oldDocument.getRootTag(), newDocument.getRootTag());
+        Assert.assertEquals(oldDocument.getRootTag().getSubtreeHash(), newDocument.getRootTag().getSubtreeHash());
+        Assert.assertEquals(oldDocument, newDocument);
+        Assert.assertTrue(XmlDiff.diff(oldDocument, newDocument).isEmpty());
+    }
+
+    @Test
+    public void testParameterOrder() throws Exception {
+        final Map<String, String> oldParameters = new LinkedHashMap<>();
+        oldParameters.put("x", "1");
+        oldParameters.put("y", "2");
+        final Map<String, String> newParameters = new LinkedHashMap<>();
+        newParameters.put("y", "2");
+        newParameters.put("x", "1");
+        final SelfClosingXmlTag oldTag = new SelfClosingXmlTag("a", oldParameters);
+        final SelfClosingXmlTag newTag = new SelfClosingXmlTag("a", newParameters);
+        Assert.assertEquals(oldTag.getSubtreeHash(), newTag.getSubtreeHash());
+        Assert.assertEquals(oldTag, newTag);
+
+        newParameters.clear();
+        newParameters.put("x", "2");
+        newParameters.put("y", "1");
+        Assert.assertNotEquals(oldTag.getSubtreeHash(), new SelfClosingXmlTag("a", newParameters).getSubtreeHash());
+    }
+
+    @Test
+    public void testDefensiveCopies() throws Exception {
+        final Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("id", "a");
+        final List<AbstractXmlValue> children = new ArrayList<>();
+        children.add(new SimpleXmlValue("SELECT 1"));
+        final XmlTag tag = new XmlTag("select", parameters, children);
+        final XmlTag same = new XmlTag("select", parameters, children);
+
+        parameters.put("id", "b");
+        children.clear();
+        Assert.assertEquals("a", tag.getParameters().get("id"));
+        Assert.assertEquals(1, tag.getChildren().size());
+        Assert.assertEquals(same, tag);
+        Assert.assertNotEquals(new XmlTag("select", parameters, children), tag);
+
+        try {
+            tag.getChildren().clear();
+            Assert.fail("Children are modifiable");
+        } catch (final UnsupportedOperationException expected) {
+            // Expected.
+        }
+        try {
+            tag.getParameters().clear();
+            Assert.fail("Parameters are modifiable");
+        } catch (final UnsupportedOperationException expected) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testEdits() throws Exception {
+        final XmlDocument oldDocument = this.parse(XmlDiffTest.MAPPER);
+        final XmlDocument newDocument = this.parse(XmlDiffTest.MAPPER //
+                .replace("<sql id=\"columns\">id, name</sql>", "") //
+                .replace("WHERE id = #{id}", "WHERE name = #{name}") //
+                .replace("<delete id=\"deleteAll\">", "<update id=\"rename\">UPDATE users</update><delete id=\"deleteAll\" timeout=\"5\">"));
+        Assert.assertNotEquals(oldDocument, newDocument);
+
+        final List<XmlEdit> edits = XmlDiff.diff(oldDocument, newDocument);
+        Assert.assertEquals(4, edits.size());
+        this.check(edits.get(0), XmlEdit.Type.DELETE, "/mapper/sql[1]");
+        this.check(edits.get(1), XmlEdit.Type.UPDATE, "/mapper/select[2]/text()[1]");
+        Assert.assertEquals("SELECT * FROM users WHERE name = #{name}", edits.get(1).getNewValue().toString());
+        this.check(edits.get(2), XmlEdit.Type.INSERT, "/mapper/update[1]");
+        this.check(edits.get(3), XmlEdit.Type.UPDATE, "/mapper/delete[1]");
+    }
+
+    @Test
+    public void testMovedElement() throws Exception {
+        final XmlDocument oldDocument = this.parse("<a><b>1</b><c>2</c><d>3</d></a>");
+        final XmlDocument newDocument = this.parse("<a><c>2</c><d>3</d><b>1</b></a>");
+
+        final List<XmlEdit> edits = XmlDiff.diff(oldDocument, newDocument);
+        Assert.assertEquals(2, edits.size());
+        this.check(edits.get(0), XmlEdit.Type.DELETE, "/a/b[1]");
+        this.check(edits.get(1), XmlEdit.Type.INSERT, "/a/b[1]");
+    }
+
+    private void check(final XmlEdit edit, final XmlEdit.Type type, final String path) {
+        Assert.assertEquals(type, edit.getType());
+        Assert.assertEquals(path, edit.getPath());
+    }
+
+    private XmlDocument parse(final String xml) throws Exception {
+        return XmlParser.parse(XmlScanner.scan(new ByteArrayInputStream(xml.getBytes(StandardCharsets.US_ASCII))));
+    }
+}
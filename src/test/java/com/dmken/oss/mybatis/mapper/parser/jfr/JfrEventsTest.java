@@ -0,0 +1,117 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.jfr;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.dmken.oss.mybatis.mapper.parser.metrics.ParseListener;
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.parser.exception.ParserException;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+@SuppressWarnings("javadoc")
+public class JfrEventsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEvents() throws Exception {
+        final Path valid = this.folder.newFile("valid.xml").toPath();
+        Files.write(valid, "<mapper><select id='a'>SELECT 1</select></mapper>".getBytes(StandardCharsets.US_ASCII));
+        final Path invalid = this.folder.newFile("invalid.xml").toPath();
+        Files.write(invalid, "<mapper><select></mapper>".getBytes(StandardCharsets.US_ASCII));
+
+        final Path dump = this.folder.getRoot().toPath().resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(MapperScanEvent.NAME).withThreshold(Duration.ZERO);
+            recording.enable(MapperParseEvent.NAME).withThreshold(Duration.ZERO);
+            recording.enable(MapperParseErrorEvent.NAME);
+            recording.start();
+            Assert.assertNotSame(ParseListener.NOOP, JfrEvents.listener(valid));
+            this.parse(valid);
+            try {
+                this.parse(invalid);
+                Assert.fail();
+            } catch (final ParserException expected) {
+                // Expected.
+            }
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        final List<RecordedEvent> events = RecordingFile.readAllEvents(dump).stream()
+                .filter(event -> event.getEventType().getName().startsWith("com.dmken.oss.mybatis."))
+                .collect(Collectors.toList());
+        final List<String> names = events.stream()
+                .map(event -> event.getEventType().getName() + ' ' + event.getString("path"))
+                .collect(Collectors.toList());
+        Assert.assertTrue(names.toString(), names.contains(MapperScanEvent.NAME + ' ' + valid));
+        Assert.assertTrue(names.toString(), names.contains(MapperParseEvent.NAME + ' ' + valid));
+        Assert.assertTrue(names.toString(), names.contains(MapperParseErrorEvent.NAME + ' ' + invalid));
+        Assert.assertFalse(names.toString(), names.contains(MapperParseEvent.NAME + ' ' + invalid));
+
+        for (final RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(MapperParseEvent.NAME)) {
+                Assert.assertEquals(Files.size(valid), event.getLong("size"));
+                Assert.assertEquals(18, event.getLong("tokenCount"));
+                Assert.assertEquals(2, event.getLong("tagCount"));
+            } else if (event.getEventType().getName().equals(MapperParseErrorEvent.NAME)) {
+                Assert.assertEquals("parse", event.getString("phase"));
+                Assert.assertNotNull(event.getString("message"));
+            }
+        }
+    }
+
+    @Test
+    public void testNotRecording() throws Exception {
+        final Path file = this.folder.getRoot().toPath().resolve("mapper.xml");
+        Assert.assertSame(ParseListener.NOOP, JfrEvents.listener(file));
+
+        try (Recording recording = new Recording()) {
+            recording.disable(MapperScanEvent.NAME);
+            recording.disable(MapperParseEvent.NAME);
+            recording.disable(MapperParseErrorEvent.NAME);
+            recording.start();
+            Assert.assertSame(ParseListener.NOOP, JfrEvents.listener(file));
+            recording.stop();
+        }
+        Assert.assertSame(ParseListener.NOOP, JfrEvents.listener(file));
+    }
+
+    private void parse(final Path file) throws Exception {
+        try (InputStream in = Files.newInputStream(file)) {
+            XmlParser.parse(in, JfrEvents.listener(file));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.loader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.dmken.oss.mybatis.mapper.parser.benchmark.MapperCorpus;
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+
+@SuppressWarnings("javadoc")
+public class MapperLoaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLoad() throws Exception {
+        final byte[] user = MapperCorpus.generate(1, 10);
+        final byte[] order = MapperCorpus.generate(2, 10);
+        // Larger than the initial size of the pooled buffers.
+        final byte[] large = MapperCorpus.generate(3, 2000);
+        final byte[] broken = "<mapper>&bogus;</mapper>".getBytes(StandardCharsets.US_ASCII);
+
+        final Path classes = this.folder.newFolder("classes").toPath();
+        Files.createDirectories(classes.resolve("com/example"));
+        Files.write(classes.resolve("com/example/UserMapper.xml"), user);
+        Files.write(classes.resolve("com/example/BrokenMapper.xml"), broken);
+        Files.write(classes.resolve("com/example/other.xml"), user);
+
+        final Path jar = this.folder.getRoot().toPath().resolve("mappers.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("com/example/"));
+            // Shadowed by the directory.
+            this.write(out, "com/example/UserMapper.xml", order, false);
+            this.write(out, "com/example/OrderMapper.xml", order, true);
+            this.write(out, "LargeMapper.xml", large, false);
+        }
+        // Not an archive at all, so it is ignored.
+        final Path text = this.folder.newFile("notes.txt").toPath();
+        Files.write(text, user);
+        final Path corrupt = this.folder.newFile("corrupt.jar").toPath();
+        Files.write(corrupt, new byte[] { 'P', 'K', 3, 4, 0, 0 });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final MapperLoader loader = new MapperLoader(executor);
+            final MapperLoadResult result = loader
+                    .load(Arrays.asList(classes, text, jar, this.folder.getRoot().toPath().resolve("missing.jar")));
+            Assert.assertEquals(Arrays.asList("com/example/UserMapper.xml", "com/example/OrderMapper.xml", "LargeMapper.xml"),
+                    Arrays.asList(result.getDocuments().keySet().toArray()));
+            Assert.assertEquals(this.parse(user), result.getDocuments().get("com/example/UserMapper.xml"));
+            Assert.assertEquals(this.parse(order), result.getDocuments().get("com/example/OrderMapper.xml"));
+            Assert.assertEquals(this.parse(large), result.getDocuments().get("LargeMapper.xml"));
+            Assert.assertEquals(1, result.getFailures().size());
+            Assert.assertTrue(result.getFailures().get("com/example/BrokenMapper.xml") instanceof ScannerException);
+
+            try {
+                loader.load(Arrays.asList(classes, corrupt));
+                Assert.fail();
+            } catch (final IOException expected) {
+                // Expected.
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBufferPool() throws Exception {
+        final BufferPool pool = new BufferPool(1);
+        final int[] length = new int[1];
+        final byte[] small = pool.read(new ByteArrayInputStream(new byte[10]), -1, length);
+        Assert.assertEquals(10, length[0]);
+        pool.release(small);
+        Assert.assertSame(small, pool.read(new ByteArrayInputStream(new byte[10]), 10, length));
+
+        // Buffers grown for large mappers are not kept.
+        final byte[] large = pool.read(new ByteArrayInputStream(new byte[4 * 1024 * 1024]), -1, length);
+        Assert.assertEquals(4 * 1024 * 1024, length[0]);
+        pool.release(large);
+        Assert.assertNotSame(large, pool.read(new ByteArrayInputStream(new byte[10]), -1, length));
+    }
+
+    private void write(final ZipOutputStream out, final String name, final byte[] bytes, final boolean stored)
+            throws IOException {
+        final ZipEntry entry = new ZipEntry(name);
+        if (stored) {
+            final CRC32 crc = new CRC32();
+            crc.update(bytes);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(bytes.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    private XmlDocument parse(final byte[] bytes) throws Exception {
+        return XmlParser.parse(XmlScanner.scan(new ByteArrayInputStream(bytes)));
+    }
+}
@@ -0,0 +1,179 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.lossless;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.SimpleXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+import com.dmken.oss.mybatis.mapper.parser.writer.XmlWriter;
+
+@SuppressWarnings("javadoc")
+public class LosslessDocumentTest {
+    private static final String MAPPER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n" //
+            + "<!-- Users. -->\n" //
+            + "<mapper namespace='users'>\n" //
+            + "    <!-- Finds all users. -->\n" //
+            + "    <select id=\"findAll\" >\n" //
+            + "        SELECT * FROM users WHERE age &gt; 18\n" //
+            + "    </select>\n" //
+            + "    <select id='findById'>SELECT * FROM users WHERE id = #{id}</select>\n" //
+            + "    <delete id=\"delete\"/>\n" //
+            + "</mapper>\n" //
+            + "<!-- End. -->\n";
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final byte[] expected;
+        try (InputStream in = LosslessDocumentTest.class.getResourceAsStream("/xml/simple.xml")) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            expected = out.toByteArray();
+        }
+        final LosslessDocument document = LosslessDocument.parse(new ByteArrayInputStream(expected));
+        Assert.assertEquals(document.getSource().length(), document.getRootEndOffset() + "\n".length());
+
+        final StringWriter out = new StringWriter();
+        new XmlWriter(out).write(document);
+        Assert.assertArrayEquals(expected, out.toString().getBytes(StandardCharsets.US_ASCII));
+
+        final StringWriter copy = new StringWriter();
+        new XmlWriter(copy).write(document.getDocument(), document);
+        Assert.assertEquals(document.getSource(), copy.toString());
+    }
+
+    @Test
+    public void testModified() throws Exception {
+        final LosslessDocument original = this.parse(LosslessDocumentTest.MAPPER);
+        final XmlTag root = original.getDocument().getRootTag();
+        final List<AbstractXmlValue> children = new ArrayList<>(root.getChildren());
+        final XmlTag findById = (XmlTag) children.get(1);
+        children.set(1, new XmlTag(findById.getName(), findById.getParameters(),
+                Arrays.<AbstractXmlValue> asList(new SimpleXmlValue("SELECT * FROM users WHERE id < #{id}"))));
+        final XmlDocument modified = new XmlDocument(original.getDocument().getVersion(),
+                original.getDocument().getEncoding(), original.getDocument().getDoctype(),
+                new XmlTag(root.getName(), root.getParameters(), children));
+
+        final StringWriter out = new StringWriter();
+        new XmlWriter(out).write(modified, original);
+        Assert.assertEquals(LosslessDocumentTest.MAPPER.replace("id = #{id}", "id &lt; #{id}"), out.toString());
+
+        // The same document parsed again is written in the original layout, too.
+        final StringWriter reparsed = new StringWriter();
+        new XmlWriter(reparsed).write(this.parse(LosslessDocumentTest.MAPPER).getDocument(), original);
+        Assert.assertEquals(LosslessDocumentTest.MAPPER, reparsed.toString());
+    }
+
+    @Test
+    public void testSyntaxTree() throws Exception {
+        final LosslessDocument document = this.parse(LosslessDocumentTest.MAPPER);
+        final String source = document.getSource();
+        final SyntaxNode root = document.getRoot();
+        Assert.assertTrue(source.startsWith("<mapper", document.getRootOffset()));
+        Assert.assertTrue(source.startsWith("</mapper>", document.getRootEndOffset() - root.getEndTagWidth()));
+
+        int offset = document.getRootOffset() + root.getHeaderWidth();
+        final String[] expected = { "<select id=\"findAll\" >", "<select id='findById'>", "<delete id=\"delete\"/>" };
+        for (int i = 0; i < root.getChildren().length; i++) {
+            final SyntaxNode child = root.getChildren()[i];
+            offset += child.getLeadingTrivia();
+            Assert.assertTrue(source.startsWith(expected[i], offset));
+            offset += child.getWidth();
+        }
+        Assert.assertEquals("\n", source.substring(offset, offset + root.getTrailingTrivia()));
+    }
+
+    @Test
+    public void testEdit() throws Exception {
+        final LosslessDocument original = this.parse(LosslessDocumentTest.MAPPER);
+        final List<AbstractXmlValue> oldChildren = original.getDocument().getRootTag().getChildren();
+
+        // Edit within the content of the second statement.
+        final int offset = LosslessDocumentTest.MAPPER.indexOf("id = #{id}");
+        final LosslessDocument edited = original.edit(offset + 3, 1, "!=");
+        final String expected = LosslessDocumentTest.MAPPER.replace("id = #{id}", "id != #{id}");
+        this.assertEdited(expected, edited);
+        final List<AbstractXmlValue> newChildren = edited.getDocument().getRootTag().getChildren();
+        Assert.assertSame(oldChildren.get(0), newChildren.get(0));
+        Assert.assertNotSame(oldChildren.get(1), newChildren.get(1));
+        Assert.assertSame(oldChildren.get(2), newChildren.get(2));
+        Assert.assertSame(original.getRoot().getChildren()[0], edited.getRoot().getChildren()[0]);
+
+        // Edits that introduce new elements or damage the root tag.
+        this.assertEdited(expected.replace("!=", "<if test='x'>y</if>"),
+                edited.edit(offset + 3, 2, "<if test='x'>y</if>"));
+        final int split = expected.indexOf("</select>\n    <select id='findById'>");
+        this.assertEdited(expected.substring(0, split) + "</select><select>" + expected.substring(split),
+                edited.edit(split, 0, "</select><select>"));
+        final int namespace = expected.indexOf("users'>");
+        this.assertEdited(expected.replace("'users'", "'people'"), edited.edit(namespace, 5, "people"));
+        this.assertEdited(expected.replace("<!-- End. -->", ""), edited.edit(expected.indexOf("<!-- End. -->"), 13, ""));
+
+        // Invalid edits are reported just like in a full parse.
+        try {
+            edited.edit(offset + 3, 2, "<if>");
+            Assert.fail();
+        } catch (final Exception expectedException) {
+            // Expected.
+        }
+    }
+
+    private void assertEdited(final String expected, final LosslessDocument edited) throws Exception {
+        Assert.assertEquals(expected, edited.getSource());
+        final LosslessDocument reparsed = this.parse(expected);
+        Assert.assertEquals(reparsed.getDocument(), edited.getDocument());
+        this.assertSameSyntax(reparsed.getRoot(), edited.getRoot());
+
+        final StringWriter out = new StringWriter();
+        new XmlWriter(out).write(edited.getDocument(), edited);
+        Assert.assertEquals(expected, out.toString());
+    }
+
+    private void assertSameSyntax(final SyntaxNode expected, final SyntaxNode actual) {
+        Assert.assertEquals(expected.getLeadingTrivia(), actual.getLeadingTrivia());
+        Assert.assertEquals(expected.getWidth(), actual.getWidth());
+        Assert.assertEquals(expected.getHeaderWidth(), actual.getHeaderWidth());
+        Assert.assertEquals(expected.getTrailingTrivia(), actual.getTrailingTrivia());
+        Assert.assertEquals(expected.getChildren().length, actual.getChildren().length);
+        for (int i = 0; i < expected.getChildren().length; i++) {
+            this.assertSameSyntax(expected.getChildren()[i], actual.getChildren()[i]);
+        }
+    }
+
+    private LosslessDocument parse(final String xml) throws Exception {
+        return LosslessDocument.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
@@ -0,0 +1,80 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.parser.exception.ParserException;
+import com.dmken.oss.mybatis.mapper.parser.scanner.Token.TokenType;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+
+@SuppressWarnings("javadoc")
+public class ParseMetricsTest {
+    @Test
+    public void testSnapshot() throws Exception {
+        final ParseMetrics metrics = new ParseMetrics();
+        try (InputStream in = ParseMetricsTest.class.getResourceAsStream("/xml/simple.xml")) {
+            final XmlScanner scanner = new XmlScanner(in);
+            scanner.setParseListener(metrics);
+            final XmlParser parser = new XmlParser(scanner.scan());
+            parser.setParseListener(metrics);
+            parser.parse();
+        }
+
+        final ParseMetricsSnapshot snapshot = metrics.snapshot();
+        Assert.assertEquals(1, snapshot.getScanCount());
+        Assert.assertEquals(1, snapshot.getParseCount());
+        Assert.assertEquals(0, snapshot.getScanFailureCount() + snapshot.getParseFailureCount());
+        Assert.assertEquals(snapshot.getBytesRead(), snapshot.getCharsDecoded());
+        Assert.assertTrue(snapshot.getBytesRead() > 300);
+        Assert.assertEquals(2, snapshot.getCommentsSkipped());
+        Assert.assertEquals(5, snapshot.getEntityDecodes());
+        Assert.assertEquals(9, snapshot.getTagCount());
+        Assert.assertEquals(4, snapshot.getMaxDepth());
+        Assert.assertEquals(4, (long) snapshot.getTokenCounts().get(TokenType.CONTENT));
+        Assert.assertEquals(1, (long) snapshot.getTokenCounts().get(TokenType.DOCTYPE));
+        Assert.assertTrue(snapshot.getScanNanos() > 0);
+        Assert.assertTrue(snapshot.getParseNanos() > 0);
+        Assert.assertTrue(snapshot.getTreeBuildNanos() > 0);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        final ParseMetrics metrics = new ParseMetrics();
+        final XmlScanner scanner = new XmlScanner(new ByteArrayInputStream("<a></b>".getBytes(StandardCharsets.US_ASCII)));
+        scanner.setParseListener(metrics);
+        final XmlParser parser = new XmlParser(scanner.scan());
+        parser.setParseListener(metrics);
+        try {
+            parser.parse();
+            Assert.fail();
+        } catch (final ParserException expected) {
+            // Expected.
+        }
+        Assert.assertEquals(1, metrics.snapshot().getParseFailureCount());
+        Assert.assertEquals(7, metrics.snapshot().getTokenCount());
+    }
+}
@@ -19,20 +19,41 @@
  */
 package com.dmken.oss.mybatis.mapper.parser.parser;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import com.dmken.oss.mybatis.mapper.parser.benchmark.MapperCorpus;
+import com.dmken.oss.mybatis.mapper.parser.binary.BinaryXmlReader;
+import com.dmken.oss.mybatis.mapper.parser.binary.BinaryXmlWriter;
 import com.dmken.oss.mybatis.mapper.parser.parser.exception.ParserException;
+import com.dmken.oss.mybatis.mapper.parser.scanner.ParserLimits;
 import com.dmken.oss.mybatis.mapper.parser.scanner.Token;
 import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
 import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScannerTest;
+import com.dmken.oss.mybatis.mapper.parser.scanner.exception.LimitExceededException;
 import com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
 import com.dmken.oss.mybatis.mapper.parser.tree.SelfClosingXmlTag;
 import com.dmken.oss.mybatis.mapper.parser.tree.SimpleXmlValue;
 import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
@@ -41,6 +62,9 @@ import com.dmken.oss.mybatis.mapper.parser.tree.XmlVersion;
 
 @SuppressWarnings("javadoc")
 public class XmlParserTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void test() throws Exception {
         final Map<String, String> childMap = new HashMap<>();
@@ -65,6 +89,206 @@ public class XmlParserTest {
         this.check("xml/simple.xml", doc);
     }
 
+    @Test
+    public void testRecovering() throws Exception {
+        final String xml = "<mapper namespace='a'>\n" //
+                + "  <select id='a' x>SELECT 1</select>\n" //
+                + "  <update id='b'>UPDATE t</delete>\n" //
+                + "  <insert id='c'>INSERT<if test='x'>y</insert>\n" //
+                + "  <delete id='d'/>\n" //
+                + "</mapper>\n";
+        final ParseResult result = XmlParser.parseRecovering(this.scan(xml), 10);
+        Assert.assertFalse(result.isSuccessful());
+        Assert.assertEquals(3, result.getDiagnostics().size());
+        Assert.assertEquals(2, result.getDiagnostics().get(0).getLine());
+        Assert.assertTrue(result.getDiagnostics().get(1).getMessage().contains("</delete>"));
+        Assert.assertTrue(result.getDiagnostics().get(2).getMessage().contains("</if>"));
+        Assert.assertTrue(result.getDiagnostics().get(2).toString().startsWith("[4,"));
+
+        final XmlTag root = result.getDocument().getRootTag();
+        Assert.assertEquals(4, root.getChildren().size());
+        Assert.assertEquals(new XmlTag("select", this.map("id", "a"), Arrays.asList(new SimpleXmlValue("SELECT 1"))),
+                root.getChildren().get(0));
+        Assert.assertEquals(new XmlTag("update", this.map("id", "b"), Arrays.asList(new SimpleXmlValue("UPDATE t"))),
+                root.getChildren().get(1));
+        Assert.assertEquals(new XmlTag("insert", this.map("id", "c"), Arrays.asList(new SimpleXmlValue("INSERT"), //
+                new XmlTag("if", this.map("test", "x"), Arrays.asList(new SimpleXmlValue("y"))))),
+                root.getChildren().get(2));
+        Assert.assertEquals(new SelfClosingXmlTag("delete", this.map("id", "d")), root.getChildren().get(3));
+
+        // The number of diagnostics is bounded.
+        final ParseResult bounded = XmlParser.parseRecovering(this.scan(xml), 1);
+        Assert.assertEquals(1, bounded.getDiagnostics().size());
+        Assert.assertEquals(2, bounded.getDroppedDiagnosticCount());
+        Assert.assertEquals(result.getDocument(), bounded.getDocument());
+
+        // Missing end tags are closed at the end of the token stream.
+        final ParseResult truncated = XmlParser.parseRecovering(this.scan("<mapper><select>SELECT 1</select>"), 10);
+        Assert.assertEquals(1, truncated.getDiagnostics().size());
+        Assert.assertEquals(new XmlTag("mapper", new HashMap<>(), Arrays.asList( //
+                new XmlTag("select", new HashMap<>(), Arrays.asList(new SimpleXmlValue("SELECT 1"))))),
+                truncated.getDocument().getRootTag());
+
+        // Valid documents are parsed just like in strict mode.
+        final ParseResult valid = XmlParser.parseRecovering(
+                XmlScanner.scan(XmlScannerTest.class.getClassLoader().getResourceAsStream("xml/simple.xml")), 10);
+        Assert.assertTrue(valid.isSuccessful());
+        Assert.assertEquals(XmlParser.parse(XmlScanner.scan(XmlScannerTest.class.getClassLoader().getResourceAsStream("xml/simple.xml"))),
+                valid.getDocument());
+    }
+
+    @Test
+    public void testParameterOrder() throws Exception {
+        final List<String> order = Arrays.asList("id", "resultType", "parameterType", "fetchSize", "timeout");
+        final XmlDocument doc = XmlParser.parse(this.scan(
+                "<mapper><select id=\"a\" resultType=\"b\" parameterType=\"c\" fetchSize=\"d\" timeout=\"e\">SELECT 1</select></mapper>"));
+        Assert.assertEquals(order, new ArrayList<>(((XmlTag) doc.getRootTag().getChildren().get(0)).getParameters().keySet()));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryXmlWriter(out).write(doc);
+        final XmlDocument decoded = new BinaryXmlReader(new ByteArrayInputStream(out.toByteArray())).readDocument();
+        Assert.assertEquals(order, new ArrayList<>(((XmlTag) decoded.getRootTag().getChildren().get(0)).getParameters().keySet()));
+    }
+
+    @Test
+    public void testPipelined() throws Exception {
+        final byte[] mapper = MapperCorpus.generate(3, 3000);
+        Assert.assertEquals(XmlParser.parse(XmlScanner.scan(new ByteArrayInputStream(mapper))),
+                XmlParser.parsePipelined(new ByteArrayInputStream(mapper)));
+
+        try {
+            XmlParser.parsePipelined(new ByteArrayInputStream("<mapper>&bogus;</mapper>".getBytes(StandardCharsets.US_ASCII)));
+            Assert.fail();
+        } catch (final ScannerException expected) {
+            // Expected.
+        }
+
+        // The scanner is cancelled if the parser fails early.
+        final String broken = new String(mapper, StandardCharsets.US_ASCII).replaceFirst("</select>", "</other>");
+        final Thread[] scannerThread = new Thread[1];
+        try {
+            XmlParser.parsePipelined(new ByteArrayInputStream(broken.getBytes(StandardCharsets.US_ASCII)), task -> {
+                scannerThread[0] = new Thread(task);
+                scannerThread[0].start();
+            });
+            Assert.fail();
+        } catch (final ParserException expected) {
+            // Expected.
+        }
+        scannerThread[0].join(10_000);
+        Assert.assertFalse(scannerThread[0].isAlive());
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        final byte[] mapper = MapperCorpus.generate(5, 3000);
+        final Path file = this.folder.newFile("Mapper.xml").toPath();
+        Files.write(file, mapper);
+        final Path broken = this.folder.newFile("BrokenMapper.xml").toPath();
+        Files.write(broken, "<mapper>&bogus;</mapper>".getBytes(StandardCharsets.US_ASCII));
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Assert.assertEquals(XmlParser.parse(XmlScanner.scan(new ByteArrayInputStream(mapper))),
+                    XmlParser.parseAsync(file, executor).get());
+
+            try {
+                XmlParser.parseAsync(broken, executor).get();
+                Assert.fail();
+            } catch (final ExecutionException expected) {
+                Assert.assertTrue(expected.getCause() instanceof ScannerException);
+            }
+            try {
+                XmlParser.parseAsync(file.resolveSibling("MissingMapper.xml"), executor).get();
+                Assert.fail();
+            } catch (final ExecutionException expected) {
+                Assert.assertTrue(expected.getCause() instanceof NoSuchFileException);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPush() throws Exception {
+        final String xml = new String(MapperCorpus.generate(7, 200), StandardCharsets.US_ASCII)
+                .replace("<mapper", "<!-- mapper &amp; -->\n<mapper").replace("</select>", "&lt;&gt;<!-- x --></select>");
+        final byte[] mapper = xml.getBytes(StandardCharsets.US_ASCII);
+        final XmlDocument expected = XmlParser.parse(XmlScanner.scan(new ByteArrayInputStream(mapper)));
+
+        final Random random = new Random(42);
+        for (final int chunkSize : new int[] { 1, 7, 4096, -1 }) {
+            final List<AbstractXmlValue> children = new ArrayList<>();
+            final XmlPushParser parser = new XmlPushParser(children::add);
+            for (int offset = 0; offset < mapper.length;) {
+                // A negative chunk size stands for random chunk sizes.
+                final int length = Math.min(mapper.length - offset, chunkSize < 0 ? random.nextInt(100) : chunkSize);
+                parser.feed(mapper, offset, length);
+                offset += length;
+                if (offset >= mapper.length / 2 && offset - length < mapper.length / 2) {
+                    // The children are emitted as soon as they are complete.
+                    Assert.assertFalse(children.isEmpty());
+                }
+            }
+            Assert.assertEquals(expected, parser.endOfInput());
+            Assert.assertEquals(expected.getRootTag().getChildren(), children);
+        }
+
+        // Errors are reported as soon as the erroneous child is complete.
+        final byte[] broken = xml.replaceFirst("</select>", "</other>").getBytes(StandardCharsets.US_ASCII);
+        final XmlPushParser parser = new XmlPushParser();
+        try {
+            parser.feed(broken, 0, broken.length / 2);
+            Assert.fail();
+        } catch (final ParserException expectedFailure) {
+            // Expected.
+        }
+
+        for (final String incomplete : new String[] { "<mapper><select>a</select>", "<mapper/>", "<mapper>a</other>" }) {
+            final XmlPushParser incompleteParser = new XmlPushParser();
+            incompleteParser.feed(incomplete.getBytes(StandardCharsets.US_ASCII), 0, incomplete.length());
+            try {
+                incompleteParser.endOfInput();
+                Assert.fail(incomplete);
+            } catch (final ParserException expectedFailure) {
+                // Expected.
+            }
+        }
+
+        // The limits are enforced while feeding, by default as well.
+        final XmlPushParser limitedParser = new XmlPushParser(child -> {
+            // Nothing to do.
+        }, ParserLimits.UNLIMITED.withMaxDepth(2));
+        try {
+            limitedParser.feed(ByteBuffer.wrap("<mapper><a><b>".getBytes(StandardCharsets.US_ASCII)));
+            Assert.fail();
+        } catch (final LimitExceededException expectedFailure) {
+            Assert.assertEquals("maxDepth", expectedFailure.getLimit());
+        }
+        final XmlPushParser defaultParser = new XmlPushParser();
+        final byte[] chunk = new byte[64 * 1024];
+        Arrays.fill(chunk, (byte) 'x');
+        defaultParser.feed(ByteBuffer.wrap("<mapper><!--".getBytes(StandardCharsets.US_ASCII)));
+        try {
+            for (int length = 0; length <= ParserLimits.DEFAULT.getMaxTextLength(); length += chunk.length) {
+                defaultParser.feed(chunk, 0, chunk.length);
+            }
+            Assert.fail();
+        } catch (final LimitExceededException expectedFailure) {
+            Assert.assertEquals("maxTextLength", expectedFailure.getLimit());
+        }
+    }
+
+    private Deque<Token> scan(final String xml) throws ScannerException {
+        return XmlScanner.scan(new ByteArrayInputStream(xml.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private Map<String, String> map(final String key, final String value) {
+        final Map<String, String> map = new HashMap<>();
+        map.put(key, value);
+        return map;
+    }
+
     private void check(final String path, final XmlDocument expected) throws ScannerException, ParserException {
         final Deque<Token> tokens = XmlScanner.scan(XmlScannerTest.class.getClassLoader().getResourceAsStream(path));
         final XmlDocument actual = XmlParser.parse(tokens);
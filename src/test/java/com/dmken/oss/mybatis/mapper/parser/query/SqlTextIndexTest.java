@@ -0,0 +1,142 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.query;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.sql.IncludeResolver;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+
+@SuppressWarnings("javadoc")
+public class SqlTextIndexTest {
+    private static final String USERS = "<mapper namespace=\"users\">" //
+            + "<select id=\"find\">SELECT * FROM users <where>" //
+            + "<if test=\"name != null\">AND name = #{name}</if>" //
+            + "<if test=\"age != null\">AND age = #{age}</if>" //
+            + "</where></select>" //
+            + "<insert id=\"insertAll\">INSERT INTO users VALUES " //
+            + "<foreach collection=\"users\" item=\"user\" separator=\",\">(#{user.name})</foreach>" //
+            + "</insert>" //
+            + "<insert id=\"insert\">INSERT INTO users VALUES (#{name})</insert>" //
+            + "<update id=\"update\">UPDATE users <set><if test=\"name != null\">name = #{name}</if></set></update>" //
+            + "</mapper>";
+    private static final String ORDERS = "<mapper namespace=\"orders\">" //
+            + "<sql id=\"join\">JOIN Users u ON u.id = o.user_id</sql>" //
+            + "<select id=\"find\">SELECT * FROM \"orders\" o <include refid=\"join\"/>" //
+            + "<if test=\"status != null\">WHERE o.status = 'users' -- comment\n</if></select>" //
+            + "</mapper>";
+
+    @Test
+    public void testFind() throws Exception {
+        final SqlTextIndex index = this.build();
+        Assert.assertEquals(5, index.getStatementCount());
+
+        Assert.assertEquals(Arrays.asList("users.find", "users.insertAll", "users.insert", "users.update", "orders.find"),
+                index.find("USERS"));
+        Assert.assertEquals(Arrays.asList("users.find", "users.update"), index.find("name"));
+        Assert.assertEquals(Arrays.asList("orders.find"), index.find("orders"));
+        Assert.assertEquals(Arrays.asList("orders.find"), index.find("o.status"));
+        Assert.assertEquals(Arrays.asList("orders.find"), index.findAll("users", "orders", "status"));
+        Assert.assertEquals(Arrays.asList("users.find", "users.update"), index.findAll("name", "users"));
+        Assert.assertEquals(Arrays.asList("users.find"), index.find("age"));
+        // Parameters, literals, comments and the parameters of tags are not
+        // indexed.
+        Assert.assertTrue(index.find("user").isEmpty());
+        Assert.assertTrue(index.find("comment").isEmpty());
+        Assert.assertTrue(index.find("null").isEmpty());
+        Assert.assertTrue(index.find("missing").isEmpty());
+        Assert.assertTrue(index.findAll("users", "missing").isEmpty());
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        final SqlTextIndex index = this.build();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.write(out);
+        // Data following the index.
+        out.write(42);
+
+        final ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        final SqlTextIndex read = SqlTextIndex.read(in);
+        Assert.assertEquals(42, in.read());
+        Assert.assertEquals(index.getStatementCount(), read.getStatementCount());
+        Assert.assertEquals(index.getTermCount(), read.getTermCount());
+        for (final String term : Arrays.asList("users", "name", "orders", "o.status", "age", "missing")) {
+            Assert.assertEquals(index.find(term), read.find(term));
+        }
+    }
+
+    @Test
+    public void testCorrupt() throws Exception {
+        // Not an index.
+        this.assertCorrupt(0, 1);
+        // Negative and huge counts.
+        this.assertCorrupt(0x4D4D5349, 1, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F);
+        this.assertCorrupt(0x4D4D5349, 1, 0xFF, 0xFF, 0xFF, 0xFF, 0x07);
+        // A posting list longer than the number of statements.
+        this.assertCorrupt(0x4D4D5349, 1, 0x01, 0x00, 0x01, 'x', 0x01, 0x00, 0x01, 'a', 0x02, 0x01, 0x01);
+        // A statement number out of range.
+        this.assertCorrupt(0x4D4D5349, 1, 0x01, 0x00, 0x01, 'x', 0x01, 0x00, 0x01, 'a', 0x01, 0x02);
+        // Duplicate statement numbers.
+        this.assertCorrupt(0x4D4D5349, 1, 0x02, 0x00, 0x01, 'x', 0x00, 0x01, 'y', 0x01, 0x00, 0x01, 'a', 0x02, 0x01, 0x00);
+        // The same index with a valid statement number.
+        final byte[] valid = this.bytes(0x4D4D5349, 1, 0x01, 0x00, 0x01, 'x', 0x01, 0x00, 0x01, 'a', 0x01, 0x01);
+        Assert.assertEquals(Arrays.asList("x"), SqlTextIndex.read(new ByteArrayInputStream(valid)).find("a"));
+    }
+
+    private SqlTextIndex build() throws Exception {
+        return SqlTextIndex.build(new IncludeResolver(
+                Arrays.asList(this.parse(SqlTextIndexTest.USERS), this.parse(SqlTextIndexTest.ORDERS))).getStatements());
+    }
+
+    private XmlDocument parse(final String mapper) throws Exception {
+        return XmlParser.parse(XmlScanner.scan(new ByteArrayInputStream(mapper.getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    private void assertCorrupt(final int magic, final int version, final int... bytes) throws Exception {
+        try {
+            SqlTextIndex.read(new ByteArrayInputStream(this.bytes(magic, version, bytes)));
+            Assert.fail("Corrupt index was read");
+        } catch (final IOException expected) {
+            // Expected.
+        }
+    }
+
+    private byte[] bytes(final int magic, final int version, final int... bytes) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(magic);
+        data.writeInt(version);
+        for (final int b : bytes) {
+            data.writeByte(b);
+        }
+        return out.toByteArray();
+    }
+}
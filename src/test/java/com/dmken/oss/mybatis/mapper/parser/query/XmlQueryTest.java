@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.query;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.query.exception.QueryException;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+
+@SuppressWarnings("javadoc")
+public class XmlQueryTest {
+    private static final String MAPPER = "<mapper namespace=\"users\">" //
+            + "<select id=\"find\">SELECT * FROM users <where>" //
+            + "<if test=\"name != null\">AND name = #{name}</if>" //
+            + "<if test=\"age != null\">AND age = #{age}</if>" //
+            + "</where></select>" //
+            + "<insert id=\"insertAll\">INSERT INTO users VALUES " //
+            + "<foreach collection=\"users\" item=\"user\" separator=\",\">(#{user.name})</foreach>" //
+            + "</insert>" //
+            + "<insert id=\"insert\">INSERT INTO users VALUES (#{name})</insert>" //
+            + "<update id=\"update\">UPDATE users <set><if test=\"name != null\">name = #{name}</if></set></update>" //
+            + "</mapper>";
+
+    private XmlIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        this.index = new XmlIndex(XmlParser.parse(
+                XmlScanner.scan(new ByteArrayInputStream(XmlQueryTest.MAPPER.getBytes(StandardCharsets.US_ASCII)))));
+    }
+
+    @Test
+    public void testChildAndDescendant() throws Exception {
+        Assert.assertEquals(Arrays.asList("find"), this.select("/mapper/select/@id"));
+        Assert.assertEquals(Arrays.asList("users"), this.select("//foreach/@collection"));
+        Assert.assertEquals(Arrays.asList("users"), this.select("//insert//foreach/@collection"));
+        Assert.assertTrue(this.select("/mapper/foreach/@collection").isEmpty());
+        Assert.assertEquals(Arrays.asList("find", "insertAll", "insert", "update"), this.select("/mapper/*/@id"));
+        Assert.assertEquals(Arrays.asList("users"), this.select("/mapper/@namespace"));
+    }
+
+    @Test
+    public void testPredicates() throws Exception {
+        Assert.assertEquals(Arrays.asList("name != null", "age != null", "name != null"), this.select("//if/@test"));
+        Assert.assertEquals(Arrays.asList("name != null", "age != null"), this.select("//select[@id='find']//if/@test"));
+        Assert.assertEquals(Arrays.asList("insertAll"), this.select("//insert[foreach]/@id"));
+        Assert.assertEquals(Arrays.asList("insert"), this.select("//insert[@id != 'insertAll']/@id"));
+        Assert.assertEquals(Arrays.asList("age != null"), this.select("//where/if[2]/@test"));
+        Assert.assertEquals(Arrays.asList("name != null", "name != null"), this.select("//if[1]/@test"));
+        Assert.assertEquals(Arrays.asList("find", "update"), this.select("/mapper/*[.//if and @id]/@id"));
+        Assert.assertEquals(Arrays.asList("INSERT INTO users VALUES (#{name})"), this.select("//insert[2]/text()"));
+        Assert.assertEquals(Arrays.asList("AND name = #{name} AND age = #{age}"), this.select("//where"));
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        final AbstractXmlTag update = this.index.getTagById("update");
+        Assert.assertEquals("update", update.getName());
+        Assert.assertEquals(3, this.index.getTagsByName("if").size());
+
+        final List<AbstractXmlValue> values = XmlQuery.compile("//*[@id='update']").select(this.index);
+        Assert.assertEquals(1, values.size());
+        Assert.assertSame(update, values.get(0));
+    }
+
+    @Test(expected = QueryException.class)
+    public void testInvalid() throws Exception {
+        XmlQuery.compile("//select[@id='find'");
+    }
+
+    @Test
+    public void testPositions() throws Exception {
+        Assert.assertEquals(Arrays.asList("age != null"), this.select("//where/if[@test='age != null'][1]/@test"));
+        Assert.assertTrue(this.select("//if[@test='age != null'][2]/@test").isEmpty());
+        Assert.assertTrue(this.select("//if[2147483647]").isEmpty());
+        for (final String query : Arrays.asList("//if[0]", "//if[2147483648]", "//if[99999999999999999999]")) {
+            try {
+                XmlQuery.compile(query);
+                Assert.fail(query);
+            } catch (final QueryException expected) {
+                // Expected.
+            }
+        }
+    }
+
+    private List<String> select(final String query) throws QueryException {
+        return XmlQuery.compile(query).selectValues(this.index);
+    }
+}
@@ -21,13 +21,23 @@ package com.dmken.oss.mybatis.mapper.parser.scanner;
 
 import static com.dmken.oss.mybatis.mapper.parser.scanner.Token.TokenType.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import com.dmken.oss.mybatis.mapper.parser.scanner.Token.TokenType;
+import com.dmken.oss.mybatis.mapper.parser.scanner.exception.LimitExceededException;
 import com.dmken.oss.mybatis.mapper.parser.scanner.exception.ScannerException;
 
 @SuppressWarnings("javadoc")
@@ -122,6 +132,278 @@ public class XmlScannerTest {
         this.check("xml/simple.xml", expected);
     }
 
+    @Test
+    public void testLimits() throws Exception {
+        final ParserLimits limits = ParserLimits.UNLIMITED.withMaxDepth(2).withMaxAttributeCount(2).withMaxTextLength(8)
+                .withMaxTokenCount(32);
+        this.scan("<a x='1' y='2'><b/><b>12345678</b><!--12345678--></a>", limits);
+        this.assertExceeded("maxDepth", "<a><b><c/></b></a>", limits);
+        this.assertExceeded("maxAttributeCount", "<a x='1' y='2' z='3'></a>", limits);
+        this.assertExceeded("maxTextLength", "<a>123456789</a>", limits);
+        this.assertExceeded("maxTextLength", "<a x='123456789'></a>", limits);
+        this.assertExceeded("maxTextLength", "<a><!--123456789--></a>", limits);
+        this.assertExceeded("maxTokenCount", "<a><b/><b/><b/><b/><b/><b/><b/><b/><b/><b/><b/><b/></a>", limits);
+    }
+
+    @Test
+    public void testStructuralIndex() throws Exception {
+        final Random random = new Random(42);
+        final char[] chars = new char[1000];
+        for (int i = 0; i < chars.length; i++) {
+            // Mostly ASCII with some control and non-ASCII characters.
+            chars[i] = (char) (random.nextInt(10) == 0 ? random.nextInt(0x10000) : random.nextInt(0x80));
+        }
+        final StructuralIndex index = new StructuralIndex();
+        for (final int length : new int[] { 0, 1, 3, 64, 65, 999, 1000 }) {
+            index.build(chars, length);
+            int expected = 0;
+            for (int from = 0; from < length; from++) {
+                if (expected < from) {
+                    expected = from;
+                    while (expected < length && !StructuralIndex.isStructural(chars[expected])) {
+                        expected++;
+                    }
+                }
+                Assert.assertEquals(expected, index.next(from, length));
+            }
+            Assert.assertEquals(length, index.next(length, length));
+        }
+    }
+
+    @Test
+    public void testLongContent() throws Exception {
+        final StringBuilder content = new StringBuilder();
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            // Comments in content remove the surrounding whitespace.
+            content.append("SELECT a, 'b' FROM t WHERE a &lt; ").append(i).append(" <!-- c -->\r\n");
+            expected.append("SELECT a, 'b' FROM t WHERE a < ").append(i);
+        }
+        final String xml = "<a>" + content + "</a><b/>";
+
+        final XmlScanner scanner = new XmlScanner(new StringReader(xml));
+        scanner.setPreserveSource(true);
+        final Deque<Token> tokens = scanner.scan();
+        Assert.assertEquals(xml, scanner.getSource());
+
+        final Token[] array = tokens.toArray(new Token[0]);
+        Assert.assertEquals(CONTENT, array[3].getType());
+        Assert.assertEquals(expected.toString(), array[3].getToken());
+        final Token end = array[4];
+        Assert.assertEquals(LANGEL, end.getType());
+        Assert.assertEquals(2001, end.getLine());
+        Assert.assertEquals(1, end.getColumn());
+        Assert.assertEquals(3 + content.length(), end.getOffset());
+    }
+
+    @Test
+    public void testLineTable() throws Exception {
+        final Token[] tokens = new XmlScanner(new StringReader("<a>\r\n<b\r/>\n\n  <c\u2028x='1'/></a>")).scan()
+                .toArray(new Token[0]);
+        Assert.assertEquals("b", tokens[4].getToken());
+        Assert.assertEquals(2, tokens[4].getLine());
+        Assert.assertEquals(2, tokens[4].getColumn());
+        Assert.assertEquals(SLASH, tokens[5].getType());
+        Assert.assertEquals(3, tokens[5].getLine());
+        Assert.assertEquals(1, tokens[5].getColumn());
+        Assert.assertEquals("c", tokens[8].getToken());
+        Assert.assertEquals(5, tokens[8].getLine());
+        Assert.assertEquals(4, tokens[8].getColumn());
+        Assert.assertEquals("x", tokens[9].getToken());
+        Assert.assertEquals(6, tokens[9].getLine());
+        Assert.assertEquals(1, tokens[9].getColumn());
+        Assert.assertEquals(-1, new Token("x", IDENTIFIER).getLine());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testFixedPosition() throws Exception {
+        final Token token = new Token(3, 7, "x", IDENTIFIER);
+        Assert.assertEquals(3, token.getLine());
+        Assert.assertEquals(7, token.getColumn());
+        Assert.assertEquals(new Token("x", IDENTIFIER), token);
+        Assert.assertEquals(-1, new Token(-1, -1, "x", IDENTIFIER).getLine());
+        Assert.assertEquals(-1, new Token(-1, -1, "x", IDENTIFIER).getColumn());
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?>\n<mapper>\n");
+        for (int i = 0; i < 200; i++) {
+            xml.append("  <select id='s").append(i).append("'>\r\n    SELECT * FROM t WHERE a &lt; ").append(i).append('\n');
+            // Speculative boundaries inside of comments and strings.
+            xml.append("<!--\n<select> -->\n    <if test='a\n<b'>AND b</if>\n  </select>\n");
+        }
+        xml.append("</mapper>\n");
+        final char[] source = xml.toString().toCharArray();
+        final Token[] expected = new XmlScanner(new StringReader(xml.toString())).scan().toArray(new Token[0]);
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (final int chunkCount : new int[] { 1, 2, 7, 50, 400 }) {
+                final Token[] actual = ParallelScanner.scan(source, source.length, pool, chunkCount).toArray(new Token[0]);
+                Assert.assertArrayEquals(expected, actual);
+                for (int i = 0; i < expected.length; i++) {
+                    Assert.assertEquals(expected[i].getOffset(), actual[i].getOffset());
+                    Assert.assertEquals(expected[i].getEndOffset(), actual[i].getEndOffset());
+                    Assert.assertEquals(expected[i].getLine(), actual[i].getLine());
+                    Assert.assertEquals(expected[i].getColumn(), actual[i].getColumn());
+                }
+            }
+
+            final String broken = xml.insert(xml.indexOf("SELECT", xml.length() / 2), "&bogus;").toString();
+            String expectedMessage = null;
+            try {
+                new XmlScanner(new StringReader(broken)).scan();
+                Assert.fail();
+            } catch (final ScannerException expectedFailure) {
+                expectedMessage = expectedFailure.getMessage();
+            }
+            try {
+                ParallelScanner.scan(broken.toCharArray(), broken.length(), pool, 50);
+                Assert.fail();
+            } catch (final ScannerException expectedFailure) {
+                Assert.assertEquals(expectedMessage, expectedFailure.getMessage());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testTokenRing() throws Exception {
+        final TokenRing ring = new TokenRing(3, 2);
+        final Thread producer = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                ring.offer(new Token(Integer.toString(i), IDENTIFIER));
+            }
+            ring.close();
+        });
+        producer.start();
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(Integer.toString(i), ring.peek().getToken());
+            Assert.assertEquals(Integer.toString(i), ring.poll().getToken());
+        }
+        Assert.assertNull(ring.poll());
+        Assert.assertNull(ring.peek());
+        producer.join();
+
+        // A cancelled ring does not block the producer.
+        final TokenRing cancelled = new TokenRing(1, 1);
+        cancelled.offer(new Token("a", IDENTIFIER));
+        cancelled.cancel();
+        try {
+            cancelled.offer(new Token("b", IDENTIFIER));
+            Assert.fail();
+        } catch (final CancellationException expected) {
+            // Expected.
+        }
+        Assert.assertEquals("TokenRing[published=1, taken=0, batchSize=1, closed=false, cancelled=true]", cancelled.toString());
+    }
+
+    @Test
+    public void testFeed() throws Exception {
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?>\r\n<mapper>\n");
+        for (int i = 0; i < 20; i++) {
+            xml.append("  <select id='s").append(i).append("'>\r\n    SELECT * FROM t WHERE a &lt; ").append(i);
+            xml.append("\n<!-- comment -->\n    <if test=\"a &amp;&amp; b\">AND b</if>\n  </select>\n");
+        }
+        // A token longer than the buffer of the scanner.
+        xml.append("<sql id='long'>");
+        for (int i = 0; i < 1000; i++) {
+            xml.append("SELECT ").append(i).append(" &gt; 1\n");
+        }
+        xml.append("</sql>\n</mapper>\n");
+        final byte[] bytes = xml.toString().getBytes(StandardCharsets.US_ASCII);
+        final XmlScanner blocking = new XmlScanner(new ByteArrayInputStream(bytes));
+        blocking.setPreserveSource(true);
+        final Token[] expected = blocking.scan().toArray(new Token[0]);
+
+        final Random random = new Random(42);
+        for (final int chunkSize : new int[] { 1, 2, 3, 7, 100, 4096, 100000, -1 }) {
+            final XmlScanner scanner = new XmlScanner(new ArrayDeque<>());
+            scanner.setPreserveSource(true);
+            for (int offset = 0; offset < bytes.length;) {
+                // A negative chunk size stands for random chunk sizes.
+                final int length = Math.min(bytes.length - offset, chunkSize < 0 ? random.nextInt(50) : chunkSize);
+                scanner.feed(ByteBuffer.wrap(bytes, offset, length));
+                offset += length;
+            }
+            final Token[] actual = scanner.endOfInput().toArray(new Token[0]);
+            Assert.assertArrayEquals(expected, actual);
+            for (int i = 0; i < expected.length; i++) {
+                Assert.assertEquals(expected[i].getOffset(), actual[i].getOffset());
+                Assert.assertEquals(expected[i].getEndOffset(), actual[i].getEndOffset());
+                Assert.assertEquals(expected[i].getLine(), actual[i].getLine());
+                Assert.assertEquals(expected[i].getColumn(), actual[i].getColumn());
+            }
+            Assert.assertEquals(blocking.getSource(), scanner.getSource());
+        }
+
+        // Tokens are available as soon as they are complete.
+        final Deque<Token> tokens = new ArrayDeque<>();
+        final XmlScanner scanner = new XmlScanner(tokens);
+        scanner.feed(ByteBuffer.wrap("<a b='c'>d<!-- e".getBytes(StandardCharsets.US_ASCII)));
+        Assert.assertEquals(6, tokens.size());
+        scanner.feed(ByteBuffer.wrap(" -->f</a".getBytes(StandardCharsets.US_ASCII)));
+        Assert.assertEquals(9, tokens.size());
+        scanner.endOfInput();
+        Assert.assertEquals(10, tokens.size());
+        Assert.assertEquals("df", tokens.toArray(new Token[0])[6].getToken());
+        try {
+            scanner.feed(ByteBuffer.allocate(1));
+            Assert.fail();
+        } catch (final IllegalStateException expectedFailure) {
+            // Expected.
+        }
+
+        final XmlScanner truncated = new XmlScanner(new ArrayDeque<>());
+        truncated.feed(ByteBuffer.wrap("<a b='c".getBytes(StandardCharsets.US_ASCII)));
+        try {
+            truncated.endOfInput();
+            Assert.fail();
+        } catch (final ScannerException expectedFailure) {
+            Assert.assertEquals("Unexpected end of stream!", expectedFailure.getMessage());
+        }
+
+        // Errors are reported like by the blocking scanner even if the code
+        // ends inside of the erroneous token.
+        for (final String invalid : Arrays.asList("<a>b<!-c</a>", "<a>b<!--c--d</a>", "<a>b&x;</a>", "<!--a--b>",
+                "<a b=\"c</a>", "<a>b<!--c")) {
+            final byte[] invalidBytes = invalid.getBytes(StandardCharsets.US_ASCII);
+            String expectedMessage = null;
+            try {
+                XmlScanner.scan(new ByteArrayInputStream(invalidBytes));
+            } catch (final ScannerException cause) {
+                expectedMessage = cause.getMessage();
+            }
+            Assert.assertNotNull(invalid, expectedMessage);
+            final XmlScanner fed = new XmlScanner(new ArrayDeque<>());
+            try {
+                for (final byte b : invalidBytes) {
+                    fed.feed(ByteBuffer.wrap(new byte[] { b }));
+                }
+                fed.endOfInput();
+                Assert.fail(invalid);
+            } catch (final ScannerException cause) {
+                Assert.assertEquals(invalid, expectedMessage, cause.getMessage());
+            }
+        }
+    }
+
+    private void assertExceeded(final String limit, final String xml, final ParserLimits limits) throws Exception {
+        try {
+            this.scan(xml, limits);
+            Assert.fail();
+        } catch (final LimitExceededException expected) {
+            Assert.assertEquals(limit, expected.getLimit());
+        }
+    }
+
+    private Deque<Token> scan(final String xml, final ParserLimits limits) throws ScannerException {
+        return XmlScanner.scan(new ByteArrayInputStream(xml.getBytes(StandardCharsets.US_ASCII)), limits);
+    }
+
     private void add(final Deque<Token> tokens, final String token, final TokenType type) {
         tokens.offer(new Token(-1, -1, token, type));
     }
@@ -0,0 +1,90 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.sql;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+
+@SuppressWarnings("javadoc")
+public class IncludeResolverTest {
+    private static final String COMMON = "<mapper namespace=\"common\">" //
+            + "<sql id=\"audit\">created_at, updated_at</sql>" //
+            + "</mapper>";
+    private static final String USERS = "<mapper namespace=\"users\">" //
+            + "<sql id=\"columns\">id, name, <include refid=\"common.audit\"/></sql>" //
+            + "<sql id=\"from\">FROM ${table} <include refid=\"alias\"/></sql>" //
+            + "<sql id=\"alias\">${alias}</sql>" //
+            + "<sql id=\"loop\">x <include refid=\"loop\"/></sql>" //
+            + "<select id=\"find\">SELECT <include refid=\"columns\"/> " //
+            + "<include refid=\"from\"><property name=\"table\" value=\"users\"/>" //
+            + "<property name=\"alias\" value=\"u_${table}\"/></include>" //
+            + "<if test=\"${table} != null\">WHERE id = #{id}</if></select>" //
+            + "<delete id=\"delete\">DELETE FROM users</delete>" //
+            + "<update id=\"broken\">UPDATE <include refid=\"missing\"/> <include refid=\"loop\"/></update>" //
+            + "<select>SELECT 1</select>" //
+            + "</mapper>";
+
+    @Test
+    public void testStatements() throws Exception {
+        final List<MapperStatement> statements = new IncludeResolver(
+                Arrays.asList(this.parse(IncludeResolverTest.COMMON), this.parse(IncludeResolverTest.USERS)))
+                        .getStatements();
+        Assert.assertEquals(3, statements.size());
+        Assert.assertEquals("users.find", statements.get(0).getQualifiedId());
+        Assert.assertEquals("users.delete", statements.get(1).getQualifiedId());
+        Assert.assertEquals("users.broken", statements.get(2).getQualifiedId());
+
+        final XmlDocument expected = this.parse("<select id=\"find\">SELECT id, name, created_at, updated_at " //
+                + "FROM users u_${table}<if test=\"${table} != null\">WHERE id = #{id}</if></select>");
+        Assert.assertEquals(expected.getRootTag(), statements.get(0).getTag());
+    }
+
+    @Test
+    public void testUnresolved() throws Exception {
+        final XmlDocument users = this.parse(IncludeResolverTest.USERS);
+        final List<MapperStatement> statements = new IncludeResolver(Arrays.asList(users)).getStatements();
+
+        // The cross-namespace reference cannot be resolved without the other
+        // mapper.
+        Assert.assertEquals(this.parse("<select id=\"find\">SELECT id, name, <include refid=\"common.audit\"/> " //
+                + "FROM users u_${table}<if test=\"${table} != null\">WHERE id = #{id}</if></select>").getRootTag(),
+                statements.get(0).getTag());
+        // Statements without includes are reused.
+        Assert.assertSame(users.getRootTag().getChildren().get(5), statements.get(1).getTag());
+        // The missing include is kept, the cycle is cut.
+        Assert.assertEquals(
+                this.parse("<update id=\"broken\">UPDATE <include refid=\"missing\"/> x <include refid=\"loop\"/></update>")
+                        .getRootTag(),
+                statements.get(2).getTag());
+    }
+
+    private XmlDocument parse(final String str) throws Exception {
+        return XmlParser.parse(XmlScanner.scan(new ByteArrayInputStream(str.getBytes(StandardCharsets.US_ASCII))));
+    }
+}
@@ -0,0 +1,161 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+
+@SuppressWarnings("javadoc")
+public class SqlDependencyAnalyzerTest {
+    private static final String MAPPER = "<mapper namespace=\"orders\">" //
+            + "<sql id=\"columns\">o.id, o.total AS amount</sql>" //
+            + "<select id=\"find\">SELECT <include refid=\"columns\"/>, count(*) FROM app.orders o " //
+            + "LEFT JOIN users AS u ON u.id = o.user_id " //
+            + "<where><if test=\"status != null\">AND o.status IN " //
+            + "<foreach collection=\"status\" item=\"s\" open=\"(\" separator=\",\" close=\")\">#{s}</foreach></if>" //
+            + "</where> ORDER BY amount DESC</select>" //
+            + "<select id=\"archive\">SELECT id FROM <choose><when test=\"archived\">orders_archive</when>" //
+            + "<otherwise>orders</otherwise></choose> WHERE id = #{id} FOR UPDATE</select>" //
+            + "<insert id=\"insert\">INSERT INTO orders (id, user_id, total) VALUES (#{id}, #{userId}, 0) " //
+            + "ON DUPLICATE KEY UPDATE total = 0</insert>" //
+            + "<update id=\"update\">UPDATE orders <set><if test=\"total != null\">total = #{total},</if>" //
+            + "<if test=\"note != null\">\"note\" = #{note}</if></set> WHERE id = #{id}</update>" //
+            + "<delete id=\"delete\">DELETE FROM orders WHERE id IN (SELECT order_id FROM refunds)</delete>" //
+            + "</mapper>";
+
+    @Test
+    public void testAnalyze() throws Exception {
+        final Map<String, SqlDependencies> dependencies = new SqlDependencyAnalyzer().analyze(this.statements());
+
+        final SqlDependencies find = dependencies.get("orders.find");
+        Assert.assertEquals(this.set("app.orders", "users"), find.getTables());
+        Assert.assertEquals(this.set("users"), find.getJoinedTables());
+        Assert.assertEquals(this.set("id", "total", "user_id", "status"), find.getColumns());
+
+        final SqlDependencies archive = dependencies.get("orders.archive");
+        Assert.assertEquals(this.set("orders_archive", "orders"), archive.getTables());
+        Assert.assertEquals(this.set("id"), archive.getColumns());
+
+        final SqlDependencies insert = dependencies.get("orders.insert");
+        Assert.assertEquals(this.set("orders"), insert.getTables());
+        Assert.assertEquals(this.set("id", "user_id", "total"), insert.getColumns());
+
+        final SqlDependencies update = dependencies.get("orders.update");
+        Assert.assertEquals(this.set("orders"), update.getTables());
+        Assert.assertEquals(this.set("total", "note", "id"), update.getColumns());
+
+        final SqlDependencies delete = dependencies.get("orders.delete");
+        Assert.assertEquals(this.set("orders", "refunds"), delete.getTables());
+        Assert.assertTrue(delete.getJoinedTables().isEmpty());
+        Assert.assertEquals(this.set("id", "order_id"), delete.getColumns());
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        final SqlDependencyAnalyzer analyzer = new SqlDependencyAnalyzer();
+        final Map<String, SqlDependencies> dependencies = analyzer.analyze(this.statements());
+        Assert.assertEquals(5, analyzer.getMissCount());
+        Assert.assertEquals(0, analyzer.getHitCount());
+
+        // Parsing again results in equal trees, so nothing is analyzed again.
+        Assert.assertEquals(dependencies, analyzer.analyze(this.statements()));
+        Assert.assertEquals(5, analyzer.getMissCount());
+        Assert.assertEquals(5, analyzer.getHitCount());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        analyzer.save(out);
+        final SqlDependencyAnalyzer loaded = new SqlDependencyAnalyzer();
+        Assert.assertTrue(loaded.load(new ByteArrayInputStream(out.toByteArray())));
+        Assert.assertEquals(5, loaded.getCacheSize());
+        Assert.assertEquals(dependencies, loaded.analyze(this.statements()));
+        Assert.assertEquals(0, loaded.getMissCount());
+    }
+
+    @Test
+    public void testSavePrunes() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SqlDependencyAnalyzer().analyze(this.statements());
+        final SqlDependencyAnalyzer analyzer = new SqlDependencyAnalyzer();
+        analyzer.analyze(this.statements());
+        analyzer.save(out);
+
+        // Only the statements analyzed in this run are saved again.
+        final SqlDependencyAnalyzer loaded = new SqlDependencyAnalyzer();
+        loaded.load(new ByteArrayInputStream(out.toByteArray()));
+        loaded.analyze(this.statements().get(0).getTag());
+        out.reset();
+        loaded.save(out);
+        Assert.assertEquals(1, loaded.getCacheSize());
+
+        final SqlDependencyAnalyzer pruned = new SqlDependencyAnalyzer();
+        pruned.load(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals(1, pruned.getCacheSize());
+    }
+
+    @Test
+    public void testAliases() throws Exception {
+        final Map<String, SqlDependencies> dependencies = new SqlDependencyAnalyzer().analyze(this.statements(
+                "<mapper namespace=\"users\"><select id=\"count\">SELECT u.name AS name, count(*) AS total " //
+                        + "FROM users u GROUP BY name ORDER BY total</select></mapper>"));
+
+        final SqlDependencies count = dependencies.get("users.count");
+        Assert.assertEquals(this.set("users"), count.getTables());
+        // The column shares its name with the alias.
+        Assert.assertEquals(this.set("name"), count.getColumns());
+    }
+
+    @Test
+    public void testDerivedTables() throws Exception {
+        final Map<String, SqlDependencies> dependencies = new SqlDependencyAnalyzer().analyze(this.statements(
+                "<mapper namespace=\"users\"><select id=\"active\">SELECT t.id, o.total FROM (SELECT id FROM users) t " //
+                        + "JOIN (SELECT user_id, total FROM orders) AS o ON o.user_id = t.id WHERE t.id > 0</select></mapper>"));
+
+        final SqlDependencies active = dependencies.get("users.active");
+        Assert.assertEquals(this.set("users", "orders"), active.getTables());
+        Assert.assertEquals(this.set(), active.getJoinedTables());
+        // The aliases of the derived tables are not columns.
+        Assert.assertEquals(this.set("id", "total", "user_id"), active.getColumns());
+    }
+
+    private List<MapperStatement> statements() throws Exception {
+        return this.statements(SqlDependencyAnalyzerTest.MAPPER);
+    }
+
+    private List<MapperStatement> statements(final String mapper) throws Exception {
+        return new IncludeResolver(Arrays.asList(
+                XmlParser.parse(XmlScanner.scan(new ByteArrayInputStream(mapper.getBytes(StandardCharsets.US_ASCII))))))
+                        .getStatements();
+    }
+
+    private LinkedHashSet<String> set(final String... elements) {
+        return new LinkedHashSet<>(Arrays.asList(elements));
+    }
+}
@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.sql;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+
+@SuppressWarnings("javadoc")
+public class SqlFingerprinterTest {
+    private static final String MAPPER = "<mapper namespace=\"users\">" //
+            + "<select id=\"find\">SELECT * FROM users <where>" //
+            + "<if test=\"name != null\">AND name = #{name}</if>" //
+            + "<choose><when test=\"active\">AND active = 1</when><when test=\"!active\">AND active = 0</when>" //
+            + "<otherwise>AND deleted IS NULL</otherwise></choose>" //
+            + "</where></select>" //
+            + "<select id=\"findByIds\">SELECT * FROM users WHERE id IN " //
+            + "<foreach collection=\"ids\" item=\"id\" open=\"(\" separator=\",\" close=\")\">#{id}</foreach></select>" //
+            + "<update id=\"update\">UPDATE users <set><if test=\"name != null\">name = #{name},</if>" //
+            + "<if test=\"age != null\">age = #{age},</if></set> WHERE id = #{id}</update>" //
+            + "<select id=\"many\">SELECT * FROM users WHERE 1 = 1" //
+            + "<if test=\"a\">AND a = #{a}</if><if test=\"b\">AND b = #{b}</if>" //
+            + "<if test=\"c\">AND c = #{c}</if><if test=\"d\">AND d = #{d}</if></select>" //
+            + "<select id=\"findAll\">select *\n  from USERS -- all of them\n</select>" //
+            + "<select id=\"findInactive\">SELECT * FROM users WHERE active = 0</select>" //
+            + "</mapper>";
+
+    @Test
+    public void testNormalize() {
+        Assert.assertEquals("select * from users where name = ? and age > ? and id in ( ? ) and \"Order\" = ?",
+                SqlFingerprinter.normalize("SELECT *\n\tFROM users /* comment */ WHERE name = 'x''y' AND age > 42 "
+                        + "AND id IN (1, 2,3) AND \"Order\" = #{order}"));
+        // Truncated statements (e.g. from a log) keep the unterminated list.
+        Assert.assertEquals("select * from t where id in ( ? , ?",
+                SqlFingerprinter.normalize("SELECT * FROM t WHERE id IN (?, ?"));
+        Assert.assertEquals("select * from t where id in ( ? , ?",
+                SqlFingerprinter.normalize("SELECT * FROM t WHERE id IN (1,2"));
+        Assert.assertEquals("select * from t where id in ( ?", SqlFingerprinter.normalize("SELECT * FROM t WHERE id IN (1"));
+    }
+
+    @Test
+    public void testFingerprint() throws Exception {
+        final SqlFingerprintIndex index = new SqlFingerprinter(8).fingerprint(this.statements());
+
+        final StatementFingerprints find = index.getStatements().get(0);
+        Assert.assertEquals("users.find", find.getStatementId());
+        Assert.assertFalse(find.isTruncated());
+        // The literals of the first two alternatives are stripped, so they
+        // result in the same shape.
+        Assert.assertEquals(Arrays.asList( //
+                "select * from users where name = ? and active = ?", //
+                "select * from users where name = ? and deleted is null", //
+                "select * from users where active = ?", //
+                "select * from users where deleted is null"), this.sql(find));
+
+        Assert.assertEquals(Arrays.asList("select * from users where id in ( ? )"),
+                this.sql(index.getStatements().get(1)));
+        Assert.assertEquals(Arrays.asList( //
+                "update users set name = ? , age = ? where id = ?", //
+                "update users set name = ? where id = ?", //
+                "update users set age = ? where id = ?", //
+                "update users where id = ?"), this.sql(index.getStatements().get(2)));
+
+        // 16 shapes, but only 8 are allowed.
+        final StatementFingerprints many = index.getStatements().get(3);
+        Assert.assertTrue(many.isTruncated());
+        Assert.assertEquals(8, many.getFingerprints().size());
+
+        // Shapes shared by different statements are deduplicated.
+        final SqlFingerprint inactive = index.getStatements().get(5).getFingerprints().get(0);
+        Assert.assertSame(find.getFingerprints().get(2), inactive);
+        Assert.assertEquals(Arrays.asList("users.find", "users.findInactive"), index.find(inactive.getHash()));
+        Assert.assertEquals(4 + 1 + 4 + 8 + 1, index.getFingerprintCount());
+    }
+
+    @Test
+    public void testFind() throws Exception {
+        final SqlFingerprintIndex index = new SqlFingerprinter().fingerprint(this.statements());
+        Assert.assertEquals(Arrays.asList("users.findByIds"),
+                index.find("SELECT * FROM users WHERE id IN (?, ?, ?, ?)"));
+        Assert.assertEquals(Arrays.asList("users.find", "users.findInactive"),
+                index.find("SELECT * FROM users WHERE active = 1"));
+        Assert.assertEquals(Arrays.asList("users.update"), index.find("UPDATE users SET age = ? WHERE id = ?"));
+        Assert.assertEquals(Arrays.asList("users.findAll"), index.find("SELECT * FROM users"));
+        Assert.assertTrue(index.find("SELECT * FROM orders").isEmpty());
+        Assert.assertTrue(index.find("SELECT * FROM users WHERE id IN (1, 2").isEmpty());
+        Assert.assertFalse(index.getStatements().get(3).isTruncated());
+        Assert.assertEquals(16, index.getStatements().get(3).getFingerprints().size());
+    }
+
+    private List<MapperStatement> statements() throws Exception {
+        return new IncludeResolver(Arrays.asList(XmlParser.parse(XmlScanner
+                .scan(new ByteArrayInputStream(SqlFingerprinterTest.MAPPER.getBytes(StandardCharsets.US_ASCII))))))
+                        .getStatements();
+    }
+
+    private List<String> sql(final StatementFingerprints fingerprints) {
+        final List<String> sql = new ArrayList<>();
+        for (final SqlFingerprint fingerprint : fingerprints.getFingerprints()) {
+            sql.add(fingerprint.getSql());
+        }
+        return sql;
+    }
+}
@@ -0,0 +1,53 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.util;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class HashUtilTest {
+    @Test
+    public void testKnownValues() {
+        this.check(0xEF46DB3751D8E999L, "");
+        this.check(0xD24EC4F1A98C6E5BL, "a");
+        this.check(0x44BC2CF5AD770999L, "abc");
+        this.check(0xFBCEA83C8A378BF1L, "Nobody inspects the spammish repetition");
+    }
+
+    @Test
+    public void testOffset() {
+        final byte[] bytes = "xxabcxx".getBytes(StandardCharsets.US_ASCII);
+        Assert.assertEquals(0x44BC2CF5AD770999L, HashUtil.hash(bytes, 2, 3));
+    }
+
+    @Test
+    public void testToHexString() {
+        Assert.assertEquals("00000000000000ff", HashUtil.toHexString(0xFF));
+        Assert.assertEquals("ef46db3751d8e999", HashUtil.toHexString(0xEF46DB3751D8E999L));
+    }
+
+    private void check(final long expected, final String input) {
+        final byte[] bytes = input.getBytes(StandardCharsets.US_ASCII);
+        Assert.assertEquals(expected, HashUtil.hash(bytes, 0, bytes.length));
+    }
+}
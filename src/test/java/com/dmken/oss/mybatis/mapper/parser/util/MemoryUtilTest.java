@@ -0,0 +1,127 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.util;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.dmken.oss.mybatis.mapper.parser.benchmark.MapperCorpus;
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+
+import sun.misc.Unsafe;
+
+@SuppressWarnings({ "javadoc", "restriction" })
+public class MemoryUtilTest {
+    @Test
+    public void testEstimateRetainedSize() throws Exception {
+        final Field field = Unsafe.class.getDeclaredField("theUnsafe");
+        field.setAccessible(true);
+        final Unsafe unsafe = (Unsafe) field.get(null);
+        // The estimation assumes compressed object pointers.
+        Assume.assumeTrue(unsafe.arrayIndexScale(Object[].class) == 4);
+
+        for (final int statementCount : new int[] { 1, 20 }) {
+            final XmlDocument document = XmlParser
+                    .parse(XmlScanner.scan(new ByteArrayInputStream(MapperCorpus.generate(42, statementCount))));
+            Assert.assertEquals(MemoryUtilTest.measure(unsafe, document), MemoryUtil.estimateRetainedSize(document));
+        }
+    }
+
+    /**
+     * Measures the bytes retained by the given object graph using the actual
+     * field layout of the JVM. Shared objects (enums, charsets and the empty
+     * collections) are not counted.
+     *
+     */
+    private static long measure(final Unsafe unsafe, final Object root) throws Exception {
+        final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        long size = 0;
+        while (!pending.isEmpty()) {
+            final Object object = pending.pop();
+            if (object instanceof Enum || object instanceof Charset || object == Collections.emptyMap()
+                    || object == Collections.emptyList() || !seen.add(object)) {
+                continue;
+            }
+            final Class<?> type = object.getClass();
+            if (type.isArray()) {
+                final int length = java.lang.reflect.Array.getLength(object);
+                size += MemoryUtilTest.align(
+                        unsafe.arrayBaseOffset(type) + (long) length * unsafe.arrayIndexScale(type));
+                if (!type.getComponentType().isPrimitive()) {
+                    for (final Object element : (Object[]) object) {
+                        if (element != null) {
+                            pending.push(element);
+                        }
+                    }
+                }
+                continue;
+            }
+            long end = 12;
+            for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+                for (final Field field : current.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    end = Math.max(end, unsafe.objectFieldOffset(field) + MemoryUtilTest.sizeOf(field.getType()));
+                    if (!field.getType().isPrimitive()) {
+                        field.setAccessible(true);
+                        final Object value = field.get(object);
+                        if (value != null) {
+                            pending.push(value);
+                        }
+                    }
+                }
+            }
+            size += MemoryUtilTest.align(end);
+        }
+        return size;
+    }
+
+    private static int sizeOf(final Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        // Integers, floats and compressed references.
+        return 4;
+    }
+
+    private static long align(final long size) {
+        return size + 7 & ~7L;
+    }
+}
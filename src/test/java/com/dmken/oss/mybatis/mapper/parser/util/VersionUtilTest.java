@@ -0,0 +1,39 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.util;
+
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class VersionUtilTest {
+    @Test
+    public void testBuildVersion() {
+        final String parserVersion = VersionUtil.getParserVersion();
+        final String buildVersion = VersionUtil.getBuildVersion();
+        Assert.assertNotEquals("unknown", parserVersion);
+        Assert.assertFalse(parserVersion.contains("${"));
+        // The build version distinguishes builds of the same (snapshot)
+        // version.
+        Assert.assertTrue(buildVersion, buildVersion.matches(Pattern.quote(parserVersion) + "\\+\\d{17}"));
+    }
+}
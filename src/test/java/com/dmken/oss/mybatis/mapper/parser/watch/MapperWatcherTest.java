@@ -0,0 +1,107 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.watch;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SuppressWarnings("javadoc")
+public class MapperWatcherTest {
+    private static final String MAPPER = "<mapper namespace=\"users\">" //
+            + "<resultMap id=\"user\"><id column=\"id\" property=\"id\" /></resultMap>" //
+            + "<select id=\"findAll\">SELECT * FROM users</select>" //
+            + "<select id=\"findById\">SELECT * FROM users WHERE id = #{id}</select>" //
+            + "</mapper>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDiff() throws Exception {
+        final Path file = this.folder.getRoot().toPath().resolve("UserMapper.xml");
+        Files.write(file, MapperWatcherTest.MAPPER.getBytes(StandardCharsets.US_ASCII));
+
+        final BlockingQueue<MapperChangeSet> changeSets = new LinkedBlockingQueue<>();
+        try (MapperWatcher watcher = new MapperWatcher(this.folder.getRoot().toPath(), FileSystems.getDefault().getPathMatcher("glob:**.xml"), 50,
+                changeSets::add)) {
+            watcher.start();
+
+            final MapperChangeSet initial = changeSets.poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull(initial);
+            Assert.assertEquals(3, initial.getChanges().size());
+            for (final MapperChange change : initial.getChanges()) {
+                Assert.assertEquals(MapperChange.Type.ADDED, change.getType());
+            }
+
+            final String modified = MapperWatcherTest.MAPPER //
+                    .replace("<resultMap id=\"user\"><id column=\"id\" property=\"id\" /></resultMap>", "") //
+                    .replace("SELECT * FROM users WHERE", "SELECT id FROM users WHERE");
+            Files.write(file, modified.getBytes(StandardCharsets.US_ASCII));
+
+            final MapperChangeSet changeSet = changeSets.poll(30, TimeUnit.SECONDS);
+            Assert.assertNotNull(changeSet);
+            final List<MapperChange> changes = changeSet.getChanges();
+            Assert.assertEquals(2, changes.size());
+            Assert.assertEquals(new MapperChange(file, MapperChange.Type.CHANGED, "select", "findById"), changes.get(0));
+            Assert.assertEquals(new MapperChange(file, MapperChange.Type.REMOVED, "resultMap", "user"), changes.get(1));
+            Assert.assertTrue(changeSet.getDocuments().containsKey(file));
+            Assert.assertEquals(changeSet.getDocuments().get(file), watcher.getDocuments().get(file));
+
+            Files.delete(file);
+            final MapperChangeSet removal = changeSets.poll(30, TimeUnit.SECONDS);
+            Assert.assertNotNull(removal);
+            Assert.assertEquals(1, removal.getRemovedFiles().size());
+            Assert.assertEquals(2, removal.getChanges().size());
+            Assert.assertTrue(watcher.getDocuments().isEmpty());
+        }
+    }
+
+    @Test
+    public void testParseFailure() throws Exception {
+        final Path file = this.folder.getRoot().toPath().resolve("UserMapper.xml");
+        Files.write(file, MapperWatcherTest.MAPPER.getBytes(StandardCharsets.US_ASCII));
+
+        final BlockingQueue<MapperChangeSet> changeSets = new LinkedBlockingQueue<>();
+        try (MapperWatcher watcher = new MapperWatcher(this.folder.getRoot().toPath(), FileSystems.getDefault().getPathMatcher("glob:**.xml"), 50,
+                changeSets::add)) {
+            watcher.start();
+            Assert.assertNotNull(changeSets.poll(10, TimeUnit.SECONDS));
+
+            Files.write(file, "<mapper><select></mapper>".getBytes(StandardCharsets.US_ASCII));
+            final MapperChangeSet changeSet = changeSets.poll(30, TimeUnit.SECONDS);
+            Assert.assertNotNull(changeSet);
+            Assert.assertTrue(changeSet.getChanges().isEmpty());
+            Assert.assertTrue(changeSet.getFailures().containsKey(file));
+            // The old document is kept.
+            Assert.assertNotNull(watcher.getDocuments().get(file));
+        }
+    }
+}
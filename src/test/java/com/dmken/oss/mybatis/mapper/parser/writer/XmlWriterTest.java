@@ -0,0 +1,121 @@
+/*-
+ * #%L
+ * MyBatis Mapper Parser
+ * %%
+ * Copyright (C) 2017 Fabian Damken
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.dmken.oss.mybatis.mapper.parser.writer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.dmken.oss.mybatis.mapper.parser.parser.XmlParser;
+import com.dmken.oss.mybatis.mapper.parser.scanner.XmlScanner;
+import com.dmken.oss.mybatis.mapper.parser.tree.AbstractXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.SelfClosingXmlTag;
+import com.dmken.oss.mybatis.mapper.parser.tree.SimpleXmlValue;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlDocument;
+import com.dmken.oss.mybatis.mapper.parser.tree.XmlTag;
+
+@SuppressWarnings("javadoc")
+public class XmlWriterTest {
+    @Test
+    public void testRoundTrip() throws Exception {
+        final XmlDocument document;
+        try (InputStream in = XmlWriterTest.class.getResourceAsStream("/xml/simple.xml")) {
+            document = XmlParser.parse(XmlScanner.scan(in));
+        }
+
+        for (final String indent : Arrays.asList(null, "\t")) {
+            final StringWriter out = new StringWriter();
+            try (XmlWriter writer = new XmlWriter(out)) {
+                writer.setIndent(indent);
+                writer.write(document);
+            }
+            Assert.assertEquals(document, this.parse(out.toString()));
+        }
+    }
+
+    @Test
+    public void testDoctype() throws Exception {
+        final XmlDocument document = this.parse("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" //
+                + "<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" " //
+                + "'http://mybatis.org/dtd/mybatis-3-mapper.dtd'>\n" //
+                + "<mapper namespace=\"users\"><select id=\"find\">SELECT 1</select></mapper>");
+        Assert.assertEquals(
+                "DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\"",
+                document.getDoctype());
+
+        final StringWriter out = new StringWriter();
+        try (XmlWriter writer = new XmlWriter(out)) {
+            writer.write(document);
+        }
+        Assert.assertEquals(document, this.parse(out.toString()));
+    }
+
+    @Test
+    public void testPrettyPrint() throws Exception {
+        final Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("z", "1 < \"2\"");
+        parameters.put("a", "&");
+        final XmlTag root = new XmlTag("mapper", new LinkedHashMap<>(), Arrays.<AbstractXmlValue> asList( //
+                new XmlTag("select", parameters, Arrays.<AbstractXmlValue> asList(new SimpleXmlValue("a < b & \"c\""))), //
+                new SelfClosingXmlTag("include", parameters), //
+                new XmlTag("empty", new LinkedHashMap<>(), Arrays.<AbstractXmlValue> asList())));
+
+        final StringWriter out = new StringWriter();
+        final XmlWriter writer = new XmlWriter(out);
+        writer.setIndent("  ");
+        writer.setParameterOrder(Comparator.naturalOrder());
+        writer.write(new XmlDocument(null, null, null, root));
+        Assert.assertEquals("<mapper>\n" //
+                + "  <select a=\"&amp;\" z=\"1 &lt; &quot;2&quot;\">a &lt; b &amp; \"c\"</select>\n" //
+                + "  <include a=\"&amp;\" z=\"1 &lt; &quot;2&quot;\" />\n" //
+                + "  <empty></empty>\n" //
+                + "</mapper>\n", out.toString());
+    }
+
+    @Test
+    public void testChannel() throws Exception {
+        // Larger than the buffer to check the buffer handling.
+        final char[] chars = new char[100_000];
+        Arrays.fill(chars, 'ä');
+        final XmlTag root = new XmlTag("root", new LinkedHashMap<>(),
+                Arrays.<AbstractXmlValue> asList(new SimpleXmlValue(new String(chars))));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (XmlWriter writer = new XmlWriter(Channels.newChannel(out), StandardCharsets.UTF_8)) {
+            writer.write(new XmlDocument(null, StandardCharsets.UTF_8, null, root));
+        }
+        Assert.assertEquals("<?xml encoding=\"UTF-8\"?><root>" + new String(chars) + "</root>",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private XmlDocument parse(final String xml) throws Exception {
+        return XmlParser.parse(XmlScanner.scan(new ByteArrayInputStream(xml.getBytes(StandardCharsets.US_ASCII))));
+    }
+}